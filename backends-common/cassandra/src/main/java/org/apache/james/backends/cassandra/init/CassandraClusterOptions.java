@@ -0,0 +1,224 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.backends.cassandra.init;
+
+import java.util.Optional;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ProtocolOptions.Compression;
+import com.google.common.base.Preconditions;
+
+/**
+ * Driver level options applied by {@link ClusterFactory} when building a {@link com.datastax.driver.core.Cluster}.
+ *
+ * Options left unset keep the driver defaults.
+ */
+public class CassandraClusterOptions {
+
+    public static final CassandraClusterOptions DEFAULT = builder().build();
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private Optional<String> localDatacenter;
+        private int usedHostsPerRemoteDc;
+        private boolean tokenAware;
+        private boolean latencyAware;
+        private Optional<Integer> coreConnectionsPerHost;
+        private Optional<Integer> maxConnectionsPerHost;
+        private Optional<Integer> maxRequestsPerConnection;
+        private Compression compression;
+        private Optional<Long> speculativeExecutionDelayMillis;
+        private int maxSpeculativeExecutions;
+        private Optional<ConsistencyLevel> consistencyLevel;
+        private boolean jmxReporting;
+
+        private Builder() {
+            localDatacenter = Optional.empty();
+            usedHostsPerRemoteDc = 0;
+            tokenAware = true;
+            latencyAware = false;
+            coreConnectionsPerHost = Optional.empty();
+            maxConnectionsPerHost = Optional.empty();
+            maxRequestsPerConnection = Optional.empty();
+            compression = Compression.NONE;
+            speculativeExecutionDelayMillis = Optional.empty();
+            maxSpeculativeExecutions = 1;
+            consistencyLevel = Optional.empty();
+            jmxReporting = true;
+        }
+
+        public Builder localDatacenter(String localDatacenter, int usedHostsPerRemoteDc) {
+            Preconditions.checkNotNull(localDatacenter);
+            Preconditions.checkArgument(usedHostsPerRemoteDc >= 0, "'usedHostsPerRemoteDc' should be positive");
+            this.localDatacenter = Optional.of(localDatacenter);
+            this.usedHostsPerRemoteDc = usedHostsPerRemoteDc;
+            return this;
+        }
+
+        public Builder tokenAware(boolean tokenAware) {
+            this.tokenAware = tokenAware;
+            return this;
+        }
+
+        public Builder latencyAware(boolean latencyAware) {
+            this.latencyAware = latencyAware;
+            return this;
+        }
+
+        public Builder coreConnectionsPerHost(int coreConnectionsPerHost) {
+            Preconditions.checkArgument(coreConnectionsPerHost > 0, "'coreConnectionsPerHost' should be strictly positive");
+            this.coreConnectionsPerHost = Optional.of(coreConnectionsPerHost);
+            return this;
+        }
+
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            Preconditions.checkArgument(maxConnectionsPerHost > 0, "'maxConnectionsPerHost' should be strictly positive");
+            this.maxConnectionsPerHost = Optional.of(maxConnectionsPerHost);
+            return this;
+        }
+
+        public Builder maxRequestsPerConnection(int maxRequestsPerConnection) {
+            Preconditions.checkArgument(maxRequestsPerConnection > 0, "'maxRequestsPerConnection' should be strictly positive");
+            this.maxRequestsPerConnection = Optional.of(maxRequestsPerConnection);
+            return this;
+        }
+
+        public Builder compression(Compression compression) {
+            Preconditions.checkNotNull(compression);
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Speculative executions are only triggered for idempotent statements.
+         */
+        public Builder speculativeExecution(long delayMillis, int maxSpeculativeExecutions) {
+            Preconditions.checkArgument(delayMillis >= 0, "'delayMillis' should be positive");
+            Preconditions.checkArgument(maxSpeculativeExecutions > 0, "'maxSpeculativeExecutions' should be strictly positive");
+            this.speculativeExecutionDelayMillis = Optional.of(delayMillis);
+            this.maxSpeculativeExecutions = maxSpeculativeExecutions;
+            return this;
+        }
+
+        public Builder consistencyLevel(ConsistencyLevel consistencyLevel) {
+            Preconditions.checkNotNull(consistencyLevel);
+            this.consistencyLevel = Optional.of(consistencyLevel);
+            return this;
+        }
+
+        public Builder jmxReporting(boolean jmxReporting) {
+            this.jmxReporting = jmxReporting;
+            return this;
+        }
+
+        public CassandraClusterOptions build() {
+            if (coreConnectionsPerHost.isPresent() && maxConnectionsPerHost.isPresent()) {
+                Preconditions.checkState(coreConnectionsPerHost.get() <= maxConnectionsPerHost.get(),
+                    "'coreConnectionsPerHost' should not exceed 'maxConnectionsPerHost'");
+            }
+            return new CassandraClusterOptions(localDatacenter, usedHostsPerRemoteDc, tokenAware, latencyAware,
+                coreConnectionsPerHost, maxConnectionsPerHost, maxRequestsPerConnection, compression,
+                speculativeExecutionDelayMillis, maxSpeculativeExecutions, consistencyLevel, jmxReporting);
+        }
+    }
+
+    private final Optional<String> localDatacenter;
+    private final int usedHostsPerRemoteDc;
+    private final boolean tokenAware;
+    private final boolean latencyAware;
+    private final Optional<Integer> coreConnectionsPerHost;
+    private final Optional<Integer> maxConnectionsPerHost;
+    private final Optional<Integer> maxRequestsPerConnection;
+    private final Compression compression;
+    private final Optional<Long> speculativeExecutionDelayMillis;
+    private final int maxSpeculativeExecutions;
+    private final Optional<ConsistencyLevel> consistencyLevel;
+    private final boolean jmxReporting;
+
+    private CassandraClusterOptions(Optional<String> localDatacenter, int usedHostsPerRemoteDc, boolean tokenAware, boolean latencyAware,
+                                    Optional<Integer> coreConnectionsPerHost, Optional<Integer> maxConnectionsPerHost, Optional<Integer> maxRequestsPerConnection,
+                                    Compression compression, Optional<Long> speculativeExecutionDelayMillis, int maxSpeculativeExecutions,
+                                    Optional<ConsistencyLevel> consistencyLevel, boolean jmxReporting) {
+        this.localDatacenter = localDatacenter;
+        this.usedHostsPerRemoteDc = usedHostsPerRemoteDc;
+        this.tokenAware = tokenAware;
+        this.latencyAware = latencyAware;
+        this.coreConnectionsPerHost = coreConnectionsPerHost;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.compression = compression;
+        this.speculativeExecutionDelayMillis = speculativeExecutionDelayMillis;
+        this.maxSpeculativeExecutions = maxSpeculativeExecutions;
+        this.consistencyLevel = consistencyLevel;
+        this.jmxReporting = jmxReporting;
+    }
+
+    public Optional<String> getLocalDatacenter() {
+        return localDatacenter;
+    }
+
+    public int getUsedHostsPerRemoteDc() {
+        return usedHostsPerRemoteDc;
+    }
+
+    public boolean isTokenAware() {
+        return tokenAware;
+    }
+
+    public boolean isLatencyAware() {
+        return latencyAware;
+    }
+
+    public Optional<Integer> getCoreConnectionsPerHost() {
+        return coreConnectionsPerHost;
+    }
+
+    public Optional<Integer> getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public Optional<Integer> getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public Optional<Long> getSpeculativeExecutionDelayMillis() {
+        return speculativeExecutionDelayMillis;
+    }
+
+    public int getMaxSpeculativeExecutions() {
+        return maxSpeculativeExecutions;
+    }
+
+    public Optional<ConsistencyLevel> getConsistencyLevel() {
+        return consistencyLevel;
+    }
+
+    public boolean isJmxReporting() {
+        return jmxReporting;
+    }
+}
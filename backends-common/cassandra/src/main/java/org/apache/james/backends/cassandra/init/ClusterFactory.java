@@ -23,7 +23,14 @@ import java.util.List;
 import java.util.Optional;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
 import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.LatencyAwarePolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 
@@ -44,6 +51,11 @@ public class ClusterFactory {
 
     public static Cluster createClusterForClusterWithPassWord(List<CassandraServer> servers, String userName, String password, 
             Optional<Integer> refreshSchemaIntervalMillis) {
+        return createClusterForClusterWithPassWord(servers, userName, password, refreshSchemaIntervalMillis, CassandraClusterOptions.DEFAULT);
+    }
+
+    public static Cluster createClusterForClusterWithPassWord(List<CassandraServer> servers, String userName, String password,
+            Optional<Integer> refreshSchemaIntervalMillis, CassandraClusterOptions options) {
 
         Cluster.Builder clusterBuilder = Cluster.builder();
         servers.forEach(
@@ -52,12 +64,59 @@ public class ClusterFactory {
         if(!Strings.isNullOrEmpty(userName) && !Strings.isNullOrEmpty(password)) {
             clusterBuilder.withCredentials(userName, password);
         }
+        QueryOptions queryOptions = new QueryOptions();
         if (refreshSchemaIntervalMillis.isPresent()) {
-            clusterBuilder.withQueryOptions(new QueryOptions().setRefreshSchemaIntervalMillis(refreshSchemaIntervalMillis.get()));
+            queryOptions.setRefreshSchemaIntervalMillis(refreshSchemaIntervalMillis.get());
+        }
+        if (options.getConsistencyLevel().isPresent()) {
+            queryOptions.setConsistencyLevel(options.getConsistencyLevel().get());
+        }
+        clusterBuilder.withQueryOptions(queryOptions)
+            .withLoadBalancingPolicy(loadBalancingPolicy(options))
+            .withPoolingOptions(poolingOptions(options))
+            .withCompression(options.getCompression());
+        if (options.getSpeculativeExecutionDelayMillis().isPresent()) {
+            clusterBuilder.withSpeculativeExecutionPolicy(
+                new ConstantSpeculativeExecutionPolicy(options.getSpeculativeExecutionDelayMillis().get(), options.getMaxSpeculativeExecutions()));
+        }
+        if (!options.isJmxReporting()) {
+            clusterBuilder.withoutJMXReporting();
         }
         return clusterBuilder.build();
     }
 
+    public static Cluster createClusterForSingleServerWithoutPassWord(String ip, int port, CassandraClusterOptions options) {
+        return createClusterForClusterWithPassWord(ImmutableList.of(new CassandraServer(ip, port)), null, null, Optional.empty(), options);
+    }
+
+    private static LoadBalancingPolicy loadBalancingPolicy(CassandraClusterOptions options) {
+        LoadBalancingPolicy policy = options.getLocalDatacenter()
+            .map(localDatacenter -> new DCAwareRoundRobinPolicy(localDatacenter, options.getUsedHostsPerRemoteDc()))
+            .orElseGet(DCAwareRoundRobinPolicy::new);
+        if (options.isLatencyAware()) {
+            policy = LatencyAwarePolicy.builder(policy).build();
+        }
+        if (options.isTokenAware()) {
+            policy = new TokenAwarePolicy(policy);
+        }
+        return policy;
+    }
+
+    private static PoolingOptions poolingOptions(CassandraClusterOptions options) {
+        PoolingOptions poolingOptions = new PoolingOptions();
+        if (options.getCoreConnectionsPerHost().isPresent() || options.getMaxConnectionsPerHost().isPresent()) {
+            int coreConnections = options.getCoreConnectionsPerHost()
+                .orElse(poolingOptions.getCoreConnectionsPerHost(HostDistance.LOCAL));
+            int maxConnections = options.getMaxConnectionsPerHost()
+                .orElse(Math.max(coreConnections, poolingOptions.getMaxConnectionsPerHost(HostDistance.LOCAL)));
+            poolingOptions.setConnectionsPerHost(HostDistance.LOCAL, coreConnections, maxConnections);
+        }
+        if (options.getMaxRequestsPerConnection().isPresent()) {
+            poolingOptions.setMaxRequestsPerConnection(HostDistance.LOCAL, options.getMaxRequestsPerConnection().get());
+        }
+        return poolingOptions;
+    }
+
     public static Cluster createClusterForClusterWithoutPassWord(List<CassandraServer> servers) {
         return createClusterForClusterWithPassWord(servers, null, null, Optional.empty());
     }
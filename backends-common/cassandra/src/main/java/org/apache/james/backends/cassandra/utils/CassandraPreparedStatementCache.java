@@ -0,0 +1,84 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.backends.cassandra.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Session;
+
+/**
+ * Shares {@link PreparedStatement} between all the DAOs and mappers using a given {@link Session}.
+ *
+ * Statements are keyed by their CQL query string, so that a query built with bind markers is only
+ * parsed once by the coordinator, then bound for every call.
+ *
+ * The consistency level, serial consistency level and retry policy set by the DAO on the statement are kept by the
+ * prepared statement. Statements sharing a query string are expected to share these settings. The cache does not
+ * apply any per table consistency level: it would have to be guessed from the query string.
+ */
+public class CassandraPreparedStatementCache {
+
+    private final Session session;
+    private final ConcurrentMap<String, PreparedStatement> statements;
+    private final AtomicLong hitCount;
+    private final AtomicLong prepareCount;
+
+    @Inject
+    public CassandraPreparedStatementCache(Session session) {
+        this.session = session;
+        this.statements = new ConcurrentHashMap<>();
+        this.hitCount = new AtomicLong();
+        this.prepareCount = new AtomicLong();
+    }
+
+    public PreparedStatement prepare(RegularStatement statement) {
+        String query = statement.getQueryString();
+        PreparedStatement preparedStatement = statements.get(query);
+        if (preparedStatement != null) {
+            hitCount.incrementAndGet();
+            return preparedStatement;
+        }
+        return statements.computeIfAbsent(query, any -> doPrepare(statement));
+    }
+
+    private PreparedStatement doPrepare(RegularStatement statement) {
+        prepareCount.incrementAndGet();
+        return session.prepare(statement);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getPrepareCount() {
+        return prepareCount.get();
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+}
@@ -0,0 +1,90 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.backends.cassandra.utils;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.querybuilder.Select;
+
+public class CassandraPreparedStatementCacheTest {
+
+    private static final String KEY = "key";
+
+    private CassandraCluster cassandra;
+    private CassandraPreparedStatementCache testee;
+
+    @Before
+    public void setUp() {
+        cassandra = CassandraCluster.create(new CassandraModuleComposite());
+        testee = new CassandraPreparedStatementCache(cassandra.getConf());
+    }
+
+    @Test
+    public void prepareShouldPrepareUnknownStatement() {
+        testee.prepare(selectReleaseVersion());
+
+        assertThat(testee.getPrepareCount()).isEqualTo(1);
+        assertThat(testee.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void prepareShouldReuseAlreadyPreparedStatement() {
+        PreparedStatement first = testee.prepare(selectReleaseVersion());
+        PreparedStatement second = testee.prepare(selectReleaseVersion());
+
+        assertThat(second).isSameAs(first);
+        assertThat(testee.getPrepareCount()).isEqualTo(1);
+        assertThat(testee.getHitCount()).isEqualTo(1);
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void preparedStatementShouldBeBindable() {
+        PreparedStatement statement = testee.prepare(selectReleaseVersion());
+
+        assertThat(cassandra.getConf().execute(statement.bind().setString(KEY, "local")).one())
+            .isNotNull();
+    }
+
+    @Test
+    public void prepareShouldKeepTheConsistencyLevelOfTheStatement() {
+        Select.Where statement = selectReleaseVersion();
+        statement.setConsistencyLevel(ConsistencyLevel.ONE);
+
+        assertThat(testee.prepare(statement).getConsistencyLevel()).isEqualTo(ConsistencyLevel.ONE);
+    }
+
+    private Select.Where selectReleaseVersion() {
+        return select("release_version")
+            .from("system", "local")
+            .where(eq(KEY, bindMarker(KEY)));
+    }
+
+}
@@ -22,6 +22,7 @@ package org.apache.james.mailbox.cassandra;
 import javax.inject.Inject;
 
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.mail.CassandraAnnotationMapper;
 import org.apache.james.mailbox.cassandra.mail.CassandraAttachmentMapper;
@@ -51,15 +52,17 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
     private final UidProvider uidProvider;
     private final ModSeqProvider modSeqProvider;
     private final CassandraTypesProvider typesProvider;
+    private final CassandraPreparedStatementCache preparedStatements;
     private int maxRetry;
 
     @Inject
-    public CassandraMailboxSessionMapperFactory(UidProvider uidProvider, ModSeqProvider modSeqProvider, Session session, CassandraTypesProvider typesProvider) {
+    public CassandraMailboxSessionMapperFactory(UidProvider uidProvider, ModSeqProvider modSeqProvider, Session session, CassandraTypesProvider typesProvider, CassandraPreparedStatementCache preparedStatements) {
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
         this.session = session;
         this.maxRetry = DEFAULT_MAX_RETRY;
         this.typesProvider = typesProvider;
+        this.preparedStatements = preparedStatements;
     }
 
     public void setMaxRetry(int maxRetry) {
@@ -68,12 +71,12 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
 
     @Override
     public CassandraMessageMapper createMessageMapper(MailboxSession mailboxSession) {
-        return new CassandraMessageMapper(session, uidProvider, modSeqProvider, null, maxRetry, typesProvider, createAttachmentMapper(mailboxSession));
+        return new CassandraMessageMapper(session, preparedStatements, uidProvider, modSeqProvider, null, maxRetry, typesProvider, createAttachmentMapper(mailboxSession));
     }
 
     @Override
     public MailboxMapper createMailboxMapper(MailboxSession mailboxSession) {
-        return new CassandraMailboxMapper(session, typesProvider, maxRetry);
+        return new CassandraMailboxMapper(session, typesProvider, preparedStatements, maxRetry);
     }
 
     @Override
@@ -98,6 +101,10 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
         return session;
     }
 
+    public CassandraPreparedStatementCache getPreparedStatements() {
+        return preparedStatements;
+    }
+
     @Override
     public AnnotationMapper createAnnotationMapper(MailboxSession mailboxSession)
             throws MailboxException {
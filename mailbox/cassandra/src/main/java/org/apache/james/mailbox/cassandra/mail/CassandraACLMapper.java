@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
@@ -29,6 +30,7 @@ import java.io.IOException;
 import java.util.Optional;
 
 import org.apache.james.backends.cassandra.utils.CassandraConstants;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
 import org.apache.james.backends.cassandra.utils.LightweightTransactionException;
 import org.apache.james.mailbox.cassandra.CassandraId;
@@ -43,6 +45,7 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
@@ -57,22 +60,39 @@ public class CassandraACLMapper {
         void inject();
     }
 
+    private static final String OLD_VERSION = "oldVersion";
+    private static final RegularStatement SELECT_ACL = select(CassandraACLTable.ACL, CassandraACLTable.VERSION)
+        .from(CassandraACLTable.TABLE_NAME)
+        .where(eq(CassandraMailboxTable.ID, bindMarker(CassandraMailboxTable.ID)));
+    private static final RegularStatement UPDATE_ACL = update(CassandraACLTable.TABLE_NAME)
+        .with(set(CassandraACLTable.ACL, bindMarker(CassandraACLTable.ACL)))
+        .and(set(CassandraACLTable.VERSION, bindMarker(CassandraACLTable.VERSION)))
+        .where(eq(CassandraACLTable.ID, bindMarker(CassandraACLTable.ID)))
+        .onlyIf(eq(CassandraACLTable.VERSION, bindMarker(OLD_VERSION)));
+    private static final RegularStatement INSERT_ACL = insertInto(CassandraACLTable.TABLE_NAME)
+        .value(CassandraACLTable.ID, bindMarker(CassandraACLTable.ID))
+        .value(CassandraACLTable.ACL, bindMarker(CassandraACLTable.ACL))
+        .value(CassandraACLTable.VERSION, 0)
+        .ifNotExists();
+
     private final Mailbox mailbox;
     private final Session session;
+    private final CassandraPreparedStatementCache preparedStatements;
     private final int maxRetry;
     private final CodeInjector codeInjector;
 
     private static final Logger LOG = LoggerFactory.getLogger(CassandraACLMapper.class);
 
-    public CassandraACLMapper(Mailbox mailbox, Session session, int maxRetry) {
-        this(mailbox, session, maxRetry, () -> {});
+    public CassandraACLMapper(Mailbox mailbox, Session session, CassandraPreparedStatementCache preparedStatements, int maxRetry) {
+        this(mailbox, session, preparedStatements, maxRetry, () -> {});
     }
 
-    public CassandraACLMapper(Mailbox mailbox, Session session, int maxRetry, CodeInjector codeInjector) {
+    public CassandraACLMapper(Mailbox mailbox, Session session, CassandraPreparedStatementCache preparedStatements, int maxRetry, CodeInjector codeInjector) {
         Preconditions.checkArgument(maxRetry > 0);
         Preconditions.checkArgument(mailbox.getMailboxId() != null);
         this.mailbox = mailbox;
         this.session = session;
+        this.preparedStatements = preparedStatements;
         this.maxRetry = maxRetry;
         this.codeInjector = codeInjector;
     }
@@ -114,9 +134,9 @@ public class CassandraACLMapper {
     private ResultSet getStoredACLRow() {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         return session.execute(
-            select(CassandraACLTable.ACL, CassandraACLTable.VERSION)
-                .from(CassandraACLTable.TABLE_NAME)
-                .where(eq(CassandraMailboxTable.ID, mailboxId.asUuid()))
+            preparedStatements.prepare(SELECT_ACL).bind()
+                .setUUID(CassandraMailboxTable.ID, mailboxId.asUuid())
+                .setIdempotent(true)
         );
     }
 
@@ -124,11 +144,11 @@ public class CassandraACLMapper {
         try {
             CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
             return session.execute(
-                update(CassandraACLTable.TABLE_NAME)
-                    .with(set(CassandraACLTable.ACL, SimpleMailboxACLJsonConverter.toJson(aclWithVersion.mailboxACL)))
-                    .and(set(CassandraACLTable.VERSION, aclWithVersion.version + 1))
-                    .where(eq(CassandraACLTable.ID, mailboxId.asUuid()))
-                    .onlyIf(eq(CassandraACLTable.VERSION, aclWithVersion.version))
+                preparedStatements.prepare(UPDATE_ACL).bind()
+                    .setString(CassandraACLTable.ACL, SimpleMailboxACLJsonConverter.toJson(aclWithVersion.mailboxACL))
+                    .setLong(CassandraACLTable.VERSION, aclWithVersion.version + 1)
+                    .setUUID(CassandraACLTable.ID, mailboxId.asUuid())
+                    .setLong(OLD_VERSION, aclWithVersion.version)
             );
         } catch (JsonProcessingException exception) {
             throw Throwables.propagate(exception);
@@ -139,11 +159,9 @@ public class CassandraACLMapper {
         try {
             CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
             return session.execute(
-                insertInto(CassandraACLTable.TABLE_NAME)
-                    .value(CassandraACLTable.ID, mailboxId.asUuid())
-                    .value(CassandraACLTable.ACL, SimpleMailboxACLJsonConverter.toJson(acl))
-                    .value(CassandraACLTable.VERSION, 0)
-                    .ifNotExists()
+                preparedStatements.prepare(INSERT_ACL).bind()
+                    .setUUID(CassandraACLTable.ID, mailboxId.asUuid())
+                    .setString(CassandraACLTable.ACL, SimpleMailboxACLJsonConverter.toJson(acl))
             );
         } catch (JsonProcessingException exception) {
             throw Throwables.propagate(exception);
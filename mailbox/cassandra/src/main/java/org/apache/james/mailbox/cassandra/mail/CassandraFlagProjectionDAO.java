@@ -0,0 +1,237 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.apache.james.mailbox.cassandra.table.CassandraFlagProjectionTable.IMAP_UID;
+import static org.apache.james.mailbox.cassandra.table.CassandraFlagProjectionTable.MAILBOX_ID;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.backends.cassandra.utils.CassandraUtils;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.table.CassandraFlagProjectionTable;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.UpdatedFlags;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.collect.Maps;
+
+/**
+ * Maintains, for each mailbox, the UIDs of the messages being recent, unseen or marked as deleted.
+ *
+ * Each projection is a single partition per mailbox clustered by UID, which turns SELECT, STATUS and EXPUNGE
+ * lookups into single partition range reads.
+ */
+public class CassandraFlagProjectionDAO {
+
+    public enum Projection {
+        RECENT(CassandraFlagProjectionTable.Recent.TABLE_NAME, flags -> flags.contains(Flag.RECENT)),
+        UNSEEN(CassandraFlagProjectionTable.Unseen.TABLE_NAME, flags -> !flags.contains(Flag.SEEN)),
+        DELETED(CassandraFlagProjectionTable.Deleted.TABLE_NAME, flags -> flags.contains(Flag.DELETED));
+
+        private final String tableName;
+        private final Predicate<Flags> membership;
+
+        Projection(String tableName, Predicate<Flags> membership) {
+            this.tableName = tableName;
+            this.membership = membership;
+        }
+
+        public boolean contains(Flags flags) {
+            return membership.test(flags);
+        }
+    }
+
+    private static final String UID_FROM = "uidFrom";
+    private static final String UID_TO = "uidTo";
+
+    private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final Map<Projection, PreparedStatement> selectAllStatements;
+    private final Map<Projection, PreparedStatement> selectRangeStatements;
+    private final Map<Projection, PreparedStatement> selectFirstStatements;
+    private final Map<Projection, PreparedStatement> insertStatements;
+    private final Map<Projection, PreparedStatement> deleteStatements;
+
+    public CassandraFlagProjectionDAO(Session session, CassandraPreparedStatementCache preparedStatements) {
+        this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.selectAllStatements = prepare(preparedStatements, projection -> select(IMAP_UID)
+            .from(projection.tableName)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID))));
+        this.selectRangeStatements = prepare(preparedStatements, projection -> select(IMAP_UID)
+            .from(projection.tableName)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gte(IMAP_UID, bindMarker(UID_FROM)))
+            .and(lte(IMAP_UID, bindMarker(UID_TO))));
+        this.selectFirstStatements = prepare(preparedStatements, projection -> select(IMAP_UID)
+            .from(projection.tableName)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .limit(1));
+        this.insertStatements = prepare(preparedStatements, projection -> insertInto(projection.tableName)
+            .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
+            .value(IMAP_UID, bindMarker(IMAP_UID)));
+        this.deleteStatements = prepare(preparedStatements, projection -> QueryBuilder.delete()
+            .from(projection.tableName)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
+    }
+
+    /**
+     * Statements are prepared once, when the DAO is built, as preparing blocks and must not happen in a driver
+     * callback. Calls only bind them.
+     */
+    private static Map<Projection, PreparedStatement> prepare(CassandraPreparedStatementCache preparedStatements, Function<Projection, RegularStatement> statement) {
+        Map<Projection, PreparedStatement> statements = new EnumMap<>(Projection.class);
+        for (Projection projection : Projection.values()) {
+            statements.put(projection, preparedStatements.prepare(statement.apply(projection)));
+        }
+        return Maps.immutableEnumMap(statements);
+    }
+
+    public CompletableFuture<Void> add(CassandraId mailboxId, long uid, Flags flags) {
+        return CompletableFuture.allOf(
+            Arrays.stream(Projection.values())
+                .filter(projection -> projection.contains(flags))
+                .map(projection -> cassandraAsyncExecutor.executeVoid(insert(projection, mailboxId, uid)))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    public CompletableFuture<Void> update(CassandraId mailboxId, long uid, Flags oldFlags, Flags newFlags) {
+        return CompletableFuture.allOf(
+            changes(mailboxId, uid, oldFlags, newFlags)
+                .map(cassandraAsyncExecutor::executeVoid)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Applies the projection changes of several flag updates of a mailbox as a single logged batch, so that they cost
+     * one round trip instead of one per message and projection.
+     */
+    public CompletableFuture<Void> update(CassandraId mailboxId, List<UpdatedFlags> updatedFlags) {
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED);
+        updatedFlags.stream()
+            .flatMap(flags -> changes(mailboxId, flags.getUid(), flags.getOldFlags(), flags.getNewFlags()))
+            .forEach(batch::add);
+        if (batch.size() == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return cassandraAsyncExecutor.executeVoid(batch);
+    }
+
+    public CompletableFuture<Void> remove(CassandraId mailboxId, long uid) {
+        return CompletableFuture.allOf(
+            Arrays.stream(Projection.values())
+                .map(projection -> cassandraAsyncExecutor.executeVoid(delete(projection, mailboxId, uid)))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    public List<Long> retrieveUids(Projection projection, CassandraId mailboxId) {
+        return CassandraUtils.convertToStream(session.execute(
+                selectAllStatements.get(projection)
+                    .bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setIdempotent(true)))
+            .map(row -> row.getLong(IMAP_UID))
+            .collect(Collectors.toList());
+    }
+
+    public List<Long> retrieveUids(Projection projection, CassandraId mailboxId, MessageRange range) {
+        return CassandraUtils.convertToStream(session.execute(
+                selectRangeStatements.get(projection)
+                    .bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setLong(UID_FROM, range.getUidFrom())
+                    .setLong(UID_TO, upperBound(range))
+                    .setIdempotent(true)))
+            .map(row -> row.getLong(IMAP_UID))
+            .collect(Collectors.toList());
+    }
+
+    public Optional<Long> retrieveFirstUid(Projection projection, CassandraId mailboxId) {
+        return Optional.ofNullable(session.execute(
+                selectFirstStatements.get(projection)
+                    .bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setIdempotent(true))
+                .one())
+            .map(row -> row.getLong(IMAP_UID));
+    }
+
+    private long upperBound(MessageRange range) {
+        switch (range.getType()) {
+        case ALL:
+        case FROM:
+            return MessageRange.MAX_UID;
+        default:
+            return range.getUidTo();
+        }
+    }
+
+    private Stream<BoundStatement> changes(CassandraId mailboxId, long uid, Flags oldFlags, Flags newFlags) {
+        return Arrays.stream(Projection.values())
+            .filter(projection -> projection.contains(oldFlags) != projection.contains(newFlags))
+            .map(projection -> {
+                if (projection.contains(newFlags)) {
+                    return insert(projection, mailboxId, uid);
+                }
+                return delete(projection, mailboxId, uid);
+            });
+    }
+
+    private BoundStatement insert(Projection projection, CassandraId mailboxId, long uid) {
+        return insertStatements.get(projection)
+            .bind()
+            .setUUID(MAILBOX_ID, mailboxId.asUuid())
+            .setLong(IMAP_UID, uid);
+    }
+
+    private BoundStatement delete(Projection projection, CassandraId mailboxId, long uid) {
+        return deleteStatements.get(projection)
+            .bind()
+            .setUUID(MAILBOX_ID, mailboxId.asUuid())
+            .setLong(IMAP_UID, uid);
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
@@ -38,6 +39,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.backends.cassandra.utils.CassandraUtils;
 import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.table.CassandraMailboxTable;
@@ -51,6 +53,7 @@ import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
@@ -63,28 +66,53 @@ import com.google.common.base.Preconditions;
 public class CassandraMailboxMapper implements MailboxMapper {
 
     public static final String WILDCARD = "%";
+    private static final RegularStatement DELETE_MAILBOX = QueryBuilder.delete()
+        .from(TABLE_NAME)
+        .where(eq(ID, bindMarker(ID)));
+    private static final RegularStatement SELECT_BY_PATH = select(FIELDS)
+        .from(TABLE_NAME)
+        .where(eq(PATH, bindMarker(PATH)));
+    private static final RegularStatement SELECT_BY_ID = select(FIELDS)
+        .from(TABLE_NAME)
+        .where(eq(ID, bindMarker(ID)));
+    private static final RegularStatement SELECT_ALL = select(FIELDS)
+        .from(TABLE_NAME);
+    private static final RegularStatement SELECT_BY_MAILBOX_BASE = select(FIELDS)
+        .from(TABLE_NAME)
+        .where(eq(MAILBOX_BASE, bindMarker(MAILBOX_BASE)));
+    private static final RegularStatement INSERT_MAILBOX = insertInto(TABLE_NAME)
+        .value(ID, bindMarker(ID))
+        .value(NAME, bindMarker(NAME))
+        .value(UIDVALIDITY, bindMarker(UIDVALIDITY))
+        .value(MAILBOX_BASE, bindMarker(MAILBOX_BASE))
+        .value(PATH, bindMarker(PATH));
+
     private final Session session;
     private final int maxRetry;
     private final CassandraTypesProvider typesProvider;
+    private final CassandraPreparedStatementCache preparedStatements;
 
-    public CassandraMailboxMapper(Session session, CassandraTypesProvider typesProvider, int maxRetry) {
+    public CassandraMailboxMapper(Session session, CassandraTypesProvider typesProvider, CassandraPreparedStatementCache preparedStatements, int maxRetry) {
         this.session = session;
         this.maxRetry = maxRetry;
         this.typesProvider = typesProvider;
+        this.preparedStatements = preparedStatements;
     }
 
     @Override
     public void delete(Mailbox mailbox) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         session.execute(
-            QueryBuilder.delete()
-                .from(TABLE_NAME)
-                .where(eq(ID, mailboxId.asUuid())));
+            preparedStatements.prepare(DELETE_MAILBOX).bind()
+                .setUUID(ID, mailboxId.asUuid()));
     }
 
     @Override
     public Mailbox findMailboxByPath(MailboxPath path) throws MailboxException {
-        ResultSet resultSet = session.execute(select(FIELDS).from(TABLE_NAME).where(eq(PATH, path.toString())));
+        ResultSet resultSet = session.execute(
+            preparedStatements.prepare(SELECT_BY_PATH).bind()
+                .setString(PATH, path.toString())
+                .setIdempotent(true));
         if (resultSet.isExhausted()) {
             throw new MailboxNotFoundException(path);
         } else {
@@ -95,7 +123,10 @@ public class CassandraMailboxMapper implements MailboxMapper {
     @Override
     public Mailbox findMailboxById(MailboxId id) throws MailboxException {
         CassandraId mailboxId = (CassandraId) id;
-        ResultSet resultSet = session.execute(select(FIELDS).from(TABLE_NAME).where(eq(ID, mailboxId.asUuid())));
+        ResultSet resultSet = session.execute(
+            preparedStatements.prepare(SELECT_BY_ID).bind()
+                .setUUID(ID, mailboxId.asUuid())
+                .setIdempotent(true));
         if (resultSet.isExhausted()) {
             throw new MailboxNotFoundException(id.serialize());
         } else {
@@ -133,7 +164,7 @@ public class CassandraMailboxMapper implements MailboxMapper {
     public List<Mailbox> list() throws MailboxException {
         return CassandraUtils.convertToStream(
             session.execute(
-                select(FIELDS).from(TABLE_NAME)))
+                preparedStatements.prepare(SELECT_ALL).bind().setIdempotent(true)))
             .map(this::mailbox)
             .collect(Collectors.toList());
     }
@@ -145,7 +176,7 @@ public class CassandraMailboxMapper implements MailboxMapper {
 
     @Override
     public void updateACL(Mailbox mailbox, MailboxACL.MailboxACLCommand mailboxACLCommand) throws MailboxException {
-        new CassandraACLMapper(mailbox, session, maxRetry).updateACL(mailboxACLCommand);
+        new CassandraACLMapper(mailbox, session, preparedStatements, maxRetry).updateACL(mailboxACLCommand);
     }
 
     @Override
@@ -161,7 +192,7 @@ public class CassandraMailboxMapper implements MailboxMapper {
                 row.getString(NAME)),
             row.getLong(UIDVALIDITY));
         mailbox.setMailboxId(CassandraId.of(row.getUUID(ID)));
-        mailbox.setACL(new CassandraACLMapper(mailbox, session, maxRetry).getACL());
+        mailbox.setACL(new CassandraACLMapper(mailbox, session, preparedStatements, maxRetry).getACL());
         return mailbox;
     }
 
@@ -182,15 +213,15 @@ public class CassandraMailboxMapper implements MailboxMapper {
     private void upsertMailbox(SimpleMailbox mailbox) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         session.execute(
-            insertInto(TABLE_NAME)
-                .value(ID, mailboxId.asUuid())
-                .value(NAME, mailbox.getName())
-                .value(UIDVALIDITY, mailbox.getUidValidity())
-                .value(MAILBOX_BASE, typesProvider.getDefinedUserType(CassandraMailboxTable.MAILBOX_BASE)
+            preparedStatements.prepare(INSERT_MAILBOX).bind()
+                .setUUID(ID, mailboxId.asUuid())
+                .setString(NAME, mailbox.getName())
+                .setLong(UIDVALIDITY, mailbox.getUidValidity())
+                .setUDTValue(MAILBOX_BASE, typesProvider.getDefinedUserType(CassandraMailboxTable.MAILBOX_BASE)
                     .newValue()
                     .setString(MailboxBase.NAMESPACE, mailbox.getNamespace())
                     .setString(MailboxBase.USER, mailbox.getUser()))
-                .value(PATH, path(mailbox).toString())
+                .setString(PATH, path(mailbox).toString())
         );
     }
 
@@ -200,9 +231,9 @@ public class CassandraMailboxMapper implements MailboxMapper {
 
     private Stream<Row> getMailboxFilteredByNamespaceAndUserStream (String namespace, String user) {
         return CassandraUtils.convertToStream(session.execute(
-            select(FIELDS)
-                .from(TABLE_NAME)
-                .where(eq(MAILBOX_BASE, typesProvider.getDefinedUserType(CassandraMailboxTable.MAILBOX_BASE).newValue().setString(MailboxBase.NAMESPACE, namespace).setString(MailboxBase.USER, user)))));
+            preparedStatements.prepare(SELECT_BY_MAILBOX_BASE).bind()
+                .setUDTValue(MAILBOX_BASE, typesProvider.getDefinedUserType(CassandraMailboxTable.MAILBOX_BASE).newValue().setString(MailboxBase.NAMESPACE, namespace).setString(MailboxBase.USER, user))
+                .setIdempotent(true)));
     }
 
 }
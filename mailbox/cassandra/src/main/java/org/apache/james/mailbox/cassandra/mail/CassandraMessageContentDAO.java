@@ -0,0 +1,262 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.addAll;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.removeAll;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageContentTable.CHUNK_NUMBER;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageContentTable.CONTENT_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageContentTable.DATA;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageContentTable.TABLE_NAME;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageContentTable.References;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+
+/**
+ * Stores message content outside of the per mailbox metadata partition.
+ *
+ * Content is split in fixed size chunks, each chunk being a row of the content partition. A content keeps the set of
+ * messages referencing it, so that a copied message shares the content of the original one. Reference updates are
+ * lightweight transactions: a content is only deleted while its reference set is empty, and no reference can be added
+ * to a deleted content.
+ */
+public class CassandraMessageContentDAO {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNK_FETCH_SIZE = 16;
+    private static final int CHUNK_PREFETCH_THRESHOLD = CHUNK_FETCH_SIZE / 2;
+    private static final String CHUNK_FROM = "chunkFrom";
+    private static final String CHUNK_TO = "chunkTo";
+
+    private static final RegularStatement INSERT_CHUNK = insertInto(TABLE_NAME)
+        .value(CONTENT_ID, bindMarker(CONTENT_ID))
+        .value(CHUNK_NUMBER, bindMarker(CHUNK_NUMBER))
+        .value(DATA, bindMarker(DATA));
+    private static final RegularStatement INSERT_REFERENCES = insertInto(References.TABLE_NAME)
+        .value(References.CONTENT_ID, bindMarker(References.CONTENT_ID))
+        .value(References.MESSAGES, bindMarker(References.MESSAGES))
+        .ifNotExists();
+    private static final RegularStatement ADD_REFERENCE = update(References.TABLE_NAME)
+        .with(addAll(References.MESSAGES, bindMarker(References.MESSAGES)))
+        .where(eq(References.CONTENT_ID, bindMarker(References.CONTENT_ID)))
+        .ifExists();
+    private static final RegularStatement REMOVE_REFERENCE = update(References.TABLE_NAME)
+        .with(removeAll(References.MESSAGES, bindMarker(References.MESSAGES)))
+        .where(eq(References.CONTENT_ID, bindMarker(References.CONTENT_ID)))
+        .ifExists();
+    private static final RegularStatement DELETE_UNREFERENCED = QueryBuilder.delete()
+        .from(References.TABLE_NAME)
+        .where(eq(References.CONTENT_ID, bindMarker(References.CONTENT_ID)))
+        .onlyIf(eq(References.MESSAGES, null));
+    private static final RegularStatement DELETE_CONTENT = QueryBuilder.delete()
+        .from(TABLE_NAME)
+        .where(eq(CONTENT_ID, bindMarker(CONTENT_ID)));
+    private static final RegularStatement SELECT_CONTENT = select(DATA)
+        .from(TABLE_NAME)
+        .where(eq(CONTENT_ID, bindMarker(CONTENT_ID)));
+    private static final RegularStatement SELECT_CHUNK_RANGE = select(DATA)
+        .from(TABLE_NAME)
+        .where(eq(CONTENT_ID, bindMarker(CONTENT_ID)))
+        .and(gte(CHUNK_NUMBER, bindMarker(CHUNK_FROM)))
+        .and(lte(CHUNK_NUMBER, bindMarker(CHUNK_TO)));
+
+    private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final CassandraPreparedStatementCache preparedStatements;
+
+    public CassandraMessageContentDAO(Session session, CassandraPreparedStatementCache preparedStatements) {
+        this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.preparedStatements = preparedStatements;
+    }
+
+    /**
+     * Saves the content, referenced by the given message.
+     *
+     * Statements are bound before chaining: preparing a statement from a driver callback would block its I/O thread.
+     */
+    public CompletableFuture<UUID> save(byte[] content, CassandraId mailboxId, long uid) {
+        UUID contentId = UUIDs.timeBased();
+        BoundStatement insertReferences = preparedStatements.prepare(INSERT_REFERENCES).bind()
+            .setUUID(References.CONTENT_ID, contentId)
+            .setSet(References.MESSAGES, messageReference(mailboxId, uid));
+        int chunkCount = Math.max(1, (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        CompletableFuture<?>[] writes = IntStream.range(0, chunkCount)
+            .mapToObj(chunkNumber -> cassandraAsyncExecutor.executeVoid(
+                preparedStatements.prepare(INSERT_CHUNK).bind()
+                    .setUUID(CONTENT_ID, contentId)
+                    .setInt(CHUNK_NUMBER, chunkNumber)
+                    .setBytes(DATA, chunk(content, chunkNumber))))
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(writes)
+            .thenCompose(any -> cassandraAsyncExecutor.executeVoid(insertReferences))
+            .thenApply(any -> contentId);
+    }
+
+    private ByteBuffer chunk(byte[] content, int chunkNumber) {
+        int from = chunkNumber * CHUNK_SIZE;
+        int to = Math.min(content.length, from + CHUNK_SIZE);
+        return ByteBuffer.wrap(Arrays.copyOfRange(content, from, to));
+    }
+
+    /**
+     * @return false if the content was deleted meanwhile, in which case no reference is added
+     */
+    public CompletableFuture<Boolean> addReference(UUID contentId, CassandraId mailboxId, long uid) {
+        return cassandraAsyncExecutor.executeReturnApplied(
+            preparedStatements.prepare(ADD_REFERENCE).bind()
+                .setUUID(References.CONTENT_ID, contentId)
+                .setSet(References.MESSAGES, messageReference(mailboxId, uid)));
+    }
+
+    /**
+     * Releases the reference of the given message. Chunks are deleted once no message references the content.
+     *
+     * The reference set is only deleted if still empty, so a reference added meanwhile keeps the content alive.
+     */
+    public CompletableFuture<Void> removeReference(UUID contentId, CassandraId mailboxId, long uid) {
+        BoundStatement deleteUnreferenced = preparedStatements.prepare(DELETE_UNREFERENCED).bind()
+            .setUUID(References.CONTENT_ID, contentId);
+        BoundStatement deleteContent = preparedStatements.prepare(DELETE_CONTENT).bind()
+            .setUUID(CONTENT_ID, contentId);
+        return cassandraAsyncExecutor.executeVoid(
+                preparedStatements.prepare(REMOVE_REFERENCE).bind()
+                    .setUUID(References.CONTENT_ID, contentId)
+                    .setSet(References.MESSAGES, messageReference(mailboxId, uid)))
+            .thenCompose(any -> cassandraAsyncExecutor.executeReturnApplied(deleteUnreferenced))
+            .thenCompose(deleted -> {
+                if (!deleted) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return cassandraAsyncExecutor.executeVoid(deleteContent);
+            });
+    }
+
+    private Set<String> messageReference(CassandraId mailboxId, long uid) {
+        return ImmutableSet.of(mailboxId.serialize() + ":" + uid);
+    }
+
+    /**
+     * Streams the whole content. Chunks are fetched page by page while the stream is consumed.
+     */
+    public InputStream read(UUID contentId) {
+        return toInputStream(session.execute(
+            preparedStatements.prepare(SELECT_CONTENT).bind()
+                .setUUID(CONTENT_ID, contentId)
+                .setFetchSize(CHUNK_FETCH_SIZE)
+                .setIdempotent(true)));
+    }
+
+    /**
+     * Streams the [from, to[ byte range of the content, only fetching the chunks overlapping this range.
+     */
+    public InputStream read(UUID contentId, long from, long to) {
+        Preconditions.checkArgument(from >= 0 && from <= to);
+        if (from == to) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        int firstChunk = Ints.checkedCast(from / CHUNK_SIZE);
+        int lastChunk = Ints.checkedCast((to - 1) / CHUNK_SIZE);
+        Iterator<Row> rows = prefetching(session.execute(
+            preparedStatements.prepare(SELECT_CHUNK_RANGE).bind()
+                .setUUID(CONTENT_ID, contentId)
+                .setInt(CHUNK_FROM, firstChunk)
+                .setInt(CHUNK_TO, lastChunk)
+                .setFetchSize(CHUNK_FETCH_SIZE)
+                .setIdempotent(true)));
+        if (!rows.hasNext()) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        Iterator<InputStream> chunks = Iterators.concat(
+            Iterators.singletonIterator(toInputStream(rows.next(), Ints.checkedCast(from - (long) firstChunk * CHUNK_SIZE))),
+            Iterators.transform(rows, this::toInputStream));
+        return ByteStreams.limit(new SequenceInputStream(Iterators.asEnumeration(chunks)), to - from);
+    }
+
+    private InputStream toInputStream(ResultSet resultSet) {
+        Iterator<InputStream> chunks = Iterators.transform(prefetching(resultSet), this::toInputStream);
+        return new SequenceInputStream(Iterators.asEnumeration(chunks));
+    }
+
+    /**
+     * Requests the next page asynchronously while the current one is being consumed.
+     */
+    private Iterator<Row> prefetching(ResultSet resultSet) {
+        return new AbstractIterator<Row>() {
+            @Override
+            protected Row computeNext() {
+                if (resultSet.getAvailableWithoutFetching() == CHUNK_PREFETCH_THRESHOLD && !resultSet.isFullyFetched()) {
+                    resultSet.fetchMoreResults();
+                }
+                Row row = resultSet.one();
+                if (row == null) {
+                    return endOfData();
+                }
+                return row;
+            }
+        };
+    }
+
+    private InputStream toInputStream(Row row) {
+        return toInputStream(row, 0);
+    }
+
+    private InputStream toInputStream(Row row, int offset) {
+        ByteBuffer data = row.getBytes(DATA);
+        data.position(data.position() + Math.min(offset, data.remaining()));
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+}
@@ -0,0 +1,95 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * Message content read from {@link CassandraMessageContentDAO}. Chunks are only fetched once the stream is read, and
+ * streams obtained through {@link #newStream(long, long)} only fetch the chunks of their own range.
+ */
+class CassandraMessageContentInputStream extends InputStream implements SharedInputStream {
+
+    private final CassandraMessageContentDAO messageContentDAO;
+    private final UUID contentId;
+    private final long start;
+    private final long end;
+    private InputStream chunks;
+    private long position;
+
+    CassandraMessageContentInputStream(CassandraMessageContentDAO messageContentDAO, UUID contentId, long size) {
+        this(messageContentDAO, contentId, 0, size);
+    }
+
+    private CassandraMessageContentInputStream(CassandraMessageContentDAO messageContentDAO, UUID contentId, long start, long end) {
+        this.messageContentDAO = messageContentDAO;
+        this.contentId = contentId;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = chunks().read();
+        if (read >= 0) {
+            position++;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = chunks().read(b, off, len);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    private InputStream chunks() {
+        if (chunks == null) {
+            chunks = messageContentDAO.read(contentId, start, end);
+        }
+        return chunks;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        long newStart = Math.min(this.start + start, this.end);
+        long newEnd = end == -1 ? this.end : Math.min(this.start + end, this.end);
+        return new CassandraMessageContentInputStream(messageContentDAO, contentId, newStart, Math.max(newStart, newEnd));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (chunks != null) {
+            chunks.close();
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.decr;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
@@ -30,13 +31,12 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.ATTACHMENTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_OCTECTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_START_OCTET;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.CONTENT_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FIELDS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FULL_CONTENT_OCTETS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADERS;
-import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.INTERNAL_DATE;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
@@ -55,7 +55,6 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Fla
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Flag.USER_FLAGS;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -65,19 +64,26 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
+import javax.mail.internet.SharedInputStream;
 import javax.mail.util.SharedByteArrayInputStream;
 
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
-import org.apache.james.backends.cassandra.utils.CassandraConstants;
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.backends.cassandra.utils.CassandraUtils;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
 import org.apache.james.mailbox.FlagsBuilder;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.mail.CassandraFlagProjectionDAO.Projection;
 import org.apache.james.mailbox.cassandra.mail.utils.MessageDeletedDuringFlagsUpdateException;
 import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
@@ -103,49 +109,160 @@ import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleProperty;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.UDTValue;
 import com.datastax.driver.core.querybuilder.Assignment;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
-import com.datastax.driver.core.querybuilder.Select;
 import com.datastax.driver.core.querybuilder.Select.Where;
 import com.github.fge.lambdas.Throwing;
 import com.github.steveash.guavate.Guavate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ObjectArrays;
 import com.google.common.io.ByteStreams;
-import com.google.common.primitives.Bytes;
+import com.google.common.collect.Table;
+import com.google.common.primitives.Ints;
 
 public class CassandraMessageMapper implements MessageMapper {
 
+    private static final String UID_FROM = "uidFrom";
+    private static final String UID_TO = "uidTo";
+    private static final String LIMIT = "messageLimit";
+    private static final String OLD_MOD_SEQ = "oldModSeq";
+    private static final int FLAGS_UPDATE_PARALLELISM = 64;
+    private static final int FLAGS_UPDATE_FETCH_SIZE = 4 * FLAGS_UPDATE_PARALLELISM;
+
     private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final CassandraMessageContentDAO messageContentDAO;
+    private final CassandraFlagProjectionDAO flagProjectionDAO;
     private final ModSeqProvider modSeqProvider;
     private final MailboxSession mailboxSession;
     private final UidProvider uidProvider;
     private final CassandraTypesProvider typesProvider;
     private final int maxRetries;
     private final AttachmentMapper attachmentMapper;
-
-    public CassandraMessageMapper(Session session, UidProvider uidProvider, ModSeqProvider modSeqProvider, MailboxSession mailboxSession, int maxRetries, CassandraTypesProvider typesProvider, AttachmentMapper attachmentMapper) {
+    private final PreparedStatement countStatement;
+    private final PreparedStatement unseenStatement;
+    private final PreparedStatement incrementCountStatement;
+    private final PreparedStatement decrementCountStatement;
+    private final PreparedStatement incrementUnseenStatement;
+    private final PreparedStatement decrementUnseenStatement;
+    private final PreparedStatement insertStatement;
+    private final PreparedStatement conditionalUpdateStatement;
+    private final PreparedStatement deleteStatement;
+    private final PreparedStatement selectContentIdStatement;
+    private final PreparedStatement selectMetadataRangeWithContentIdStatement;
+    private final Table<MessageRange.Type, FetchType, PreparedStatement> selectStatements;
+    private final Table<MessageRange.Type, FetchType, PreparedStatement> limitedSelectStatements;
+
+    public CassandraMessageMapper(Session session, CassandraPreparedStatementCache preparedStatements, UidProvider uidProvider, ModSeqProvider modSeqProvider, MailboxSession mailboxSession, int maxRetries, CassandraTypesProvider typesProvider, AttachmentMapper attachmentMapper) {
         this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.messageContentDAO = new CassandraMessageContentDAO(session, preparedStatements);
+        this.flagProjectionDAO = new CassandraFlagProjectionDAO(session, preparedStatements);
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
         this.mailboxSession = mailboxSession;
         this.maxRetries = maxRetries;
         this.typesProvider = typesProvider;
         this.attachmentMapper = attachmentMapper;
+        // Statements are prepared once, here, as preparing blocks and must not happen in a driver callback. Calls
+        // only bind them.
+        this.countStatement = preparedStatements.prepare(selectCounter(CassandraMailboxCountersTable.COUNT));
+        this.unseenStatement = preparedStatements.prepare(selectCounter(CassandraMailboxCountersTable.UNSEEN));
+        this.incrementCountStatement = preparedStatements.prepare(updateCounter(incr(CassandraMailboxCountersTable.COUNT)));
+        this.decrementCountStatement = preparedStatements.prepare(updateCounter(decr(CassandraMailboxCountersTable.COUNT)));
+        this.incrementUnseenStatement = preparedStatements.prepare(updateCounter(incr(CassandraMailboxCountersTable.UNSEEN)));
+        this.decrementUnseenStatement = preparedStatements.prepare(updateCounter(decr(CassandraMailboxCountersTable.UNSEEN)));
+        this.insertStatement = preparedStatements.prepare(insertInto(TABLE_NAME)
+            .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
+            .value(IMAP_UID, bindMarker(IMAP_UID))
+            .value(MOD_SEQ, bindMarker(MOD_SEQ))
+            .value(INTERNAL_DATE, bindMarker(INTERNAL_DATE))
+            .value(BODY_START_OCTET, bindMarker(BODY_START_OCTET))
+            .value(FULL_CONTENT_OCTETS, bindMarker(FULL_CONTENT_OCTETS))
+            .value(BODY_OCTECTS, bindMarker(BODY_OCTECTS))
+            .value(ANSWERED, bindMarker(ANSWERED))
+            .value(DELETED, bindMarker(DELETED))
+            .value(DRAFT, bindMarker(DRAFT))
+            .value(FLAGGED, bindMarker(FLAGGED))
+            .value(RECENT, bindMarker(RECENT))
+            .value(SEEN, bindMarker(SEEN))
+            .value(USER, bindMarker(USER))
+            .value(USER_FLAGS, bindMarker(USER_FLAGS))
+            .value(CONTENT_ID, bindMarker(CONTENT_ID))
+            .value(PROPERTIES, bindMarker(PROPERTIES))
+            .value(TEXTUAL_LINE_COUNT, bindMarker(TEXTUAL_LINE_COUNT))
+            .value(ATTACHMENTS, bindMarker(ATTACHMENTS)));
+        this.conditionalUpdateStatement = preparedStatements.prepare(update(TABLE_NAME)
+            .with(set(ANSWERED, bindMarker(ANSWERED)))
+            .and(set(DELETED, bindMarker(DELETED)))
+            .and(set(DRAFT, bindMarker(DRAFT)))
+            .and(set(FLAGGED, bindMarker(FLAGGED)))
+            .and(set(RECENT, bindMarker(RECENT)))
+            .and(set(SEEN, bindMarker(SEEN)))
+            .and(set(USER, bindMarker(USER)))
+            .and(set(USER_FLAGS, bindMarker(USER_FLAGS)))
+            .and(set(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .where(eq(IMAP_UID, bindMarker(IMAP_UID)))
+            .and(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .onlyIf(eq(MOD_SEQ, bindMarker(OLD_MOD_SEQ))));
+        this.deleteStatement = preparedStatements.prepare(QueryBuilder.delete()
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
+        this.selectContentIdStatement = preparedStatements.prepare(select(CONTENT_ID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
+        this.selectMetadataRangeWithContentIdStatement = preparedStatements.prepare(selectRangeWithContentId(FetchType.Metadata));
+        this.selectStatements = prepareSelects(preparedStatements, false);
+        this.limitedSelectStatements = prepareSelects(preparedStatements, true);
+    }
+
+    private Table<MessageRange.Type, FetchType, PreparedStatement> prepareSelects(CassandraPreparedStatementCache preparedStatements, boolean limited) {
+        ImmutableTable.Builder<MessageRange.Type, FetchType, PreparedStatement> statements = ImmutableTable.builder();
+        for (MessageRange.Type type : MessageRange.Type.values()) {
+            for (FetchType fetchType : FetchType.values()) {
+                Where select = buildQuery(type, fetchType);
+                statements.put(type, fetchType, preparedStatements.prepare(limited ? select.limit(bindMarker(LIMIT)) : select));
+            }
+        }
+        return statements.build();
+    }
+
+    private RegularStatement selectCounter(String counter) {
+        return select(counter)
+            .from(CassandraMailboxCountersTable.TABLE_NAME)
+            .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, bindMarker(CassandraMailboxCountersTable.MAILBOX_ID)));
+    }
+
+    private RegularStatement updateCounter(Assignment operation) {
+        return update(CassandraMailboxCountersTable.TABLE_NAME)
+            .with(operation)
+            .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, bindMarker(CassandraMailboxCountersTable.MAILBOX_ID)));
     }
 
     @Override
     public long countMessagesInMailbox(Mailbox mailbox) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         ResultSet results = session.execute(
-            select(CassandraMailboxCountersTable.COUNT)
-                .from(CassandraMailboxCountersTable.TABLE_NAME)
-                .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())));
+            countStatement.bind()
+                .setUUID(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())
+                .setConsistencyLevel(ConsistencyLevel.ONE)
+                .setIdempotent(true));
         return results.isExhausted() ? 0 : results.one().getLong(CassandraMailboxCountersTable.COUNT);
     }
 
@@ -153,9 +270,10 @@ public class CassandraMessageMapper implements MessageMapper {
     public long countUnseenMessagesInMailbox(Mailbox mailbox) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         ResultSet results = session.execute(
-            select(CassandraMailboxCountersTable.UNSEEN)
-                .from(CassandraMailboxCountersTable.TABLE_NAME)
-                .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())));
+            unseenStatement.bind()
+                .setUUID(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())
+                .setConsistencyLevel(ConsistencyLevel.ONE)
+                .setIdempotent(true));
         if (!results.isExhausted()) {
             Row row = results.one();
             if (row.getColumnDefinitions().contains(CassandraMailboxCountersTable.UNSEEN)) {
@@ -171,59 +289,85 @@ public class CassandraMessageMapper implements MessageMapper {
     }
 
     private void deleteUsingMailboxId(CassandraId mailboxId, MailboxMessage message) {
-        session.execute(
-            QueryBuilder.delete()
-                .from(TABLE_NAME)
-                .where(eq(MAILBOX_ID, mailboxId.asUuid()))
-                .and(eq(IMAP_UID, message.getUid())));
-        decrementCount(mailboxId);
-        if (!message.isSeen()) {
-            decrementUnseen(mailboxId);
-        }
+        deleteUsingMailboxId(mailboxId, message, retrieveContentId(mailboxId, message.getUid()));
+    }
+
+    private void deleteUsingMailboxId(CassandraId mailboxId, MailboxMessage message, Optional<UUID> contentId) {
+        CompletableFuture.allOf(
+                cassandraAsyncExecutor.executeVoid(
+                    deleteStatement.bind()
+                        .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                        .setLong(IMAP_UID, message.getUid())),
+                decrementCount(mailboxId),
+                decrementUnseenIfNeeded(mailboxId, message),
+                flagProjectionDAO.remove(mailboxId, message.getUid()),
+                contentId.map(id -> messageContentDAO.removeReference(id, mailboxId, message.getUid()))
+                    .orElse(CompletableFuture.completedFuture(null)))
+            .join();
+    }
+
+    private Optional<UUID> retrieveContentId(CassandraId mailboxId, long uid) {
+        return Optional.ofNullable(session.execute(
+                selectContentIdStatement.bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setLong(IMAP_UID, uid)
+                    .setIdempotent(true))
+                .one())
+            .map(row -> row.getUUID(CONTENT_ID));
     }
 
     @Override
     public Iterator<MailboxMessage> findInMailbox(Mailbox mailbox, MessageRange set, FetchType ftype, int max) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return CassandraUtils.convertToStream(session.execute(buildSelectQueryWithLimit(buildQuery(mailboxId, set, ftype), max)))
+        return CassandraUtils.convertToStream(session.execute(bindSelectQueryWithLimit(ftype, mailboxId, set, max)))
             .map(row -> message(row, ftype))
             .sorted(Comparator.comparingLong(MailboxMessage::getUid))
             .iterator();
     }
 
-    private Statement buildSelectQueryWithLimit(Select.Where selectStatement, int max) {
+    private BoundStatement bindSelectQueryWithLimit(FetchType fetchType, CassandraId mailboxId, MessageRange set, int max) {
         if (max <= 0) {
-            return selectStatement;
+            return bindQuery(selectStatements.get(set.getType(), fetchType), mailboxId, set);
         }
-        return selectStatement.limit(max);
+        return bindQuery(limitedSelectStatements.get(set.getType(), fetchType), mailboxId, set)
+            .setInt(LIMIT, max);
     }
 
     @Override
     public List<Long> findRecentMessageUidsInMailbox(Mailbox mailbox) throws MailboxException {
-        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return CassandraUtils.convertToStream(session.execute(selectAll(mailboxId, FetchType.Metadata).and((eq(RECENT, true)))))
-            .map((row) -> row.getLong(IMAP_UID))
-            .sorted()
-            .collect(Collectors.toList());
+        return flagProjectionDAO.retrieveUids(Projection.RECENT, (CassandraId) mailbox.getMailboxId());
     }
 
     @Override
     public Long findFirstUnseenMessageUid(Mailbox mailbox) throws MailboxException {
-        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return CassandraUtils.convertToStream(session.execute(selectAll(mailboxId, FetchType.Metadata).and((eq(SEEN, false)))))
-            .map((row) -> row.getLong(IMAP_UID))
-            .sorted()
-            .findFirst()
+        return flagProjectionDAO.retrieveFirstUid(Projection.UNSEEN, (CassandraId) mailbox.getMailboxId())
             .orElse(null);
     }
 
     @Override
     public Map<Long, MessageMetaData> expungeMarkedForDeletionInMailbox(Mailbox mailbox, MessageRange set) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return CassandraUtils.convertToStream(session.execute(buildQuery(mailboxId, set, FetchType.Metadata).and(eq(DELETED, true))))
-            .map(row -> message(row, FetchType.Metadata))
-            .peek((message) -> delete(mailbox, message))
-            .collect(Collectors.toMap(MailboxMessage::getUid, SimpleMessageMetaData::new));
+        List<Long> deletedUids = flagProjectionDAO.retrieveUids(Projection.DELETED, mailboxId, set);
+        if (deletedUids.isEmpty()) {
+            return ImmutableMap.of();
+        }
+        // Only the deleted messages are read, along with their content id: each run of consecutive deleted UIDs is read
+        // by a single slice. Cassandra rejects IN restrictions on UIDs here, as collections are selected
+        Map<Long, MessageMetaData> expunged = new HashMap<>();
+        for (MessageRange range : MessageRange.toRanges(deletedUids)) {
+            for (Row row : session.execute(
+                    selectMetadataRangeWithContentIdStatement.bind()
+                        .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                        .setLong(UID_FROM, range.getUidFrom())
+                        .setLong(UID_TO, range.getUidTo())
+                        .setIdempotent(true)
+                        .setFetchSize(FLAGS_UPDATE_FETCH_SIZE))) {
+                MailboxMessage message = message(row, FetchType.Metadata);
+                deleteUsingMailboxId(mailboxId, message, Optional.ofNullable(row.getUUID(CONTENT_ID)));
+                expunged.put(message.getUid(), new SimpleMessageMetaData(message));
+            }
+        }
+        return expunged;
     }
 
     @Override
@@ -245,27 +389,72 @@ public class CassandraMessageMapper implements MessageMapper {
 
     @Override
     public MessageMetaData add(Mailbox mailbox, MailboxMessage message) throws MailboxException {
+        byte[] content = fullContent(message);
+        return add(mailbox, message, (mailboxId, uid) -> messageContentDAO.save(content, mailboxId, uid));
+    }
+
+    @FunctionalInterface
+    private interface ContentReference {
+        CompletableFuture<UUID> reference(CassandraId mailboxId, long uid) throws MailboxException;
+    }
+
+    private MessageMetaData add(Mailbox mailbox, MailboxMessage message, ContentReference contentReference) throws MailboxException {
         message.setUid(uidProvider.nextUid(mailboxSession, mailbox));
         message.setModSeq(modSeqProvider.nextModSeq(mailboxSession, mailbox));
-        MessageMetaData messageMetaData = save(mailbox, message);
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        if (!message.isSeen()) {
-            incrementUnseen(mailboxId);
-        }
-        incrementCount(mailboxId);
-        return messageMetaData;
+        CompletableFuture<UUID> contentId = contentReference.reference(mailboxId, message.getUid());
+        // Counters and projections are only updated once the message is stored, so that a failed save leaves them
+        // untouched. They are issued from this thread, as preparing a statement blocks and can not run in a driver callback
+        save(mailboxId, message, contentId).join();
+        CompletableFuture.allOf(
+                incrementCount(mailboxId),
+                incrementUnseenIfNeeded(mailboxId, message),
+                flagProjectionDAO.add(mailboxId, message.getUid(), message.createFlags()))
+            .join();
+        return new SimpleMessageMetaData(message);
     }
 
     @Override
     public Iterator<UpdatedFlags> updateFlags(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, MessageRange set) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return CassandraUtils.convertToStream(session.execute(buildQuery(mailboxId, set, FetchType.Metadata)))
-            .map((row) -> updateFlagsOnMessage(mailbox, flagUpdateCalculator, row))
-            .filter(Optional::isPresent)
-            .map(Optional::get)
-            .peek((updatedFlags) -> manageUnseenMessageCounts(mailbox, updatedFlags.getOldFlags(), updatedFlags.getNewFlags()))
-            .collect(Collectors.toList()) // This collect is here as we need to consume all the stream before returning result
-            .iterator();
+        // Rows are paged by the driver as the batches are processed, so that the range is never held in memory
+        Iterator<MailboxMessage> messages = Iterators.transform(
+            session.execute(bindQuery(selectStatements.get(set.getType(), FetchType.Metadata), mailboxId, set)
+                    .setFetchSize(FLAGS_UPDATE_FETCH_SIZE))
+                .iterator(),
+            row -> message(row, FetchType.Metadata));
+        Iterator<List<MailboxMessage>> batches = Iterators.partition(messages, FLAGS_UPDATE_PARALLELISM);
+        ImmutableList.Builder<UpdatedFlags> updatedFlags = ImmutableList.builder();
+        while (batches.hasNext()) {
+            List<UpdatedFlags> batchUpdatedFlags = updateFlagsOnMessages(mailbox, flagUpdateCalculator, batches.next());
+            // Cassandra rejects conditional batches spanning several tables, so the projections of the whole batch
+            // are written by a single logged batch right after its lightweight transactions
+            CompletableFuture.allOf(
+                    Stream.concat(
+                            batchUpdatedFlags.stream()
+                                .map(flags -> manageUnseenMessageCounts(mailboxId, flags.getOldFlags(), flags.getNewFlags())),
+                            Stream.of(flagProjectionDAO.update(mailboxId, batchUpdatedFlags)))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+            updatedFlags.addAll(batchUpdatedFlags);
+        }
+        return updatedFlags.build().iterator();
+    }
+
+    private List<UpdatedFlags> updateFlagsOnMessages(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, List<MailboxMessage> messages) throws MailboxException {
+        List<Long> modSeqs = modSeqProvider.nextModSeqs(mailboxSession, mailbox, messages.size());
+        List<CompletableFuture<Optional<UpdatedFlags>>> attempts = IntStream.range(0, messages.size())
+            .mapToObj(i -> tryMessageFlagsUpdate(flagUpdateCalculator, messages.get(i), modSeqs.get(i)))
+            .collect(Guavate.toImmutableList());
+        ImmutableList.Builder<UpdatedFlags> updatedFlags = ImmutableList.builder();
+        for (int i = 0; i < messages.size(); i++) {
+            long uid = messages.get(i).getUid();
+            attempts.get(i).join()
+                .map(Optional::of)
+                .orElseGet(() -> handleRetries(mailbox, flagUpdateCalculator, uid))
+                .ifPresent(updatedFlags::add);
+        }
+        return updatedFlags.build();
     }
 
     @Override
@@ -276,32 +465,60 @@ public class CassandraMessageMapper implements MessageMapper {
     @Override
     public MessageMetaData copy(Mailbox mailbox, MailboxMessage original) throws MailboxException {
         original.setFlags(new FlagsBuilder().add(original.createFlags()).add(Flag.RECENT).build());
+        Optional<UUID> originalContentId = retrieveContentId((CassandraId) original.getMailboxId(), original.getUid());
+        if (originalContentId.isPresent()) {
+            UUID contentId = originalContentId.get();
+            return add(mailbox, original, (mailboxId, uid) -> shareContent(contentId, original, mailboxId, uid));
+        }
         return add(mailbox, original);
     }
 
+    private CompletableFuture<UUID> shareContent(UUID contentId, MailboxMessage original, CassandraId mailboxId, long uid) throws MailboxException {
+        if (!messageContentDAO.addReference(contentId, mailboxId, uid).join()) {
+            throw new MailboxException("Content of message " + original.getUid() + " was deleted while being copied");
+        }
+        return CompletableFuture.completedFuture(contentId);
+    }
+
     @Override
     public long getLastUid(Mailbox mailbox) throws MailboxException {
         return uidProvider.lastUid(mailboxSession, mailbox);
     }
 
-    private void decrementCount(CassandraId mailboxId) {
-        updateMailbox(mailboxId, decr(CassandraMailboxCountersTable.COUNT));
+    private CompletableFuture<Void> decrementCount(CassandraId mailboxId) {
+        return updateMailbox(mailboxId, decrementCountStatement);
     }
 
-    private void incrementCount(CassandraId mailboxId) {
-        updateMailbox(mailboxId, incr(CassandraMailboxCountersTable.COUNT));
+    private CompletableFuture<Void> incrementCount(CassandraId mailboxId) {
+        return updateMailbox(mailboxId, incrementCountStatement);
     }
 
-    private void decrementUnseen(CassandraId mailboxId) {
-        updateMailbox(mailboxId, decr(CassandraMailboxCountersTable.UNSEEN));
+    private CompletableFuture<Void> decrementUnseen(CassandraId mailboxId) {
+        return updateMailbox(mailboxId, decrementUnseenStatement);
     }
 
-    private void incrementUnseen(CassandraId mailboxId) {
-        updateMailbox(mailboxId, incr(CassandraMailboxCountersTable.UNSEEN));
+    private CompletableFuture<Void> incrementUnseen(CassandraId mailboxId) {
+        return updateMailbox(mailboxId, incrementUnseenStatement);
     }
 
-    private void updateMailbox(CassandraId mailboxId, Assignment operation) {
-        session.execute(update(CassandraMailboxCountersTable.TABLE_NAME).with(operation).where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())));
+    private CompletableFuture<Void> decrementUnseenIfNeeded(CassandraId mailboxId, MailboxMessage message) {
+        if (message.isSeen()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return decrementUnseen(mailboxId);
+    }
+
+    private CompletableFuture<Void> incrementUnseenIfNeeded(CassandraId mailboxId, MailboxMessage message) {
+        if (message.isSeen()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return incrementUnseen(mailboxId);
+    }
+
+    private CompletableFuture<Void> updateMailbox(CassandraId mailboxId, PreparedStatement operation) {
+        return cassandraAsyncExecutor.executeVoid(
+            operation.bind()
+                .setUUID(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid()));
     }
 
     private MailboxMessage message(Row row, FetchType fetchType) {
@@ -381,45 +598,51 @@ public class CassandraMessageMapper implements MessageMapper {
         return AttachmentId.from(udtValue.getString(Attachments.ID));
     }
 
-    private MessageMetaData save(Mailbox mailbox, MailboxMessage message) throws MailboxException {
-        try {
-            CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-            session.execute(insertInto(TABLE_NAME)
-                .value(MAILBOX_ID, mailboxId.asUuid())
-                .value(IMAP_UID, message.getUid())
-                .value(MOD_SEQ, message.getModSeq())
-                .value(INTERNAL_DATE, message.getInternalDate())
-                .value(BODY_START_OCTET, message.getFullContentOctets() - message.getBodyOctets())
-                .value(FULL_CONTENT_OCTETS, message.getFullContentOctets())
-                .value(BODY_OCTECTS, message.getBodyOctets())
-                .value(ANSWERED, message.isAnswered())
-                .value(DELETED, message.isDeleted())
-                .value(DRAFT, message.isDraft())
-                .value(FLAGGED, message.isFlagged())
-                .value(RECENT, message.isRecent())
-                .value(SEEN, message.isSeen())
-                .value(USER, message.createFlags().contains(Flag.USER))
-                .value(USER_FLAGS, userFlagsSet(message))
-                .value(BODY_CONTENT, toByteBuffer(message.getBodyContent()))
-                .value(HEADER_CONTENT, toByteBuffer(message.getHeaderContent()))
-                .value(PROPERTIES, message.getProperties().stream()
+    private CompletableFuture<Void> save(CassandraId mailboxId, MailboxMessage message, CompletableFuture<UUID> contentId) {
+        return contentId.thenCompose(id -> cassandraAsyncExecutor.executeVoid(insertStatement.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(IMAP_UID, message.getUid())
+                .setLong(MOD_SEQ, message.getModSeq())
+                .setDate(INTERNAL_DATE, message.getInternalDate())
+                .setInt(BODY_START_OCTET, Ints.checkedCast(message.getFullContentOctets() - message.getBodyOctets()))
+                .setLong(FULL_CONTENT_OCTETS, message.getFullContentOctets())
+                .setLong(BODY_OCTECTS, message.getBodyOctets())
+                .setBool(ANSWERED, message.isAnswered())
+                .setBool(DELETED, message.isDeleted())
+                .setBool(DRAFT, message.isDraft())
+                .setBool(FLAGGED, message.isFlagged())
+                .setBool(RECENT, message.isRecent())
+                .setBool(SEEN, message.isSeen())
+                .setBool(USER, message.createFlags().contains(Flag.USER))
+                .setSet(USER_FLAGS, userFlagsSet(message))
+                .setUUID(CONTENT_ID, id)
+                .setList(PROPERTIES, message.getProperties().stream()
                     .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
                         .newValue()
                         .setString(Properties.NAMESPACE, x.getNamespace())
                         .setString(Properties.NAME, x.getLocalName())
                         .setString(Properties.VALUE, x.getValue()))
                     .collect(Collectors.toList()))
-                .value(TEXTUAL_LINE_COUNT, message.getTextualLineCount())
-                .value(ATTACHMENTS, message.getAttachments().stream()
+                .setBytesUnsafe(TEXTUAL_LINE_COUNT, textualLineCount(message))
+                .setList(ATTACHMENTS, message.getAttachments().stream()
                     .map(this::toUDT)
-                    .collect(Collectors.toList())));
+                    .collect(Collectors.toList()))));
+    }
 
-            return new SimpleMessageMetaData(message);
+    private byte[] fullContent(MailboxMessage message) throws MailboxException {
+        try {
+            return ByteStreams.toByteArray(message.getFullContent());
         } catch (IOException e) {
             throw new MailboxException("Error saving mail", e);
         }
     }
 
+    private ByteBuffer textualLineCount(MailboxMessage message) {
+        return Optional.ofNullable(message.getTextualLineCount())
+            .map(count -> DataType.bigint().serialize(count, ProtocolVersion.NEWEST_SUPPORTED))
+            .orElse(null);
+    }
+
     private UDTValue toUDT(MessageAttachment messageAttachment) {
         return typesProvider.getDefinedUserType(ATTACHMENTS)
             .newValue()
@@ -433,37 +656,29 @@ public class CassandraMessageMapper implements MessageMapper {
         return Arrays.stream(message.createFlags().getUserFlags()).collect(Collectors.toSet());
     }
 
-    private void manageUnseenMessageCounts(Mailbox mailbox, Flags oldFlags, Flags newFlags) {
-        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
+    private CompletableFuture<Void> manageUnseenMessageCounts(CassandraId mailboxId, Flags oldFlags, Flags newFlags) {
         if (oldFlags.contains(Flag.SEEN) && !newFlags.contains(Flag.SEEN)) {
-            incrementUnseen(mailboxId);
+            return incrementUnseen(mailboxId);
         }
         if (!oldFlags.contains(Flag.SEEN) && newFlags.contains(Flag.SEEN)) {
-            decrementUnseen(mailboxId);
+            return decrementUnseen(mailboxId);
         }
-    }
-
-    private Optional<UpdatedFlags> updateFlagsOnMessage(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, Row row) {
-        return tryMessageFlagsUpdate(flagUpdateCalculator, mailbox, message(row, FetchType.Metadata))
-            .map(Optional::of)
-            .orElse(handleRetries(mailbox, flagUpdateCalculator, row.getLong(IMAP_UID)));
-    }
-
-    private Optional<UpdatedFlags> tryMessageFlagsUpdate(FlagsUpdateCalculator flagUpdateCalculator, Mailbox mailbox, MailboxMessage message) {
-        try {
-            long oldModSeq = message.getModSeq();
-            Flags oldFlags = message.createFlags();
-            Flags newFlags = flagUpdateCalculator.buildNewFlags(oldFlags);
-            message.setFlags(newFlags);
-            message.setModSeq(modSeqProvider.nextModSeq(mailboxSession, mailbox));
-            if (conditionalSave(message, oldModSeq)) {
-                return Optional.of(new UpdatedFlags(message.getUid(), message.getModSeq(), oldFlags, newFlags));
-            } else {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Optional<UpdatedFlags>> tryMessageFlagsUpdate(FlagsUpdateCalculator flagUpdateCalculator, MailboxMessage message, long newModSeq) {
+        long oldModSeq = message.getModSeq();
+        Flags oldFlags = message.createFlags();
+        Flags newFlags = flagUpdateCalculator.buildNewFlags(oldFlags);
+        message.setFlags(newFlags);
+        message.setModSeq(newModSeq);
+        return conditionalSave(message, oldModSeq)
+            .thenApply(applied -> {
+                if (applied) {
+                    return Optional.of(new UpdatedFlags(message.getUid(), message.getModSeq(), oldFlags, newFlags));
+                }
                 return Optional.empty();
-            }
-        } catch (MailboxException e) {
-            throw Throwables.propagate(e);
-        }
+            });
     }
 
     private Optional<UpdatedFlags> handleRetries(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, long uid) {
@@ -481,76 +696,103 @@ public class CassandraMessageMapper implements MessageMapper {
 
     private Optional<UpdatedFlags> retryMessageFlagsUpdate(Mailbox mailbox, long uid, FlagsUpdateCalculator flagUpdateCalculator) {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return tryMessageFlagsUpdate(flagUpdateCalculator,
-            mailbox,
-            message(Optional.ofNullable(session.execute(selectMessage(mailboxId, uid, FetchType.Metadata)).one())
-                .orElseThrow(() -> new MessageDeletedDuringFlagsUpdateException(mailboxId, uid)),
-                FetchType.Metadata));
+        try {
+            return tryMessageFlagsUpdate(flagUpdateCalculator,
+                message(Optional.ofNullable(session.execute(bindQuery(selectStatements.get(MessageRange.Type.ONE, FetchType.Metadata), mailboxId, MessageRange.one(uid))).one())
+                    .orElseThrow(() -> new MessageDeletedDuringFlagsUpdateException(mailboxId, uid)),
+                    FetchType.Metadata),
+                modSeqProvider.nextModSeq(mailboxSession, mailbox))
+                .join();
+        } catch (MailboxException e) {
+            throw Throwables.propagate(e);
+        }
     }
 
-    private boolean conditionalSave(MailboxMessage message, long oldModSeq) {
+    private CompletableFuture<Boolean> conditionalSave(MailboxMessage message, long oldModSeq) {
         CassandraId mailboxId = (CassandraId) message.getMailboxId();
-        ResultSet resultSet = session.execute(
-            update(TABLE_NAME)
-                .with(set(ANSWERED, message.isAnswered()))
-                .and(set(DELETED, message.isDeleted()))
-                .and(set(DRAFT, message.isDraft()))
-                .and(set(FLAGGED, message.isFlagged()))
-                .and(set(RECENT, message.isRecent()))
-                .and(set(SEEN, message.isSeen()))
-                .and(set(USER, message.createFlags().contains(Flag.USER)))
-                .and(set(USER_FLAGS, userFlagsSet(message)))
-                .and(set(MOD_SEQ, message.getModSeq()))
-                .where(eq(IMAP_UID, message.getUid()))
-                .and(eq(MAILBOX_ID, mailboxId.asUuid()))
-                .onlyIf(eq(MOD_SEQ, oldModSeq)));
-        return resultSet.one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED);
-    }
-
-    private ByteBuffer toByteBuffer(InputStream stream) throws IOException {
-        return ByteBuffer.wrap(ByteStreams.toByteArray(stream));
-    }
-
-    private Where buildQuery(CassandraId mailboxId, MessageRange set, FetchType fetchType) {
+        return cassandraAsyncExecutor.executeReturnApplied(
+            conditionalUpdateStatement.bind()
+                .setBool(ANSWERED, message.isAnswered())
+                .setBool(DELETED, message.isDeleted())
+                .setBool(DRAFT, message.isDraft())
+                .setBool(FLAGGED, message.isFlagged())
+                .setBool(RECENT, message.isRecent())
+                .setBool(SEEN, message.isSeen())
+                .setBool(USER, message.createFlags().contains(Flag.USER))
+                .setSet(USER_FLAGS, userFlagsSet(message))
+                .setLong(MOD_SEQ, message.getModSeq())
+                .setLong(IMAP_UID, message.getUid())
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(OLD_MOD_SEQ, oldModSeq));
+    }
+
+    private Where buildQuery(MessageRange.Type type, FetchType fetchType) {
+        switch (type) {
+        case ALL:
+            return selectAll(fetchType);
+        case FROM:
+            return selectFrom(fetchType);
+        case RANGE:
+            return selectRange(fetchType);
+        case ONE:
+            return selectMessage(fetchType);
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    private BoundStatement bindQuery(PreparedStatement statement, CassandraId mailboxId, MessageRange set) {
+        BoundStatement boundStatement = statement
+            .bind()
+            .setUUID(MAILBOX_ID, mailboxId.asUuid());
+        boundStatement.setIdempotent(true);
         switch (set.getType()) {
         case ALL:
-            return selectAll(mailboxId, fetchType);
+            return boundStatement;
         case FROM:
-            return selectFrom(mailboxId, set.getUidFrom(), fetchType);
+            return boundStatement.setLong(UID_FROM, set.getUidFrom());
         case RANGE:
-            return selectRange(mailboxId, set.getUidFrom(), set.getUidTo(), fetchType);
+            return boundStatement.setLong(UID_FROM, set.getUidFrom())
+                .setLong(UID_TO, set.getUidTo());
         case ONE:
-            return selectMessage(mailboxId, set.getUidFrom(), fetchType);
+            return boundStatement.setLong(IMAP_UID, set.getUidFrom());
         }
         throw new UnsupportedOperationException();
     }
 
-    private Where selectAll(CassandraId mailboxId, FetchType fetchType) {
+    private Where selectAll(FetchType fetchType) {
         return select(retrieveFields(fetchType))
             .from(TABLE_NAME)
-            .where(eq(MAILBOX_ID, mailboxId.asUuid()));
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)));
     }
 
-    private Where selectFrom(CassandraId mailboxId, long uid, FetchType fetchType) {
+    private Where selectFrom(FetchType fetchType) {
         return select(retrieveFields(fetchType))
             .from(TABLE_NAME)
-            .where(eq(MAILBOX_ID, mailboxId.asUuid()))
-            .and(gte(IMAP_UID, uid));
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gte(IMAP_UID, bindMarker(UID_FROM)));
     }
 
-    private Where selectRange(CassandraId mailboxId, long from, long to, FetchType fetchType) {
+    private Where selectRange(FetchType fetchType) {
         return select(retrieveFields(fetchType))
             .from(TABLE_NAME)
-            .where(eq(MAILBOX_ID, mailboxId.asUuid()))
-            .and(gte(IMAP_UID, from))
-            .and(lte(IMAP_UID, to));
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gte(IMAP_UID, bindMarker(UID_FROM)))
+            .and(lte(IMAP_UID, bindMarker(UID_TO)));
     }
 
-    private Where selectMessage(CassandraId mailboxId, long uid, FetchType fetchType) {
+    private Where selectRangeWithContentId(FetchType fetchType) {
+        return select(ObjectArrays.concat(retrieveFields(fetchType), CONTENT_ID))
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gte(IMAP_UID, bindMarker(UID_FROM)))
+            .and(lte(IMAP_UID, bindMarker(UID_TO)));
+    }
+
+    private Where selectMessage(FetchType fetchType) {
         return select(retrieveFields(fetchType))
             .from(TABLE_NAME)
-            .where(eq(MAILBOX_ID, mailboxId.asUuid()))
-            .and(eq(IMAP_UID, uid));
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(IMAP_UID, bindMarker(IMAP_UID)));
     }
 
     private String[] retrieveFields(FetchType fetchType) {
@@ -568,14 +810,12 @@ public class CassandraMessageMapper implements MessageMapper {
         }
     }
 
-    private SharedByteArrayInputStream buildContent(Row row, FetchType fetchType) {
+    private SharedInputStream buildContent(Row row, FetchType fetchType) {
         switch (fetchType) {
             case Full:
-                return new SharedByteArrayInputStream(getFullContent(row));
             case Headers:
-                return new SharedByteArrayInputStream(getFieldContent(HEADER_CONTENT, row));
             case Body:
-                return new SharedByteArrayInputStream(getBodyContent(row));
+                return new CassandraMessageContentInputStream(messageContentDAO, row.getUUID(CONTENT_ID), row.getLong(FULL_CONTENT_OCTETS));
             case Metadata:
                 return new SharedByteArrayInputStream(new byte[]{});
             default:
@@ -583,18 +823,4 @@ public class CassandraMessageMapper implements MessageMapper {
         }
     }
 
-    private byte[] getFullContent(Row row) {
-        return Bytes.concat(getFieldContent(HEADER_CONTENT, row), getFieldContent(BODY_CONTENT, row));
-    }
-
-    private byte[] getBodyContent(Row row) {
-        return Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], getFieldContent(BODY_CONTENT, row));
-    }
-
-    private byte[] getFieldContent(String field, Row row) {
-        byte[] headerContent = new byte[row.getBytes(field).remaining()];
-        row.getBytes(field).get(headerContent);
-        return headerContent;
-    }
-
 }
@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
@@ -28,11 +29,15 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTab
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTable.NEXT_MODSEQ;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTable.TABLE_NAME;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import javax.inject.Inject;
 
 import org.apache.james.backends.cassandra.utils.CassandraConstants;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
 import org.apache.james.backends.cassandra.utils.LightweightTransactionException;
 import org.apache.james.mailbox.MailboxSession;
@@ -43,9 +48,10 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.google.common.base.Throwables;
 
 public class CassandraModSeqProvider implements ModSeqProvider {
@@ -53,25 +59,55 @@ public class CassandraModSeqProvider implements ModSeqProvider {
     private static final int DEFAULT_MAX_RETRY = 100000;
     private static final Logger LOG = LoggerFactory.getLogger(CassandraModSeqProvider.class);
     private static final ModSeq FIRST_MODSEQ = new ModSeq(0);
+    private static final String CONDITION = "condition";
+    private static final RegularStatement SELECT_NEXT_MODSEQ = select(NEXT_MODSEQ)
+        .from(TABLE_NAME)
+        .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)));
+    private static final RegularStatement INSERT_NEXT_MODSEQ = insertInto(TABLE_NAME)
+        .value(NEXT_MODSEQ, bindMarker(NEXT_MODSEQ))
+        .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
+        .ifNotExists();
+    private static final RegularStatement UPDATE_NEXT_MODSEQ = update(TABLE_NAME)
+        .onlyIf(eq(NEXT_MODSEQ, bindMarker(CONDITION)))
+        .with(set(NEXT_MODSEQ, bindMarker(NEXT_MODSEQ)))
+        .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)));
     
     private final Session session;
     private final FunctionRunnerWithRetry runner;
+    private final CassandraPreparedStatementCache preparedStatements;
 
-    public CassandraModSeqProvider(Session session, int maxRetry) {
+    public CassandraModSeqProvider(Session session, CassandraPreparedStatementCache preparedStatements, int maxRetry) {
         this.session = session;
         this.runner = new FunctionRunnerWithRetry(maxRetry);
+        this.preparedStatements = preparedStatements;
     }
 
     @Inject
-    public CassandraModSeqProvider(Session session) {
-        this(session, DEFAULT_MAX_RETRY);
+    public CassandraModSeqProvider(Session session, CassandraPreparedStatementCache preparedStatements) {
+        this(session, preparedStatements, DEFAULT_MAX_RETRY);
     }
 
     @Override
     public long nextModSeq(MailboxSession mailboxSession, Mailbox mailbox) throws MailboxException {
+        return allocateModSeqs(mailboxSession, mailbox, 1);
+    }
+
+    /**
+     * The count mod-sequences are allocated with a single lightweight transaction, which advances the highest
+     * mod-sequence of the mailbox to the last of them.
+     */
+    @Override
+    public List<Long> nextModSeqs(MailboxSession mailboxSession, Mailbox mailbox, int count) throws MailboxException {
+        long last = allocateModSeqs(mailboxSession, mailbox, count);
+        return LongStream.rangeClosed(last - count + 1, last)
+            .boxed()
+            .collect(Collectors.toList());
+    }
+
+    private long allocateModSeqs(MailboxSession mailboxSession, Mailbox mailbox, int count) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         if (findHighestModSeq(mailboxSession, mailboxId).isFirst()) {
-            Optional<ModSeq> optional = tryInsertModSeq(mailbox, FIRST_MODSEQ);
+            Optional<ModSeq> optional = tryInsertModSeq(mailbox, FIRST_MODSEQ, count);
             if (optional.isPresent()) {
                 return optional.get().getValue();
             }
@@ -81,7 +117,7 @@ public class CassandraModSeqProvider implements ModSeqProvider {
             return runner.executeAndRetrieveObject(
                         () -> {
                             try {
-                                return tryUpdateModSeq(mailboxId, findHighestModSeq(mailboxSession, mailboxId))
+                                return tryUpdateModSeq(mailboxId, findHighestModSeq(mailboxSession, mailboxId), count)
                                         .map(ModSeq::getValue);
                             } catch (Exception exception) {
                                 LOG.error("Can not retrieve next ModSeq", exception);
@@ -100,9 +136,9 @@ public class CassandraModSeqProvider implements ModSeqProvider {
     
     private ModSeq findHighestModSeq(MailboxSession mailboxSession, CassandraId mailboxId) throws MailboxException {
         ResultSet result = session.execute(
-                select(NEXT_MODSEQ)
-                    .from(TABLE_NAME)
-                    .where(eq(MAILBOX_ID, mailboxId.asUuid())));
+                preparedStatements.prepare(SELECT_NEXT_MODSEQ).bind()
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                    .setIdempotent(true));
         if (result.isExhausted()) {
             return FIRST_MODSEQ;
         } else {
@@ -110,26 +146,25 @@ public class CassandraModSeqProvider implements ModSeqProvider {
         }
     }
 
-    private Optional<ModSeq> tryInsertModSeq(Mailbox mailbox, ModSeq modSeq) {
-        ModSeq nextModSeq = modSeq.next();
+    private Optional<ModSeq> tryInsertModSeq(Mailbox mailbox, ModSeq modSeq, int count) {
+        ModSeq nextModSeq = modSeq.add(count);
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         return transactionalStatementToOptionalModSeq(nextModSeq,
-                insertInto(TABLE_NAME)
-                    .value(NEXT_MODSEQ, nextModSeq.getValue())
-                    .value(MAILBOX_ID, mailboxId.asUuid())
-                    .ifNotExists());
+                preparedStatements.prepare(INSERT_NEXT_MODSEQ).bind()
+                    .setLong(NEXT_MODSEQ, nextModSeq.getValue())
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid()));
     }
     
-    private Optional<ModSeq> tryUpdateModSeq(CassandraId mailboxId, ModSeq modSeq) {
-        ModSeq nextModSeq = modSeq.next();
+    private Optional<ModSeq> tryUpdateModSeq(CassandraId mailboxId, ModSeq modSeq, int count) {
+        ModSeq nextModSeq = modSeq.add(count);
         return transactionalStatementToOptionalModSeq(nextModSeq,
-                update(TABLE_NAME)
-                    .onlyIf(eq(NEXT_MODSEQ, modSeq.getValue()))
-                    .with(set(NEXT_MODSEQ, nextModSeq.getValue()))
-                    .where(eq(MAILBOX_ID, mailboxId.asUuid())));
+                preparedStatements.prepare(UPDATE_NEXT_MODSEQ).bind()
+                    .setLong(CONDITION, modSeq.getValue())
+                    .setLong(NEXT_MODSEQ, nextModSeq.getValue())
+                    .setUUID(MAILBOX_ID, mailboxId.asUuid()));
     }
 
-    private Optional<ModSeq> transactionalStatementToOptionalModSeq(ModSeq modSeq, BuiltStatement statement) {
+    private Optional<ModSeq> transactionalStatementToOptionalModSeq(ModSeq modSeq, BoundStatement statement) {
         if(session.execute(statement).one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
             return Optional.of(modSeq);
         }
@@ -144,8 +179,8 @@ public class CassandraModSeqProvider implements ModSeqProvider {
             this.value = value;
         }
         
-        public ModSeq next() {
-            return new ModSeq(value + 1);
+        public ModSeq add(int count) {
+            return new ModSeq(value + count);
         }
         
         public long getValue() {
@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
@@ -31,6 +32,7 @@ import java.util.Optional;
 import javax.inject.Inject;
 
 import org.apache.james.backends.cassandra.utils.CassandraConstants;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
 import org.apache.james.backends.cassandra.utils.LightweightTransactionException;
 import org.apache.james.mailbox.MailboxSession;
@@ -42,27 +44,48 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.google.common.base.Throwables;
 
+/**
+ * Allocates each UID with its own lightweight transaction on the mailbox UID row.
+ *
+ * UIDs are deliberately not reserved by blocks kept on the node: with several James nodes, a node would hand out UIDs
+ * of its block below the UIDNEXT another node already announced, breaking the strictly ascending UID guarantee of IMAP.
+ */
 public class CassandraUidProvider implements UidProvider {
     public final static int DEFAULT_MAX_RETRY = 100000;
     private static final Logger LOG = LoggerFactory.getLogger(CassandraUidProvider.class);
     private static final Uid FIRST_UID = new Uid(0);
+    private static final String CONDITION = "condition";
+    private static final RegularStatement SELECT_NEXT_UID = select(NEXT_UID)
+        .from(CassandraMessageUidTable.TABLE_NAME)
+        .where(eq(CassandraMessageUidTable.MAILBOX_ID, bindMarker(CassandraMessageUidTable.MAILBOX_ID)));
+    private static final RegularStatement INSERT_NEXT_UID = insertInto(CassandraMessageUidTable.TABLE_NAME)
+        .value(NEXT_UID, bindMarker(NEXT_UID))
+        .value(CassandraMessageUidTable.MAILBOX_ID, bindMarker(CassandraMessageUidTable.MAILBOX_ID))
+        .ifNotExists();
+    private static final RegularStatement UPDATE_NEXT_UID = update(CassandraMessageUidTable.TABLE_NAME)
+        .onlyIf(eq(NEXT_UID, bindMarker(CONDITION)))
+        .with(set(NEXT_UID, bindMarker(NEXT_UID)))
+        .where(eq(CassandraMessageUidTable.MAILBOX_ID, bindMarker(CassandraMessageUidTable.MAILBOX_ID)));
 
     private final Session session;
     private final FunctionRunnerWithRetry runner;
+    private final CassandraPreparedStatementCache preparedStatements;
 
-    public CassandraUidProvider(Session session, int maxRetry) {
+    public CassandraUidProvider(Session session, CassandraPreparedStatementCache preparedStatements, int maxRetry) {
         this.session = session;
         this.runner = new FunctionRunnerWithRetry(maxRetry);
+        this.preparedStatements = preparedStatements;
     }
 
     @Inject
-    public CassandraUidProvider(Session session) {
-        this(session, DEFAULT_MAX_RETRY);
+    public CassandraUidProvider(Session session, CassandraPreparedStatementCache preparedStatements) {
+        this(session, preparedStatements, DEFAULT_MAX_RETRY);
     }
 
     @Override
@@ -98,9 +121,9 @@ public class CassandraUidProvider implements UidProvider {
 
     private Uid findHighestUid(CassandraId mailboxId) throws MailboxException {
         ResultSet result = session.execute(
-            select(NEXT_UID)
-                .from(CassandraMessageUidTable.TABLE_NAME)
-                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())));
+            preparedStatements.prepare(SELECT_NEXT_UID).bind()
+                .setUUID(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())
+                .setIdempotent(true));
         if (result.isExhausted()) {
             return FIRST_UID;
         } else {
@@ -111,22 +134,21 @@ public class CassandraUidProvider implements UidProvider {
     private Optional<Uid> tryInsertUid(CassandraId mailboxId, Uid uid) {
         Uid nextUid = uid.next();
         return transactionalStatementToOptionalUid(nextUid,
-            insertInto(CassandraMessageUidTable.TABLE_NAME)
-                .value(NEXT_UID, nextUid.getValue())
-                .value(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())
-                .ifNotExists());
+            preparedStatements.prepare(INSERT_NEXT_UID).bind()
+                .setLong(NEXT_UID, nextUid.getValue())
+                .setUUID(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid()));
     }
 
     private Optional<Uid> tryUpdateUid(CassandraId mailboxId, Uid uid) {
         Uid nextUid = uid.next();
         return transactionalStatementToOptionalUid(nextUid,
-            update(CassandraMessageUidTable.TABLE_NAME)
-                .onlyIf(eq(NEXT_UID, uid.getValue()))
-                .with(set(NEXT_UID, nextUid.getValue()))
-                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())));
+            preparedStatements.prepare(UPDATE_NEXT_UID).bind()
+                .setLong(CONDITION, uid.getValue())
+                .setLong(NEXT_UID, nextUid.getValue())
+                .setUUID(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid()));
     }
 
-    private Optional<Uid> transactionalStatementToOptionalUid(Uid uid, BuiltStatement statement) {
+    private Optional<Uid> transactionalStatementToOptionalUid(Uid uid, BoundStatement statement) {
         if(session.execute(statement).one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
             return Optional.of(uid);
         }
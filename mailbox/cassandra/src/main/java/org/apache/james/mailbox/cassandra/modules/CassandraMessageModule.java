@@ -36,6 +36,8 @@ import org.apache.james.backends.cassandra.components.CassandraIndex;
 import org.apache.james.backends.cassandra.components.CassandraModule;
 import org.apache.james.backends.cassandra.components.CassandraTable;
 import org.apache.james.backends.cassandra.components.CassandraType;
+import org.apache.james.mailbox.cassandra.table.CassandraFlagProjectionTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageContentTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
 
 import com.datastax.driver.core.schemabuilder.SchemaBuilder;
@@ -47,7 +49,7 @@ public class CassandraMessageModule implements CassandraModule {
     private final List<CassandraType> types;
 
     public CassandraMessageModule() {
-        tables = Collections.singletonList(
+        tables = Arrays.asList(
             new CassandraTable(CassandraMessageTable.TABLE_NAME,
                 SchemaBuilder.createTable(CassandraMessageTable.TABLE_NAME)
                     .ifNotExists()
@@ -59,8 +61,7 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.TEXTUAL_LINE_COUNT, bigint())
                     .addColumn(CassandraMessageTable.MOD_SEQ, bigint())
                     .addColumn(CassandraMessageTable.FULL_CONTENT_OCTETS, bigint())
-                    .addColumn(CassandraMessageTable.BODY_CONTENT, blob())
-                    .addColumn(CassandraMessageTable.HEADER_CONTENT, blob())
+                    .addColumn(CassandraMessageTable.CONTENT_ID, timeuuid())
                     .addColumn(CassandraMessageTable.Flag.ANSWERED, cboolean())
                     .addColumn(CassandraMessageTable.Flag.DELETED, cboolean())
                     .addColumn(CassandraMessageTable.Flag.DRAFT, cboolean())
@@ -70,23 +71,22 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.Flag.USER, cboolean())
                     .addColumn(CassandraMessageTable.Flag.USER_FLAGS, set(text()))
                     .addUDTListColumn(CassandraMessageTable.ATTACHMENTS, SchemaBuilder.frozen(CassandraMessageTable.ATTACHMENTS))
-                    .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES))));
-        index = Arrays.asList(
-            new CassandraIndex(
-                SchemaBuilder.createIndex(CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.RECENT)
+                    .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES))),
+            new CassandraTable(CassandraMessageContentTable.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraMessageContentTable.TABLE_NAME)
                     .ifNotExists()
-                    .onTable(CassandraMessageTable.TABLE_NAME)
-                    .andColumn(CassandraMessageTable.Flag.RECENT)),
-            new CassandraIndex(
-                SchemaBuilder.createIndex(CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.SEEN)
+                    .addPartitionKey(CassandraMessageContentTable.CONTENT_ID, timeuuid())
+                    .addClusteringColumn(CassandraMessageContentTable.CHUNK_NUMBER, cint())
+                    .addColumn(CassandraMessageContentTable.DATA, blob())),
+            new CassandraTable(CassandraMessageContentTable.References.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraMessageContentTable.References.TABLE_NAME)
                     .ifNotExists()
-                    .onTable(CassandraMessageTable.TABLE_NAME)
-                    .andColumn(CassandraMessageTable.Flag.SEEN)),
-            new CassandraIndex(
-                SchemaBuilder.createIndex(CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.DELETED)
-                    .ifNotExists()
-                    .onTable(CassandraMessageTable.TABLE_NAME)
-                    .andColumn(CassandraMessageTable.Flag.DELETED)));
+                    .addPartitionKey(CassandraMessageContentTable.References.CONTENT_ID, timeuuid())
+                    .addColumn(CassandraMessageContentTable.References.MESSAGES, set(text()))),
+            flagProjectionTable(CassandraFlagProjectionTable.Recent.TABLE_NAME),
+            flagProjectionTable(CassandraFlagProjectionTable.Unseen.TABLE_NAME),
+            flagProjectionTable(CassandraFlagProjectionTable.Deleted.TABLE_NAME));
+        index = Collections.emptyList();
         types = Arrays.asList(
             new CassandraType(CassandraMessageTable.PROPERTIES,
                 SchemaBuilder.createType(CassandraMessageTable.PROPERTIES)
@@ -103,6 +103,14 @@ public class CassandraMessageModule implements CassandraModule {
                         .addColumn(CassandraMessageTable.Attachments.IS_INLINE, cboolean())));
     }
 
+    private static CassandraTable flagProjectionTable(String tableName) {
+        return new CassandraTable(tableName,
+            SchemaBuilder.createTable(tableName)
+                .ifNotExists()
+                .addPartitionKey(CassandraFlagProjectionTable.MAILBOX_ID, timeuuid())
+                .addClusteringColumn(CassandraFlagProjectionTable.IMAP_UID, bigint()));
+    }
+
     @Override
     public List<CassandraTable> moduleTables() {
         return tables;
@@ -20,6 +20,7 @@ package org.apache.james.mailbox.cassandra;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.cassandra.mail.CassandraModSeqProvider;
 import org.apache.james.mailbox.cassandra.mail.CassandraUidProvider;
 import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
@@ -62,12 +63,14 @@ public class CassandraMailboxManagerTest {
         @Override
         public CassandraMailboxManager newInstance() {
             CASSANDRA.ensureAllTables();
-            CassandraUidProvider uidProvider = new CassandraUidProvider(CASSANDRA.getConf());
-            CassandraModSeqProvider modSeqProvider = new CassandraModSeqProvider(CASSANDRA.getConf());
+            CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(CASSANDRA.getConf());
+            CassandraUidProvider uidProvider = new CassandraUidProvider(CASSANDRA.getConf(), preparedStatements);
+            CassandraModSeqProvider modSeqProvider = new CassandraModSeqProvider(CASSANDRA.getConf(), preparedStatements);
             CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(uidProvider,
                 modSeqProvider,
                 CASSANDRA.getConf(),
-                CASSANDRA.getTypesProvider());
+                CASSANDRA.getTypesProvider(),
+                preparedStatements);
 
             CassandraMailboxManager manager = new CassandraMailboxManager(mapperFactory, null, new NoMailboxPathLocker(), new MessageParser());
             try {
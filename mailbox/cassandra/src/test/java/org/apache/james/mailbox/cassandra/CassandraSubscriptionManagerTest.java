@@ -20,6 +20,7 @@
 package org.apache.james.mailbox.cassandra;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.AbstractSubscriptionManagerTest;
 import org.apache.james.mailbox.SubscriptionManager;
 import org.apache.james.mailbox.cassandra.mail.CassandraModSeqProvider;
@@ -32,15 +33,17 @@ import org.apache.james.mailbox.cassandra.modules.CassandraSubscriptionModule;
 public class CassandraSubscriptionManagerTest extends AbstractSubscriptionManagerTest {
 
     private static final CassandraCluster cassandra = CassandraCluster.create(new CassandraSubscriptionModule());
+    private static final CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(cassandra.getConf());
     
     @Override
     public SubscriptionManager createSubscriptionManager() {
         return new CassandraSubscriptionManager(
             new CassandraMailboxSessionMapperFactory(
-                new CassandraUidProvider(cassandra.getConf()),
-                new CassandraModSeqProvider(cassandra.getConf()),
+                new CassandraUidProvider(cassandra.getConf(), preparedStatements),
+                new CassandraModSeqProvider(cassandra.getConf(), preparedStatements),
                 cassandra.getConf(),
-                cassandra.getTypesProvider()
+                cassandra.getTypesProvider(),
+                preparedStatements
             )
         );
     }
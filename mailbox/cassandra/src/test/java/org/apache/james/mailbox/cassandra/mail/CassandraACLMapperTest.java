@@ -31,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
 import org.apache.james.mailbox.cassandra.table.CassandraACLTable;
@@ -53,16 +54,18 @@ public class CassandraACLMapperTest {
     private int uidValidity;
     private int maxRetry;
     private ExecutorService executor;
+    private CassandraPreparedStatementCache preparedStatements;
 
     @Before
     public void setUp() {
         cassandra = CassandraCluster.create(new CassandraAclModule());
         cassandra.ensureAllTables();
+        preparedStatements = new CassandraPreparedStatementCache(cassandra.getConf());
         uidValidity = 10;
         mailbox = new SimpleMailbox(new MailboxPath("#private", "benwa@linagora.com", "INBOX"), uidValidity);
         mailbox.setMailboxId(CassandraId.of(UUID.fromString("464765a0-e4e7-11e4-aba4-710c1de3782b")));
         maxRetry = 100;
-        cassandraACLMapper = new CassandraACLMapper(mailbox, cassandra.getConf(), maxRetry);
+        cassandraACLMapper = new CassandraACLMapper(mailbox, cassandra.getConf(), preparedStatements, maxRetry);
         executor = Executors.newFixedThreadPool(2);
     }
 
@@ -74,17 +77,17 @@ public class CassandraACLMapperTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void creatingACLMapperWithNegativeMaxRetryShouldFail() {
-        new CassandraACLMapper(mailbox, cassandra.getConf(), -1);
+        new CassandraACLMapper(mailbox, cassandra.getConf(), preparedStatements, -1);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void creatingACLMapperWithNullMaxRetryShouldFail() {
-        new CassandraACLMapper(mailbox, cassandra.getConf(), 0);
+        new CassandraACLMapper(mailbox, cassandra.getConf(), preparedStatements, 0);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void creatingACLMapperWithNoMailboxIdShouldFail() {
-        new CassandraACLMapper(new SimpleMailbox(new MailboxPath("#private", "user", "name"), uidValidity), cassandra.getConf(), maxRetry);
+        new CassandraACLMapper(new SimpleMailbox(new MailboxPath("#private", "user", "name"), uidValidity), cassandra.getConf(), preparedStatements, maxRetry);
     }
 
     @Test
@@ -212,7 +215,7 @@ public class CassandraACLMapperTest {
 
     private Future<Boolean> performACLUpdateInExecutor(ExecutorService executor, SimpleMailboxACL.SimpleMailboxACLEntryKey key, SimpleMailboxACL.Rfc4314Rights rights, CassandraACLMapper.CodeInjector runnable) {
         return executor.submit(() -> {
-            CassandraACLMapper aclMapper = new CassandraACLMapper(mailbox, cassandra.getConf(), maxRetry, runnable);
+            CassandraACLMapper aclMapper = new CassandraACLMapper(mailbox, cassandra.getConf(), preparedStatements, maxRetry, runnable);
             try {
                 aclMapper.updateACL(new SimpleMailboxACL.SimpleMailboxACLCommand(key, MailboxACL.EditMode.ADD, rights));
             } catch (MailboxException exception) {
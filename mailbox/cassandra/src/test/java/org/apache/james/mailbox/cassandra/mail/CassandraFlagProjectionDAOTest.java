@@ -0,0 +1,144 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.mail.CassandraFlagProjectionDAO.Projection;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CassandraFlagProjectionDAOTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final CassandraId MAILBOX_ID = CassandraId.timeBased();
+
+    private CassandraFlagProjectionDAO testee;
+
+    @Before
+    public void setUp() {
+        CASSANDRA.ensureAllTables();
+        testee = new CassandraFlagProjectionDAO(CASSANDRA.getConf(), new CassandraPreparedStatementCache(CASSANDRA.getConf()));
+    }
+
+    @After
+    public void cleanUp() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void addShouldIndexMessagesAccordingToTheirFlags() {
+        testee.add(MAILBOX_ID, 1, new Flags(Flag.RECENT)).join();
+        testee.add(MAILBOX_ID, 2, new Flags(Flag.SEEN)).join();
+        testee.add(MAILBOX_ID, 3, new Flags(Flag.DELETED)).join();
+
+        assertThat(testee.retrieveUids(Projection.RECENT, MAILBOX_ID)).containsExactly(1L);
+        assertThat(testee.retrieveUids(Projection.UNSEEN, MAILBOX_ID)).containsExactly(1L, 3L);
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID)).containsExactly(3L);
+    }
+
+    @Test
+    public void updateShouldMoveMessageBetweenProjections() {
+        testee.add(MAILBOX_ID, 1, new Flags(Flag.RECENT)).join();
+
+        testee.update(MAILBOX_ID, 1, new Flags(Flag.RECENT), new Flags(Flag.SEEN)).join();
+
+        assertThat(testee.retrieveUids(Projection.RECENT, MAILBOX_ID)).isEmpty();
+        assertThat(testee.retrieveUids(Projection.UNSEEN, MAILBOX_ID)).isEmpty();
+    }
+
+    @Test
+    public void batchUpdateShouldApplyTheChangesOfEveryMessage() {
+        testee.add(MAILBOX_ID, 1, new Flags(Flag.RECENT)).join();
+        testee.add(MAILBOX_ID, 2, new Flags()).join();
+
+        testee.update(MAILBOX_ID, ImmutableList.of(
+                new UpdatedFlags(1, 1, new Flags(Flag.RECENT), new Flags(Flag.SEEN)),
+                new UpdatedFlags(2, 2, new Flags(), new Flags(Flag.DELETED))))
+            .join();
+
+        assertThat(testee.retrieveUids(Projection.RECENT, MAILBOX_ID)).isEmpty();
+        assertThat(testee.retrieveUids(Projection.UNSEEN, MAILBOX_ID)).containsExactly(2L);
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID)).containsExactly(2L);
+    }
+
+    @Test
+    public void batchUpdateShouldAcceptUpdatesWithoutProjectionChange() {
+        testee.add(MAILBOX_ID, 1, new Flags(Flag.SEEN)).join();
+
+        testee.update(MAILBOX_ID, ImmutableList.of(new UpdatedFlags(1, 1, new Flags(Flag.SEEN), new Flags(Flag.SEEN)))).join();
+
+        assertThat(testee.retrieveUids(Projection.UNSEEN, MAILBOX_ID)).isEmpty();
+    }
+
+    @Test
+    public void removeShouldUnindexMessageFromAllProjections() {
+        Flags flags = new Flags(Flag.RECENT);
+        flags.add(Flag.DELETED);
+        testee.add(MAILBOX_ID, 1, flags).join();
+
+        testee.remove(MAILBOX_ID, 1).join();
+
+        assertThat(testee.retrieveUids(Projection.RECENT, MAILBOX_ID)).isEmpty();
+        assertThat(testee.retrieveUids(Projection.UNSEEN, MAILBOX_ID)).isEmpty();
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID)).isEmpty();
+    }
+
+    @Test
+    public void retrieveFirstUidShouldReturnLowestUid() {
+        testee.add(MAILBOX_ID, 5, new Flags()).join();
+        testee.add(MAILBOX_ID, 3, new Flags()).join();
+
+        assertThat(testee.retrieveFirstUid(Projection.UNSEEN, MAILBOX_ID)).isEqualTo(Optional.of(3L));
+    }
+
+    @Test
+    public void retrieveFirstUidShouldReturnEmptyWhenNoMatchingMessage() {
+        testee.add(MAILBOX_ID, 1, new Flags(Flag.SEEN)).join();
+
+        assertThat(testee.retrieveFirstUid(Projection.UNSEEN, MAILBOX_ID)).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void retrieveUidsShouldRestrictToRange() {
+        testee.add(MAILBOX_ID, 1, new Flags(Flag.DELETED)).join();
+        testee.add(MAILBOX_ID, 2, new Flags(Flag.DELETED)).join();
+        testee.add(MAILBOX_ID, 3, new Flags(Flag.DELETED)).join();
+
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID, MessageRange.range(2, 3))).containsExactly(2L, 3L);
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID, MessageRange.from(2))).containsExactly(2L, 3L);
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID, MessageRange.one(1))).containsExactly(1L);
+        assertThat(testee.retrieveUids(Projection.DELETED, MAILBOX_ID, MessageRange.all())).containsExactly(1L, 2L, 3L);
+    }
+}
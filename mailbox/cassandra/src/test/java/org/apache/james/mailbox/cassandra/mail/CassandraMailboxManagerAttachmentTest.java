@@ -18,12 +18,12 @@
  ****************************************************************/
 package org.apache.james.mailbox.cassandra.mail;
 
-import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.cassandra.CassandraMailboxManager;
 import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
@@ -34,11 +34,13 @@ import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
+import org.apache.james.mailbox.model.MessageAttachment;
 import org.apache.james.mailbox.store.AbstractMailboxManagerAttachmentTest;
 import org.apache.james.mailbox.store.Authenticator;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
 import org.apache.james.mailbox.store.NoMailboxPathLocker;
 import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
+import org.apache.james.mime4j.dom.Entity;
 
 public class CassandraMailboxManagerAttachmentTest extends AbstractMailboxManagerAttachmentTest {
     private static final CassandraCluster cassandra = CassandraCluster.create(new CassandraModuleComposite(
@@ -55,17 +57,22 @@ public class CassandraMailboxManagerAttachmentTest extends AbstractMailboxManage
     private CassandraMailboxManager parseFailingMailboxManager;
 
     public CassandraMailboxManagerAttachmentTest() throws Exception {
+        CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(cassandra.getConf());
         mailboxSessionMapperFactory = new CassandraMailboxSessionMapperFactory(
-                new CassandraUidProvider(cassandra.getConf()),
-                new CassandraModSeqProvider(cassandra.getConf()),
+                new CassandraUidProvider(cassandra.getConf(), preparedStatements),
+                new CassandraModSeqProvider(cassandra.getConf(), preparedStatements),
                 cassandra.getConf(),
-                cassandra.getTypesProvider());
+                cassandra.getTypesProvider(),
+                preparedStatements);
         Authenticator noAuthenticator = null;
         mailboxManager = new CassandraMailboxManager(mailboxSessionMapperFactory, noAuthenticator, new NoMailboxPathLocker(), new MessageParser());
         mailboxManager.init();
-        MessageParser failingMessageParser = mock(MessageParser.class);
-        when(failingMessageParser.retrieveAttachments(any()))
-            .thenThrow(new RuntimeException("Message parser set to fail"));
+        MessageParser failingMessageParser = new MessageParser() {
+            @Override
+            protected MessageAttachment retrieveAttachment(Entity entity, InputStream content) throws IOException {
+                throw new RuntimeException("Message parser set to fail");
+            }
+        };
         parseFailingMailboxManager = new CassandraMailboxManager(mailboxSessionMapperFactory, noAuthenticator, new NoMailboxPathLocker(), failingMessageParser);
         parseFailingMailboxManager.init();
     }
@@ -20,6 +20,7 @@ package org.apache.james.mailbox.cassandra.mail;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
 import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
@@ -49,34 +50,38 @@ public class CassandraMapperProvider implements MapperProvider {
         new CassandraUidModule(),
         new CassandraAttachmentModule(),
         new CassandraAnnotationModule()));
+    private static final CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(cassandra.getConf());
 
     @Override
     public MailboxMapper createMailboxMapper() throws MailboxException {
         return new CassandraMailboxSessionMapperFactory(
-            new CassandraUidProvider(cassandra.getConf()),
-            new CassandraModSeqProvider(cassandra.getConf()),
+            new CassandraUidProvider(cassandra.getConf(), preparedStatements),
+            new CassandraModSeqProvider(cassandra.getConf(), preparedStatements),
             cassandra.getConf(),
-            cassandra.getTypesProvider()
+            cassandra.getTypesProvider(),
+            preparedStatements
         ).getMailboxMapper(new MockMailboxSession("benwa"));
     }
 
     @Override
     public MessageMapper createMessageMapper() throws MailboxException {
         return new CassandraMailboxSessionMapperFactory(
-            new CassandraUidProvider(cassandra.getConf()),
-            new CassandraModSeqProvider(cassandra.getConf()),
+            new CassandraUidProvider(cassandra.getConf(), preparedStatements),
+            new CassandraModSeqProvider(cassandra.getConf(), preparedStatements),
             cassandra.getConf(),
-            cassandra.getTypesProvider()
+            cassandra.getTypesProvider(),
+            preparedStatements
         ).getMessageMapper(new MockMailboxSession("benwa"));
     }
 
     @Override
     public AttachmentMapper createAttachmentMapper() throws MailboxException {
         return new CassandraMailboxSessionMapperFactory(
-                new CassandraUidProvider(cassandra.getConf()),
-                new CassandraModSeqProvider(cassandra.getConf()),
+                new CassandraUidProvider(cassandra.getConf(), preparedStatements),
+                new CassandraModSeqProvider(cassandra.getConf(), preparedStatements),
                 cassandra.getConf(),
-                cassandra.getTypesProvider()
+                cassandra.getTypesProvider(),
+                preparedStatements
             ).getAttachmentMapper(new MockMailboxSession("benwa"));
     }
 
@@ -103,10 +108,11 @@ public class CassandraMapperProvider implements MapperProvider {
     @Override
     public AnnotationMapper createAnnotationMapper() throws MailboxException {
         return new CassandraMailboxSessionMapperFactory(
-                new CassandraUidProvider(cassandra.getConf()),
-                new CassandraModSeqProvider(cassandra.getConf()),
+                new CassandraUidProvider(cassandra.getConf(), preparedStatements),
+                new CassandraModSeqProvider(cassandra.getConf(), preparedStatements),
                 cassandra.getConf(),
-                cassandra.getTypesProvider()
+                cassandra.getTypesProvider(),
+                preparedStatements
             ).getAnnotationMapper(new MockMailboxSession("benwa"));
     }
 }
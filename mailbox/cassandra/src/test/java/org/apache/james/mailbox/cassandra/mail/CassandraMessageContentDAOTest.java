@@ -0,0 +1,138 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class CassandraMessageContentDAOTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final CassandraId MAILBOX_ID = CassandraId.timeBased();
+    private static final CassandraId OTHER_MAILBOX_ID = CassandraId.timeBased();
+    private static final long UID = 42;
+
+    private CassandraMessageContentDAO testee;
+    private byte[] content;
+
+    @Before
+    public void setUp() {
+        CASSANDRA.ensureAllTables();
+        testee = new CassandraMessageContentDAO(CASSANDRA.getConf(), new CassandraPreparedStatementCache(CASSANDRA.getConf()));
+        content = new byte[CassandraMessageContentDAO.CHUNK_SIZE * 2 + 42];
+        new Random().nextBytes(content);
+    }
+
+    @After
+    public void cleanUp() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void readShouldReturnSavedContent() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId))).isEqualTo(content);
+    }
+
+    @Test
+    public void readShouldReturnEmptyContentWhenSavedContentIsEmpty() throws Exception {
+        UUID contentId = testee.save(new byte[0], MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId))).isEmpty();
+    }
+
+    @Test
+    public void readRangeShouldReturnBytesSpanningSeveralChunks() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+        int from = CassandraMessageContentDAO.CHUNK_SIZE - 10;
+        int to = CassandraMessageContentDAO.CHUNK_SIZE * 2 + 5;
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId, from, to))).isEqualTo(Arrays.copyOfRange(content, from, to));
+    }
+
+    @Test
+    public void readRangeShouldReturnEmptyWhenRangeIsEmpty() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId, 12, 12))).isEmpty();
+    }
+
+    @Test
+    public void readRangeShouldStreamContentSpanningSeveralPages() throws Exception {
+        byte[] largeContent = new byte[CassandraMessageContentDAO.CHUNK_SIZE * 40 + 7];
+        new Random().nextBytes(largeContent);
+        UUID contentId = testee.save(largeContent, MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId, 3, largeContent.length)))
+            .isEqualTo(Arrays.copyOfRange(largeContent, 3, largeContent.length));
+    }
+
+    @Test
+    public void removeReferenceShouldDeleteContentWhenLastReferenceIsRemoved() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+
+        testee.removeReference(contentId, MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId))).isEmpty();
+    }
+
+    @Test
+    public void removeReferenceShouldKeepContentWhenStillReferenced() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+        testee.addReference(contentId, OTHER_MAILBOX_ID, UID).join();
+
+        testee.removeReference(contentId, MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId))).isEqualTo(content);
+    }
+
+    @Test
+    public void removeReferenceShouldBeIdempotent() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+        testee.addReference(contentId, OTHER_MAILBOX_ID, UID).join();
+
+        testee.removeReference(contentId, MAILBOX_ID, UID).join();
+        testee.removeReference(contentId, MAILBOX_ID, UID).join();
+
+        assertThat(ByteStreams.toByteArray(testee.read(contentId))).isEqualTo(content);
+    }
+
+    @Test
+    public void addReferenceShouldReturnFalseWhenContentWasDeleted() throws Exception {
+        UUID contentId = testee.save(content, MAILBOX_ID, UID).join();
+        testee.removeReference(contentId, MAILBOX_ID, UID).join();
+
+        assertThat(testee.addReference(contentId, OTHER_MAILBOX_ID, UID).join()).isFalse();
+    }
+}
@@ -0,0 +1,88 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class CassandraMessageContentInputStreamTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final int HEADER_END = CassandraMessageContentDAO.CHUNK_SIZE + 12;
+
+    private CassandraMessageContentInputStream testee;
+    private byte[] content;
+
+    @Before
+    public void setUp() {
+        CASSANDRA.ensureAllTables();
+        CassandraMessageContentDAO messageContentDAO = new CassandraMessageContentDAO(CASSANDRA.getConf(), new CassandraPreparedStatementCache(CASSANDRA.getConf()));
+        content = new byte[CassandraMessageContentDAO.CHUNK_SIZE * 3 + 42];
+        new Random().nextBytes(content);
+        UUID contentId = messageContentDAO.save(content, CassandraId.timeBased(), 1L).join();
+        testee = new CassandraMessageContentInputStream(messageContentDAO, contentId, content.length);
+    }
+
+    @After
+    public void cleanUp() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void readShouldReturnWholeContent() throws Exception {
+        assertThat(ByteStreams.toByteArray(testee)).isEqualTo(content);
+        assertThat(testee.getPosition()).isEqualTo(content.length);
+    }
+
+    @Test
+    public void newStreamShouldReturnTheRequestedRange() throws Exception {
+        InputStream header = testee.newStream(0, HEADER_END);
+
+        assertThat(ByteStreams.toByteArray(header)).isEqualTo(Arrays.copyOfRange(content, 0, HEADER_END));
+    }
+
+    @Test
+    public void newStreamShouldReadUntilTheEndWhenEndIsMinusOne() throws Exception {
+        InputStream body = testee.newStream(HEADER_END, -1);
+
+        assertThat(ByteStreams.toByteArray(body)).isEqualTo(Arrays.copyOfRange(content, HEADER_END, content.length));
+    }
+
+    @Test
+    public void newStreamShouldBeRelativeToTheParentStream() throws Exception {
+        InputStream body = testee.newStream(HEADER_END, -1);
+        InputStream bodyPart = ((CassandraMessageContentInputStream) body).newStream(10, 20);
+
+        assertThat(ByteStreams.toByteArray(bodyPart)).isEqualTo(Arrays.copyOfRange(content, HEADER_END + 10, HEADER_END + 20));
+    }
+}
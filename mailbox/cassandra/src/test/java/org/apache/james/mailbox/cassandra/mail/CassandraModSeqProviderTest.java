@@ -25,6 +25,7 @@ import java.util.stream.LongStream;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
@@ -52,8 +53,9 @@ public class CassandraModSeqProviderTest {
     @Before
     public void setUpClass() throws Exception {
         CASSANDRA.ensureAllTables();
-        modSeqProvider = new CassandraModSeqProvider(CASSANDRA.getConf());
-        mapper = new CassandraMailboxMapper(CASSANDRA.getConf(), CASSANDRA.getTypesProvider(), MAX_RETRY);
+        CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(CASSANDRA.getConf());
+        modSeqProvider = new CassandraModSeqProvider(CASSANDRA.getConf(), preparedStatements);
+        mapper = new CassandraMailboxMapper(CASSANDRA.getConf(), CASSANDRA.getTypesProvider(), preparedStatements, MAX_RETRY);
         MailboxPath path = new MailboxPath("gsoc", "ieugen", "Trash");
         mailbox = new SimpleMailbox(path, 1234);
         mapper.save(mailbox);
@@ -99,4 +101,13 @@ public class CassandraModSeqProviderTest {
             .count();
         assertThat(nbValues).isEqualTo(nbEntries);
     }
+
+    @Test
+    public void nextModSeqsShouldReturnConsecutiveValues() throws Exception {
+        long highestModSeq = modSeqProvider.highestModSeq(null, mailbox);
+
+        assertThat(modSeqProvider.nextModSeqs(null, mailbox, 3))
+            .containsExactly(highestModSeq + 1, highestModSeq + 2, highestModSeq + 3);
+        assertThat(modSeqProvider.highestModSeq(null, mailbox)).isEqualTo(highestModSeq + 3);
+    }
 }
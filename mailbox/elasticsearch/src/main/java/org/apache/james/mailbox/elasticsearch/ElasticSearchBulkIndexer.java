@@ -0,0 +1,445 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Buffers index, update and delete operations and sends them to ElasticSearch as asynchronous bulk requests.
+ *
+ * Pending operations targeting the same document are coalesced, and are flushed once maxActions operations or maxBytes of
+ * documents are buffered, or every flushInterval. At most maxConcurrentRequests bulk requests are in flight: callers
+ * triggering a flush block until one completes. A document is never part of two in flight requests, so that operations
+ * on it are applied in order.
+ *
+ * Items failing with a transient error are retried with an exponential backoff, up to maxRetries times. The document
+ * stays in flight until its retry is queued again, so that later operations on it are not sent before the retry.
+ */
+public class ElasticSearchBulkIndexer {
+
+    public static final int DEFAULT_MAX_ACTIONS = 500;
+    public static final long DEFAULT_MAX_BYTES = 5 * 1024 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_IN_MS = 1000;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF_IN_MS = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchBulkIndexer.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    enum OperationType {
+        INDEX,
+        UPDATE,
+        DELETE
+    }
+
+    static class Operation {
+        private final OperationType type;
+        private final String id;
+        private final String content;
+        private final int attempts;
+
+        Operation(OperationType type, String id, String content, int attempts) {
+            this.type = type;
+            this.id = id;
+            this.content = content;
+            this.attempts = attempts;
+        }
+
+        OperationType getType() {
+            return type;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getContent() {
+            return content;
+        }
+
+        long getSize() {
+            return content == null ? id.length() : id.length() + content.length();
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+
+        Operation retried() {
+            return new Operation(type, id, content, attempts + 1);
+        }
+
+        /**
+         * Combine this operation with a later one on the same document.
+         */
+        Operation followedBy(Operation next) {
+            if (next.type != OperationType.UPDATE) {
+                return next;
+            }
+            switch (type) {
+                case INDEX:
+                case UPDATE:
+                    return new Operation(type, id, mergeJson(content, next.content), attempts);
+                default:
+                    return this;
+            }
+        }
+
+        private static String mergeJson(String document, String updatedPart) {
+            try {
+                ObjectNode merged = (ObjectNode) OBJECT_MAPPER.readTree(document);
+                merged.setAll((ObjectNode) OBJECT_MAPPER.readTree(updatedPart));
+                return OBJECT_MAPPER.writeValueAsString(merged);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to merge updated document part", e);
+            }
+        }
+    }
+
+    private final Client client;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final long initialBackoffInMs;
+    private final Semaphore inFlightRequests;
+    private final int maxConcurrentRequests;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Operation> pendingOperations;
+    private final Set<String> inFlightIds;
+    private final AtomicLong retriedItems;
+    private final AtomicLong failedItems;
+    private final AtomicInteger scheduledRetries;
+    private long pendingBytes;
+
+    @Inject
+    public ElasticSearchBulkIndexer(Client client) {
+        this(client, DEFAULT_MAX_ACTIONS, DEFAULT_MAX_BYTES, DEFAULT_FLUSH_INTERVAL_IN_MS,
+            DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_IN_MS);
+    }
+
+    public ElasticSearchBulkIndexer(Client client, int maxActions, long maxBytes, long flushIntervalInMs,
+                                    int maxConcurrentRequests, int maxRetries, long initialBackoffInMs) {
+        Preconditions.checkArgument(maxActions > 0, "maxActions should be strictly positive");
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes should be strictly positive");
+        Preconditions.checkArgument(flushIntervalInMs > 0, "flushIntervalInMs should be strictly positive");
+        Preconditions.checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests should be strictly positive");
+        Preconditions.checkArgument(maxRetries >= 0, "maxRetries should be positive");
+        this.client = client;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.initialBackoffInMs = initialBackoffInMs;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.inFlightRequests = new Semaphore(maxConcurrentRequests);
+        this.pendingOperations = new LinkedHashMap<>();
+        this.inFlightIds = new HashSet<>();
+        this.retriedItems = new AtomicLong();
+        this.failedItems = new AtomicLong();
+        this.scheduledRetries = new AtomicInteger();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("elasticsearch-bulk-indexer-%d")
+                .setDaemon(true)
+                .build());
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalInMs, flushIntervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void index(String id, String content) {
+        Preconditions.checkArgument(content != null, "content should be provided");
+        enqueue(new Operation(OperationType.INDEX, id, content, 0));
+    }
+
+    public void update(String id, String updatedDocumentPart) {
+        Preconditions.checkArgument(updatedDocumentPart != null, "updatedDocumentPart should be provided");
+        enqueue(new Operation(OperationType.UPDATE, id, updatedDocumentPart, 0));
+    }
+
+    public void delete(String id) {
+        enqueue(new Operation(OperationType.DELETE, id, null, 0));
+    }
+
+    /**
+     * Send pending operations, blocking while maxConcurrentRequests bulk requests are in flight.
+     */
+    public void flush() {
+        inFlightRequests.acquireUninterruptibly();
+        List<Operation> batch = drainBatch();
+        if (batch.isEmpty()) {
+            inFlightRequests.release();
+            return;
+        }
+        execute(batch);
+    }
+
+    /**
+     * @return the count of operations waiting to be sent
+     */
+    public synchronized int getQueueDepth() {
+        return pendingOperations.size();
+    }
+
+    public int getInFlightRequests() {
+        return maxConcurrentRequests - inFlightRequests.availablePermits();
+    }
+
+    public long getRetriedItems() {
+        return retriedItems.get();
+    }
+
+    public long getFailedItems() {
+        return failedItems.get();
+    }
+
+    /**
+     * Wait for pending operations, including the ones waiting for a retry, to be sent and acknowledged.
+     *
+     * @return true if everything was sent before the timeout elapsed
+     */
+    public boolean awaitIdle(long timeoutInMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutInMs;
+        while (System.currentTimeMillis() < deadline) {
+            flush();
+            if (getQueueDepth() == 0 && getInFlightRequests() == 0 && scheduledRetries.get() == 0) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            if (!awaitIdle(DEFAULT_FLUSH_INTERVAL_IN_MS * 10)) {
+                LOGGER.warn("{} operations were not sent to ElasticSearch before stopping", getQueueDepth());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void enqueue(Operation operation) {
+        if (coalesce(operation)) {
+            flush();
+        }
+    }
+
+    /**
+     * @return true when a flush threshold is reached
+     */
+    private synchronized boolean coalesce(Operation operation) {
+        Operation previous = pendingOperations.get(operation.getId());
+        if (previous == null) {
+            putPending(operation);
+        } else {
+            replacePending(previous, previous.followedBy(operation));
+        }
+        return pendingOperations.size() >= maxActions || pendingBytes >= maxBytes;
+    }
+
+    /**
+     * A retried operation happened before any operation enqueued meanwhile for the same document, which were kept
+     * pending as the document was still in flight.
+     */
+    private synchronized void requeue(Operation operation) {
+        inFlightIds.remove(operation.getId());
+        Operation next = pendingOperations.get(operation.getId());
+        if (next == null) {
+            putPending(operation);
+        } else {
+            replacePending(next, operation.followedBy(next));
+        }
+    }
+
+    private void putPending(Operation operation) {
+        pendingOperations.put(operation.getId(), operation);
+        pendingBytes += operation.getSize();
+    }
+
+    private void replacePending(Operation replaced, Operation operation) {
+        pendingBytes -= replaced.getSize();
+        putPending(operation);
+    }
+
+    private synchronized List<Operation> drainBatch() {
+        List<Operation> batch = new ArrayList<>();
+        Iterator<Operation> iterator = pendingOperations.values().iterator();
+        while (iterator.hasNext() && batch.size() < maxActions) {
+            Operation operation = iterator.next();
+            if (!inFlightIds.contains(operation.getId())) {
+                iterator.remove();
+                pendingBytes -= operation.getSize();
+                inFlightIds.add(operation.getId());
+                batch.add(operation);
+            }
+        }
+        return batch;
+    }
+
+    private void execute(List<Operation> batch) {
+        BulkRequestBuilder bulkRequestBuilder = client.prepareBulk();
+        batch.forEach(operation -> addTo(bulkRequestBuilder, operation));
+        try {
+            bulkRequestBuilder.execute(new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    List<Operation> retries = new ArrayList<>();
+                    if (response.hasFailures()) {
+                        retries = handleFailures(batch, response);
+                    }
+                    completed(batch, retries);
+                    retries.forEach(ElasticSearchBulkIndexer.this::scheduleRetry);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    failed(batch, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            failed(batch, e);
+        }
+    }
+
+    private void failed(List<Operation> batch, Throwable e) {
+        LOGGER.warn("Bulk request of {} operations failed", batch.size(), e);
+        List<Operation> retries = batch.stream()
+            .filter(this::shouldRetry)
+            .collect(Collectors.toList());
+        completed(batch, retries);
+        retries.forEach(this::scheduleRetry);
+    }
+
+    private void addTo(BulkRequestBuilder bulkRequestBuilder, Operation operation) {
+        switch (operation.getType()) {
+            case INDEX:
+                bulkRequestBuilder.add(client.prepareIndex(ElasticSearchIndexer.MAILBOX_INDEX, ElasticSearchIndexer.MESSAGE_TYPE, operation.getId())
+                    .setSource(operation.getContent()));
+                break;
+            case UPDATE:
+                bulkRequestBuilder.add(client.prepareUpdate(ElasticSearchIndexer.MAILBOX_INDEX, ElasticSearchIndexer.MESSAGE_TYPE, operation.getId())
+                    .setDoc(operation.getContent()));
+                break;
+            case DELETE:
+                bulkRequestBuilder.add(client.prepareDelete(ElasticSearchIndexer.MAILBOX_INDEX, ElasticSearchIndexer.MESSAGE_TYPE, operation.getId()));
+                break;
+        }
+    }
+
+    /**
+     * Documents of operations to be retried stay in flight until the retry is queued again.
+     */
+    private void completed(List<Operation> batch, List<Operation> retries) {
+        synchronized (this) {
+            batch.forEach(operation -> inFlightIds.remove(operation.getId()));
+            retries.forEach(operation -> inFlightIds.add(operation.getId()));
+        }
+        inFlightRequests.release();
+    }
+
+    /**
+     * @return the failed operations to retry
+     */
+    private List<Operation> handleFailures(List<Operation> batch, BulkResponse response) {
+        List<Operation> retries = new ArrayList<>();
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                Operation operation = batch.get(item.getItemId());
+                if (isTransient(item.getFailure().getStatus())) {
+                    if (shouldRetry(operation)) {
+                        retries.add(operation);
+                    }
+                } else {
+                    failedItems.incrementAndGet();
+                    LOGGER.error("Unable to {} document {}: {}", operation.getType(), operation.getId(), item.getFailureMessage());
+                }
+            }
+        }
+        return retries;
+    }
+
+    private boolean isTransient(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500;
+    }
+
+    private boolean shouldRetry(Operation operation) {
+        if (operation.getAttempts() >= maxRetries) {
+            failedItems.incrementAndGet();
+            LOGGER.error("Giving up {} of document {} after {} attempts", operation.getType(), operation.getId(), operation.getAttempts() + 1);
+            return false;
+        }
+        return true;
+    }
+
+    private void scheduleRetry(Operation operation) {
+        retriedItems.incrementAndGet();
+        scheduledRetries.incrementAndGet();
+        long backoff = initialBackoffInMs << operation.getAttempts();
+        scheduler.schedule(() -> {
+            try {
+                requeue(operation.retried());
+            } finally {
+                scheduledRetries.decrementAndGet();
+            }
+        }, backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOGGER.error("Error while flushing bulk operations", e);
+        }
+    }
+}
@@ -70,7 +70,7 @@ public class ElasticSearchIndexer {
     
     public IndexResponse indexMessage(String id, String content) {
         checkArgument(content);
-        LOGGER.debug(String.format("Indexing %s: %s", id, content));
+        LOGGER.debug("Indexing {}: {} characters", id, content.length());
         return client.prepareIndex(MAILBOX_INDEX, MESSAGE_TYPE, id)
             .setSource(content)
             .get();
@@ -25,12 +25,14 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
 import org.apache.james.mailbox.MailboxManager.SearchCapabilities;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.elasticsearch.ElasticSearchBulkIndexer;
 import org.apache.james.mailbox.elasticsearch.ElasticSearchIndexer;
 import org.apache.james.mailbox.elasticsearch.json.JsonMessageConstants;
 import org.apache.james.mailbox.elasticsearch.json.MessageToElasticSearchJson;
@@ -55,16 +57,35 @@ public class ElasticSearchListeningMessageSearchIndex extends ListeningMessageSe
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ElasticSearchListeningMessageSearchIndex.class);
     private final static String ID_SEPARATOR = ":";
+    private final static long DELETE_ALL_DRAIN_TIMEOUT_IN_MS = 30000;
 
     private final ElasticSearchIndexer indexer;
+    private final Optional<ElasticSearchBulkIndexer> bulkIndexer;
     private final ElasticSearchSearcher searcher;
     private final MessageToElasticSearchJson messageToElasticSearchJson;
 
+    /**
+     * Index messages synchronously, on the thread delivering the event.
+     */
     @Inject
     public ElasticSearchListeningMessageSearchIndex(MessageMapperFactory factory, ElasticSearchIndexer indexer,
+        ElasticSearchSearcher searcher, MessageToElasticSearchJson messageToElasticSearchJson) {
+        this(factory, indexer, Optional.empty(), searcher, messageToElasticSearchJson);
+    }
+
+    /**
+     * Buffer index, update and delete operations into the given {@link ElasticSearchBulkIndexer}.
+     */
+    public ElasticSearchListeningMessageSearchIndex(MessageMapperFactory factory, ElasticSearchIndexer indexer, ElasticSearchBulkIndexer bulkIndexer,
+        ElasticSearchSearcher searcher, MessageToElasticSearchJson messageToElasticSearchJson) {
+        this(factory, indexer, Optional.of(bulkIndexer), searcher, messageToElasticSearchJson);
+    }
+
+    private ElasticSearchListeningMessageSearchIndex(MessageMapperFactory factory, ElasticSearchIndexer indexer, Optional<ElasticSearchBulkIndexer> bulkIndexer,
         ElasticSearchSearcher searcher, MessageToElasticSearchJson messageToElasticSearchJson) {
         super(factory);
         this.indexer = indexer;
+        this.bulkIndexer = bulkIndexer;
         this.messageToElasticSearchJson = messageToElasticSearchJson;
         this.searcher = searcher;
     }
@@ -100,7 +121,13 @@ public class ElasticSearchListeningMessageSearchIndex extends ListeningMessageSe
     @Override
     public void add(MailboxSession session, Mailbox mailbox, MailboxMessage message) throws MailboxException {
         try {
-            indexer.indexMessage(indexIdFor(mailbox, message.getUid()), messageToElasticSearchJson.convertToJson(message, ImmutableList.of(session.getUser())));
+            String id = indexIdFor(mailbox, message.getUid());
+            String content = messageToElasticSearchJson.convertToJson(message, ImmutableList.of(session.getUser()));
+            if (bulkIndexer.isPresent()) {
+                bulkIndexer.get().index(id, content);
+            } else {
+                indexer.indexMessage(id, content);
+            }
         } catch (Exception e) {
             LOGGER.error("Error when indexing message " + message.getUid(), e);
         }
@@ -109,9 +136,14 @@ public class ElasticSearchListeningMessageSearchIndex extends ListeningMessageSe
     @Override
     public void delete(MailboxSession session, Mailbox mailbox, List<Long> expungedUids) throws MailboxException {
         try {
-            indexer.deleteMessages(expungedUids.stream()
+            List<String> ids = expungedUids.stream()
                 .map(uid ->  indexIdFor(mailbox, uid))
-                .collect(Collectors.toList()));
+                .collect(Collectors.toList());
+            if (bulkIndexer.isPresent()) {
+                ids.forEach(bulkIndexer.get()::delete);
+            } else {
+                indexer.deleteMessages(ids);
+            }
         } catch (Exception e) {
             LOGGER.error("Error when deleting messages {} in mailbox {} from index", mailbox.getMailboxId().serialize(), expungedUids, e);
         }
@@ -120,6 +152,9 @@ public class ElasticSearchListeningMessageSearchIndex extends ListeningMessageSe
     @Override
     public void deleteAll(MailboxSession session, Mailbox mailbox) throws MailboxException {
         try {
+            if (bulkIndexer.isPresent() && !bulkIndexer.get().awaitIdle(DELETE_ALL_DRAIN_TIMEOUT_IN_MS)) {
+                LOGGER.warn("Buffered operations were not all acknowledged before deleting messages of mailbox {}", mailbox.getMailboxId().serialize());
+            }
             indexer.deleteAllMatchingQuery(
                 termQuery(
                     JsonMessageConstants.MAILBOX_ID,
@@ -132,9 +167,14 @@ public class ElasticSearchListeningMessageSearchIndex extends ListeningMessageSe
     @Override
     public void update(MailboxSession session, Mailbox mailbox, List<UpdatedFlags> updatedFlagsList) throws MailboxException {
         try {
-            indexer.updateMessages(updatedFlagsList.stream()
+            List<ElasticSearchIndexer.UpdatedRepresentation> updatedRepresentations = updatedFlagsList.stream()
                 .map(updatedFlags -> createUpdatedDocumentPartFromUpdatedFlags(mailbox, updatedFlags))
-                .collect(Collectors.toList()));
+                .collect(Collectors.toList());
+            if (bulkIndexer.isPresent()) {
+                updatedRepresentations.forEach(updated -> bulkIndexer.get().update(updated.getId(), updated.getUpdatedDocumentPart()));
+            } else {
+                indexer.updateMessages(updatedRepresentations);
+            }
         } catch (Exception e) {
             LOGGER.error("Error when updating index on mailbox {}", mailbox.getMailboxId().serialize(), e);
         }
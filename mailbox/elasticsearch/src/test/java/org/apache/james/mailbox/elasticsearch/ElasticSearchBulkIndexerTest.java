@@ -0,0 +1,199 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.james.mailbox.elasticsearch.utils.TestingClientProvider;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.node.Node;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TemporaryFolder;
+
+public class ElasticSearchBulkIndexerTest {
+
+    private static final int MAX_ACTIONS = 3;
+    private static final long MAX_BYTES = 1024 * 1024;
+    private static final long FLUSH_INTERVAL_IN_MS = 60000;
+    private static final int MAX_CONCURRENT_REQUESTS = 1;
+    private static final int MAX_RETRIES = 2;
+    private static final long INITIAL_BACKOFF_IN_MS = 10;
+    private static final long TIMEOUT_IN_MS = 10000;
+    private static final long LONG_BACKOFF_IN_MS = 1000;
+
+    private TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private EmbeddedElasticSearch embeddedElasticSearch= new EmbeddedElasticSearch(temporaryFolder);
+
+    @Rule
+    public RuleChain ruleChain = RuleChain.outerRule(temporaryFolder).around(embeddedElasticSearch);
+
+    private Node node;
+    private TestingClientProvider clientProvider;
+    private ElasticSearchBulkIndexer testee;
+
+    @Before
+    public void setup() throws IOException {
+        node = embeddedElasticSearch.getNode();
+        clientProvider = new TestingClientProvider(node);
+        testee = new ElasticSearchBulkIndexer(clientProvider.get(), MAX_ACTIONS, MAX_BYTES, FLUSH_INTERVAL_IN_MS,
+            MAX_CONCURRENT_REQUESTS, MAX_RETRIES, INITIAL_BACKOFF_IN_MS);
+    }
+
+    @After
+    public void tearDown() {
+        testee.stop();
+    }
+
+    @Test
+    public void indexShouldBeBufferedUntilFlush() throws Exception {
+        testee.index("1", "{\"message\": \"trying out Elasticsearch\"}");
+
+        assertThat(testee.getQueueDepth()).isEqualTo(1);
+        assertThat(testee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+        embeddedElasticSearch.awaitForElasticSearch();
+
+        assertThat(count(QueryBuilders.matchQuery("message", "trying"))).isEqualTo(1);
+    }
+
+    @Test
+    public void reachingMaxActionsShouldTriggerAFlush() throws Exception {
+        testee.index("1", "{\"message\": \"trying out Elasticsearch\"}");
+        testee.index("2", "{\"message\": \"trying out Elasticsearch\"}");
+        testee.index("3", "{\"message\": \"trying out Elasticsearch\"}");
+
+        assertThat(testee.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void updateShouldBeCoalescedWithAPendingIndex() throws Exception {
+        testee.index("1", "{\"message\": \"trying out Elasticsearch\",\"field\":\"Should be unchanged\"}");
+        testee.update("1", "{\"message\": \"mastering out Elasticsearch\"}");
+
+        assertThat(testee.getQueueDepth()).isEqualTo(1);
+        assertThat(testee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+        embeddedElasticSearch.awaitForElasticSearch();
+
+        assertThat(count(QueryBuilders.matchQuery("message", "mastering"))).isEqualTo(1);
+        assertThat(count(QueryBuilders.matchQuery("field", "unchanged"))).isEqualTo(1);
+    }
+
+    @Test
+    public void deleteShouldSupersedeAPendingIndex() throws Exception {
+        testee.index("1", "{\"message\": \"trying out Elasticsearch\"}");
+        testee.delete("1");
+
+        assertThat(testee.getQueueDepth()).isEqualTo(1);
+        assertThat(testee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+        embeddedElasticSearch.awaitForElasticSearch();
+
+        assertThat(count(QueryBuilders.matchAllQuery())).isEqualTo(0);
+    }
+
+    @Test
+    public void updateAfterAFlushedIndexShouldApply() throws Exception {
+        testee.index("1", "{\"message\": \"trying out Elasticsearch\"}");
+        assertThat(testee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+
+        testee.update("1", "{\"message\": \"mastering out Elasticsearch\"}");
+        assertThat(testee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+        embeddedElasticSearch.awaitForElasticSearch();
+
+        assertThat(count(QueryBuilders.matchQuery("message", "mastering"))).isEqualTo(1);
+    }
+
+    @Test
+    public void updateOfAMissingDocumentShouldFailWithoutRetry() throws Exception {
+        testee.update("1", "{\"message\": \"mastering out Elasticsearch\"}");
+
+        assertThat(testee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+
+        assertThat(testee.getFailedItems()).isEqualTo(1);
+        assertThat(testee.getRetriedItems()).isEqualTo(0);
+    }
+
+    @Test
+    public void deleteShouldNotBeSentBeforeARetriedIndex() throws Exception {
+        Client client = spy(clientProvider.get());
+        AtomicBoolean failed = new AtomicBoolean();
+        doAnswer(invocation -> failed.getAndSet(true) ? invocation.callRealMethod() : failingBulkRequestBuilder())
+            .when(client).prepareBulk();
+        ElasticSearchBulkIndexer retryingTestee = new ElasticSearchBulkIndexer(client, MAX_ACTIONS, MAX_BYTES,
+            FLUSH_INTERVAL_IN_MS, MAX_CONCURRENT_REQUESTS, MAX_RETRIES, LONG_BACKOFF_IN_MS);
+        try {
+            retryingTestee.index("1", "{\"message\": \"trying out Elasticsearch\"}");
+            retryingTestee.flush();
+
+            retryingTestee.delete("1");
+            retryingTestee.flush();
+
+            assertThat(retryingTestee.getQueueDepth()).isEqualTo(1);
+            assertThat(retryingTestee.awaitIdle(TIMEOUT_IN_MS)).isTrue();
+            embeddedElasticSearch.awaitForElasticSearch();
+
+            assertThat(retryingTestee.getRetriedItems()).isEqualTo(1);
+            assertThat(count(QueryBuilders.matchAllQuery())).isEqualTo(0);
+        } finally {
+            retryingTestee.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexShouldThrowWhenJsonIsNull() {
+        testee.index("1", null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BulkRequestBuilder failingBulkRequestBuilder() {
+        BulkRequestBuilder bulkRequestBuilder = mock(BulkRequestBuilder.class);
+        doAnswer(invocation -> {
+            ((ActionListener<BulkResponse>) invocation.getArguments()[0]).onFailure(new ElasticsearchException("Node unavailable"));
+            return null;
+        }).when(bulkRequestBuilder).execute(any(ActionListener.class));
+        return bulkRequestBuilder;
+    }
+
+    private long count(QueryBuilder query) {
+        try (Client client = node.client()) {
+            SearchResponse searchResponse = client.prepareSearch(ElasticSearchIndexer.MAILBOX_INDEX)
+                .setTypes(ElasticSearchIndexer.MESSAGE_TYPE)
+                .setQuery(query)
+                .get();
+            return searchResponse.getHits().getTotalHits();
+        }
+    }
+}
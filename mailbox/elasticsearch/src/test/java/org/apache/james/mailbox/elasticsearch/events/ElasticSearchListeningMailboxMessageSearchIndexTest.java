@@ -33,6 +33,7 @@ import javax.mail.Flags;
 
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MailboxSession.User;
+import org.apache.james.mailbox.elasticsearch.ElasticSearchBulkIndexer;
 import org.apache.james.mailbox.elasticsearch.ElasticSearchIndexer;
 import org.apache.james.mailbox.elasticsearch.json.MessageToElasticSearchJson;
 import org.apache.james.mailbox.elasticsearch.search.ElasticSearchSearcher;
@@ -59,7 +60,9 @@ public class ElasticSearchListeningMailboxMessageSearchIndexTest {
     private IMocksControl control;
 
     private ElasticSearchIndexer indexer;
+    private ElasticSearchBulkIndexer bulkIndexer;
     private ElasticSearchListeningMessageSearchIndex testee;
+    private ElasticSearchListeningMessageSearchIndex bulkTestee;
     
     @Before
     public void setup() throws JsonProcessingException {
@@ -70,12 +73,14 @@ public class ElasticSearchListeningMailboxMessageSearchIndexTest {
         ElasticSearchSearcher elasticSearchSearcher = control.createMock(ElasticSearchSearcher.class);
 
         indexer = control.createMock(ElasticSearchIndexer.class);
+        bulkIndexer = control.createMock(ElasticSearchBulkIndexer.class);
 
         List<User> users = anyObject();
         expect(messageToElasticSearchJson.convertToJson(anyObject(MailboxMessage.class), users)).andReturn("json content").anyTimes();
         expect(messageToElasticSearchJson.getUpdatedJsonMessagePart(anyObject(Flags.class), anyLong())).andReturn("json updated content").anyTimes();
 
         testee = new ElasticSearchListeningMessageSearchIndex(mapperFactory, indexer, elasticSearchSearcher, messageToElasticSearchJson);
+        bulkTestee = new ElasticSearchListeningMessageSearchIndex(mapperFactory, indexer, bulkIndexer, elasticSearchSearcher, messageToElasticSearchJson);
     }
     
     @Test
@@ -267,4 +272,61 @@ public class ElasticSearchListeningMailboxMessageSearchIndexTest {
         testee.deleteAll(session, mailbox);
         control.verify();
     }
+
+    @Test
+    public void addShouldBufferIntoBulkIndexerWhenConfigured() throws Exception {
+        MailboxSession.User user = control.createMock(MailboxSession.User.class);
+        MailboxSession session = control.createMock(MailboxSession.class);
+        expect(session.getUser())
+            .andReturn(user);
+
+        Mailbox mailbox = control.createMock(Mailbox.class);
+        long messageId = 1;
+        TestId mailboxId = TestId.of(12);
+        expect(mailbox.getMailboxId()).andReturn(mailboxId);
+        MailboxMessage message = mockedMessage(messageId);
+
+        bulkIndexer.index(mailboxId.serialize() + ":" + messageId, "json content");
+        EasyMock.expectLastCall();
+
+        control.replay();
+        bulkTestee.add(session, mailbox, message);
+        control.verify();
+    }
+
+    @Test
+    public void updateShouldBufferIntoBulkIndexerWhenConfigured() throws Exception {
+        MailboxSession session = control.createMock(MailboxSession.class);
+
+        Mailbox mailbox = control.createMock(Mailbox.class);
+        Flags flags = new Flags();
+        long messageId = 1;
+        UpdatedFlags updatedFlags = new UpdatedFlags(messageId, MODSEQ, flags, flags);
+        TestId mailboxId = TestId.of(12);
+        expect(mailbox.getMailboxId()).andReturn(mailboxId);
+
+        bulkIndexer.update(mailboxId.serialize() + ":" + messageId, "json updated content");
+        EasyMock.expectLastCall();
+
+        control.replay();
+        bulkTestee.update(session, mailbox, Lists.newArrayList(updatedFlags));
+        control.verify();
+    }
+
+    @Test
+    public void deleteAllShouldDrainBulkIndexerWhenConfigured() throws Exception {
+        MailboxSession session = control.createMock(MailboxSession.class);
+
+        Mailbox mailbox = control.createMock(Mailbox.class);
+        TestId mailboxId = TestId.of(12);
+        expect(mailbox.getMailboxId()).andReturn(mailboxId);
+
+        expect(bulkIndexer.awaitIdle(anyLong())).andReturn(true);
+        indexer.deleteAllMatchingQuery(anyObject(QueryBuilder.class));
+        EasyMock.expectLastCall();
+
+        control.replay();
+        bulkTestee.deleteAll(session, mailbox);
+        control.verify();
+    }
 }
@@ -23,6 +23,8 @@ import static org.apache.james.mailbox.hbase.HBaseNames.MAILBOX_CF;
 import static org.apache.james.mailbox.hbase.HBaseNames.MAILBOX_HIGHEST_MODSEQ;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Get;
@@ -78,11 +80,25 @@ public class HBaseModSeqProvider implements ModSeqProvider {
 
     @Override
     public long nextModSeq(MailboxSession session, Mailbox mailbox) throws MailboxException {
+        return incrementModSeq(mailbox, 1);
+    }
+
+    @Override
+    public List<Long> nextModSeqs(MailboxSession session, Mailbox mailbox, int count) throws MailboxException {
+        long last = incrementModSeq(mailbox, count);
+        List<Long> modSeqs = new ArrayList<Long>(count);
+        for (long modSeq = last - count + 1; modSeq <= last; modSeq++) {
+            modSeqs.add(modSeq);
+        }
+        return modSeqs;
+    }
+
+    private long incrementModSeq(Mailbox mailbox, long amount) throws MailboxException {
         HTable mailboxes = null;
         HBaseId mailboxId = (HBaseId) mailbox.getMailboxId();
         try {
             mailboxes = new HTable(conf, MAILBOXES_TABLE);
-            long newValue = mailboxes.incrementColumnValue(mailboxId.toBytes(), MAILBOX_CF, MAILBOX_HIGHEST_MODSEQ, 1);
+            long newValue = mailboxes.incrementColumnValue(mailboxId.toBytes(), MAILBOX_CF, MAILBOX_HIGHEST_MODSEQ, amount);
             return newValue;
         } catch (IOException e) {
             throw new MailboxException("lastUid", e);
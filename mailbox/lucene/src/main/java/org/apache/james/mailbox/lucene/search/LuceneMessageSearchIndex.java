@@ -36,7 +36,14 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 
@@ -91,7 +98,6 @@ import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
@@ -104,6 +110,7 @@ import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
@@ -112,13 +119,15 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
-import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Lucene based {@link ListeningMessageSearchIndex} which offers message searching via a Lucene index
@@ -128,6 +137,8 @@ import com.google.common.collect.Multimap;
  * @param 
  */
 public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneMessageSearchIndex.class);
     private final static Date MAX_DATE;
     private final static Date MIN_DATE;
     
@@ -144,6 +155,17 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
      * Default max query results
      */
     public final static int DEFAULT_MAX_QUERY_RESULTS = 100000;
+
+    /**
+     * Default interval between two refreshes of the shared searcher. 0 means the searcher is refreshed before each
+     * search following a modification of the index.
+     */
+    public final static long DEFAULT_REFRESH_INTERVAL_IN_MS = 0;
+
+    /**
+     * Default count of index modifications between two commits. 0 means the index is only committed when closed.
+     */
+    public final static int DEFAULT_COMMIT_BATCH_SIZE = 0;
     
     /**
      * {@link Field} which will contain the unique index of the {@link Document}
@@ -340,9 +362,22 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
     
     private final Factory mailboxIdFactory;
     private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean pendingChanges = new AtomicBoolean(false);
+    private final AtomicInteger uncommittedChanges = new AtomicInteger();
+    private final AtomicLong searcherGeneration = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong totalRefreshTimeInMs = new AtomicLong();
+    private volatile long lastRefreshTimeInMs = 0;
+    private ScheduledExecutorService refreshScheduler;
     
     private int maxQueryResults = DEFAULT_MAX_QUERY_RESULTS;
 
+    private long refreshIntervalInMs = DEFAULT_REFRESH_INTERVAL_IN_MS;
+
+    private int commitBatchSize = DEFAULT_COMMIT_BATCH_SIZE;
+
     private boolean suffixMatch = false;
 
     
@@ -355,13 +390,15 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         super(factory);
         this.mailboxIdFactory = mailboxIdFactory;
         this.writer = new IndexWriter(directory,  createConfig(createAnalyzer(lenient), dropIndexOnStart));
+        this.searcherManager = new SearcherManager(writer, true, null);
     }
     
     
-    public LuceneMessageSearchIndex(MessageMapperFactory factory, MailboxId.Factory mailboxIdFactory, IndexWriter writer) {
+    public LuceneMessageSearchIndex(MessageMapperFactory factory, MailboxId.Factory mailboxIdFactory, IndexWriter writer) throws IOException {
         super(factory);
         this.mailboxIdFactory = mailboxIdFactory;
         this.writer = writer;
+        this.searcherManager = new SearcherManager(writer, true, null);
     }
 
     @Override
@@ -383,6 +420,93 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
     public void setMaxQueryResults(int maxQueryResults) {
         this.maxQueryResults = maxQueryResults;
     }
+
+    /**
+     * Set the interval between two refreshes of the searcher shared by searches. When strictly positive, searches do
+     * not wait for the messages added or removed since the last refresh, but flag updates are visible as soon as
+     * they are indexed. The default is
+     * {@link #DEFAULT_REFRESH_INTERVAL_IN_MS}: changes are visible to the next search.
+     * 
+     * @param refreshIntervalInMs
+     */
+    public synchronized void setRefreshIntervalInMs(long refreshIntervalInMs) {
+        Preconditions.checkArgument(refreshIntervalInMs >= 0, "Refresh interval should be positive");
+        this.refreshIntervalInMs = refreshIntervalInMs;
+        if (refreshScheduler != null) {
+            refreshScheduler.shutdownNow();
+            refreshScheduler = null;
+        }
+        if (refreshIntervalInMs > 0) {
+            refreshScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-searcher-refresh")
+                .setDaemon(true)
+                .build());
+            refreshScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshSearcherIfNeeded();
+                    } catch (IOException e) {
+                        LOGGER.error("Unable to refresh Lucene searcher", e);
+                    }
+                }
+            }, refreshIntervalInMs, refreshIntervalInMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Set the count of index modifications after which the index is committed. The default is
+     * {@link #DEFAULT_COMMIT_BATCH_SIZE}: the index is only committed when closed.
+     * 
+     * @param commitBatchSize
+     */
+    public void setCommitBatchSize(int commitBatchSize) {
+        Preconditions.checkArgument(commitBatchSize >= 0, "Commit batch size should be positive");
+        this.commitBatchSize = commitBatchSize;
+    }
+
+    /**
+     * @return the count of searchers opened since the creation of this index, each one reflecting a newer state of it
+     */
+    public long getSearcherGeneration() {
+        return searcherGeneration.get();
+    }
+
+    /**
+     * @return the count of refreshes of the shared searcher
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * @return the time spent refreshing the shared searcher, in milliseconds
+     */
+    public long getTotalRefreshTimeInMs() {
+        return totalRefreshTimeInMs.get();
+    }
+
+    /**
+     * @return the duration of the last refresh of the shared searcher, in milliseconds
+     */
+    public long getLastRefreshTimeInMs() {
+        return lastRefreshTimeInMs;
+    }
+
+    /**
+     * Commit pending changes and release the resources held by this index. The writer is not closed.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (this) {
+            if (refreshScheduler != null) {
+                refreshScheduler.shutdownNow();
+                refreshScheduler = null;
+            }
+        }
+        writer.commit();
+        searcherManager.close();
+    }
     
     protected IndexWriterConfig createConfig(Analyzer analyzer, boolean dropIndexOnStart) {
         IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_31, analyzer);
@@ -454,7 +578,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         Query inMailboxes = buildQueryFromMailboxes(searchQuery.getInMailboxes());
         
         try {
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = acquireSearcher(refreshIntervalInMs == 0);
             BooleanQuery query = new BooleanQuery();
             query.add(inMailboxes, BooleanClause.Occur.MUST);
             // Not return flags documents
@@ -476,13 +600,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         } catch (IOException e) {
             throw new MailboxException("Unable to search the mailbox", e);
         } finally {
-            if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (IOException e) {
-                    // ignore on close
-                }
-            }
+            releaseSearcher(searcher);
         }
         return results;
     }
@@ -960,7 +1078,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
 
         try {
             Set<Long> uids = new HashSet<Long>();
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = acquireSearcher(refreshIntervalInMs == 0);
             
             // query for all the documents sorted by uid
             TopDocs docs = searcher.search(query, null, maxQueryResults, new Sort(UID_SORT));
@@ -989,13 +1107,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         } catch (IOException e) {
             throw new MailboxException("Unable to search mailbox " + inMailboxes, e);
         } finally {
-            if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (IOException e) {
-                    // ignore on close
-                }
-            }
+            releaseSearcher(searcher);
         }
     }
     
@@ -1251,6 +1363,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         try {
             writer.addDocument(doc);
             writer.addDocument(flagsDoc);
+            indexChanged();
         } catch (CorruptIndexException e) {
             throw new MailboxException("Unable to add message to index", e);
         } catch (IOException e) {
@@ -1266,12 +1379,19 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         for (UpdatedFlags updatedFlags : updatedFlagsList) {
             update(mailbox, updatedFlags.getUid(), updatedFlags.getNewFlags());
         }
+        // Flag searches need to see the new flags, whatever the refresh interval
+        try {
+            refreshSearcherIfNeeded();
+        } catch (IOException e) {
+            throw new MailboxException("Unable to refresh searcher after flags update", e);
+        }
     }
 
     private void update(Mailbox mailbox, long uid, Flags f) throws MailboxException {
         IndexSearcher searcher = null;
         try {
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            // The flags document needs to be found even if it was just added
+            searcher = acquireSearcher(true);
             BooleanQuery query = new BooleanQuery();
             query.add(new TermQuery(new Term(MAILBOX_ID_FIELD, mailbox.getMailboxId().serialize())), BooleanClause.Occur.MUST);
             query.add(createQuery(MessageRange.one(uid)), BooleanClause.Occur.MUST);
@@ -1287,6 +1407,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
                     indexFlags(doc, f);
 
                     writer.updateDocument(new Term(ID_FIELD, doc.get(ID_FIELD)), doc);
+                    indexChanged();
 
                 }
             }
@@ -1294,13 +1415,80 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
             throw new MailboxException("Unable to add messages in index", e);
 
         } finally {
+            releaseSearcher(searcher);
+        }
+        
+    }
+
+    /**
+     * Acquire the shared searcher. It needs to be given back using {@link #releaseSearcher(IndexSearcher)}
+     * 
+     * @param upToDate
+     *            if true, the searcher reflects all the changes made to the index so far
+     */
+    private IndexSearcher acquireSearcher(boolean upToDate) throws IOException {
+        if (upToDate) {
+            refreshSearcherIfNeeded();
+        }
+        return searcherManager.acquire();
+    }
+
+    private void releaseSearcher(IndexSearcher searcher) {
+        if (searcher != null) {
             try {
-                IOUtils.closeWhileHandlingException(searcher);
+                searcherManager.release(searcher);
             } catch (IOException e) {
-                //can't happen anyway
+                // ignore on release
             }
         }
-        
+    }
+
+    private void refreshSearcherIfNeeded() throws IOException {
+        if (!pendingChanges.get()) {
+            return;
+        }
+        // Serializing refreshes ensures maybeRefresh does not return before the refresh is done
+        synchronized (refreshLock) {
+            // Cleared before refreshing so that changes made during the refresh are not lost
+            if (!pendingChanges.getAndSet(false)) {
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            IndexSearcher previous = searcherManager.acquire();
+            try {
+                searcherManager.maybeRefresh();
+            } catch (IOException e) {
+                pendingChanges.set(true);
+                throw e;
+            } catch (RuntimeException e) {
+                pendingChanges.set(true);
+                throw e;
+            } finally {
+                searcherManager.release(previous);
+            }
+            IndexSearcher current = searcherManager.acquire();
+            try {
+                if (current != previous) {
+                    searcherGeneration.incrementAndGet();
+                }
+            } finally {
+                searcherManager.release(current);
+            }
+            lastRefreshTimeInMs = System.currentTimeMillis() - startTime;
+            totalRefreshTimeInMs.addAndGet(lastRefreshTimeInMs);
+            refreshCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record a modification of the index, committing it once {@link #commitBatchSize} modifications were done
+     */
+    private void indexChanged() throws IOException {
+        pendingChanges.set(true);
+        if (commitBatchSize > 0 && uncommittedChanges.incrementAndGet() >= commitBatchSize) {
+            uncommittedChanges.set(0);
+            writer.commit();
+        }
     }
 
     /**
@@ -1376,6 +1564,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         
         try {
             writer.deleteDocuments(query);
+            indexChanged();
         } catch (CorruptIndexException e) {
             throw new MailboxException("Unable to delete message from index", e);
 
@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
@@ -43,10 +44,12 @@ import org.apache.james.mailbox.model.SearchQuery.AddressType;
 import org.apache.james.mailbox.model.SearchQuery.DateResolution;
 import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
+import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.MessageBuilder;
 import org.apache.james.mailbox.store.SimpleMailboxMembership;
 import org.apache.james.mailbox.store.TestId;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.store.RAMDirectory;
 import org.junit.Before;
 import org.junit.Test;
@@ -591,6 +594,84 @@ public class LuceneMailboxMessageSearchIndexTest {
         assertThat(result).containsExactly(2L, 3L);
     }
     
+    @Test
+    public void searchShouldReuseSearcherWhenIndexIsUnchanged() throws Exception {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        index.search(session, mailbox, query);
+        long generation = index.getSearcherGeneration();
+
+        index.search(session, mailbox, query);
+
+        assertThat(index.getSearcherGeneration()).isEqualTo(generation);
+    }
+
+    @Test
+    public void searchShouldSeeChangesDoneSinceLastSearch() throws Exception {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        index.search(session, mailbox2, query);
+        long generation = index.getSearcherGeneration();
+
+        index.add(null, mailbox2, new SimpleMailboxMembership(mailbox2.getMailboxId(), 2, 0, new Date(), 20, new Flags(), "Other Body".getBytes(), new HashMap<String, String>()));
+
+        assertThat(index.search(session, mailbox2, query)).containsExactly(1L, 2L);
+        assertThat(index.getSearcherGeneration()).isEqualTo(generation + 1);
+        assertThat(index.getRefreshCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void searchShouldNotWaitForChangesWhenRefreshIntervalIsSet() throws Exception {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        index.search(session, mailbox2, query);
+        index.setRefreshIntervalInMs(TimeUnit.HOURS.toMillis(1));
+
+        index.add(null, mailbox2, new SimpleMailboxMembership(mailbox2.getMailboxId(), 2, 0, new Date(), 20, new Flags(), "Other Body".getBytes(), new HashMap<String, String>()));
+
+        assertThat(index.search(session, mailbox2, query)).containsExactly(1L);
+        index.close();
+    }
+
+    @Test
+    public void flagUpdatesShouldBeVisibleWhenRefreshIntervalIsSet() throws Exception {
+        index.setRefreshIntervalInMs(TimeUnit.HOURS.toMillis(1));
+        index.add(null, mailbox2, new SimpleMailboxMembership(mailbox2.getMailboxId(), 2, 0, new Date(), 20, new Flags(), "Other Body".getBytes(), new HashMap<String, String>()));
+
+        index.update(null, mailbox2, Arrays.asList(new UpdatedFlags(2, 0, new Flags(), new Flags(Flag.FLAGGED))));
+
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.flagIsSet(Flag.FLAGGED));
+        assertThat(index.search(session, mailbox2, query)).containsExactly(2L);
+        index.close();
+    }
+
+    @Test
+    public void changesShouldBeCommittedByBatches() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        LuceneMessageSearchIndex committingIndex = new LuceneMessageSearchIndex(null, new TestId.Factory(), directory, true, useLenient());
+        committingIndex.setCommitBatchSize(2);
+
+        committingIndex.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 1, 0, new Date(), 20, new Flags(), "Body".getBytes(), new HashMap<String, String>()));
+        assertThat(committedDocumentCount(directory)).isEqualTo(0);
+
+        committingIndex.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 2, 0, new Date(), 20, new Flags(), "Body".getBytes(), new HashMap<String, String>()));
+        assertThat(committedDocumentCount(directory)).isEqualTo(4);
+        committingIndex.close();
+    }
+
+    private int committedDocumentCount(RAMDirectory directory) throws Exception {
+        if (!IndexReader.indexExists(directory)) {
+            return 0;
+        }
+        IndexReader reader = IndexReader.open(directory);
+        try {
+            return reader.numDocs();
+        } finally {
+            reader.close();
+        }
+    }
+
     private final class SimpleMailbox implements Mailbox {
         private final TestId id;
 
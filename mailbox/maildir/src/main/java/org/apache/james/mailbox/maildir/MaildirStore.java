@@ -20,7 +20,10 @@ package org.apache.james.mailbox.maildir;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
@@ -50,6 +53,11 @@ public class MaildirStore implements UidProvider, ModSeqProvider {
 
     private boolean messageNameStrictParse = false;
 
+    /**
+     * The last mod-sequence handed out by this store, which keeps them increasing when the clock goes back
+     */
+    private final AtomicLong lastModSeq = new AtomicLong();
+
     /**
      * Construct a MaildirStore with a location. The location String
      * currently may contain the
@@ -251,7 +259,33 @@ public class MaildirStore implements UidProvider, ModSeqProvider {
 
     @Override
     public long nextModSeq(MailboxSession session, Mailbox mailbox) throws MailboxException {
-        return System.currentTimeMillis();
+        return allocateModSeqs(Math.max(System.currentTimeMillis(), highestModSeq(session, mailbox) + 1), 1);
+    }
+
+    @Override
+    public List<Long> nextModSeqs(MailboxSession session, Mailbox mailbox, int count) throws MailboxException {
+        long first = allocateModSeqs(Math.max(System.currentTimeMillis(), highestModSeq(session, mailbox) + 1), count);
+        List<Long> modSeqs = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) {
+            modSeqs.add(first + i);
+        }
+        return modSeqs;
+    }
+
+    /**
+     * Reserve count consecutive mod-sequences, starting at least at lowestFirst and after any mod-sequence
+     * previously handed out
+     * 
+     * @return the first reserved mod-sequence
+     */
+    private long allocateModSeqs(long lowestFirst, int count) {
+        while (true) {
+            long last = lastModSeq.get();
+            long first = Math.max(lowestFirst, last + 1);
+            if (lastModSeq.compareAndSet(last, first + count - 1)) {
+                return first;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,89 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.maildir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MaildirStoreTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private MaildirStore store;
+    private Mailbox mailbox;
+    private MaildirFolder folder;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new MaildirStore(tmpFolder.getRoot().getAbsolutePath() + "/%domain/%user");
+        mailbox = new SimpleMailbox(new MailboxPath("#private", "user@domain.org", "INBOX"), 1);
+        folder = store.createMaildirFolder(mailbox);
+        assertThat(folder.getCurFolder().mkdirs()).isTrue();
+        assertThat(folder.getNewFolder().mkdirs()).isTrue();
+    }
+
+    @Test
+    public void nextModSeqsShouldReturnConsecutiveValues() throws Exception {
+        List<Long> modSeqs = store.nextModSeqs(null, mailbox, 3);
+
+        long first = modSeqs.get(0);
+        assertThat(modSeqs).containsExactly(first, first + 1, first + 2);
+    }
+
+    @Test
+    public void nextModSeqsShouldBeGreaterThanHighestModSeq() throws Exception {
+        long highestModSeq = System.currentTimeMillis() + 3600 * 1000;
+        assertThat(folder.getCurFolder().setLastModified(highestModSeq)).isTrue();
+
+        assertThat(store.nextModSeqs(null, mailbox, 2).get(0)).isGreaterThan(highestModSeq);
+    }
+
+    @Test
+    public void nextModSeqShouldBeGreaterThanHighestModSeq() throws Exception {
+        long highestModSeq = System.currentTimeMillis() + 3600 * 1000;
+        assertThat(folder.getCurFolder().setLastModified(highestModSeq)).isTrue();
+
+        assertThat(store.nextModSeq(null, mailbox)).isGreaterThan(highestModSeq);
+    }
+
+    @Test
+    public void nextModSeqsShouldIncreaseAcrossCalls() throws Exception {
+        List<Long> first = store.nextModSeqs(null, mailbox, 10);
+        List<Long> second = store.nextModSeqs(null, mailbox, 10);
+
+        assertThat(second.get(0)).isGreaterThan(first.get(9));
+    }
+
+    @Test
+    public void nextModSeqShouldBeGreaterThanPreviouslyAllocatedModSeqs() throws Exception {
+        List<Long> modSeqs = store.nextModSeqs(null, mailbox, 1000);
+
+        assertThat(store.nextModSeq(null, mailbox)).isGreaterThan(modSeqs.get(999));
+    }
+}
@@ -19,6 +19,8 @@
 
 package org.apache.james.mailbox.inmemory.mail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -38,6 +40,16 @@ public class InMemoryModSeqProvider implements ModSeqProvider {
 
     }
 
+    @Override
+    public List<Long> nextModSeqs(MailboxSession session, Mailbox mailbox, int count) throws MailboxException {
+        long last = getHighest((InMemoryId) mailbox.getMailboxId()).addAndGet(count);
+        List<Long> modSeqs = new ArrayList<Long>(count);
+        for (long modSeq = last - count + 1; modSeq <= last; modSeq++) {
+            modSeqs.add(modSeq);
+        }
+        return modSeqs;
+    }
+
     @Override
     public long highestModSeq(MailboxSession session, Mailbox mailbox) throws MailboxException {
         return getHighest((InMemoryId) mailbox.getMailboxId()).get();
@@ -19,21 +19,20 @@
 
 package org.apache.james.mailbox.inmemory.mail;
 
-import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
-
+import java.io.IOException;
 import java.io.InputStream;
 
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
 import org.apache.james.mailbox.inmemory.InMemoryMailboxManager;
 import org.apache.james.mailbox.inmemory.InMemoryMailboxSessionMapperFactory;
+import org.apache.james.mailbox.model.MessageAttachment;
 import org.apache.james.mailbox.store.AbstractMailboxManagerAttachmentTest;
 import org.apache.james.mailbox.store.Authenticator;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
 import org.apache.james.mailbox.store.NoMailboxPathLocker;
 import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
+import org.apache.james.mime4j.dom.Entity;
 
 public class InMemoryMailboxManagerAttachmentTest extends AbstractMailboxManagerAttachmentTest {
 
@@ -46,9 +45,12 @@ public class InMemoryMailboxManagerAttachmentTest extends AbstractMailboxManager
         Authenticator noAuthenticator = null;
         mailboxManager = new InMemoryMailboxManager(mailboxSessionMapperFactory, noAuthenticator, new NoMailboxPathLocker(), new UnionMailboxACLResolver(), null, new MessageParser());
         mailboxManager.init();
-        MessageParser failingMessageParser = mock(MessageParser.class);
-        when(failingMessageParser.retrieveAttachments(any(InputStream.class)))
-            .thenThrow(new RuntimeException("Message parser set to fail"));
+        MessageParser failingMessageParser = new MessageParser() {
+            @Override
+            protected MessageAttachment retrieveAttachment(Entity entity, InputStream content) throws IOException {
+                throw new RuntimeException("Message parser set to fail");
+            }
+        };
         parseFailingMailboxManager = new InMemoryMailboxManager(mailboxSessionMapperFactory, noAuthenticator, new NoMailboxPathLocker(), new UnionMailboxACLResolver(), null, failingMessageParser);
         parseFailingMailboxManager.init();
     }
@@ -93,6 +93,7 @@ public class StoreMailboxManager implements MailboxManager {
 
     public static final char SQL_WILDCARD_CHAR = '%';
     public static final int DEFAULT_FETCH_BATCH_SIZE = 200;
+    public static final int DEFAULT_IN_MEMORY_MESSAGE_THRESHOLD = 100 * 1024;
 
     private MailboxEventDispatcher dispatcher;
     private DelegatingMailboxListener delegatingListener = null;
@@ -124,6 +125,8 @@ public class StoreMailboxManager implements MailboxManager {
 
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
 
+    private int inMemoryMessageThreshold = DEFAULT_IN_MEMORY_MESSAGE_THRESHOLD;
+
     private final MessageParser messageParser;
 
 
@@ -168,6 +171,10 @@ public class StoreMailboxManager implements MailboxManager {
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    public void setInMemoryMessageThreshold(int inMemoryMessageThreshold) {
+        this.inMemoryMessageThreshold = inMemoryMessageThreshold;
+    }
+
 
     /**
      * Init the {@link MailboxManager}
@@ -419,6 +426,7 @@ public class StoreMailboxManager implements MailboxManager {
 
             StoreMessageManager messageManager = createMessageManager(mailboxRow, session);
             messageManager.setFetchBatchSize(fetchBatchSize);
+            messageManager.setInMemoryMessageThreshold(inMemoryMessageThreshold);
             return messageManager;
         }
     }
@@ -443,6 +451,7 @@ public class StoreMailboxManager implements MailboxManager {
 
         StoreMessageManager messageManager = createMessageManager(mailboxRow, session);
         messageManager.setFetchBatchSize(fetchBatchSize);
+        messageManager.setInMemoryMessageThreshold(inMemoryMessageThreshold);
         return messageManager;
     }
 
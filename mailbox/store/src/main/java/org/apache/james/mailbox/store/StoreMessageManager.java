@@ -20,7 +20,6 @@
 package org.apache.james.mailbox.store;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -34,10 +33,12 @@ import java.util.TreeMap;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
 import javax.mail.util.SharedFileInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
@@ -71,23 +72,13 @@ import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
+import org.apache.james.mailbox.store.mail.model.impl.MessageParser.ParsedMessage;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.quota.QuotaChecker;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
-import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
-import org.apache.james.mailbox.store.streaming.CountingInputStream;
 import org.apache.james.mailbox.store.transaction.Mapper;
 import org.apache.james.mime4j.MimeException;
-import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
-import org.apache.james.mime4j.message.HeaderImpl;
-import org.apache.james.mime4j.message.MaximalBodyDescriptor;
-import org.apache.james.mime4j.stream.EntityState;
-import org.apache.james.mime4j.stream.MimeConfig;
-import org.apache.james.mime4j.stream.MimeTokenStream;
-import org.apache.james.mime4j.stream.RecursionMode;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
 
@@ -120,8 +111,6 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         MINIMAL_PERMANET_FLAGS.add(Flags.Flag.SEEN);
     }
 
-    private static final Logger LOG = LoggerFactory.getLogger(StoreMessageManager.class);
-
 
     private final Mailbox mailbox;
 
@@ -145,6 +134,8 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
 
     private int fetchBatchSize;
 
+    private int inMemoryMessageThreshold = StoreMailboxManager.DEFAULT_IN_MEMORY_MESSAGE_THRESHOLD;
+
     public StoreMessageManager(MailboxSessionMapperFactory mapperFactory, MessageSearchIndex index, MailboxEventDispatcher dispatcher, MailboxPathLocker locker, Mailbox mailbox, MailboxACLResolver aclResolver,
             final GroupMembershipResolver groupMembershipResolver, QuotaManager quotaManager, QuotaRootResolver quotaRootResolver, MessageParser messageParser) throws MailboxException {
         this.mailbox = mailbox;
@@ -163,6 +154,16 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * Set the size in bytes up to which appended messages are buffered in
+     * memory. Bigger messages are spooled to a temporary file.
+     * 
+     * @param inMemoryMessageThreshold
+     */
+    public void setInMemoryMessageThreshold(int inMemoryMessageThreshold) {
+        this.inMemoryMessageThreshold = inMemoryMessageThreshold;
+    }
+
     /**
      * Return the {@link MailboxPathLocker}
      * 
@@ -267,94 +268,22 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
 
         File file = null;
         TeeInputStream tmpMsgIn = null;
-        BodyOffsetInputStream bIn = null;
-        FileOutputStream out = null;
-        SharedFileInputStream contentIn = null;
+        DeferredFileOutputStream out = null;
+        SharedFileInputStream fileContentIn = null;
 
         if (!isWriteable(mailboxSession)) {
             throw new ReadOnlyException(getMailboxPath(), mailboxSession.getPathDelimiter());
         }
 
         try {
-            // Create a temporary file and copy the message to it. We will work
-            // with the file as
-            // source for the InputStream
-            file = File.createTempFile("imap", ".msg");
-            out = new FileOutputStream(file);
+            // Copy the message to a buffer which is kept in memory for small
+            // messages and spooled to a temporary file above the threshold.
+            // We will work with the buffer as source for the InputStream
+            out = new DeferredFileOutputStream(inMemoryMessageThreshold, "imap", ".msg", null);
 
             tmpMsgIn = new TeeInputStream(msgIn, out);
 
-            bIn = new BodyOffsetInputStream(tmpMsgIn);
-            // Disable line length... This should be handled by the smtp server
-            // component and not the parser itself
-            // https://issues.apache.org/jira/browse/IMAP-122
-            MimeConfig config = MimeConfig.custom().setMaxLineLen(-1).setMaxHeaderLen(-1).build();
-
-            final MimeTokenStream parser = new MimeTokenStream(config, new DefaultBodyDescriptorBuilder());
-
-            parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
-            parser.parse(bIn);
-            final HeaderImpl header = new HeaderImpl();
-
-            EntityState next = parser.next();
-            while (next != EntityState.T_BODY && next != EntityState.T_END_OF_STREAM && next != EntityState.T_START_MULTIPART) {
-                if (next == EntityState.T_FIELD) {
-                    header.addField(parser.getField());
-                }
-                next = parser.next();
-            }
-            final MaximalBodyDescriptor descriptor = (MaximalBodyDescriptor) parser.getBodyDescriptor();
-            final PropertyBuilder propertyBuilder = new PropertyBuilder();
-            final String mediaType;
-            final String mediaTypeFromHeader = descriptor.getMediaType();
-            final String subType;
-            if (mediaTypeFromHeader == null) {
-                mediaType = "text";
-                subType = "plain";
-            } else {
-                mediaType = mediaTypeFromHeader;
-                subType = descriptor.getSubType();
-            }
-            propertyBuilder.setMediaType(mediaType);
-            propertyBuilder.setSubType(subType);
-            propertyBuilder.setContentID(descriptor.getContentId());
-            propertyBuilder.setContentDescription(descriptor.getContentDescription());
-            propertyBuilder.setContentLocation(descriptor.getContentLocation());
-            propertyBuilder.setContentMD5(descriptor.getContentMD5Raw());
-            propertyBuilder.setContentTransferEncoding(descriptor.getTransferEncoding());
-            propertyBuilder.setContentLanguage(descriptor.getContentLanguage());
-            propertyBuilder.setContentDispositionType(descriptor.getContentDispositionType());
-            propertyBuilder.setContentDispositionParameters(descriptor.getContentDispositionParameters());
-            propertyBuilder.setContentTypeParameters(descriptor.getContentTypeParameters());
-            // Add missing types
-            final String codeset = descriptor.getCharset();
-            if (codeset == null) {
-                if ("TEXT".equalsIgnoreCase(mediaType)) {
-                    propertyBuilder.setCharset("us-ascii");
-                }
-            } else {
-                propertyBuilder.setCharset(codeset);
-            }
-
-            final String boundary = descriptor.getBoundary();
-            if (boundary != null) {
-                propertyBuilder.setBoundary(boundary);
-            }
-            if ("text".equalsIgnoreCase(mediaType)) {
-                final CountingInputStream bodyStream = new CountingInputStream(parser.getInputStream());
-                bodyStream.readAll();
-                long lines = bodyStream.getLineCount();
-                bodyStream.close();
-                next = parser.next();
-                if (next == EntityState.T_EPILOGUE) {
-                    final CountingInputStream epilogueStream = new CountingInputStream(parser.getInputStream());
-                    epilogueStream.readAll();
-                    lines += epilogueStream.getLineCount();
-                    epilogueStream.close();
-
-                }
-                propertyBuilder.setTextualLineCount(lines);
-            }
+            final ParsedMessage parsedMessage = messageParser.parse(tmpMsgIn);
 
             final Flags flags;
             if (flagsToBeSet == null) {
@@ -372,21 +301,19 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
             if (internalDate == null) {
                 internalDate = new Date();
             }
-            byte[] discard = new byte[4096];
-            while (tmpMsgIn.read(discard) != -1) {
-                // consume the rest of the stream so everything get copied to
-                // the file now
-                // via the TeeInputStream
-            }
-            int bodyStartOctet = (int) bIn.getBodyStartOffset();
-            if (bodyStartOctet == -1) {
-                bodyStartOctet = 0;
+            out.close();
+            final SharedInputStream contentIn;
+            if (out.isInMemory()) {
+                contentIn = new SharedByteArrayInputStream(out.getData());
+            } else {
+                file = out.getFile();
+                fileContentIn = new SharedFileInputStream(file);
+                contentIn = fileContentIn;
             }
-            contentIn = new SharedFileInputStream(file);
-            final int size = (int) file.length();
+            final int size = (int) out.getByteCount();
 
-            final List<MessageAttachment> attachments = extractAttachments(contentIn);
-            final MailboxMessage message = createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder, attachments);
+            final List<MessageAttachment> attachments = parsedMessage.getAttachments();
+            final MailboxMessage message = createMessage(internalDate, size, parsedMessage.getBodyStartOctet(), contentIn, flags, parsedMessage.getPropertyBuilder(), attachments);
 
             new QuotaChecker(quotaManager, quotaRootResolver, mailbox).tryAddition(1, size);
 
@@ -408,12 +335,14 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         } catch (MimeException e) {
             throw new MailboxException("Unable to parse message", e);
         } finally {
-            IOUtils.closeQuietly(bIn);
             IOUtils.closeQuietly(tmpMsgIn);
             IOUtils.closeQuietly(out);
-            IOUtils.closeQuietly(contentIn);
+            IOUtils.closeQuietly(fileContentIn);
 
-            // delete the temporary file if one was specified
+            // delete the temporary file if the message was spooled to disk
+            if (file == null && out != null) {
+                file = out.getFile();
+            }
             if (file != null) {
                 if (!file.delete()) {
                     // Don't throw an IOException. The message could be appended
@@ -425,15 +354,6 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
 
     }
 
-    private List<MessageAttachment> extractAttachments(SharedFileInputStream contentIn) {
-        try {
-            return messageParser.retrieveAttachments(contentIn);
-        } catch (Exception e) {
-            LOG.warn("Error while parsing mail's attachments: " + e.getMessage(), e);
-            return ImmutableList.of();
-        }
-    }
-
     /**
      * Create a new {@link MailboxMessage} for the given data
      * 
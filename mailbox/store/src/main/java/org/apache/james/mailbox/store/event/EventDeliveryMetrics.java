@@ -0,0 +1,157 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.event;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Counters describing the behaviour of an {@link OrderedAsynchronousEventDelivery}: events waiting in the queues,
+ * time spent by events in the queues (lag), rejected events and time spent in each listener class.
+ *
+ * They are exported over JMX once {@link OrderedAsynchronousEventDelivery#registerMetrics()} is called.
+ */
+public class EventDeliveryMetrics implements EventDeliveryMetricsMBean {
+
+    public static class Timing {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalInMs = new AtomicLong();
+        private final AtomicLong maxInMs = new AtomicLong();
+
+        void record(long durationInMs) {
+            count.incrementAndGet();
+            totalInMs.addAndGet(durationInMs);
+            long currentMax = maxInMs.get();
+            while (durationInMs > currentMax && !maxInMs.compareAndSet(currentMax, durationInMs)) {
+                currentMax = maxInMs.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalInMs() {
+            return totalInMs.get();
+        }
+
+        public long getMaxInMs() {
+            return maxInMs.get();
+        }
+
+        public double getAverageInMs() {
+            long currentCount = count.get();
+            if (currentCount == 0) {
+                return 0;
+            }
+            return (double) totalInMs.get() / currentCount;
+        }
+    }
+
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final Timing lag = new Timing();
+    private final ConcurrentMap<String, Timing> listenerLatencies = new ConcurrentHashMap<String, Timing>();
+
+    void enqueued() {
+        queueDepth.incrementAndGet();
+    }
+
+    void dequeued(long lagInMs) {
+        queueDepth.decrementAndGet();
+        lag.record(lagInMs);
+    }
+
+    void rejected() {
+        queueDepth.decrementAndGet();
+        rejectedCount.incrementAndGet();
+    }
+
+    void listenerExecuted(String listenerClass, long durationInMs) {
+        Timing timing = listenerLatencies.get(listenerClass);
+        if (timing == null) {
+            Timing newTiming = new Timing();
+            timing = listenerLatencies.putIfAbsent(listenerClass, newTiming);
+            if (timing == null) {
+                timing = newTiming;
+            }
+        }
+        timing.record(durationInMs);
+    }
+
+    /**
+     * @return the number of events accepted but whose processing has not started yet
+     */
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return the number of events that were dropped because of a full queue
+     */
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return time elapsed between the submission of an event and the start of its processing
+     */
+    public Timing getLag() {
+        return lag;
+    }
+
+    /**
+     * @return listener execution times, keyed by listener class name
+     */
+    public Map<String, Timing> getListenerLatencies() {
+        return ImmutableMap.copyOf(listenerLatencies);
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return lag.getCount();
+    }
+
+    @Override
+    public double getAverageLagInMs() {
+        return lag.getAverageInMs();
+    }
+
+    @Override
+    public long getMaxLagInMs() {
+        return lag.getMaxInMs();
+    }
+
+    @Override
+    public Map<String, Double> getAverageListenerLatenciesInMs() {
+        Map<String, Double> averages = new HashMap<String, Double>();
+        for (Map.Entry<String, Timing> entry : listenerLatencies.entrySet()) {
+            averages.put(entry.getKey(), entry.getValue().getAverageInMs());
+        }
+        return averages;
+    }
+}
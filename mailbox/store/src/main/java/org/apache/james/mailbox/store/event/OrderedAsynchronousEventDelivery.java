@@ -0,0 +1,236 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.event;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.store.event.EventFactory.MailboxAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Asynchronous {@link EventDelivery} relying on bounded queues.
+ *
+ * Events are dispatched on stripes, each stripe being served by a single thread. All the events of a given mailbox
+ * are dispatched on the same stripe, chosen from the mailbox id so that renames do not change it, hence listeners see
+ * them in the order they were generated. Events not holding their mailbox are dispatched by mailbox path. The behaviour
+ * adopted when the queue of a stripe is full is defined by the {@link RejectionPolicy}.
+ *
+ * On {@link #stop()}, events already queued are delivered before the threads end.
+ *
+ * Its {@link EventDeliveryMetrics} are exported over JMX as {@value #METRICS_MBEAN_NAME} by {@link #registerMetrics()}.
+ */
+public class OrderedAsynchronousEventDelivery implements EventDelivery {
+
+    public enum RejectionPolicy {
+        /**
+         * The delivering thread waits for room in the queue. This slows down event producers, and preserves ordering.
+         * Events published by a listener, hence from a delivery thread, are delivered by that thread instead, as
+         * waiting for its own queue to drain would never end.
+         */
+        BLOCK,
+        /**
+         * The delivering thread runs the listener itself. Events of the mailbox still waiting in the queue
+         * might then be processed after this one.
+         */
+        CALLER_RUNS,
+        /**
+         * The event is dropped and an error is logged.
+         */
+        DISCARD
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderedAsynchronousEventDelivery.class);
+    private static final long STOP_TIMEOUT_IN_SECONDS = 30;
+    public static final String METRICS_MBEAN_NAME = "org.apache.james:type=component,name=eventdelivery";
+
+    private final ThreadPoolExecutor[] stripes;
+    private final Set<Thread> deliveryThreads;
+    private final RejectionPolicy rejectionPolicy;
+    private final SynchronousEventDelivery synchronousEventDelivery;
+    private final EventDeliveryMetrics metrics;
+    private final MBeanServer mBeanServer;
+    private ObjectName metricsName;
+
+    public OrderedAsynchronousEventDelivery(int stripeCount, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        Preconditions.checkArgument(stripeCount > 0, "Stripe count should be strictly positive");
+        Preconditions.checkArgument(queueCapacity > 0, "Queue capacity should be strictly positive");
+        this.rejectionPolicy = Preconditions.checkNotNull(rejectionPolicy);
+        this.synchronousEventDelivery = new SynchronousEventDelivery();
+        this.metrics = new EventDeliveryMetrics();
+        this.mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        this.deliveryThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                recordingThreadFactory(new ThreadFactoryBuilder()
+                    .setNameFormat("ordered-event-delivery-" + i)
+                    .setDaemon(true)
+                    .build()),
+                rejectedExecutionHandler());
+        }
+    }
+
+    @Override
+    public void deliver(final MailboxListener mailboxListener, final MailboxListener.Event event) {
+        final long submissionTime = System.currentTimeMillis();
+        metrics.enqueued();
+        try {
+            stripeFor(event).execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startTime = System.currentTimeMillis();
+                    metrics.dequeued(startTime - submissionTime);
+                    synchronousEventDelivery.deliver(mailboxListener, event);
+                    metrics.listenerExecuted(mailboxListener.getClass().getName(), System.currentTimeMillis() - startTime);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.rejected();
+            LOGGER.error("Dropping {} for listener {}", event.getClass().getName(), mailboxListener.getClass().getName(), e);
+        }
+    }
+
+    public EventDeliveryMetrics getMetrics() {
+        return metrics;
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        try {
+            ObjectName name = new ObjectName(METRICS_MBEAN_NAME);
+            mBeanServer.registerMBean(metrics, name);
+            metricsName = name;
+        } catch (JMException e) {
+            LOGGER.warn("Unable to export event delivery metrics over JMX", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        unregisterMetrics();
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_IN_SECONDS);
+        try {
+            for (ThreadPoolExecutor stripe : stripes) {
+                if (!stripe.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("Dropping {} events not delivered within {} seconds", stripe.getQueue().size(), STOP_TIMEOUT_IN_SECONDS);
+                    stripe.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ThreadPoolExecutor stripe : stripes) {
+                stripe.shutdownNow();
+            }
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsName != null) {
+            try {
+                mBeanServer.unregisterMBean(metricsName);
+            } catch (JMException e) {
+                LOGGER.warn("Unable to unregister event delivery metrics", e);
+            }
+            metricsName = null;
+        }
+    }
+
+    private ThreadPoolExecutor stripeFor(MailboxListener.Event event) {
+        Object key = stripeKey(event);
+        if (key == null) {
+            return stripes[0];
+        }
+        return stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private Object stripeKey(MailboxListener.Event event) {
+        if (event instanceof MailboxAware && ((MailboxAware) event).getMailbox() != null) {
+            MailboxId mailboxId = ((MailboxAware) event).getMailbox().getMailboxId();
+            if (mailboxId != null) {
+                return mailboxId;
+            }
+        }
+        return event.getMailboxPath();
+    }
+
+    private ThreadFactory recordingThreadFactory(final ThreadFactory threadFactory) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = threadFactory.newThread(runnable);
+                deliveryThreads.add(thread);
+                return thread;
+            }
+        };
+    }
+
+    private RejectedExecutionHandler rejectedExecutionHandler() {
+        switch (rejectionPolicy) {
+        case BLOCK:
+            return new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Event delivery is stopped");
+                    }
+                    if (deliveryThreads.contains(Thread.currentThread())) {
+                        runnable.run();
+                        return;
+                    }
+                    try {
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for event queue", e);
+                    }
+                }
+            };
+        case CALLER_RUNS:
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        default:
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.james.mailbox.store.event.EventDelivery;
 import org.apache.james.mailbox.store.event.EventSerializer;
 import org.apache.james.mailbox.store.event.MailboxListenerRegistry;
 import org.apache.james.mailbox.store.event.SynchronousEventDelivery;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
 import org.apache.james.mailbox.store.publisher.MessageConsumer;
 import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
@@ -34,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.List;
 
 public class BroadcastDelegatingMailboxListener implements DistributedDelegatingMailboxListener {
 
@@ -106,13 +108,22 @@ public class BroadcastDelegatingMailboxListener implements DistributedDelegating
         }
     }
 
-    public void receiveSerializedEvent(byte[] serializedEvent) {
+    public void receiveSerializedEvent(byte[] serializedEvents) {
+        List<byte[]> events;
         try {
-            Event event = eventSerializer.deSerializeEvent(serializedEvent);
-            deliverToMailboxPathRegisteredListeners(event);
-            deliverEventToGlobalListeners(event, ListenerType.EACH_NODE);
+            events = MessageBatch.split(serializedEvents);
         } catch (Exception e) {
-            LOGGER.error("Error while receiving serialized event", e);
+            LOGGER.error("Error while splitting received serialized events", e);
+            return;
+        }
+        for (byte[] serializedEvent : events) {
+            try {
+                Event event = eventSerializer.deSerializeEvent(serializedEvent);
+                deliverToMailboxPathRegisteredListeners(event);
+                deliverEventToGlobalListeners(event, ListenerType.EACH_NODE);
+            } catch (Exception e) {
+                LOGGER.error("Error while receiving serialized event", e);
+            }
         }
     }
 
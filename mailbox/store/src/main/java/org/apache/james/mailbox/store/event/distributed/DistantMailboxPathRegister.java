@@ -20,6 +20,10 @@
 package org.apache.james.mailbox.store.event.distributed;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
@@ -32,28 +36,53 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Topics of distant mailbox paths can be cached locally for a given time to live. Registrations done by
+ * this James instance invalidate the corresponding entry, while registrations done by other James
+ * instances are only seen once the entry expires: until then, events of that mailbox path are not sent to
+ * the newly registered instance. The time to live is thus bounded to {@link #MAX_TOPICS_CACHE_TTL_IN_MS}.
+ */
 public class DistantMailboxPathRegister implements MailboxPathRegister {
     private static final int DEFAULT_MAX_RETRY = 1000;
+    private static final long NO_TOPICS_CACHE = 0L;
+    public static final long MAX_TOPICS_CACHE_TTL_IN_MS = 1000L;
     private final ConcurrentHashMap<MailboxPath, Long> registeredMailboxPathCount;
     private final DistantMailboxPathRegisterMapper mapper;
     private final Topic topic;
     private final Timer timer;
     private final int maxRetry;
     private final long schedulerPeriodInS;
+    private final Cache<MailboxPath, Set<Topic>> topicsCache;
 
     public DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper, long schedulerPeriodInS) {
         this(mapper, DEFAULT_MAX_RETRY, schedulerPeriodInS);
     }
 
     public DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper, int maxRetry, long schedulerPeriodInS) {
+        this(mapper, maxRetry, schedulerPeriodInS, NO_TOPICS_CACHE);
+    }
+
+    public DistantMailboxPathRegister(DistantMailboxPathRegisterMapper mapper, int maxRetry, long schedulerPeriodInS, long topicsCacheTtlInMs) {
+        Preconditions.checkArgument(topicsCacheTtlInMs >= NO_TOPICS_CACHE && topicsCacheTtlInMs <= MAX_TOPICS_CACHE_TTL_IN_MS,
+            "Topics cache time to live should be between 0 and %s ms", MAX_TOPICS_CACHE_TTL_IN_MS);
         this.maxRetry = maxRetry;
         this.mapper = mapper;
         this.registeredMailboxPathCount = new ConcurrentHashMap<MailboxPath, Long>();
         this.topic = new Topic(UUID.randomUUID().toString());
         this.timer = new Timer();
         this.schedulerPeriodInS = schedulerPeriodInS;
+        if (topicsCacheTtlInMs > NO_TOPICS_CACHE) {
+            this.topicsCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(topicsCacheTtlInMs, TimeUnit.MILLISECONDS)
+                .build();
+        } else {
+            this.topicsCache = null;
+        }
     }
 
     @PostConstruct
@@ -78,8 +107,20 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
     }
 
     @Override
-    public Set<Topic> getTopics(MailboxPath mailboxPath) {
-        return mapper.getTopics(mailboxPath);
+    public Set<Topic> getTopics(final MailboxPath mailboxPath) {
+        if (topicsCache == null) {
+            return mapper.getTopics(mailboxPath);
+        }
+        try {
+            return topicsCache.get(mailboxPath, new Callable<Set<Topic>>() {
+                @Override
+                public Set<Topic> call() throws Exception {
+                    return ImmutableSet.copyOf(mapper.getTopics(mailboxPath));
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
     }
 
     @Override
@@ -117,6 +158,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
     public void doCompleteUnRegister(MailboxPath mailboxPath) {
         registeredMailboxPathCount.remove(mailboxPath);
         mapper.doUnRegister(mailboxPath, topic);
+        invalidateTopics(mailboxPath);
     }
 
     @Override
@@ -146,6 +188,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
         } else {
             if (registeredMailboxPathCount.putIfAbsent(newPath, oldEntry) == null) {
                 mapper.doRegister(newPath, topic);
+                invalidateTopics(newPath);
                 return true;
             }
             return false;
@@ -164,6 +207,7 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
         } else {
             if (registeredMailboxPathCount.putIfAbsent(path, newEntry) == null) {
                 mapper.doRegister(path, topic);
+                invalidateTopics(path);
                 return true;
             }
             return false;
@@ -182,12 +226,19 @@ public class DistantMailboxPathRegister implements MailboxPathRegister {
         } else {
             if (registeredMailboxPathCount.remove(path, entry)) {
                 mapper.doUnRegister(path, topic);
+                invalidateTopics(path);
                 return true;
             }
             return false;
         }
     }
 
+    private void invalidateTopics(MailboxPath path) {
+        if (topicsCache != null) {
+            topicsCache.invalidate(path);
+        }
+    }
+
     @VisibleForTesting
     ConcurrentHashMap<MailboxPath, Long> getRegisteredMailboxPathCount() {
         return registeredMailboxPathCount;
@@ -27,6 +27,7 @@ import org.apache.james.mailbox.store.event.EventDelivery;
 import org.apache.james.mailbox.store.event.EventSerializer;
 import org.apache.james.mailbox.store.event.MailboxListenerRegistry;
 import org.apache.james.mailbox.store.event.SynchronousEventDelivery;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
 import org.apache.james.mailbox.store.publisher.MessageConsumer;
 import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
@@ -34,8 +35,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
 public class RegisteredDelegatingMailboxListener implements DistributedDelegatingMailboxListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RegisteredDelegatingMailboxListener.class);
@@ -115,12 +120,21 @@ public class RegisteredDelegatingMailboxListener implements DistributedDelegatin
         }
     }
 
-    public void receiveSerializedEvent(byte[] serializedEvent) {
+    public void receiveSerializedEvent(byte[] serializedEvents) {
+        List<byte[]> events;
         try {
-            Event event = eventSerializer.deSerializeEvent(serializedEvent);
-            deliverToMailboxPathRegisteredListeners(event);
+            events = MessageBatch.split(serializedEvents);
         } catch (Exception e) {
-            LOGGER.error("Error while receiving serialized event", e);
+            LOGGER.error("Error while splitting received serialized events", e);
+            return;
+        }
+        for (byte[] serializedEvent : events) {
+            try {
+                Event event = eventSerializer.deSerializeEvent(serializedEvent);
+                deliverToMailboxPathRegisteredListeners(event);
+            } catch (Exception e) {
+                LOGGER.error("Error while receiving serialized event", e);
+            }
         }
     }
 
@@ -148,8 +162,8 @@ public class RegisteredDelegatingMailboxListener implements DistributedDelegatin
     }
 
     private void sendToRemoteJames(Event event) {
-        Set<Topic> topics = mailboxPathRegister.getTopics(event.getMailboxPath());
-        topics.remove(mailboxPathRegister.getLocalTopic());
+        Set<Topic> topics = Sets.difference(mailboxPathRegister.getTopics(event.getMailboxPath()),
+            ImmutableSet.of(mailboxPathRegister.getLocalTopic()));
         if (topics.size() > 0) {
             sendEventToRemotesJamesByTopic(event, topics);
         }
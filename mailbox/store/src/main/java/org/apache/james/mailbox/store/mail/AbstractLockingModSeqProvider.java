@@ -18,6 +18,9 @@
  ****************************************************************/
 package org.apache.james.mailbox.store.mail;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxPathLocker.LockAwareExecution;
 import org.apache.james.mailbox.MailboxSession;
@@ -49,6 +52,21 @@ public abstract class AbstractLockingModSeqProvider implements ModSeqProvider{
         }, true);
     }
     
+    @Override
+    public List<Long> nextModSeqs(final MailboxSession session, final Mailbox mailbox, final int count) throws MailboxException {
+        return locker.executeWithLock(session, new StoreMailboxPath(mailbox), new LockAwareExecution<List<Long>>() {
+
+            @Override
+            public List<Long> execute() throws MailboxException {
+                List<Long> modSeqs = new ArrayList<Long>(count);
+                for (int i = 0; i < count; i++) {
+                    modSeqs.add(lockedNextModSeq(session, mailbox));
+                }
+                return modSeqs;
+            }
+        }, true);
+    }
+    
     /**
      * Generate the next mod-seq for the given {@link Mailbox} while holding a lock on it.
      * 
@@ -18,6 +18,8 @@
  ****************************************************************/
 package org.apache.james.mailbox.store.mail;
 
+import java.util.List;
+
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
@@ -43,6 +45,19 @@ public interface ModSeqProvider {
      * @throws MailboxException
      */
     long nextModSeq(MailboxSession session, Mailbox mailbox) throws MailboxException;
+
+    /**
+     * Return count mod-sequences which can be used for the {@link Mailbox}, in ascending order.
+     * The same guarantees as for {@link #nextModSeq(MailboxSession, Mailbox)} apply to each of them,
+     * but implementations can allocate them in a single operation.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return modSeqs
+     * @throws MailboxException
+     */
+    List<Long> nextModSeqs(MailboxSession session, Mailbox mailbox, int count) throws MailboxException;
     
     /**
      * Return the highest mod-sequence which were used for the {@link Mailbox}
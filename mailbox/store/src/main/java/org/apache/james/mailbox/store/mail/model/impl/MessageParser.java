@@ -19,35 +19,52 @@
 
 package org.apache.james.mailbox.store.mail.model.impl;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.james.mailbox.model.Attachment;
 import org.apache.james.mailbox.model.Cid;
 import org.apache.james.mailbox.model.MessageAttachment;
+import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
+import org.apache.james.mailbox.store.streaming.CountingInputStream;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.codec.DecodeMonitor;
 import org.apache.james.mime4j.codec.DecoderUtil;
-import org.apache.james.mime4j.dom.Body;
 import org.apache.james.mime4j.dom.Entity;
-import org.apache.james.mime4j.dom.MessageWriter;
-import org.apache.james.mime4j.dom.Multipart;
+import org.apache.james.mime4j.dom.FieldParser;
 import org.apache.james.mime4j.dom.field.ContentDispositionField;
 import org.apache.james.mime4j.dom.field.ContentIdField;
 import org.apache.james.mime4j.dom.field.ContentTypeField;
 import org.apache.james.mime4j.dom.field.ParsedField;
-import org.apache.james.mime4j.message.DefaultMessageBuilder;
-import org.apache.james.mime4j.message.DefaultMessageWriter;
+import org.apache.james.mime4j.field.LenientFieldParser;
+import org.apache.james.mime4j.message.BodyPart;
+import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
+import org.apache.james.mime4j.message.HeaderImpl;
+import org.apache.james.mime4j.message.MaximalBodyDescriptor;
+import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.Field;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.stream.RecursionMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
+/**
+ * Parse a message in a single streaming pass, collecting the MIME properties
+ * of its root entity, its body start offset and its attachments.
+ */
 public class MessageParser {
 
+    private static final Logger LOG = LoggerFactory.getLogger(MessageParser.class);
+
     private static final String TEXT_MEDIA_TYPE = "text";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String CONTENT_ID = "Content-ID";
@@ -56,39 +73,176 @@ public class MessageParser {
     private static final List<String> ATTACHMENT_CONTENT_DISPOSITIONS = ImmutableList.of(
             ContentDispositionField.DISPOSITION_TYPE_ATTACHMENT.toLowerCase(),
             ContentDispositionField.DISPOSITION_TYPE_INLINE.toLowerCase());
+    // Disable line length... This should be handled by the smtp server
+    // component and not the parser itself
+    // https://issues.apache.org/jira/browse/IMAP-122
+    private static final MimeConfig MIME_CONFIG = MimeConfig.custom().setMaxLineLen(-1).setMaxHeaderLen(-1).build();
+    private static final FieldParser<ParsedField> FIELD_PARSER = LenientFieldParser.getParser();
 
-    public List<MessageAttachment> retrieveAttachments(InputStream fullContent) throws MimeException, IOException {
-        Body body = new DefaultMessageBuilder()
-                .parseMessage(fullContent)
-                .getBody();
-        try {
-            if (body instanceof Multipart) {
-                Multipart multipartBody = (Multipart)body;
-                return listAttachments(multipartBody, Context.fromSubType(multipartBody.getSubType()));
-            } else {
-                return ImmutableList.of();
-            }
-        } finally {
-            body.dispose();
+    public static class ParsedMessage {
+        private final PropertyBuilder propertyBuilder;
+        private final int bodyStartOctet;
+        private final List<MessageAttachment> attachments;
+
+        private ParsedMessage(PropertyBuilder propertyBuilder, int bodyStartOctet, List<MessageAttachment> attachments) {
+            this.propertyBuilder = propertyBuilder;
+            this.bodyStartOctet = bodyStartOctet;
+            this.attachments = attachments;
+        }
+
+        public PropertyBuilder getPropertyBuilder() {
+            return propertyBuilder;
+        }
+
+        public int getBodyStartOctet() {
+            return bodyStartOctet;
+        }
+
+        public List<MessageAttachment> getAttachments() {
+            return attachments;
         }
     }
 
-    private List<MessageAttachment> listAttachments(Multipart multipart, Context context) throws IOException {
+    public List<MessageAttachment> retrieveAttachments(InputStream fullContent) throws MimeException, IOException {
+        return parse(fullContent).getAttachments();
+    }
+
+    /**
+     * Read the whole given content once. Attachments which can not be
+     * retrieved are logged and result in an empty attachment list, they do
+     * not fail the parsing.
+     */
+    public ParsedMessage parse(InputStream fullContent) throws MimeException, IOException {
+        BodyOffsetInputStream bodyOffsetInputStream = new BodyOffsetInputStream(fullContent);
+        MimeTokenStream parser = new MimeTokenStream(MIME_CONFIG, new DefaultBodyDescriptorBuilder());
+        parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
+        parser.parse(bodyOffsetInputStream);
+
+        PropertyBuilder propertyBuilder = null;
+        Deque<Context> multipartContexts = new ArrayDeque<Context>();
+        HeaderImpl partHeader = new HeaderImpl();
         ImmutableList.Builder<MessageAttachment> attachments = ImmutableList.builder();
-        MessageWriter messageWriter = new DefaultMessageWriter();
-        for (Entity entity : multipart.getBodyParts()) {
-            if (isMultipart(entity)) {
-                attachments.addAll(listAttachments((Multipart) entity.getBody(), Context.fromEntity(entity)));
-            } else {
-                if (isAttachment(entity, context)) {
-                    attachments.add(retrieveAttachment(messageWriter, entity));
+        boolean attachmentsFailed = false;
+
+        for (EntityState state = parser.getState(); state != EntityState.T_END_OF_STREAM; state = parser.next()) {
+            switch (state) {
+            case T_START_HEADER:
+                partHeader = new HeaderImpl();
+                break;
+            case T_FIELD:
+                if (!multipartContexts.isEmpty()) {
+                    partHeader.addField(FIELD_PARSER.parse(parser.getField(), DecodeMonitor.SILENT));
+                }
+                break;
+            case T_START_MULTIPART:
+                if (propertyBuilder == null) {
+                    propertyBuilder = propertyBuilder((MaximalBodyDescriptor) parser.getBodyDescriptor());
+                }
+                multipartContexts.push(Context.fromSubType(parser.getBodyDescriptor().getSubType()));
+                break;
+            case T_END_MULTIPART:
+                multipartContexts.pop();
+                break;
+            case T_BODY:
+                if (multipartContexts.isEmpty()) {
+                    propertyBuilder = propertyBuilder((MaximalBodyDescriptor) parser.getBodyDescriptor());
+                    if (isText(propertyBuilder)) {
+                        propertyBuilder.setTextualLineCount(countLines(parser.getInputStream()));
+                    }
+                } else if (!attachmentsFailed) {
+                    try {
+                        BodyPart part = new BodyPart();
+                        part.setHeader(partHeader);
+                        if (isAttachment(part, multipartContexts.peek())) {
+                            attachments.add(retrieveAttachment(part, parser.getDecodedInputStream()));
+                        }
+                    } catch (Exception e) {
+                        LOG.warn("Error while parsing mail's attachments: " + e.getMessage(), e);
+                        attachmentsFailed = true;
+                    }
                 }
+                break;
+            default:
+                break;
             }
         }
-        return attachments.build();
+        consume(bodyOffsetInputStream);
+
+        return new ParsedMessage(propertyBuilder,
+            bodyStartOctet(bodyOffsetInputStream),
+            attachmentsFailed ? ImmutableList.<MessageAttachment> of() : attachments.build());
     }
 
-    private MessageAttachment retrieveAttachment(MessageWriter messageWriter, Entity entity) throws IOException {
+    private PropertyBuilder propertyBuilder(MaximalBodyDescriptor descriptor) {
+        final PropertyBuilder propertyBuilder = new PropertyBuilder();
+        final String mediaType;
+        final String mediaTypeFromHeader = descriptor.getMediaType();
+        final String subType;
+        if (mediaTypeFromHeader == null) {
+            mediaType = "text";
+            subType = "plain";
+        } else {
+            mediaType = mediaTypeFromHeader;
+            subType = descriptor.getSubType();
+        }
+        propertyBuilder.setMediaType(mediaType);
+        propertyBuilder.setSubType(subType);
+        propertyBuilder.setContentID(descriptor.getContentId());
+        propertyBuilder.setContentDescription(descriptor.getContentDescription());
+        propertyBuilder.setContentLocation(descriptor.getContentLocation());
+        propertyBuilder.setContentMD5(descriptor.getContentMD5Raw());
+        propertyBuilder.setContentTransferEncoding(descriptor.getTransferEncoding());
+        propertyBuilder.setContentLanguage(descriptor.getContentLanguage());
+        propertyBuilder.setContentDispositionType(descriptor.getContentDispositionType());
+        propertyBuilder.setContentDispositionParameters(descriptor.getContentDispositionParameters());
+        propertyBuilder.setContentTypeParameters(descriptor.getContentTypeParameters());
+        // Add missing types
+        final String codeset = descriptor.getCharset();
+        if (codeset == null) {
+            if (TEXT_MEDIA_TYPE.equalsIgnoreCase(mediaType)) {
+                propertyBuilder.setCharset("us-ascii");
+            }
+        } else {
+            propertyBuilder.setCharset(codeset);
+        }
+
+        final String boundary = descriptor.getBoundary();
+        if (boundary != null) {
+            propertyBuilder.setBoundary(boundary);
+        }
+        return propertyBuilder;
+    }
+
+    private boolean isText(PropertyBuilder propertyBuilder) {
+        return TEXT_MEDIA_TYPE.equalsIgnoreCase(propertyBuilder.getMediaType());
+    }
+
+    private long countLines(InputStream body) throws IOException {
+        CountingInputStream bodyStream = new CountingInputStream(body);
+        try {
+            bodyStream.readAll();
+            return bodyStream.getLineCount();
+        } finally {
+            bodyStream.close();
+        }
+    }
+
+    private void consume(InputStream in) throws IOException {
+        byte[] discard = new byte[4096];
+        while (in.read(discard) != -1) {
+            // make sure the whole content went through the body offset tracking
+        }
+    }
+
+    private int bodyStartOctet(BodyOffsetInputStream bodyOffsetInputStream) {
+        int bodyStartOctet = (int) bodyOffsetInputStream.getBodyStartOffset();
+        if (bodyStartOctet == -1) {
+            return 0;
+        }
+        return bodyStartOctet;
+    }
+
+    protected MessageAttachment retrieveAttachment(Entity entity, InputStream content) throws IOException {
         Optional<ContentTypeField> contentTypeField = getContentTypeField(entity);
         Optional<String> contentType = contentType(contentTypeField);
         Optional<String> name = name(contentTypeField);
@@ -97,7 +251,7 @@ public class MessageParser {
 
         return MessageAttachment.builder()
                 .attachment(Attachment.builder()
-                    .bytes(getBytes(messageWriter, entity.getBody()))
+                    .bytes(IOUtils.toByteArray(content))
                     .type(contentType.or(DEFAULT_CONTENT_TYPE))
                     .build())
                 .name(name.orNull())
@@ -159,10 +313,6 @@ public class MessageParser {
         }).or(Optional.<Cid> absent());
     }
 
-    private boolean isMultipart(Entity entity) {
-        return entity.isMultipart() && entity.getBody() instanceof Multipart;
-    }
-
     private boolean isInline(Optional<ContentDispositionField> contentDispositionField) {
         return contentDispositionField.transform(new Function<ContentDispositionField, Boolean>() {
             @Override
@@ -197,25 +347,11 @@ public class MessageParser {
         return false;
     }
 
-    private byte[] getBytes(MessageWriter messageWriter, Body body) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        messageWriter.writeBody(body, out);
-        return out.toByteArray();
-    }
-
     private static enum Context {
         BODY,
         OTHER;
 
         private static final String ALTERNATIVE_SUB_TYPE = "alternative";
-        private static final String MULTIPART_ALTERNATIVE = "multipart/" + ALTERNATIVE_SUB_TYPE;
-
-        public static Context fromEntity(Entity entity) {
-            if (isMultipartAlternative(entity)) {
-                return BODY;
-            }
-            return OTHER;
-        }
 
         public static Context fromSubType(String subPart) {
             if (isAlternative(subPart)) {
@@ -224,10 +360,6 @@ public class MessageParser {
             return OTHER;
         }
 
-        private static boolean isMultipartAlternative(Entity entity) {
-            return entity.getMimeType().equalsIgnoreCase(MULTIPART_ALTERNATIVE);
-        }
-
         private static boolean isAlternative(String subPart) {
             return subPart.equalsIgnoreCase(ALTERNATIVE_SUB_TYPE);
         }
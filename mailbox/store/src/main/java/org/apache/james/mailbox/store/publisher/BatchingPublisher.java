@@ -0,0 +1,135 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.publisher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link Publisher} coalescing the messages sent to a same {@link Topic} within a time window into a
+ * single {@link MessageBatch}, published through the wrapped {@link Publisher}.
+ *
+ * Batches are sent by a single thread, so messages of a {@link Topic} keep their publication order.
+ */
+public class BatchingPublisher implements Publisher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingPublisher.class);
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final long CLOSE_TIMEOUT_IN_S = 10;
+
+    private final Publisher publisher;
+    private final long windowInMs;
+    private final int maxBatchSize;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Map<Topic, List<byte[]>> pendingMessages;
+
+    public BatchingPublisher(Publisher publisher, long windowInMs) {
+        this(publisher, windowInMs, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public BatchingPublisher(Publisher publisher, long windowInMs, int maxBatchSize) {
+        this.publisher = publisher;
+        this.windowInMs = windowInMs;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("batching-publisher-%d").build());
+        // Pending batches are flushed by close() itself
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.pendingMessages = new HashMap<Topic, List<byte[]>>();
+    }
+
+    @Override
+    public void init() {
+        publisher.init();
+    }
+
+    @Override
+    public void publish(Topic topic, byte[] message) {
+        synchronized (pendingMessages) {
+            List<byte[]> pending = pendingMessages.get(topic);
+            if (pending == null) {
+                pending = new ArrayList<byte[]>();
+                pendingMessages.put(topic, pending);
+                scheduler.schedule(flushTask(topic), windowInMs, TimeUnit.MILLISECONDS);
+            }
+            pending.add(message);
+            if (pending.size() == maxBatchSize) {
+                scheduler.execute(flushTask(topic));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(CLOSE_TIMEOUT_IN_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Topic> topics;
+        synchronized (pendingMessages) {
+            topics = ImmutableList.copyOf(pendingMessages.keySet());
+        }
+        for (Topic topic : topics) {
+            flush(topic);
+        }
+        publisher.close();
+    }
+
+    private Runnable flushTask(final Topic topic) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                flush(topic);
+            }
+        };
+    }
+
+    private void flush(Topic topic) {
+        List<byte[]> batch;
+        synchronized (pendingMessages) {
+            batch = pendingMessages.remove(topic);
+        }
+        if (batch == null) {
+            return;
+        }
+        try {
+            if (batch.size() == 1) {
+                publisher.publish(topic, batch.get(0));
+            } else {
+                publisher.publish(topic, MessageBatch.pack(batch));
+            }
+        } catch (Throwable t) {
+            LOG.error("Unable to send " + batch.size() + " serialized events to topic " + topic.getValue(), t);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.publisher;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Packs several messages bound to the same {@link Topic} into a single payload.
+ *
+ * A batch starts with a magic header followed by the message count, then each message prefixed by its length.
+ * Payloads without this header are single messages, so that receivers can accept both.
+ */
+public class MessageBatch {
+
+    private static final byte[] MAGIC = {'J', 'M', 'B', 1};
+    private static final int INT_SIZE = 4;
+
+    public static byte[] pack(List<byte[]> messages) {
+        int size = MAGIC.length + INT_SIZE;
+        for (byte[] message : messages) {
+            size += INT_SIZE + message.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC);
+        buffer.putInt(messages.size());
+        for (byte[] message : messages) {
+            buffer.putInt(message.length);
+            buffer.put(message);
+        }
+        return buffer.array();
+    }
+
+    public static List<byte[]> split(byte[] payload) {
+        if (!isBatch(payload)) {
+            return ImmutableList.of(payload);
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload, MAGIC.length, payload.length - MAGIC.length);
+            int count = buffer.getInt();
+            List<byte[]> messages = new ArrayList<byte[]>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] message = new byte[buffer.getInt()];
+                buffer.get(message);
+                messages.add(message);
+            }
+            return messages;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated message batch", e);
+        }
+    }
+
+    private static boolean isBatch(byte[] payload) {
+        return payload.length >= MAGIC.length + INT_SIZE
+            && Arrays.equals(Arrays.copyOf(payload, MAGIC.length), MAGIC);
+    }
+}
@@ -0,0 +1,118 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.search;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+
+/**
+ * {@link Iterator} over the {@link MailboxMessage}'s of a {@link MessageRange}, reading them from the
+ * {@link MessageMapper} by batches of bounded size. A batch smaller than the batch size ends the iteration.
+ *
+ * A {@link MailboxException} thrown while reading a batch is wrapped in a {@link WrappedException}.
+ */
+public class BatchedMailboxMessageIterator implements Iterator<MailboxMessage> {
+
+    /**
+     * Unchecked wrapper of the {@link MailboxException}'s thrown while reading messages.
+     */
+    public static class WrappedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public WrappedException(MailboxException cause) {
+            super(cause);
+        }
+
+        @Override
+        public MailboxException getCause() {
+            return (MailboxException) super.getCause();
+        }
+    }
+
+    private final MessageMapper mapper;
+    private final Mailbox mailbox;
+    private final FetchType fetchType;
+    private final int batchSize;
+    private final long to;
+    private long cursor;
+    private Iterator<MailboxMessage> batch = Collections.<MailboxMessage>emptyList().iterator();
+    private int readInBatch = 0;
+    private boolean exhausted = false;
+
+    public BatchedMailboxMessageIterator(MessageMapper mapper, Mailbox mailbox, MessageRange range, FetchType fetchType, int batchSize) {
+        this.mapper = mapper;
+        this.mailbox = mailbox;
+        this.fetchType = fetchType;
+        this.batchSize = batchSize;
+        this.cursor = Math.max(range.getUidFrom(), 1);
+        if (range.getUidTo() == MessageRange.NOT_A_UID) {
+            this.to = MessageRange.MAX_UID;
+        } else {
+            this.to = range.getUidTo();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!batch.hasNext()) {
+            if (exhausted || cursor > to) {
+                return false;
+            }
+            readBatch();
+        }
+        return true;
+    }
+
+    @Override
+    public MailboxMessage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        MailboxMessage message = batch.next();
+        readInBatch++;
+        cursor = message.getUid() + 1;
+        if (!batch.hasNext() && readInBatch < batchSize) {
+            exhausted = true;
+        }
+        return message;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    private void readBatch() {
+        try {
+            batch = mapper.findInMailbox(mailbox, MessageRange.range(cursor, to), fetchType, batchSize);
+        } catch (MailboxException e) {
+            throw new WrappedException(e);
+        }
+        readInBatch = 0;
+        exhausted = !batch.hasNext();
+    }
+}
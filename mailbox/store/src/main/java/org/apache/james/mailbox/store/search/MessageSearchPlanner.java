@@ -0,0 +1,133 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.ConjunctionCriterion;
+import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.HeaderCriterion;
+import org.apache.james.mailbox.model.SearchQuery.Sort;
+import org.apache.james.mailbox.model.SearchQuery.TextCriterion;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+
+/**
+ * Plans the evaluation of a {@link SearchQuery} against {@link org.apache.james.mailbox.store.mail.model.MailboxMessage}'s:
+ * computes the minimal {@link FetchType} needed to evaluate it, and orders its criteria so that the cheap ones are
+ * evaluated first.
+ */
+public class MessageSearchPlanner {
+
+    private static final Comparator<Criterion> BY_COST = new Comparator<Criterion>() {
+        @Override
+        public int compare(Criterion criterion1, Criterion criterion2) {
+            return cost(criterion1) - cost(criterion2);
+        }
+    };
+
+    /**
+     * @return the minimal {@link FetchType} allowing to evaluate the criteria and the sorts of the given query
+     */
+    public static FetchType fetchType(SearchQuery query) {
+        FetchType result = FetchType.Metadata;
+        for (Criterion criterion : query.getCriterias()) {
+            result = combine(result, fetchType(criterion));
+        }
+        for (Sort sort : query.getSorts()) {
+            result = combine(result, fetchType(sort));
+        }
+        return result;
+    }
+
+    /**
+     * @return the minimal {@link FetchType} allowing to evaluate the given criterion
+     */
+    public static FetchType fetchType(Criterion criterion) {
+        if (criterion instanceof TextCriterion) {
+            return FetchType.Full;
+        } else if (criterion instanceof HeaderCriterion) {
+            return FetchType.Headers;
+        } else if (criterion instanceof ConjunctionCriterion) {
+            FetchType result = FetchType.Metadata;
+            for (Criterion subCriterion : ((ConjunctionCriterion) criterion).getCriteria()) {
+                result = combine(result, fetchType(subCriterion));
+            }
+            return result;
+        }
+        return FetchType.Metadata;
+    }
+
+    private static FetchType fetchType(Sort sort) {
+        switch (sort.getSortClause()) {
+        case Arrival:
+        case Size:
+        case Uid:
+            return FetchType.Metadata;
+        default:
+            return FetchType.Headers;
+        }
+    }
+
+    /**
+     * @return a query equivalent to the given one, whose criteria are ordered by increasing evaluation cost
+     */
+    public static SearchQuery optimize(SearchQuery query) {
+        SearchQuery result = new SearchQuery();
+        for (Criterion criterion : orderByCost(query.getCriterias())) {
+            result.andCriteria(criterion);
+        }
+        result.setSorts(query.getSorts());
+        result.addRecentMessageUids(query.getRecentMessageUids());
+        return result;
+    }
+
+    private static List<Criterion> orderByCost(List<Criterion> criteria) {
+        List<Criterion> result = new ArrayList<Criterion>(criteria.size());
+        for (Criterion criterion : criteria) {
+            if (criterion instanceof ConjunctionCriterion) {
+                ConjunctionCriterion conjunction = (ConjunctionCriterion) criterion;
+                result.add(new ConjunctionCriterion(conjunction.getType(), orderByCost(conjunction.getCriteria())));
+            } else {
+                result.add(criterion);
+            }
+        }
+        // Evaluation has no side effect, so the criteria of a conjunction can be evaluated in any order
+        Collections.sort(result, BY_COST);
+        return result;
+    }
+
+    private static int cost(Criterion criterion) {
+        return fetchType(criterion).ordinal();
+    }
+
+    private static FetchType combine(FetchType fetchType1, FetchType fetchType2) {
+        if (fetchType1 == fetchType2 || fetchType2 == FetchType.Metadata) {
+            return fetchType1;
+        }
+        if (fetchType1 == FetchType.Metadata) {
+            return fetchType2;
+        }
+        // Headers and Body are only both available with Full
+        return FetchType.Full;
+    }
+}
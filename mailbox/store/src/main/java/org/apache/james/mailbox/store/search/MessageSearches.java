@@ -29,8 +29,8 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -69,6 +69,7 @@ import org.apache.james.mime4j.message.DefaultMessageWriter;
 import org.apache.james.mime4j.message.HeaderImpl;
 import org.apache.james.mime4j.utils.search.MessageMatcher;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
 
 /**
@@ -79,11 +80,21 @@ public class MessageSearches implements Iterable<Long> {
     private Iterator<MailboxMessage> messages;
     private SearchQuery query;
     private MailboxSession session;
+    private ParallelMessageSearchExecutor parallelExecutor;
 
     public MessageSearches(Iterator<MailboxMessage> messages, SearchQuery query, MailboxSession session) {
+        this(messages, query, session, null);
+    }
+
+    /**
+     * @param parallelExecutor
+     *            when not null, messages are matched concurrently on this executor
+     */
+    public MessageSearches(Iterator<MailboxMessage> messages, SearchQuery query, MailboxSession session, ParallelMessageSearchExecutor parallelExecutor) {
         this.messages = messages;
         this.query = query;
         this.session = session;
+        this.parallelExecutor = parallelExecutor;
     }
 
     /**
@@ -94,19 +105,22 @@ public class MessageSearches implements Iterable<Long> {
 
     private Collection<Long> search() {
         TreeSet<MailboxMessage> matched = new TreeSet<MailboxMessage>(CombinedComparator.create(query.getSorts()));
-        while (messages.hasNext()) {
-            MailboxMessage m = messages.next();
-            try {
-                if (isMatch(query, m)) {
-                    matched.add(m);
+        if (parallelExecutor != null) {
+            matched.addAll(parallelExecutor.filter(messages, MessageSearchPlanner.fetchType(query), new Predicate<MailboxMessage>() {
+                @Override
+                public boolean apply(MailboxMessage m) {
+                    return isMatchLoggingErrors(m);
                 }
-            } catch (MailboxException e) {
-                if (session != null && session.getLog() != null) {
-                    session.getLog().debug("Unable to search message " + m.getUid(), e);
+            }));
+        } else {
+            while (messages.hasNext()) {
+                MailboxMessage m = messages.next();
+                if (isMatchLoggingErrors(m)) {
+                    matched.add(m);
                 }
             }
         }
-        Set<Long> uids = new HashSet<Long>();
+        Set<Long> uids = new LinkedHashSet<Long>();
         Iterator<MailboxMessage> matchedIt = matched.iterator();
         while (matchedIt.hasNext()) {
             uids.add(matchedIt.next().getUid());
@@ -114,6 +128,17 @@ public class MessageSearches implements Iterable<Long> {
         return uids;
     }
 
+    private boolean isMatchLoggingErrors(MailboxMessage m) {
+        try {
+            return isMatch(query, m);
+        } catch (MailboxException e) {
+            if (session != null && session.getLog() != null) {
+                session.getLog().debug("Unable to search message " + m.getUid(), e);
+            }
+            return false;
+        }
+    }
+
     /**
      * Does the row match the given criteria?
      * 
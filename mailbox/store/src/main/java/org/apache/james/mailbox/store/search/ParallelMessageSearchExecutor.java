@@ -0,0 +1,205 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.search;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PreDestroy;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageAttachment;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Evaluates a {@link Predicate} against {@link MailboxMessage}s on a bounded pool of threads.
+ *
+ * Messages are read on the calling thread and split into chunks of consecutive messages, which are then
+ * matched concurrently. At most maxParallelismPerQuery chunks of a given query are in flight at once,
+ * so that a single expensive search can not monopolize the pool shared by every session.
+ *
+ * Persistent messages, such as JPA entities, load their content lazily through a persistence context bound to
+ * the calling thread, which must not be used from the pool threads. Messages other than {@link SimpleMailboxMessage},
+ * which holds its content in memory, are thus copied on the calling thread before being handed over. Only the part
+ * of the content the query needs, as planned by its {@link FetchType}, is copied. Queries reading no content at all
+ * are cheap to match and are matched on the calling thread.
+ *
+ * Matched messages are returned in the order they were read.
+ */
+public class ParallelMessageSearchExecutor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private final ExecutorService executor;
+    private final int maxParallelismPerQuery;
+    private final int chunkSize;
+
+    public ParallelMessageSearchExecutor(int threadCount, int maxParallelismPerQuery) {
+        this(threadCount, maxParallelismPerQuery, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelMessageSearchExecutor(int threadCount, int maxParallelismPerQuery, int chunkSize) {
+        Preconditions.checkArgument(threadCount > 0, "Thread count should be strictly positive");
+        Preconditions.checkArgument(maxParallelismPerQuery > 0, "Max parallelism per query should be strictly positive");
+        Preconditions.checkArgument(chunkSize > 0, "Chunk size should be strictly positive");
+        this.maxParallelismPerQuery = maxParallelismPerQuery;
+        this.chunkSize = chunkSize;
+        this.executor = Executors.newFixedThreadPool(threadCount,
+            new ThreadFactoryBuilder()
+                .setNameFormat("parallel-message-search-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Return the messages matching the given predicate, in iteration order.
+     *
+     * The predicate will be called concurrently and thus needs to be thread safe. It should only read the part of
+     * the messages given by the fetch type.
+     */
+    public List<MailboxMessage> filter(Iterator<MailboxMessage> messages, FetchType fetchType, Predicate<MailboxMessage> predicate) {
+        if (fetchType == FetchType.Metadata) {
+            return Lists.newArrayList(Iterators.filter(messages, predicate));
+        }
+        List<MailboxMessage> matched = new ArrayList<MailboxMessage>();
+        Deque<Future<List<MailboxMessage>>> inFlight = new ArrayDeque<Future<List<MailboxMessage>>>();
+        try {
+            while (messages.hasNext()) {
+                List<MailboxMessage> chunk = nextChunk(messages, fetchType);
+                if (inFlight.isEmpty() && !messages.hasNext()) {
+                    // A single chunk is not worth a thread hop
+                    matched.addAll(new ChunkFilter(chunk, predicate).call());
+                    return matched;
+                }
+                if (inFlight.size() >= maxParallelismPerQuery) {
+                    matched.addAll(await(inFlight.removeFirst()));
+                }
+                inFlight.addLast(executor.submit(new ChunkFilter(chunk, predicate)));
+            }
+            while (!inFlight.isEmpty()) {
+                matched.addAll(await(inFlight.removeFirst()));
+            }
+            return matched;
+        } finally {
+            for (Future<List<MailboxMessage>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private List<MailboxMessage> nextChunk(Iterator<MailboxMessage> messages, FetchType fetchType) {
+        List<MailboxMessage> chunk = new ArrayList<MailboxMessage>(chunkSize);
+        while (messages.hasNext() && chunk.size() < chunkSize) {
+            chunk.add(detach(messages.next(), fetchType));
+        }
+        return chunk;
+    }
+
+    private MailboxMessage detach(MailboxMessage message, FetchType fetchType) {
+        if (message instanceof SimpleMailboxMessage) {
+            return message;
+        }
+        try {
+            SimpleMailboxMessage copy;
+            if (fetchType == FetchType.Headers) {
+                copy = copyHeaders(message);
+            } else {
+                copy = SimpleMailboxMessage.copy(message.getMailboxId(), message);
+            }
+            copy.setUid(message.getUid());
+            copy.setModSeq(message.getModSeq());
+            return copy;
+        } catch (MailboxException e) {
+            throw Throwables.propagate(e);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private SimpleMailboxMessage copyHeaders(MailboxMessage message) throws IOException {
+        PropertyBuilder propertyBuilder = new PropertyBuilder(message.getProperties());
+        propertyBuilder.setTextualLineCount(message.getTextualLineCount());
+        return new SimpleMailboxMessage(message.getInternalDate(), message.getFullContentOctets(),
+            Ints.checkedCast(message.getFullContentOctets() - message.getBodyOctets()),
+            new SharedByteArrayInputStream(IOUtils.toByteArray(message.getHeaderContent())),
+            message.createFlags(), propertyBuilder, message.getMailboxId(), ImmutableList.<MessageAttachment>of());
+    }
+
+    private List<MailboxMessage> await(Future<List<MailboxMessage>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static class ChunkFilter implements Callable<List<MailboxMessage>> {
+
+        private final List<MailboxMessage> chunk;
+        private final Predicate<MailboxMessage> predicate;
+
+        public ChunkFilter(List<MailboxMessage> chunk, Predicate<MailboxMessage> predicate) {
+            this.chunk = chunk;
+            this.predicate = predicate;
+        }
+
+        @Override
+        public List<MailboxMessage> call() {
+            List<MailboxMessage> matched = new ArrayList<MailboxMessage>();
+            for (MailboxMessage message : chunk) {
+                if (predicate.apply(message)) {
+                    matched.add(message);
+                }
+            }
+            return matched;
+        }
+    }
+}
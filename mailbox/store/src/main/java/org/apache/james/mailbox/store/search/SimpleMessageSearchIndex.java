@@ -24,8 +24,6 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import javax.inject.Inject;
 
@@ -54,6 +52,7 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableMultimap.Builder;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Multimap;
 
 /**
@@ -62,13 +61,17 @@ import com.google.common.collect.Multimap;
  * 
  * This works with every implementation but is SLOW.
  * 
+ * Messages are read by batches, only fetching the parts of them needed by the query.
  *
  */
 public class SimpleMessageSearchIndex implements MessageSearchIndex {
     private static final String WILDCARD = "%";
+    public static final int DEFAULT_FETCH_BATCH_SIZE = 200;
 
     private final MessageMapperFactory messageMapperFactory;
     private final MailboxMapperFactory mailboxMapperFactory;
+    private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
+    private ParallelMessageSearchExecutor parallelExecutor;
     
     @Inject
     public SimpleMessageSearchIndex(MessageMapperFactory messageMapperFactory, MailboxMapperFactory mailboxMapperFactory) {
@@ -76,6 +79,24 @@ public class SimpleMessageSearchIndex implements MessageSearchIndex {
         this.mailboxMapperFactory = mailboxMapperFactory;
     }
     
+    /**
+     * Set the count of messages read at once from the {@link MessageMapper}. The default is {@link #DEFAULT_FETCH_BATCH_SIZE}
+     * 
+     * @param fetchBatchSize
+     */
+    public void setFetchBatchSize(int fetchBatchSize) {
+        this.fetchBatchSize = fetchBatchSize;
+    }
+
+    /**
+     * Set the executor used to match messages concurrently. Messages are matched on the calling thread when none is set.
+     * 
+     * @param parallelExecutor
+     */
+    public void setParallelExecutor(ParallelMessageSearchExecutor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor;
+    }
+
     @Override
     public EnumSet<SearchCapabilities> getSupportedCapabilities() {
         return EnumSet.of(SearchCapabilities.MultimailboxSearch, SearchCapabilities.Text);
@@ -122,33 +143,32 @@ public class SimpleMessageSearchIndex implements MessageSearchIndex {
             return ImmutableMultimap.of();
         }
         MessageMapper mapper = messageMapperFactory.getMessageMapper(session);
+        FetchType fetchType = MessageSearchPlanner.fetchType(query);
 
-        final SortedSet<MailboxMessage> hitSet = new TreeSet<MailboxMessage>();
-
+        Iterator<MailboxMessage> messages;
         UidCriterion uidCrit = findConjugatedUidCriterion(query.getCriterias());
         if (uidCrit != null) {
             // if there is a conjugated uid range criterion in the query tree we can optimize by
             // only fetching this uid range
             NumericRange[] ranges = uidCrit.getOperator().getRange();
+            List<Iterator<MailboxMessage>> rangeIterators = new ArrayList<Iterator<MailboxMessage>>();
             for (NumericRange r : ranges) {
-                Iterator<MailboxMessage> it = mapper.findInMailbox(mailbox, MessageRange.range(r.getLowValue(), r.getHighValue()), FetchType.Metadata, -1);
-                while (it.hasNext()) {
-                    hitSet.add(it.next());
-                }
+                rangeIterators.add(new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.range(r.getLowValue(), r.getHighValue()), fetchType, fetchBatchSize));
             }
+            messages = Iterators.concat(rangeIterators.iterator());
         } else {
-        	// we have to fetch all messages
-            Iterator<MailboxMessage> messages = mapper.findInMailbox(mailbox, MessageRange.all(), FetchType.Full, -1);
-            while(messages.hasNext()) {
-            	MailboxMessage m = messages.next();
-            	hitSet.add(m);
-            }
+            // we have to read all messages
+            messages = new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.all(), fetchType, fetchBatchSize);
         }
         
         // MessageSearches does the filtering for us
-        return ImmutableMultimap.<MailboxId, Long>builder()
-                    .putAll(mailbox.getMailboxId(), ImmutableList.copyOf(new MessageSearches(hitSet.iterator(), query, session).iterator()))
-                    .build();
+        try {
+            return ImmutableMultimap.<MailboxId, Long>builder()
+                        .putAll(mailbox.getMailboxId(), ImmutableList.copyOf(new MessageSearches(messages, MessageSearchPlanner.optimize(query), session, parallelExecutor).iterator()))
+                        .build();
+        } catch (BatchedMailboxMessageIterator.WrappedException e) {
+            throw e.getCause();
+        }
     }
 
     private boolean isMatchingUser(MailboxSession session, Mailbox mailbox) {
@@ -159,6 +159,37 @@ public abstract class AbstractMailboxManagerAttachmentTest {
             .hasContentEqualTo(ClassLoader.getSystemResourceAsStream("eml/4037_015.jpg"));
     }
 
+    @Test
+    public void appendMessageShouldStoreTwoRetrievableAttachmentsWhenMailIsSpooledToDisk() throws Exception {
+        ((StoreMailboxManager) mailboxManager).setInMemoryMessageThreshold(0);
+        MessageManager spoolingInboxMessageManager = mailboxManager.getMailbox(inboxPath, mailboxSession);
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/twoAttachments.eml");
+        spoolingInboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        Iterator<MailboxMessage> messages = messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Full, 1);
+        assertThat(messages.hasNext()).isTrue();
+        MailboxMessage message = messages.next();
+        assertThat(message.getFullContent())
+            .hasContentEqualTo(ClassLoader.getSystemResourceAsStream("eml/twoAttachments.eml"));
+        List<MessageAttachment> attachments = message.getAttachments();
+        assertThat(attachments).hasSize(2);
+        assertThat(attachmentMapper.getAttachment(attachments.get(0).getAttachmentId()).getStream())
+            .hasContentEqualTo(ClassLoader.getSystemResourceAsStream("eml/4037_014.jpg"));
+    }
+
+    @Test
+    public void appendMessageShouldStoreFullContentWhenMailIsBufferedInMemory() throws Exception {
+        String mail = "Subject: Test\n\nBody";
+        InputStream mailInputStream = new ByteArrayInputStream(mail.getBytes());
+        inboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        Iterator<MailboxMessage> messages = messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Full, 1);
+        assertThat(messages.hasNext()).isTrue();
+        MailboxMessage message = messages.next();
+        assertThat(message.getFullContent()).hasContentEqualTo(new ByteArrayInputStream(mail.getBytes()));
+        assertThat(message.getFullContentOctets()).isEqualTo(mail.length());
+    }
+
     @Test
     public void appendMessageShouldStoreEmbeddedMailAsAttachmentWhenMailWithEmbeddedAttachment() throws Exception {
         InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/embeddedAttachmentWithAttachment.eml");
@@ -182,6 +213,21 @@ public abstract class AbstractMailboxManagerAttachmentTest {
         assertThat(attachments).hasSize(0);
     }
 
+    @Test
+    public void appendMessageShouldStoreMessageWithoutAttachmentWhenAttachmentParsingFails() throws Exception {
+        MailboxManager parseFailingMailboxManager = getParseFailingMailboxManager();
+        MessageManager parseFailingInboxMessageManager = parseFailingMailboxManager.getMailbox(inboxPath, mailboxSession);
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/twoAttachments.eml");
+        parseFailingInboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flag.RECENT));
+
+        Iterator<MailboxMessage> messages = messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Full, 1);
+        assertThat(messages.hasNext()).isTrue();
+        MailboxMessage message = messages.next();
+        assertThat(message.getAttachments()).isEmpty();
+        assertThat(message.getFullContent())
+            .hasContentEqualTo(ClassLoader.getSystemResourceAsStream("eml/twoAttachments.eml"));
+    }
+
     @Test
     public void appendMessageShouldStoreOnceWhenDuplicateAttachment() throws Exception {
         InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml");
@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.store;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -26,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -36,9 +38,13 @@ import org.apache.james.mailbox.model.SearchQuery.AddressType;
 import org.apache.james.mailbox.model.SearchQuery.DateResolution;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.search.MessageSearches;
+import org.apache.james.mailbox.store.search.ParallelMessageSearchExecutor;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
 public class SearchUtilsTest {
 
     private static final String RHUBARD = "Rhubard";
@@ -797,4 +803,28 @@ public class SearchUtilsTest {
         assertFalse(new MessageSearches().isMatch(SearchQuery.address(AddressType.From, "user-from@domain.org"), row, recent));
     }
 
+    @Test
+    public void parallelSearchShouldReturnTheSameUidsInTheSameOrderAsSequentialSearch() throws Exception {
+        List<MailboxMessage> messages = new ArrayList<MailboxMessage>();
+        builder.header("Subject", "A text mail");
+        for (long uid = 1; uid <= 40; uid++) {
+            builder.uid = uid;
+            builder.body = (uid % 3 == 0 ? "hello james\r\n" : "hello world\r\n").getBytes();
+            messages.add(builder.build());
+        }
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.bodyContains("james"));
+        ParallelMessageSearchExecutor executor = new ParallelMessageSearchExecutor(4, 2, 5);
+        try {
+            List<Long> parallelUids = ImmutableList.copyOf(new MessageSearches(messages.iterator(), query, null, executor));
+            List<Long> sequentialUids = ImmutableList.copyOf(new MessageSearches(messages.iterator(), query, null));
+
+            assertEquals(13, parallelUids.size());
+            assertEquals(sequentialUids, parallelUids);
+            assertEquals(Ordering.natural().sortedCopy(parallelUids), parallelUids);
+        } finally {
+            executor.stop();
+        }
+    }
+
 }
@@ -35,12 +35,13 @@ import java.util.Map.Entry;
 
 import javax.mail.Flags;
 
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.james.mailbox.model.MessageAttachment;
 import org.apache.james.mailbox.store.mail.model.DefaultMessageId;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.Property;
 
+import com.google.common.collect.ImmutableList;
+
 public class SimpleMailboxMembership implements MailboxMessage {
     
     private static final String TOSTRING_SEPARATOR = " ";
@@ -191,7 +192,7 @@ public class SimpleMailboxMembership implements MailboxMessage {
     
     public byte[] body;
     public Map<String, String> headers;
-    public List<SimpleProperty> properties;
+    public List<SimpleProperty> properties = new ArrayList<SimpleProperty>();
     public String subType = null;
     public String mediaType = null;
     public Long textualLineCount = null;
@@ -275,7 +276,7 @@ public class SimpleMailboxMembership implements MailboxMessage {
 
     @Override
     public List<MessageAttachment> getAttachments() {
-        throw new NotImplementedException("Attachments Ids not implemented");
+        return ImmutableList.of();
     }
     
 }
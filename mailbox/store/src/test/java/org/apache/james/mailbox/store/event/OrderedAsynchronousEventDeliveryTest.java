@@ -0,0 +1,304 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.TestId;
+import org.apache.james.mailbox.store.event.EventFactory.MailboxAware;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import org.junit.Test;
+
+public class OrderedAsynchronousEventDeliveryTest {
+
+    private static final int ONE_MINUTE = (int) TimeUnit.MINUTES.toMillis(1);
+    private static final MailboxPath MAILBOX_PATH = new MailboxPath("#private", "user", "INBOX");
+
+    private OrderedAsynchronousEventDelivery eventDelivery;
+
+    @After
+    public void tearDown() {
+        eventDelivery.stop();
+    }
+
+    @Test
+    public void deliverShouldWork() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(2, 10, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        MailboxListener mailboxListener = mock(MailboxListener.class);
+        MailboxListener.Event event = new MailboxListener.Event(null, MAILBOX_PATH) {};
+
+        eventDelivery.deliver(mailboxListener, event);
+
+        verify(mailboxListener, timeout(ONE_MINUTE)).event(event);
+    }
+
+    @Test
+    public void deliverShouldNotPropagateException() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(2, 10, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        MailboxListener mailboxListener = mock(MailboxListener.class);
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), MAILBOX_PATH) {};
+        doThrow(new RuntimeException()).when(mailboxListener).event(event);
+
+        eventDelivery.deliver(mailboxListener, event);
+
+        verify(mailboxListener, timeout(ONE_MINUTE)).event(event);
+    }
+
+    @Test
+    public void deliverShouldAcceptEventsWithoutMailboxPath() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(2, 10, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        MailboxListener mailboxListener = mock(MailboxListener.class);
+        MailboxListener.Event event = new MailboxListener.Event(null, null) {};
+
+        eventDelivery.deliver(mailboxListener, event);
+
+        verify(mailboxListener, timeout(ONE_MINUTE)).event(event);
+    }
+
+    @Test
+    public void deliverShouldPreserveOrderingOfEventsOfAMailbox() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(4, 1, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        int eventCount = 100;
+        RecordingListener listener = new RecordingListener(eventCount);
+
+        for (int i = 0; i < eventCount; i++) {
+            eventDelivery.deliver(listener, new NumberedEvent(MAILBOX_PATH, i));
+        }
+
+        assertThat(listener.latch.await(1, TimeUnit.MINUTES)).isTrue();
+        for (int i = 0; i < eventCount; i++) {
+            assertThat(listener.received.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void deliverShouldPreserveOrderingOfEventsOfARenamedMailbox() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(4, 1, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        int eventCount = 100;
+        RecordingListener listener = new RecordingListener(eventCount);
+        TestId mailboxId = TestId.of(36);
+        Mailbox mailbox = new SimpleMailbox(MAILBOX_PATH, 42, mailboxId);
+        Mailbox renamedMailbox = new SimpleMailbox(new MailboxPath("#private", "user", "renamed"), 42, mailboxId);
+
+        for (int i = 0; i < eventCount; i++) {
+            eventDelivery.deliver(listener, new NumberedMailboxEvent(i % 2 == 0 ? mailbox : renamedMailbox, i));
+        }
+
+        assertThat(listener.latch.await(1, TimeUnit.MINUTES)).isTrue();
+        for (int i = 0; i < eventCount; i++) {
+            assertThat(listener.received.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void deliverShouldNotBlockListenersPublishingOnAFullQueueWhenPolicyIsBlock() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(1, 1, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        final RecordingListener recordingListener = new RecordingListener(2);
+        MailboxListener publishingListener = new RecordingListener(1) {
+            @Override
+            public void event(Event event) {
+                eventDelivery.deliver(recordingListener, new NumberedEvent(MAILBOX_PATH, 0));
+                eventDelivery.deliver(recordingListener, new NumberedEvent(MAILBOX_PATH, 1));
+            }
+        };
+
+        eventDelivery.deliver(publishingListener, new NumberedEvent(MAILBOX_PATH, 0));
+
+        assertThat(recordingListener.latch.await(1, TimeUnit.MINUTES)).isTrue();
+    }
+
+    @Test
+    public void stopShouldDeliverQueuedEvents() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(1, 10, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        BlockingListener blockingListener = new BlockingListener(blockingLatch);
+        RecordingListener recordingListener = new RecordingListener(3);
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), MAILBOX_PATH) {};
+
+        eventDelivery.deliver(blockingListener, event);
+        blockingListener.started.await(1, TimeUnit.MINUTES);
+        for (int i = 0; i < 3; i++) {
+            eventDelivery.deliver(recordingListener, new NumberedEvent(MAILBOX_PATH, i));
+        }
+        blockingLatch.countDown();
+        eventDelivery.stop();
+
+        assertThat(recordingListener.latch.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void deliverShouldDiscardEventsWhenQueueIsFullAndPolicyIsDiscard() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(1, 1, OrderedAsynchronousEventDelivery.RejectionPolicy.DISCARD);
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        BlockingListener blockingListener = new BlockingListener(blockingLatch);
+        MailboxListener mailboxListener = mock(MailboxListener.class);
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), MAILBOX_PATH) {};
+
+        eventDelivery.deliver(blockingListener, event);
+        blockingListener.started.await(1, TimeUnit.MINUTES);
+        eventDelivery.deliver(mailboxListener, event);
+        eventDelivery.deliver(mailboxListener, event);
+        blockingLatch.countDown();
+
+        verify(mailboxListener, timeout(ONE_MINUTE)).event(event);
+        assertThat(eventDelivery.getMetrics().getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void deliverShouldRunInCallerThreadWhenQueueIsFullAndPolicyIsCallerRuns() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(1, 1, OrderedAsynchronousEventDelivery.RejectionPolicy.CALLER_RUNS);
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        BlockingListener blockingListener = new BlockingListener(blockingLatch);
+        MailboxListener mailboxListener = mock(MailboxListener.class);
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), MAILBOX_PATH) {};
+
+        eventDelivery.deliver(blockingListener, event);
+        blockingListener.started.await(1, TimeUnit.MINUTES);
+        eventDelivery.deliver(mailboxListener, event);
+        eventDelivery.deliver(mailboxListener, event);
+
+        verify(mailboxListener).event(event);
+        blockingLatch.countDown();
+        assertThat(eventDelivery.getMetrics().getRejectedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void metricsShouldRecordLagAndListenerLatencies() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(2, 10, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        RecordingListener listener = new RecordingListener(2);
+
+        eventDelivery.deliver(listener, new NumberedEvent(MAILBOX_PATH, 0));
+        eventDelivery.deliver(listener, new NumberedEvent(MAILBOX_PATH, 1));
+
+        assertThat(listener.latch.await(1, TimeUnit.MINUTES)).isTrue();
+        EventDeliveryMetrics metrics = eventDelivery.getMetrics();
+        assertThat(metrics.getQueueDepth()).isEqualTo(0);
+        assertThat(metrics.getLag().getCount()).isEqualTo(2);
+        assertThat(metrics.getListenerLatencies().get(RecordingListener.class.getName()).getCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void metricsShouldBeExportedOverJmxUntilStopped() throws Exception {
+        eventDelivery = new OrderedAsynchronousEventDelivery(2, 10, OrderedAsynchronousEventDelivery.RejectionPolicy.BLOCK);
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OrderedAsynchronousEventDelivery.METRICS_MBEAN_NAME);
+
+        eventDelivery.registerMetrics();
+        assertThat(mBeanServer.getAttribute(name, "RejectedCount")).isEqualTo(0L);
+
+        eventDelivery.stop();
+        assertThat(mBeanServer.isRegistered(name)).isFalse();
+    }
+
+    private static class NumberedEvent extends MailboxListener.Event {
+        private final int number;
+
+        public NumberedEvent(MailboxPath path, int number) {
+            super(null, path);
+            this.number = number;
+        }
+    }
+
+    private static class NumberedMailboxEvent extends NumberedEvent implements MailboxAware {
+        private final Mailbox mailbox;
+
+        public NumberedMailboxEvent(Mailbox mailbox, int number) {
+            super(new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName()), number);
+            this.mailbox = mailbox;
+        }
+
+        @Override
+        public Mailbox getMailbox() {
+            return mailbox;
+        }
+    }
+
+    private static class RecordingListener implements MailboxListener {
+        private final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+        private final CountDownLatch latch;
+
+        public RecordingListener(int expectedEventCount) {
+            this.latch = new CountDownLatch(expectedEventCount);
+        }
+
+        @Override
+        public ListenerType getType() {
+            return ListenerType.ONCE;
+        }
+
+        @Override
+        public ExecutionMode getExecutionMode() {
+            return ExecutionMode.ASYNCHRONOUS;
+        }
+
+        @Override
+        public void event(Event event) {
+            received.add(((NumberedEvent) event).number);
+            latch.countDown();
+        }
+    }
+
+    private static class BlockingListener implements MailboxListener {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        public BlockingListener(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public ListenerType getType() {
+            return ListenerType.ONCE;
+        }
+
+        @Override
+        public ExecutionMode getExecutionMode() {
+            return ExecutionMode.ASYNCHRONOUS;
+        }
+
+        @Override
+        public void event(Event event) {
+            started.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -26,11 +26,14 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.mock.MockMailboxSession;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.event.EventSerializer;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
 import org.apache.james.mailbox.store.publisher.MessageConsumer;
 import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
@@ -40,6 +43,8 @@ import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import com.google.common.collect.ImmutableList;
+
 public class BroadcastDelegatingMailboxListenerTest {
 
     private static final MailboxPath MAILBOX_PATH = new MailboxPath("namespace", "user", "name");
@@ -143,6 +148,15 @@ public class BroadcastDelegatingMailboxListenerTest {
         verifyNoMoreInteractions(mockedEventSerializer, mockedPublisher);
     }
 
+    @Test
+    public void receiveSerializedEventShouldIgnoreTruncatedBatches() throws Exception {
+        byte[] batch = MessageBatch.pack(ImmutableList.of(BYTES, BYTES));
+
+        broadcastDelegatingMailboxListener.receiveSerializedEvent(Arrays.copyOf(batch, batch.length - 1));
+
+        verifyNoMoreInteractions(mockedEventSerializer, mockedPublisher);
+    }
+
     @Test
     public void receiveSerializedEventShouldWorkWithMailboxRegisteredListeners() throws Exception {
         broadcastDelegatingMailboxListener.addListener(MAILBOX_PATH, mailboxEventCollector, mailboxSession);
@@ -32,6 +32,7 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.Sets;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.publisher.Topic;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
@@ -76,6 +77,45 @@ public class DistantMailboxPathRegisterTest {
         assertThat(register.getTopics(MAILBOX_PATH)).isEqualTo(result);
     }
 
+    @Test
+    public void getTopicsShouldBeCachedWhenTopicsCacheIsEnabled() {
+        DistantMailboxPathRegister cachingRegister = new DistantMailboxPathRegister(mockedMapper, 1000, 1, DistantMailboxPathRegister.MAX_TOPICS_CACHE_TTL_IN_MS);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(new Topic(TOPIC)));
+
+        cachingRegister.getTopics(MAILBOX_PATH);
+        assertThat(cachingRegister.getTopics(MAILBOX_PATH)).containsOnly(new Topic(TOPIC));
+        verify(mockedMapper, times(1)).getTopics(MAILBOX_PATH);
+    }
+
+    @Test
+    public void registerShouldInvalidateCachedTopics() throws Exception {
+        DistantMailboxPathRegister cachingRegister = new DistantMailboxPathRegister(mockedMapper, 1000, 1, DistantMailboxPathRegister.MAX_TOPICS_CACHE_TTL_IN_MS);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(new Topic(TOPIC)));
+        cachingRegister.getTopics(MAILBOX_PATH);
+
+        cachingRegister.register(MAILBOX_PATH);
+        cachingRegister.getTopics(MAILBOX_PATH);
+
+        verify(mockedMapper, times(2)).getTopics(MAILBOX_PATH);
+    }
+
+    @Test
+    public void cachedTopicsShouldExpire() throws Exception {
+        DistantMailboxPathRegister cachingRegister = new DistantMailboxPathRegister(mockedMapper, 1000, 1, 1);
+        when(mockedMapper.getTopics(MAILBOX_PATH)).thenReturn(Sets.newHashSet(new Topic(TOPIC)));
+        cachingRegister.getTopics(MAILBOX_PATH);
+
+        Thread.sleep(10);
+        cachingRegister.getTopics(MAILBOX_PATH);
+
+        verify(mockedMapper, times(2)).getTopics(MAILBOX_PATH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void topicsCacheTtlShouldBeBounded() {
+        new DistantMailboxPathRegister(mockedMapper, 1000, 1, DistantMailboxPathRegister.MAX_TOPICS_CACHE_TTL_IN_MS + 1);
+    }
+
     @Test
     public void registerShouldWork() throws MailboxException {
         register.register(MAILBOX_PATH);
@@ -27,6 +27,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxSession;
@@ -34,6 +35,7 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.mock.MockMailboxSession;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.event.EventSerializer;
+import org.apache.james.mailbox.store.publisher.MessageBatch;
 import org.apache.james.mailbox.store.publisher.MessageConsumer;
 import org.apache.james.mailbox.store.publisher.Publisher;
 import org.apache.james.mailbox.store.publisher.Topic;
@@ -183,6 +185,19 @@ public class RegisteredDelegatingMailboxListenerTest {
     }
 
 
+    @Test
+    public void distantEventBatchShouldBeLocallyDelivered() throws Exception {
+        final byte[] otherBytes = new byte[] {1};
+        final MailboxListener.Event otherEvent = new MailboxListener.Event(mailboxSession, MAILBOX_PATH) {};
+        testee.addListener(MAILBOX_PATH, mailboxEventCollector, mailboxSession);
+        when(mockedEventSerializer.deSerializeEvent(BYTES)).thenReturn(EVENT);
+        when(mockedEventSerializer.deSerializeEvent(otherBytes)).thenReturn(otherEvent);
+
+        testee.receiveSerializedEvent(MessageBatch.pack(ImmutableList.of(BYTES, otherBytes)));
+
+        assertThat(mailboxEventCollector.getEvents()).containsExactly(EVENT, otherEvent);
+    }
+
     @Test
     public void distantEventShouldNotBeDeliveredToOnceGlobalListeners() throws Exception {
         testee.addGlobalListener(onceEventCollector, mailboxSession);
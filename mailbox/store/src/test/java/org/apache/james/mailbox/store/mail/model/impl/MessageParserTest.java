@@ -22,11 +22,13 @@ package org.apache.james.mailbox.store.mail.model.impl;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.util.List;
 
 import org.apache.james.mailbox.model.Attachment;
 import org.apache.james.mailbox.model.Cid;
 import org.apache.james.mailbox.model.MessageAttachment;
+import org.apache.james.mailbox.store.mail.model.impl.MessageParser.ParsedMessage;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -177,4 +179,44 @@ public class MessageParserTest {
         
         assertThat(attachments).hasSize(6);
     }
+
+    @Test
+    public void parseShouldReturnTheRootEntityProperties() throws Exception {
+        ParsedMessage parsedMessage = testee.parse(new ByteArrayInputStream("Content-Type: text/html; charset=UTF-8\r\n\r\nline1\r\nline2\r\n".getBytes()));
+
+        PropertyBuilder propertyBuilder = parsedMessage.getPropertyBuilder();
+        assertThat(propertyBuilder.getMediaType()).isEqualTo("text");
+        assertThat(propertyBuilder.getSubType()).isEqualTo("html");
+        assertThat(propertyBuilder.getCharset()).isEqualTo("UTF-8");
+        assertThat(propertyBuilder.getTextualLineCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void parseShouldDefaultToTextPlainWhenNoContentType() throws Exception {
+        ParsedMessage parsedMessage = testee.parse(new ByteArrayInputStream("Subject: test\r\n\r\nbody".getBytes()));
+
+        PropertyBuilder propertyBuilder = parsedMessage.getPropertyBuilder();
+        assertThat(propertyBuilder.getMediaType()).isEqualTo("text");
+        assertThat(propertyBuilder.getSubType()).isEqualTo("plain");
+        assertThat(propertyBuilder.getCharset()).isEqualTo("us-ascii");
+    }
+
+    @Test
+    public void parseShouldReturnTheBodyStartOctet() throws Exception {
+        String headers = "Subject: test\r\nFrom: a@domain.tld\r\n\r\n";
+        ParsedMessage parsedMessage = testee.parse(new ByteArrayInputStream((headers + "body").getBytes()));
+
+        assertThat(parsedMessage.getBodyStartOctet()).isEqualTo(headers.length());
+    }
+
+    @Test
+    public void parseShouldReturnMultipartPropertiesAndAttachmentsInASinglePass() throws Exception {
+        ParsedMessage parsedMessage = testee.parse(ClassLoader.getSystemResourceAsStream("eml/twoAttachments.eml"));
+
+        assertThat(parsedMessage.getPropertyBuilder().getMediaType()).isEqualTo("multipart");
+        assertThat(parsedMessage.getPropertyBuilder().getSubType()).isEqualTo("mixed");
+        assertThat(parsedMessage.getPropertyBuilder().getBoundary()).isEqualTo("AHNPACBLDCDIDAGGGDDFAABECGCA");
+        assertThat(parsedMessage.getPropertyBuilder().getTextualLineCount()).isNull();
+        assertThat(parsedMessage.getAttachments()).hasSize(2);
+    }
 }
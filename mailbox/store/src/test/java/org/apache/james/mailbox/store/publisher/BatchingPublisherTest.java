@@ -0,0 +1,114 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.publisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class BatchingPublisherTest {
+
+    private static final Topic TOPIC = new Topic("topic");
+    private static final Topic OTHER_TOPIC = new Topic("other_topic");
+    private static final byte[] MESSAGE_1 = "{\"event\":1}".getBytes();
+    private static final byte[] MESSAGE_2 = "{\"event\":2}".getBytes();
+    private static final long WINDOW_IN_MS = 100;
+    private static final int VERIFY_TIMEOUT_IN_MS = 2000;
+
+    private Publisher mockedPublisher;
+    private BatchingPublisher testee;
+
+    @Before
+    public void setUp() {
+        mockedPublisher = mock(Publisher.class);
+        testee = new BatchingPublisher(mockedPublisher, WINDOW_IN_MS, 3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        testee.close();
+    }
+
+    @Test
+    public void publishShouldSendASingleMessageAsIs() {
+        testee.publish(TOPIC, MESSAGE_1);
+
+        verify(mockedPublisher, timeout(VERIFY_TIMEOUT_IN_MS)).publish(TOPIC, MESSAGE_1);
+    }
+
+    @Test
+    public void publishShouldCoalesceMessagesOfATopicWithinTheWindow() {
+        testee.publish(TOPIC, MESSAGE_1);
+        testee.publish(TOPIC, MESSAGE_2);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockedPublisher, timeout(VERIFY_TIMEOUT_IN_MS)).publish(eq(TOPIC), captor.capture());
+        List<byte[]> messages = MessageBatch.split(captor.getValue());
+        assertThat(messages).hasSize(2);
+        assertThat(messages.get(0)).isEqualTo(MESSAGE_1);
+        assertThat(messages.get(1)).isEqualTo(MESSAGE_2);
+    }
+
+    @Test
+    public void publishShouldNotCoalesceMessagesOfDifferentTopics() {
+        testee.publish(TOPIC, MESSAGE_1);
+        testee.publish(OTHER_TOPIC, MESSAGE_2);
+
+        verify(mockedPublisher, timeout(VERIFY_TIMEOUT_IN_MS)).publish(TOPIC, MESSAGE_1);
+        verify(mockedPublisher, timeout(VERIFY_TIMEOUT_IN_MS)).publish(OTHER_TOPIC, MESSAGE_2);
+    }
+
+    @Test
+    public void publishShouldSendTheBatchWhenMaxBatchSizeIsReached() throws Exception {
+        BatchingPublisher longWindowPublisher = new BatchingPublisher(mockedPublisher, VERIFY_TIMEOUT_IN_MS * 10, 2);
+
+        try {
+            longWindowPublisher.publish(TOPIC, MESSAGE_1);
+            longWindowPublisher.publish(TOPIC, MESSAGE_2);
+
+            verify(mockedPublisher, timeout(VERIFY_TIMEOUT_IN_MS)).publish(eq(TOPIC), any(byte[].class));
+        } finally {
+            longWindowPublisher.close();
+        }
+    }
+
+    @Test
+    public void closeShouldSendPendingMessages() throws Exception {
+        BatchingPublisher longWindowPublisher = new BatchingPublisher(mockedPublisher, VERIFY_TIMEOUT_IN_MS * 10, 10);
+        longWindowPublisher.publish(TOPIC, MESSAGE_1);
+
+        longWindowPublisher.close();
+
+        verify(mockedPublisher).publish(TOPIC, MESSAGE_1);
+        verify(mockedPublisher).close();
+        verifyNoMoreInteractions(mockedPublisher);
+    }
+}
@@ -0,0 +1,61 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.publisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class MessageBatchTest {
+
+    private static final byte[] MESSAGE_1 = "{\"event\":1}".getBytes();
+    private static final byte[] MESSAGE_2 = "{\"event\":2}".getBytes();
+
+    @Test
+    public void splitShouldReturnPackedMessages() {
+        List<byte[]> messages = MessageBatch.split(MessageBatch.pack(ImmutableList.of(MESSAGE_1, MESSAGE_2)));
+
+        assertThat(messages).hasSize(2);
+        assertThat(messages.get(0)).isEqualTo(MESSAGE_1);
+        assertThat(messages.get(1)).isEqualTo(MESSAGE_2);
+    }
+
+    @Test
+    public void splitShouldReturnTheMessageWhenNotABatch() {
+        assertThat(MessageBatch.split(MESSAGE_1)).containsExactly(MESSAGE_1);
+    }
+
+    @Test
+    public void splitShouldAcceptEmptyMessages() {
+        assertThat(MessageBatch.split(new byte[0])).hasSize(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void splitShouldThrowOnTruncatedBatch() {
+        byte[] batch = MessageBatch.pack(ImmutableList.of(MESSAGE_1, MESSAGE_2));
+
+        MessageBatch.split(Arrays.copyOf(batch, batch.length - 1));
+    }
+}
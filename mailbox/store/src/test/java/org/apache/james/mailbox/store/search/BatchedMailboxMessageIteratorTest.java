@@ -0,0 +1,126 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class BatchedMailboxMessageIteratorTest {
+
+    private MessageMapper mapper;
+    private Mailbox mailbox;
+
+    @Before
+    public void setUp() {
+        mapper = mock(MessageMapper.class);
+        mailbox = mock(Mailbox.class);
+    }
+
+    @Test
+    public void iteratorShouldReadMessagesByBatches() throws Exception {
+        MailboxMessage message1 = message(1);
+        MailboxMessage message2 = message(2);
+        MailboxMessage message3 = message(3);
+        when(mapper.findInMailbox(mailbox, MessageRange.range(1, 10), FetchType.Metadata, 2))
+            .thenReturn(ImmutableList.of(message1, message2).iterator());
+        when(mapper.findInMailbox(mailbox, MessageRange.range(3, 10), FetchType.Metadata, 2))
+            .thenReturn(ImmutableList.of(message3).iterator());
+        when(mapper.findInMailbox(mailbox, MessageRange.range(4, 10), FetchType.Metadata, 2))
+            .thenReturn(Collections.<MailboxMessage>emptyList().iterator());
+
+        List<MailboxMessage> messages = ImmutableList.copyOf(
+            new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.range(1, 10), FetchType.Metadata, 2));
+
+        assertThat(messages).containsExactly(message1, message2, message3);
+        verify(mapper).findInMailbox(mailbox, MessageRange.range(3, 10), FetchType.Metadata, 2);
+    }
+
+    @Test
+    public void iteratorShouldStopAtTheEndOfTheRange() throws Exception {
+        MailboxMessage message1 = message(1);
+        MailboxMessage message2 = message(2);
+        when(mapper.findInMailbox(mailbox, MessageRange.range(1, 2), FetchType.Full, 2))
+            .thenReturn(ImmutableList.of(message1, message2).iterator());
+
+        List<MailboxMessage> messages = ImmutableList.copyOf(
+            new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.range(1, 2), FetchType.Full, 2));
+
+        assertThat(messages).containsExactly(message1, message2);
+    }
+
+    @Test
+    public void iteratorShouldNotReadAnotherBatchAfterAPartialOne() throws Exception {
+        MailboxMessage message1 = message(1);
+        when(mapper.findInMailbox(mailbox, MessageRange.from(1), FetchType.Metadata, 2))
+            .thenReturn(ImmutableList.of(message1).iterator());
+
+        List<MailboxMessage> messages = ImmutableList.copyOf(
+            new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.all(), FetchType.Metadata, 2));
+
+        assertThat(messages).containsExactly(message1);
+        verify(mapper).findInMailbox(mailbox, MessageRange.from(1), FetchType.Metadata, 2);
+        verifyNoMoreInteractions(mapper);
+    }
+
+    @Test
+    public void iteratorShouldReadOpenEndedRanges() throws Exception {
+        MailboxMessage message5 = message(5);
+        MailboxMessage message6 = message(6);
+        when(mapper.findInMailbox(mailbox, MessageRange.from(5), FetchType.Metadata, 2))
+            .thenReturn(ImmutableList.of(message5, message6).iterator());
+        when(mapper.findInMailbox(mailbox, MessageRange.from(7), FetchType.Metadata, 2))
+            .thenReturn(Collections.<MailboxMessage>emptyList().iterator());
+
+        List<MailboxMessage> messages = ImmutableList.copyOf(
+            new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.from(5), FetchType.Metadata, 2));
+
+        assertThat(messages).containsExactly(message5, message6);
+    }
+
+    @Test(expected = BatchedMailboxMessageIterator.WrappedException.class)
+    public void iteratorShouldWrapMapperExceptions() throws Exception {
+        when(mapper.findInMailbox(mailbox, MessageRange.range(1, 2), FetchType.Full, 2))
+            .thenThrow(new MailboxException());
+
+        new BatchedMailboxMessageIterator(mapper, mailbox, MessageRange.range(1, 2), FetchType.Full, 2).hasNext();
+    }
+
+    private MailboxMessage message(long uid) {
+        MailboxMessage message = mock(MailboxMessage.class);
+        when(message.getUid()).thenReturn(uid);
+        return message;
+    }
+}
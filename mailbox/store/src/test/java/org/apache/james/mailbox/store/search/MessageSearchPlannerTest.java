@@ -0,0 +1,108 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.DateResolution;
+import org.apache.james.mailbox.model.SearchQuery.Sort;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.junit.Test;
+
+public class MessageSearchPlannerTest {
+
+    @Test
+    public void fetchTypeShouldBeMetadataForMetadataCriteria() {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.flagIsUnSet(Flags.Flag.SEEN));
+        query.andCriteria(SearchQuery.internalDateAfter(new Date(), DateResolution.Day));
+        query.andCriteria(SearchQuery.sizeGreaterThan(10));
+        query.andCriteria(SearchQuery.modSeqGreaterThan(1));
+
+        assertThat(MessageSearchPlanner.fetchType(query)).isEqualTo(FetchType.Metadata);
+    }
+
+    @Test
+    public void fetchTypeShouldBeHeadersForHeaderCriteria() {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.flagIsSet(Flags.Flag.SEEN));
+        query.andCriteria(SearchQuery.headerContains("Subject", "test"));
+
+        assertThat(MessageSearchPlanner.fetchType(query)).isEqualTo(FetchType.Headers);
+    }
+
+    @Test
+    public void fetchTypeShouldBeFullForTextCriteria() {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.bodyContains("test"));
+
+        assertThat(MessageSearchPlanner.fetchType(query)).isEqualTo(FetchType.Full);
+    }
+
+    @Test
+    public void fetchTypeShouldTakeNestedCriteriaIntoAccount() {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.or(SearchQuery.all(), SearchQuery.mailContains("test")));
+
+        assertThat(MessageSearchPlanner.fetchType(query)).isEqualTo(FetchType.Full);
+    }
+
+    @Test
+    public void fetchTypeShouldBeHeadersWhenSortingOnHeaders() {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        query.setSorts(Arrays.asList(new Sort(SortClause.BaseSubject)));
+
+        assertThat(MessageSearchPlanner.fetchType(query)).isEqualTo(FetchType.Headers);
+    }
+
+    @Test
+    public void optimizeShouldEvaluateCheapCriteriaFirst() {
+        Criterion text = SearchQuery.bodyContains("test");
+        Criterion header = SearchQuery.headerExists("Subject");
+        Criterion flag = SearchQuery.flagIsSet(Flags.Flag.SEEN);
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(text);
+        query.andCriteria(header);
+        query.andCriteria(flag);
+
+        assertThat(MessageSearchPlanner.optimize(query).getCriterias()).containsExactly(flag, header, text);
+    }
+
+    @Test
+    public void optimizeShouldKeepSortsAndRecentUids() {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        query.setSorts(Arrays.asList(new Sort(SortClause.Size, true)));
+        query.addRecentMessageUids(Arrays.asList(1L, 2L));
+
+        SearchQuery optimized = MessageSearchPlanner.optimize(query);
+
+        assertThat(optimized.getSorts()).isEqualTo(query.getSorts());
+        assertThat(optimized.getRecentMessageUids()).containsOnly(1L, 2L);
+    }
+}
@@ -0,0 +1,237 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.store.TestId;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+public class ParallelMessageSearchExecutorTest {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int MAX_PARALLELISM_PER_QUERY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final String HEADERS = "Subject: test\r\n\r\n";
+    private static final String BODY = "body";
+    private static final byte[] CONTENT = (HEADERS + BODY).getBytes();
+
+    private ParallelMessageSearchExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ParallelMessageSearchExecutor(THREAD_COUNT, MAX_PARALLELISM_PER_QUERY, CHUNK_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    public void filterShouldReturnMatchingMessagesInIterationOrder() {
+        List<MailboxMessage> messages = messages(50);
+
+        List<MailboxMessage> matched = executor.filter(messages.iterator(), FetchType.Full, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                return input.getUid() % 2 == 0;
+            }
+        });
+
+        assertThat(matched).hasSize(25);
+        for (int i = 0; i < matched.size(); i++) {
+            assertThat(matched.get(i).getUid()).isEqualTo(2 * (i + 1));
+        }
+    }
+
+    @Test
+    public void filterShouldNotRunMoreChunksOfAQueryThanTheParallelismLimit() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        executor.filter(messages(60).iterator(), FetchType.Full, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                int current = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return true;
+            }
+        });
+
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(MAX_PARALLELISM_PER_QUERY);
+    }
+
+    @Test
+    public void filterShouldMatchASingleChunkOnTheCallingThread() {
+        final Thread callingThread = Thread.currentThread();
+
+        List<MailboxMessage> matched = executor.filter(messages(CHUNK_SIZE).iterator(), FetchType.Full, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                return Thread.currentThread() == callingThread;
+            }
+        });
+
+        assertThat(matched).hasSize(CHUNK_SIZE);
+    }
+
+    @Test
+    public void filterShouldReadTheContentOfPersistentMessagesOnTheCallingThread() throws Exception {
+        final Set<Thread> readingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        List<MailboxMessage> messages = new ArrayList<MailboxMessage>();
+        for (long uid = 1; uid <= 20; uid++) {
+            messages.add(persistentMessage(uid, readingThreads));
+        }
+
+        List<MailboxMessage> matched = executor.filter(messages.iterator(), FetchType.Full, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                return input instanceof SimpleMailboxMessage;
+            }
+        });
+
+        assertThat(matched).hasSize(20);
+        assertThat(matched.get(19).getUid()).isEqualTo(20);
+        assertThat(readingThreads).containsOnly(Thread.currentThread());
+    }
+
+    @Test
+    public void filterShouldOnlyCopyTheHeadersOfPersistentMessagesForHeaderQueries() throws Exception {
+        final Set<Thread> readingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        List<MailboxMessage> messages = new ArrayList<MailboxMessage>();
+        for (long uid = 1; uid <= 20; uid++) {
+            messages.add(persistentMessage(uid, readingThreads));
+        }
+
+        List<MailboxMessage> matched = executor.filter(messages.iterator(), FetchType.Headers, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                try {
+                    return IOUtils.toString(input.getHeaderContent()).equals(HEADERS);
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        });
+
+        assertThat(matched).hasSize(20);
+        assertThat(readingThreads).isEmpty();
+    }
+
+    @Test
+    public void filterShouldMatchMetadataQueriesOnTheCallingThread() {
+        final Thread callingThread = Thread.currentThread();
+
+        List<MailboxMessage> matched = executor.filter(messages(50).iterator(), FetchType.Metadata, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                return Thread.currentThread() == callingThread;
+            }
+        });
+
+        assertThat(matched).hasSize(50);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void filterShouldPropagatePredicateFailures() {
+        executor.filter(messages(20).iterator(), FetchType.Full, new Predicate<MailboxMessage>() {
+            @Override
+            public boolean apply(MailboxMessage input) {
+                throw new IllegalStateException();
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectNonPositiveParallelism() {
+        new ParallelMessageSearchExecutor(THREAD_COUNT, 0);
+    }
+
+    private List<MailboxMessage> messages(int count) {
+        ImmutableList.Builder<MailboxMessage> messages = ImmutableList.builder();
+        for (long uid = 1; uid <= count; uid++) {
+            SimpleMailboxMessage message = new SimpleMailboxMessage(new Date(), CONTENT.length, 0,
+                new SharedByteArrayInputStream(CONTENT), new Flags(), new PropertyBuilder(), TestId.of(1L));
+            message.setUid(uid);
+            messages.add(message);
+        }
+        return messages.build();
+    }
+
+    private MailboxMessage persistentMessage(long uid, final Set<Thread> readingThreads) throws Exception {
+        MailboxMessage message = mock(MailboxMessage.class);
+        when(message.getUid()).thenReturn(uid);
+        when(message.getMailboxId()).thenReturn(TestId.of(1L));
+        when(message.createFlags()).thenReturn(new Flags());
+        when(message.getFullContentOctets()).thenReturn((long) CONTENT.length);
+        when(message.getBodyOctets()).thenReturn((long) BODY.length());
+        when(message.getHeaderContent()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream(HEADERS.getBytes());
+            }
+        });
+        when(message.getFullContent()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                readingThreads.add(Thread.currentThread());
+                return new ByteArrayInputStream(CONTENT);
+            }
+        });
+        return message;
+    }
+}
@@ -0,0 +1,288 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.tika.extractor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.extractor.ParsedContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cache of the {@link ParsedContent} extracted from attachments, keyed by their content, content type and file name,
+ * as the extracted metadata depends on all three. See {@link #key(byte[], String, String)}.
+ *
+ * Entries are held in memory up to a given count of characters. They can also be stored in a directory, one file per
+ * attachment, so that they survive restarts and memory evictions. Once the stored files exceed the given count of
+ * bytes, the least recently used ones are removed.
+ *
+ * Stored files start with a format version, followed by the text and the metadata names and values. Each string is
+ * written as its count of UTF-8 bytes, -1 for null, followed by these bytes. Files which can not be read are ignored.
+ */
+public class TextExtractionCache {
+
+    public static final long DEFAULT_MAX_CACHED_CHARACTERS = 50 * 1000 * 1000;
+    public static final long DEFAULT_MAX_STORED_BYTES = 1024L * 1024 * 1024;
+
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    private static final int FORMAT_VERSION = 1;
+    private static final int NULL_LENGTH = -1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TextExtractionCache.class);
+
+    /**
+     * Key of the content extracted from the given attachment
+     */
+    public static String key(byte[] content, String contentType, String fileName) {
+        Hasher hasher = Hashing.sha1().newHasher().putBytes(content);
+        putNullable(hasher, contentType);
+        putNullable(hasher, fileName);
+        return hasher.hash().toString();
+    }
+
+    private static void putNullable(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final Cache<String, ParsedContent> memoryCache;
+    private final Optional<File> directory;
+    private final long maxStoredBytes;
+    private final AtomicLong storedBytes;
+
+    public TextExtractionCache(long maxCachedCharacters) {
+        this(maxCachedCharacters, Optional.empty(), DEFAULT_MAX_STORED_BYTES);
+    }
+
+    public TextExtractionCache(long maxCachedCharacters, File directory) {
+        this(maxCachedCharacters, Optional.of(directory), DEFAULT_MAX_STORED_BYTES);
+    }
+
+    /**
+     * @param maxCachedCharacters count of extracted characters held in memory
+     * @param directory where extracted content is stored
+     * @param maxStoredBytes size of the files stored in the directory, above which the least recently used are removed
+     */
+    public TextExtractionCache(long maxCachedCharacters, File directory, long maxStoredBytes) {
+        this(maxCachedCharacters, Optional.of(directory), maxStoredBytes);
+    }
+
+    private TextExtractionCache(long maxCachedCharacters, Optional<File> directory, long maxStoredBytes) {
+        Preconditions.checkArgument(maxCachedCharacters >= 0, "maxCachedCharacters should be positive");
+        Preconditions.checkArgument(maxStoredBytes >= 0, "maxStoredBytes should be positive");
+        directory.ifPresent(dir -> Preconditions.checkArgument(dir.isDirectory() || dir.mkdirs(), "Unable to create " + dir));
+        this.memoryCache = CacheBuilder.newBuilder()
+            .maximumWeight(maxCachedCharacters)
+            .weigher((String key, ParsedContent content) -> weight(content))
+            .build();
+        this.directory = directory;
+        this.maxStoredBytes = maxStoredBytes;
+        this.storedBytes = new AtomicLong(directory.map(this::sizeOfStoredFiles).orElse(0L));
+    }
+
+    public Optional<ParsedContent> get(String key) {
+        ParsedContent cached = memoryCache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<ParsedContent> stored = directory.flatMap(dir -> read(new File(dir, key)));
+        stored.ifPresent(content -> memoryCache.put(key, content));
+        return stored;
+    }
+
+    public void put(String key, ParsedContent parsedContent) {
+        memoryCache.put(key, parsedContent);
+        directory.ifPresent(dir -> write(dir, key, parsedContent));
+    }
+
+    private static int weight(ParsedContent content) {
+        if (content.getTextualContent() == null) {
+            return 1;
+        }
+        return Math.max(1, content.getTextualContent().length());
+    }
+
+    private Optional<ParsedContent> read(File file) {
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ParsedContent parsedContent = readParsedContent(inputStream, file.length());
+            // Keeps recently read files out of the eviction
+            file.setLastModified(System.currentTimeMillis());
+            return Optional.of(parsedContent);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read cached text extraction {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private void write(File dir, String key, ParsedContent parsedContent) {
+        File temporaryFile = new File(dir, key + TEMPORARY_FILE_SUFFIX);
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            writeParsedContent(outputStream, parsedContent);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store text extraction of {}", key, e);
+            temporaryFile.delete();
+            return;
+        }
+        File file = new File(dir, key);
+        long replacedBytes = file.length();
+        long writtenBytes = temporaryFile.length();
+        if (!temporaryFile.renameTo(file)) {
+            LOGGER.warn("Unable to store text extraction of {}", key);
+            temporaryFile.delete();
+            return;
+        }
+        if (storedBytes.addAndGet(writtenBytes - replacedBytes) > maxStoredBytes) {
+            evictStoredFiles(dir);
+        }
+    }
+
+    private static void writeParsedContent(DataOutputStream outputStream, ParsedContent parsedContent) throws IOException {
+        outputStream.writeInt(FORMAT_VERSION);
+        writeString(outputStream, parsedContent.getTextualContent());
+        Map<String, List<String>> metadata = parsedContent.getMetadata();
+        outputStream.writeInt(metadata.size());
+        for (Map.Entry<String, List<String>> entry : metadata.entrySet()) {
+            writeString(outputStream, entry.getKey());
+            outputStream.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                writeString(outputStream, value);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        if (value == null) {
+            outputStream.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * @param maxLength size of the file, bounding any length read from it so that a corrupted file can not trigger
+     *                  huge allocations
+     */
+    private static ParsedContent readParsedContent(DataInputStream inputStream, long maxLength) throws IOException {
+        int version = inputStream.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + version);
+        }
+        String textualContent = readString(inputStream, maxLength);
+        int metadataCount = readLength(inputStream, maxLength);
+        Map<String, List<String>> metadata = new HashMap<>();
+        for (int i = 0; i < metadataCount; i++) {
+            String name = readString(inputStream, maxLength);
+            int valueCount = readLength(inputStream, maxLength);
+            List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(readString(inputStream, maxLength));
+            }
+            metadata.put(name, values);
+        }
+        return new ParsedContent(textualContent, metadata);
+    }
+
+    private static String readString(DataInputStream inputStream, long maxLength) throws IOException {
+        int length = inputStream.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        inputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(DataInputStream inputStream, long maxLength) throws IOException {
+        int length = inputStream.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid count " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Removes the least recently used files, down to 90% of the allowed size, so that the directory is not listed on
+     * each write once full
+     */
+    private synchronized void evictStoredFiles(File dir) {
+        long target = maxStoredBytes / 10 * 9;
+        if (storedBytes.get() <= target) {
+            return;
+        }
+        File[] files = storedFiles(dir);
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (storedBytes.get() <= target) {
+                return;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                storedBytes.addAndGet(-length);
+            }
+        }
+    }
+
+    private long sizeOfStoredFiles(File dir) {
+        return Arrays.stream(storedFiles(dir))
+            .mapToLong(File::length)
+            .sum();
+    }
+
+    private File[] storedFiles(File dir) {
+        File[] files = dir.listFiles(file -> file.isFile() && !file.getName().endsWith(TEMPORARY_FILE_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        return files;
+    }
+}
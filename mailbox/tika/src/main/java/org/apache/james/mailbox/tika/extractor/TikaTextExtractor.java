@@ -19,12 +19,25 @@
 
 package org.apache.james.mailbox.tika.extractor;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
 
 import org.apache.james.mailbox.extractor.ParsedContent;
 import org.apache.james.mailbox.extractor.TextExtractor;
@@ -33,9 +46,25 @@ import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link TextExtractor} relying on Apache Tika.
+ *
+ * Extractions run on a bounded pool of threads, within a time and a text length budget, so that slow or huge documents
+ * do not stall indexing. Once all threads are busy and the queue is full, typically because of parsings ignoring their
+ * cancellation, extractions fail fast: no text is extracted, and the attachment is indexed without its body. Extracted
+ * content is cached, so that copied, forwarded or re-indexed attachments are extracted only once.
+ */
 public class TikaTextExtractor implements TextExtractor {
 
     private static class MetadataEntry {
@@ -57,18 +86,111 @@ public class TikaTextExtractor implements TextExtractor {
         }
     }
 
+    public static final int DEFAULT_MAX_TEXT_LENGTH = 1000 * 1000;
+    public static final long DEFAULT_TIMEOUT_IN_MS = 30 * 1000;
+    public static final int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TikaTextExtractor.class);
+
     private final Parser parser;
-    
+    private final TextExtractionCache cache;
+    private final int maxTextLength;
+    private final long timeoutInMs;
+    private final ExecutorService executor;
+    private final AtomicLong rejectedExtractions;
+
     public TikaTextExtractor() {
-        parser = new AutoDetectParser();
+        this(new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS),
+            DEFAULT_MAX_TEXT_LENGTH, DEFAULT_TIMEOUT_IN_MS, DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param cache holds the content already extracted
+     * @param maxTextLength extracted text is truncated to this count of characters
+     * @param timeoutInMs extractions lasting longer fail with a {@link TimeoutException}
+     * @param threadCount count of threads running extractions
+     * @param queueSize count of extractions waiting for a thread, before new ones are rejected
+     */
+    public TikaTextExtractor(TextExtractionCache cache, int maxTextLength, long timeoutInMs, int threadCount, int queueSize) {
+        Preconditions.checkArgument(maxTextLength > 0, "maxTextLength should be strictly positive");
+        Preconditions.checkArgument(timeoutInMs > 0, "timeoutInMs should be strictly positive");
+        this.parser = new AutoDetectParser();
+        this.cache = cache;
+        this.maxTextLength = maxTextLength;
+        this.timeoutInMs = timeoutInMs;
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new ThreadFactoryBuilder()
+                .setNameFormat("tika-text-extractor-%d")
+                .setDaemon(true)
+                .build());
+        this.rejectedExtractions = new AtomicLong();
     }
 
     public ParsedContent extractContent(InputStream inputStream, String contentType, String fileName) throws Exception {
+        byte[] content = ByteStreams.toByteArray(inputStream);
+        String key = TextExtractionCache.key(content, contentType, fileName);
+        Optional<ParsedContent> cachedContent = cache.get(key);
+        if (cachedContent.isPresent()) {
+            return cachedContent.get();
+        }
+        Optional<ParsedContent> parsedContent = extractWithinTimeout(content, contentType, fileName);
+        if (!parsedContent.isPresent()) {
+            // Not cached, so that the content is extracted once the pool is available again
+            return new ParsedContent("", ImmutableMap.of());
+        }
+        cache.put(key, parsedContent.get());
+        return parsedContent.get();
+    }
+
+    /**
+     * Count of extractions rejected, and thus returning no text, as the pool was saturated
+     */
+    public long getRejectedExtractionCount() {
+        return rejectedExtractions.get();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private Optional<ParsedContent> extractWithinTimeout(byte[] content, String contentType, String fileName) throws Exception {
+        Future<ParsedContent> extraction;
+        try {
+            extraction = executor.submit(() -> parse(new ByteArrayInputStream(content), contentType, fileName));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Text extraction pool is saturated ({} rejected extractions), {} ({}) is not extracted",
+                rejectedExtractions.incrementAndGet(), fileName, contentType);
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(extraction.get(timeoutInMs, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            extraction.cancel(true);
+            throw new TimeoutException("Text extraction of " + fileName + " (" + contentType + ") exceeded " + timeoutInMs + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private ParsedContent parse(InputStream inputStream, String contentType, String fileName) throws Exception {
         Metadata metadata = createInitializedMetadata(contentType, fileName);
 
         StringWriter stringWriter = new StringWriter();
-        BodyContentHandler bodyContentHandler = new BodyContentHandler(stringWriter);
-        parser.parse(inputStream, bodyContentHandler, metadata, new ParseContext());
+        WriteOutContentHandler writeOutContentHandler = new WriteOutContentHandler(stringWriter, maxTextLength);
+        try {
+            parser.parse(inputStream, new BodyContentHandler(writeOutContentHandler), metadata, new ParseContext());
+        } catch (Exception e) {
+            if (!writeOutContentHandler.isWriteLimitReached(e)) {
+                throw e;
+            }
+            LOGGER.info("Text extracted from {} was truncated to {} characters", fileName, maxTextLength);
+        }
 
         return new ParsedContent(stringWriter.toString(), convertMetadataToMultimap(metadata));
     }
@@ -0,0 +1,151 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.tika.extractor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.james.mailbox.extractor.ParsedContent;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TextExtractionCacheTest {
+
+    private static final String KEY = TextExtractionCache.key("content".getBytes(), "text/plain", "content.txt");
+    private static final String OTHER_KEY = TextExtractionCache.key("other".getBytes(), "text/plain", "other.txt");
+    private static final ParsedContent PARSED_CONTENT = new ParsedContent("content", ImmutableMap.of("key", ImmutableList.of("value")));
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void getShouldReturnEmptyWhenNotCached() {
+        assertThat(new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS).get(KEY))
+            .isEmpty();
+    }
+
+    @Test
+    public void getShouldReturnPutContent() {
+        TextExtractionCache testee = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS);
+
+        testee.put(KEY, PARSED_CONTENT);
+
+        assertThat(testee.get(KEY)).contains(PARSED_CONTENT);
+    }
+
+    @Test
+    public void getShouldReturnEmptyWhenContentExceedsMemoryBudget() {
+        TextExtractionCache testee = new TextExtractionCache(1);
+
+        testee.put(KEY, PARSED_CONTENT);
+
+        assertThat(testee.get(KEY)).isEmpty();
+    }
+
+    @Test
+    public void getShouldReadContentStoredInDirectory() {
+        new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS, directory)
+            .put(KEY, PARSED_CONTENT);
+
+        TextExtractionCache testee = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS, directory);
+
+        ParsedContent storedContent = testee.get(KEY).get();
+        assertThat(storedContent.getTextualContent()).isEqualTo(PARSED_CONTENT.getTextualContent());
+        assertThat(storedContent.getMetadata()).isEqualTo(PARSED_CONTENT.getMetadata());
+    }
+
+    @Test
+    public void getShouldFallBackToDirectoryWhenEvictedFromMemory() {
+        TextExtractionCache testee = new TextExtractionCache(1, directory);
+
+        testee.put(KEY, PARSED_CONTENT);
+
+        ParsedContent storedContent = testee.get(KEY).get();
+        assertThat(storedContent.getTextualContent()).isEqualTo(PARSED_CONTENT.getTextualContent());
+        assertThat(storedContent.getMetadata()).isEqualTo(PARSED_CONTENT.getMetadata());
+    }
+
+    @Test
+    public void getShouldReadStoredNullTextAndMultipleMetadataValues() {
+        ParsedContent parsedContent = new ParsedContent(null, ImmutableMap.of("key", ImmutableList.of("value", "other value"), "\u043a\u043b\u044e\u0447", ImmutableList.of()));
+        new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS, directory)
+            .put(KEY, parsedContent);
+
+        ParsedContent storedContent = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS, directory).get(KEY).get();
+
+        assertThat(storedContent.getTextualContent()).isNull();
+        assertThat(storedContent.getMetadata()).isEqualTo(parsedContent.getMetadata());
+    }
+
+    @Test
+    public void getShouldIgnoreUnreadableStoredFiles() throws Exception {
+        Files.write(new File(directory, KEY).toPath(), "not a cached extraction".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS, directory).get(KEY)).isEmpty();
+    }
+
+    @Test
+    public void keyShouldDependOnContentType() {
+        assertThat(TextExtractionCache.key("content".getBytes(), "text/html", "content.txt")).isNotEqualTo(KEY);
+    }
+
+    @Test
+    public void keyShouldDependOnFileName() {
+        assertThat(TextExtractionCache.key("content".getBytes(), "text/plain", null)).isNotEqualTo(KEY);
+    }
+
+    @Test
+    public void putShouldRemoveStoredFilesWhenExceedingStorageBudget() {
+        TextExtractionCache testee = new TextExtractionCache(1, directory, 1);
+
+        testee.put(KEY, PARSED_CONTENT);
+        testee.put(OTHER_KEY, PARSED_CONTENT);
+
+        assertThat(testee.get(KEY)).isEmpty();
+        assertThat(new File(directory, OTHER_KEY)).doesNotExist();
+    }
+
+    @Test
+    public void putShouldKeepFilesWithinStorageBudget() {
+        TextExtractionCache testee = new TextExtractionCache(1, directory, 1024 * 1024);
+
+        testee.put(KEY, PARSED_CONTENT);
+        testee.put(OTHER_KEY, PARSED_CONTENT);
+
+        assertThat(testee.get(KEY)).isPresent();
+        assertThat(testee.get(OTHER_KEY)).isPresent();
+    }
+
+}
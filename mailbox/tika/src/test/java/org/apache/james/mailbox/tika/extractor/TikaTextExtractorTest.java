@@ -21,12 +21,18 @@ package org.apache.james.mailbox.tika.extractor;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.james.mailbox.extractor.ParsedContent;
 import org.apache.james.mailbox.extractor.TextExtractor;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
 public class TikaTextExtractorTest {
     
     private TextExtractor textExtractor;
@@ -122,4 +128,74 @@ public class TikaTextExtractorTest {
                 "\n");
     }
     
+    @Test
+    public void extractContentShouldReturnCachedContentWhenPresent() throws Exception {
+        byte[] content = ByteStreams.toByteArray(ClassLoader.getSystemResourceAsStream("documents/Text.txt"));
+        TextExtractionCache cache = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS);
+        ParsedContent cachedContent = new ParsedContent("cached", ImmutableMap.of());
+        cache.put(TextExtractionCache.key(content, "text/plain", "Text.txt"), cachedContent);
+        TikaTextExtractor testee = new TikaTextExtractor(cache, TikaTextExtractor.DEFAULT_MAX_TEXT_LENGTH,
+            TikaTextExtractor.DEFAULT_TIMEOUT_IN_MS, 1, TikaTextExtractor.DEFAULT_QUEUE_SIZE);
+
+        assertThat(testee.extractContent(new ByteArrayInputStream(content), "text/plain", "Text.txt").getTextualContent())
+            .isEqualTo("cached");
+    }
+
+    @Test
+    public void extractContentShouldCacheExtractedContent() throws Exception {
+        byte[] content = ByteStreams.toByteArray(ClassLoader.getSystemResourceAsStream("documents/Text.txt"));
+        TextExtractionCache cache = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS);
+        TikaTextExtractor testee = new TikaTextExtractor(cache, TikaTextExtractor.DEFAULT_MAX_TEXT_LENGTH,
+            TikaTextExtractor.DEFAULT_TIMEOUT_IN_MS, 1, TikaTextExtractor.DEFAULT_QUEUE_SIZE);
+
+        ParsedContent parsedContent = testee.extractContent(new ByteArrayInputStream(content), "text/plain", "Text.txt");
+
+        assertThat(cache.get(TextExtractionCache.key(content, "text/plain", "Text.txt"))).contains(parsedContent);
+    }
+
+    @Test
+    public void extractContentShouldNotReturnContentCachedForAnotherFileName() throws Exception {
+        byte[] content = ByteStreams.toByteArray(ClassLoader.getSystemResourceAsStream("documents/Text.txt"));
+        TextExtractionCache cache = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS);
+        cache.put(TextExtractionCache.key(content, "text/plain", "Other.txt"), new ParsedContent("cached", ImmutableMap.of()));
+        TikaTextExtractor testee = new TikaTextExtractor(cache, TikaTextExtractor.DEFAULT_MAX_TEXT_LENGTH,
+            TikaTextExtractor.DEFAULT_TIMEOUT_IN_MS, 1, TikaTextExtractor.DEFAULT_QUEUE_SIZE);
+
+        assertThat(testee.extractContent(new ByteArrayInputStream(content), "text/plain", "Text.txt").getTextualContent())
+            .isEqualTo("This is some awesome text text.\n\n\n");
+    }
+
+    @Test
+    public void extractContentShouldReturnNoTextWhenPoolRejectsExtraction() throws Exception {
+        byte[] content = ByteStreams.toByteArray(ClassLoader.getSystemResourceAsStream("documents/Text.txt"));
+        TextExtractionCache cache = new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS);
+        TikaTextExtractor testee = new TikaTextExtractor(cache,
+            TikaTextExtractor.DEFAULT_MAX_TEXT_LENGTH, TikaTextExtractor.DEFAULT_TIMEOUT_IN_MS, 1, TikaTextExtractor.DEFAULT_QUEUE_SIZE);
+        testee.stop();
+
+        assertThat(testee.extractContent(new ByteArrayInputStream(content), "text/plain", "Text.txt").getTextualContent())
+            .isEmpty();
+        assertThat(testee.getRejectedExtractionCount()).isEqualTo(1);
+        assertThat(cache.get(TextExtractionCache.key(content, "text/plain", "Text.txt"))).isEmpty();
+    }
+
+    @Test
+    public void extractContentShouldTruncateTextExceedingMaxLength() throws Exception {
+        TikaTextExtractor testee = new TikaTextExtractor(new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS),
+            10, TikaTextExtractor.DEFAULT_TIMEOUT_IN_MS, 1, TikaTextExtractor.DEFAULT_QUEUE_SIZE);
+
+        InputStream inputStream = ClassLoader.getSystemResourceAsStream("documents/Text.txt");
+        assertThat(testee.extractContent(inputStream, "text/plain", "Text.txt").getTextualContent())
+            .isEqualTo("This is so");
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void extractContentShouldFailWhenExceedingTimeout() throws Exception {
+        TikaTextExtractor testee = new TikaTextExtractor(new TextExtractionCache(TextExtractionCache.DEFAULT_MAX_CACHED_CHARACTERS),
+            TikaTextExtractor.DEFAULT_MAX_TEXT_LENGTH, 1, 1, TikaTextExtractor.DEFAULT_QUEUE_SIZE);
+
+        InputStream inputStream = ClassLoader.getSystemResourceAsStream("documents/calc.xlsx");
+        testee.extractContent(inputStream, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "calc.xlsx");
+    }
+
 }
@@ -0,0 +1,116 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.migrator;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.backends.cassandra.components.CassandraIndex;
+import org.apache.james.backends.cassandra.init.ClusterFactory;
+import org.apache.james.backends.cassandra.init.SessionWithInitializedTablesFactory;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.mail.CassandraFlagProjectionDAO;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+/**
+ * Fills the recent, unseen and deleted flag projections from the flags stored in the message table,
+ * then drops the secondary indexes these projections replace.
+ *
+ * Projection writes are idempotent, so the migration can be interrupted and run again.
+ */
+public class CassandraFlagProjectionMigrator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraFlagProjectionMigrator.class);
+    private static final String[] DROPPED_INDEXES = {
+        CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.RECENT,
+        CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.SEEN,
+        CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.DELETED
+    };
+    private static final int FETCH_SIZE = 100;
+
+    private final Session session;
+    private final CassandraFlagProjectionDAO flagProjectionDAO;
+
+    public CassandraFlagProjectionMigrator(Session session, CassandraPreparedStatementCache preparedStatements) {
+        this.session = session;
+        this.flagProjectionDAO = new CassandraFlagProjectionDAO(session, preparedStatements);
+    }
+
+    /**
+     * @return the number of messages indexed in the projections
+     */
+    public long migrate() {
+        long migrated = 0;
+        for (Row row : session.execute(select(CassandraMessageTable.MAILBOX_ID, CassandraMessageTable.IMAP_UID,
+                    CassandraMessageTable.Flag.RECENT, CassandraMessageTable.Flag.SEEN, CassandraMessageTable.Flag.DELETED)
+                .from(CassandraMessageTable.TABLE_NAME)
+                .setFetchSize(FETCH_SIZE))) {
+            flagProjectionDAO.add(CassandraId.of(row.getUUID(CassandraMessageTable.MAILBOX_ID)), row.getLong(CassandraMessageTable.IMAP_UID), flags(row))
+                .join();
+            migrated++;
+            if (migrated % 1000 == 0) {
+                LOGGER.info("{} messages migrated", migrated);
+            }
+        }
+        for (String index : DROPPED_INDEXES) {
+            session.execute("DROP INDEX IF EXISTS " + index);
+        }
+        LOGGER.info("Migration done, {} messages migrated", migrated);
+        return migrated;
+    }
+
+    private Flags flags(Row row) {
+        Flags flags = new Flags();
+        if (row.getBool(CassandraMessageTable.Flag.RECENT)) {
+            flags.add(Flag.RECENT);
+        }
+        if (row.getBool(CassandraMessageTable.Flag.SEEN)) {
+            flags.add(Flag.SEEN);
+        }
+        if (row.getBool(CassandraMessageTable.Flag.DELETED)) {
+            flags.add(Flag.DELETED);
+        }
+        return flags;
+    }
+
+    /**
+     * Usage: CassandraFlagProjectionMigrator &lt;host&gt; &lt;port&gt; &lt;keyspace&gt;
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: CassandraFlagProjectionMigrator <host> <port> <keyspace>");
+            System.exit(1);
+        }
+        try (Cluster cluster = ClusterFactory.createClusterForSingleServerWithoutPassWord(args[0], Integer.parseInt(args[1]));
+             Session session = new SessionWithInitializedTablesFactory(new CassandraMessageModule()).createSession(cluster, args[2])) {
+            new CassandraFlagProjectionMigrator(session, new CassandraPreparedStatementCache(session)).migrate();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.migrator;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.apache.james.backends.cassandra.init.ClusterFactory;
+import org.apache.james.backends.cassandra.init.SessionWithInitializedTablesFactory;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.mail.CassandraMessageContentDAO;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.schemabuilder.SchemaBuilder;
+import com.google.common.primitives.Bytes;
+
+/**
+ * Moves message content stored inline in the message table (headerContent and bodyContent columns)
+ * to the chunked messageContent table, then links each message row to its content through contentId.
+ *
+ * Rows already having a contentId are skipped, so the migration can be interrupted and run again.
+ */
+public class CassandraMessageContentMigrator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraMessageContentMigrator.class);
+    private static final String HEADER_CONTENT = "headerContent";
+    private static final String BODY_CONTENT = "bodyContent";
+    private static final int FETCH_SIZE = 100;
+
+    private final Session session;
+    private final CassandraMessageContentDAO messageContentDAO;
+
+    public CassandraMessageContentMigrator(Session session, CassandraPreparedStatementCache preparedStatements) {
+        this.session = session;
+        this.messageContentDAO = new CassandraMessageContentDAO(session, preparedStatements);
+    }
+
+    /**
+     * @return the number of migrated messages
+     */
+    public long migrate() {
+        TableMetadata messageTable = session.getCluster().getMetadata()
+            .getKeyspace(session.getLoggedKeyspace())
+            .getTable(CassandraMessageTable.TABLE_NAME);
+        if (messageTable.getColumn(CassandraMessageTable.CONTENT_ID) == null) {
+            session.execute(SchemaBuilder.alterTable(CassandraMessageTable.TABLE_NAME)
+                .addColumn(CassandraMessageTable.CONTENT_ID)
+                .type(DataType.timeuuid()));
+        }
+        if (messageTable.getColumn(HEADER_CONTENT) == null || messageTable.getColumn(BODY_CONTENT) == null) {
+            LOGGER.info("No inline message content to migrate");
+            return 0;
+        }
+        long migrated = 0;
+        for (Row row : session.execute(select(CassandraMessageTable.MAILBOX_ID, CassandraMessageTable.IMAP_UID, CassandraMessageTable.CONTENT_ID, HEADER_CONTENT, BODY_CONTENT)
+                .from(CassandraMessageTable.TABLE_NAME)
+                .setFetchSize(FETCH_SIZE))) {
+            if (row.getUUID(CassandraMessageTable.CONTENT_ID) == null) {
+                migrate(row);
+                migrated++;
+                if (migrated % 1000 == 0) {
+                    LOGGER.info("{} messages migrated", migrated);
+                }
+            }
+        }
+        LOGGER.info("Migration done, {} messages migrated", migrated);
+        return migrated;
+    }
+
+    private void migrate(Row row) {
+        UUID contentId = messageContentDAO.save(Bytes.concat(toBytes(row.getBytes(HEADER_CONTENT)), toBytes(row.getBytes(BODY_CONTENT))),
+                CassandraId.of(row.getUUID(CassandraMessageTable.MAILBOX_ID)),
+                row.getLong(CassandraMessageTable.IMAP_UID))
+            .join();
+        session.execute(update(CassandraMessageTable.TABLE_NAME)
+            .with(set(CassandraMessageTable.CONTENT_ID, contentId))
+            .and(set(HEADER_CONTENT, null))
+            .and(set(BODY_CONTENT, null))
+            .where(eq(CassandraMessageTable.MAILBOX_ID, row.getUUID(CassandraMessageTable.MAILBOX_ID)))
+            .and(eq(CassandraMessageTable.IMAP_UID, row.getLong(CassandraMessageTable.IMAP_UID))));
+    }
+
+    private byte[] toBytes(ByteBuffer buffer) {
+        if (buffer == null) {
+            return new byte[0];
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Usage: CassandraMessageContentMigrator &lt;host&gt; &lt;port&gt; &lt;keyspace&gt;
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: CassandraMessageContentMigrator <host> <port> <keyspace>");
+            System.exit(1);
+        }
+        try (Cluster cluster = ClusterFactory.createClusterForSingleServerWithoutPassWord(args[0], Integer.parseInt(args[1]));
+             Session session = new SessionWithInitializedTablesFactory(new CassandraMessageModule()).createSession(cluster, args[2])) {
+            new CassandraMessageContentMigrator(session, new CassandraPreparedStatementCache(session)).migrate();
+        }
+    }
+}
@@ -28,4 +28,9 @@ public interface ReIndexer {
 
     void reIndex() throws MailboxException;
 
+    /**
+     * @return the progress of the current re-indexing, or of the last one
+     */
+    ReIndexingProgress getProgress();
+
 }
@@ -19,15 +19,22 @@
 
 package org.apache.james.mailbox.indexer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.indexer.checkpoint.NoReIndexingCheckpoint;
+import org.apache.james.mailbox.indexer.checkpoint.ReIndexingCheckpoint;
 import org.apache.james.mailbox.indexer.events.FlagsMessageEvent;
 import org.apache.james.mailbox.indexer.events.ImpactingEventType;
 import org.apache.james.mailbox.indexer.events.ImpactingMessageEvent;
@@ -39,12 +46,16 @@ import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.search.BatchedMailboxMessageIterator;
 import org.apache.james.mailbox.store.search.ListeningMessageSearchIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Note about live re-indexation handling :
@@ -57,15 +68,26 @@ import com.google.common.collect.Iterables;
  *
  *  Why only care about updates and deletions ? Additions are already handled by the indexer that behaves normaly. We
  *  should just "adapt" our indexed value to the latest value, if any. The normal indexer will take care of new stuff.
+ *
+ * A full re-indexing processes several mailboxes concurrently, reads messages by batches and can be throttled. Processed
+ * mailboxes are recorded into a {@link ReIndexingCheckpoint} so that an interrupted full re-indexing can be resumed.
  */
 public class ReIndexerImpl implements ReIndexer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ReIndexerImpl.class);
     public static final int NO_LIMIT = 0;
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final double NO_THROTTLING = 0;
 
     private final MailboxManager mailboxManager;
     private final ListeningMessageSearchIndex messageSearchIndex;
     private final MailboxSessionMapperFactory mailboxSessionMapperFactory;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private double messagesPerSecond = NO_THROTTLING;
+    private ReIndexingCheckpoint checkpoint = new NoReIndexingCheckpoint();
+    private volatile ReIndexingProgress progress = ReIndexingProgress.idle();
 
     @Inject
     public ReIndexerImpl(MailboxManager mailboxManager,
@@ -76,27 +98,95 @@ public class ReIndexerImpl implements ReIndexer {
         this.mailboxSessionMapperFactory = mailboxSessionMapperFactory;
     }
 
-    public void reIndex(MailboxPath path) throws MailboxException {
-        MailboxSession mailboxSession = mailboxManager.createSystemSession(path.getUser(), LOGGER);
-        reIndex(path, mailboxSession);
+    /**
+     * Set the count of mailboxes re-indexed concurrently by a full re-indexing. The default is {@link #DEFAULT_PARALLELISM}
+     */
+    public void setParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism should be strictly positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the count of messages read at once from a mailbox. The default is {@link #DEFAULT_BATCH_SIZE}
+     */
+    public void setBatchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size should be strictly positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Limit the count of messages indexed per second, all mailboxes included. The default is {@link #NO_THROTTLING}
+     */
+    public void setMessagesPerSecond(double messagesPerSecond) {
+        Preconditions.checkArgument(messagesPerSecond >= 0, "Messages per second should be positive");
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    /**
+     * Set where the mailboxes processed by a full re-indexing are recorded, so that an interrupted one can be resumed.
+     * By default nothing is recorded.
+     */
+    public void setCheckpoint(ReIndexingCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public ReIndexingProgress getProgress() {
+        return progress;
     }
 
+    public void reIndex(MailboxPath path) throws MailboxException {
+        ReIndexingProgress progress = new ReIndexingProgress(1);
+        this.progress = progress;
+        try {
+            reIndex(path, createRateLimiter(), progress);
+            progress.mailboxProcessed();
+        } catch (MailboxException e) {
+            progress.mailboxFailed();
+            throw e;
+        } finally {
+            progress.finished();
+        }
+    }
 
     public void reIndex() throws MailboxException {
         MailboxSession mailboxSession = mailboxManager.createSystemSession("re-indexing", LOGGER);
         LOGGER.info("Starting a full reindex");
-        List<MailboxPath> mailboxPaths = mailboxManager.list(mailboxSession);
+        List<MailboxPath> mailboxPaths = remainingMailboxes(mailboxManager.list(mailboxSession));
+        ReIndexingProgress progress = new ReIndexingProgress(mailboxPaths.size());
+        this.progress = progress;
         GlobalRegistration globalRegistration = new GlobalRegistration();
         mailboxManager.addGlobalListener(globalRegistration, mailboxSession);
         try {
-            handleFullReindexingIterations(mailboxPaths, globalRegistration);
+            handleFullReindexingIterations(mailboxPaths, globalRegistration, progress);
         } finally {
             mailboxManager.removeGlobalListener(globalRegistration, mailboxSession);
+            progress.finished();
+        }
+        if (progress.getFailedMailboxes() == 0) {
+            checkpoint.clear();
         }
-        LOGGER.info("Full reindex finished");
+        LOGGER.info("Full reindex finished: {} messages in {} mailboxes indexed in {} ms, {} mailboxes failed",
+            progress.getIndexedMessages(), progress.getProcessedMailboxes(), progress.getElapsedTimeInMs(), progress.getFailedMailboxes());
     }
 
-    private void reIndex(MailboxPath path, MailboxSession mailboxSession) throws MailboxException {
+    private List<MailboxPath> remainingMailboxes(List<MailboxPath> mailboxPaths) throws MailboxException {
+        Set<MailboxPath> completedMailboxes = checkpoint.getCompletedMailboxes();
+        if (completedMailboxes.isEmpty()) {
+            return mailboxPaths;
+        }
+        LOGGER.info("Resuming reindex, skipping {} already reindexed mailboxes", completedMailboxes.size());
+        List<MailboxPath> remainingMailboxes = new ArrayList<MailboxPath>();
+        for (MailboxPath mailboxPath : mailboxPaths) {
+            if (!completedMailboxes.contains(mailboxPath)) {
+                remainingMailboxes.add(mailboxPath);
+            }
+        }
+        return remainingMailboxes;
+    }
+
+    private void reIndex(MailboxPath path, Optional<RateLimiter> rateLimiter, ReIndexingProgress progress) throws MailboxException {
+        MailboxSession mailboxSession = mailboxManager.createSystemSession(path.getUser(), LOGGER);
         MailboxRegistration mailboxRegistration = new MailboxRegistration(path);
         LOGGER.info("Intend to reindex {}",path);
         Mailbox mailbox = mailboxSessionMapperFactory.getMailboxMapper(mailboxSession).findMailboxByPath(path);
@@ -106,43 +196,95 @@ public class ReIndexerImpl implements ReIndexer {
             handleMailboxIndexingIterations(mailboxSession,
                 mailboxRegistration,
                 mailbox,
-                mailboxSessionMapperFactory.getMessageMapper(mailboxSession)
-                    .findInMailbox(mailbox,
-                        MessageRange.all(),
-                        MessageMapper.FetchType.Full,
-                        NO_LIMIT));
+                new BatchedMailboxMessageIterator(mailboxSessionMapperFactory.getMessageMapper(mailboxSession),
+                    mailbox,
+                    MessageRange.all(),
+                    MessageMapper.FetchType.Full,
+                    batchSize),
+                rateLimiter,
+                progress);
             LOGGER.info("Finish to reindex " + path);
+        } catch (BatchedMailboxMessageIterator.WrappedException e) {
+            throw e.getCause();
         } finally {
             mailboxManager.removeListener(path, mailboxRegistration, mailboxSession);
         }
     }
 
-    private void handleFullReindexingIterations(List<MailboxPath> mailboxPaths, GlobalRegistration globalRegistration) throws MailboxException {
-        for (MailboxPath mailboxPath : mailboxPaths) {
-            Optional<MailboxPath> pathToIndex = globalRegistration.getPathToIndex(mailboxPath);
-            if (pathToIndex.isPresent()) {
-                try {
-                    reIndex(pathToIndex.get());
-                } catch(Throwable e) {
-                    LOGGER.error("Error while proceeding to full reindexing on {}", pathToIndex.get(), e);
-                }
+    private void handleFullReindexingIterations(List<MailboxPath> mailboxPaths, final GlobalRegistration globalRegistration, final ReIndexingProgress progress) throws MailboxException {
+        final Optional<RateLimiter> rateLimiter = createRateLimiter();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+            new ThreadFactoryBuilder()
+                .setNameFormat("reindexer-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            for (final MailboxPath mailboxPath : mailboxPaths) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleFullReindexingIteration(mailboxPath, globalRegistration, rateLimiter, progress);
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.info("Reindexed {} mailboxes out of {}, {} messages per second",
+                    progress.getProcessedMailboxes(), progress.getTotalMailboxes(), progress.getMessagesPerSecond());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailboxException("Full reindexing interrupted", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private void handleMailboxIndexingIterations(MailboxSession mailboxSession, MailboxRegistration mailboxRegistration, Mailbox mailbox, Iterator<MailboxMessage> iterator) throws MailboxException {
+    private void handleFullReindexingIteration(MailboxPath mailboxPath, GlobalRegistration globalRegistration, Optional<RateLimiter> rateLimiter, ReIndexingProgress progress) {
+        Optional<MailboxPath> pathToIndex = globalRegistration.getPathToIndex(mailboxPath);
+        if (!pathToIndex.isPresent()) {
+            progress.mailboxProcessed();
+            return;
+        }
+        try {
+            reIndex(pathToIndex.get(), rateLimiter, progress);
+            checkpoint.markCompleted(pathToIndex.get());
+            progress.mailboxProcessed();
+        } catch(Throwable e) {
+            LOGGER.error("Error while proceeding to full reindexing on {}", pathToIndex.get(), e);
+            progress.mailboxFailed();
+        }
+    }
+
+    private void handleMailboxIndexingIterations(MailboxSession mailboxSession, MailboxRegistration mailboxRegistration, Mailbox mailbox, Iterator<MailboxMessage> iterator,
+                                                 Optional<RateLimiter> rateLimiter, ReIndexingProgress progress) throws MailboxException {
         while (iterator.hasNext()) {
             MailboxMessage message = iterator.next();
             ImpactingMessageEvent impactingMessageEvent = findMostRelevant(mailboxRegistration.getImpactingEvents(message.getUid()));
             if (impactingMessageEvent == null) {
-                messageSearchIndex.add(mailboxSession, mailbox, message);
+                index(mailboxSession, mailbox, message, rateLimiter, progress);
             } else if (impactingMessageEvent instanceof FlagsMessageEvent) {
                 message.setFlags(((FlagsMessageEvent) impactingMessageEvent).getFlags());
-                messageSearchIndex.add(mailboxSession, mailbox, message);
+                index(mailboxSession, mailbox, message, rateLimiter, progress);
             }
         }
     }
 
+    private void index(MailboxSession mailboxSession, Mailbox mailbox, MailboxMessage message, Optional<RateLimiter> rateLimiter, ReIndexingProgress progress) throws MailboxException {
+        if (rateLimiter.isPresent()) {
+            rateLimiter.get().acquire();
+        }
+        messageSearchIndex.add(mailboxSession, mailbox, message);
+        progress.messageIndexed();
+    }
+
+    private Optional<RateLimiter> createRateLimiter() {
+        if (messagesPerSecond == NO_THROTTLING) {
+            return Optional.absent();
+        }
+        return Optional.of(RateLimiter.create(messagesPerSecond));
+    }
+
     private ImpactingMessageEvent findMostRelevant(Collection<ImpactingMessageEvent> messageEvents) {
         for (ImpactingMessageEvent impactingMessageEvent : messageEvents) {
             if (impactingMessageEvent.getType().equals(ImpactingEventType.Deletion)) {
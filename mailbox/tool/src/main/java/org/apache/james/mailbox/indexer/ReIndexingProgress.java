@@ -0,0 +1,121 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.indexer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a re-indexing run, updated concurrently by the threads re-indexing mailboxes.
+ */
+public class ReIndexingProgress {
+
+    public static final long UNKNOWN = -1;
+
+    public static ReIndexingProgress idle() {
+        ReIndexingProgress progress = new ReIndexingProgress(0);
+        progress.finished();
+        return progress;
+    }
+
+    private final long startTime;
+    private final int totalMailboxes;
+    private final AtomicInteger processedMailboxes;
+    private final AtomicInteger failedMailboxes;
+    private final AtomicLong indexedMessages;
+    private volatile long endTime;
+
+    public ReIndexingProgress(int totalMailboxes) {
+        this.startTime = System.currentTimeMillis();
+        this.totalMailboxes = totalMailboxes;
+        this.processedMailboxes = new AtomicInteger();
+        this.failedMailboxes = new AtomicInteger();
+        this.indexedMessages = new AtomicLong();
+        this.endTime = UNKNOWN;
+    }
+
+    public void messageIndexed() {
+        indexedMessages.incrementAndGet();
+    }
+
+    public void mailboxProcessed() {
+        processedMailboxes.incrementAndGet();
+    }
+
+    public void mailboxFailed() {
+        processedMailboxes.incrementAndGet();
+        failedMailboxes.incrementAndGet();
+    }
+
+    public void finished() {
+        endTime = System.currentTimeMillis();
+    }
+
+    public boolean isRunning() {
+        return endTime == UNKNOWN;
+    }
+
+    public int getTotalMailboxes() {
+        return totalMailboxes;
+    }
+
+    public int getProcessedMailboxes() {
+        return processedMailboxes.get();
+    }
+
+    public int getFailedMailboxes() {
+        return failedMailboxes.get();
+    }
+
+    public long getIndexedMessages() {
+        return indexedMessages.get();
+    }
+
+    public long getElapsedTimeInMs() {
+        if (isRunning()) {
+            return System.currentTimeMillis() - startTime;
+        }
+        return endTime - startTime;
+    }
+
+    public double getMessagesPerSecond() {
+        long elapsedTime = getElapsedTimeInMs();
+        if (elapsedTime == 0) {
+            return 0;
+        }
+        return getIndexedMessages() * 1000.0 / elapsedTime;
+    }
+
+    /**
+     * Extrapolate the remaining time from the time spent on the mailboxes already processed.
+     *
+     * @return the estimated remaining time, or {@link #UNKNOWN} before the first mailbox is processed
+     */
+    public long getEstimatedRemainingTimeInMs() {
+        if (!isRunning()) {
+            return 0;
+        }
+        int processed = getProcessedMailboxes();
+        if (processed == 0) {
+            return UNKNOWN;
+        }
+        return getElapsedTimeInMs() * (totalMailboxes - processed) / processed;
+    }
+}
@@ -33,4 +33,9 @@ public class ThrowsReIndexer implements ReIndexer {
     public void reIndex() throws MailboxException {
         throw new MailboxException("Not implemented");
     }
+
+    @Override
+    public ReIndexingProgress getProgress() {
+        return ReIndexingProgress.idle();
+    }
 }
@@ -0,0 +1,86 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.indexer.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+
+/**
+ * {@link ReIndexingCheckpoint} appending the completed mailboxes to a file, one per line.
+ *
+ * Each line holds the namespace, user and name of a mailbox separated by tabulations.
+ */
+public class FileReIndexingCheckpoint implements ReIndexingCheckpoint {
+
+    private static final String SEPARATOR = "\t";
+
+    private final File file;
+
+    public FileReIndexingCheckpoint(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized Set<MailboxPath> getCompletedMailboxes() throws MailboxException {
+        Set<MailboxPath> completedMailboxes = new HashSet<MailboxPath>();
+        if (!file.exists()) {
+            return completedMailboxes;
+        }
+        try {
+            for (String line : Files.readLines(file, Charsets.UTF_8)) {
+                String[] parts = line.split(SEPARATOR, -1);
+                if (parts.length == 3) {
+                    completedMailboxes.add(new MailboxPath(parts[0], Strings.emptyToNull(parts[1]), parts[2]));
+                }
+            }
+            return completedMailboxes;
+        } catch (IOException e) {
+            throw new MailboxException("Unable to read re-indexing checkpoint " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void markCompleted(MailboxPath path) throws MailboxException {
+        try {
+            Files.asCharSink(file, Charsets.UTF_8, FileWriteMode.APPEND)
+                .write(path.getNamespace() + SEPARATOR + Strings.nullToEmpty(path.getUser()) + SEPARATOR + path.getName() + "\n");
+        } catch (IOException e) {
+            throw new MailboxException("Unable to write re-indexing checkpoint " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void clear() throws MailboxException {
+        if (file.exists() && !file.delete()) {
+            throw new MailboxException("Unable to delete re-indexing checkpoint " + file);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.migrator;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.mail.CassandraFlagProjectionDAO;
+import org.apache.james.mailbox.cassandra.mail.CassandraFlagProjectionDAO.Projection;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.utils.UUIDs;
+
+public class CassandraFlagProjectionMigratorTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+
+    private CassandraFlagProjectionDAO flagProjectionDAO;
+    private CassandraFlagProjectionMigrator testee;
+    private CassandraId mailboxId;
+
+    @Before
+    public void setUp() {
+        CASSANDRA.ensureAllTables();
+        CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(CASSANDRA.getConf());
+        flagProjectionDAO = new CassandraFlagProjectionDAO(CASSANDRA.getConf(), preparedStatements);
+        testee = new CassandraFlagProjectionMigrator(CASSANDRA.getConf(), preparedStatements);
+        mailboxId = CassandraId.of(UUIDs.timeBased());
+    }
+
+    @After
+    public void cleanUp() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void migrateShouldFillProjectionsFromMessageFlags() {
+        insertMessage(1L, true, false, false);
+        insertMessage(2L, false, true, true);
+
+        assertThat(testee.migrate()).isEqualTo(2);
+
+        assertThat(flagProjectionDAO.retrieveUids(Projection.RECENT, mailboxId)).containsExactly(1L);
+        assertThat(flagProjectionDAO.retrieveUids(Projection.UNSEEN, mailboxId)).containsExactly(1L);
+        assertThat(flagProjectionDAO.retrieveUids(Projection.DELETED, mailboxId)).containsExactly(2L);
+    }
+
+    @Test
+    public void migrateShouldBeIdempotent() {
+        insertMessage(1L, true, false, true);
+        testee.migrate();
+
+        assertThat(testee.migrate()).isEqualTo(1);
+
+        assertThat(flagProjectionDAO.retrieveUids(Projection.DELETED, mailboxId)).containsExactly(1L);
+    }
+
+    private void insertMessage(long uid, boolean recent, boolean seen, boolean deleted) {
+        CASSANDRA.getConf().execute(insertInto(CassandraMessageTable.TABLE_NAME)
+            .value(CassandraMessageTable.MAILBOX_ID, mailboxId.asUuid())
+            .value(CassandraMessageTable.IMAP_UID, uid)
+            .value(CassandraMessageTable.Flag.RECENT, recent)
+            .value(CassandraMessageTable.Flag.SEEN, seen)
+            .value(CassandraMessageTable.Flag.DELETED, deleted));
+    }
+}
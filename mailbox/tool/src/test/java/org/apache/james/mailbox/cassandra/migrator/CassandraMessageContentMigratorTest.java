@@ -0,0 +1,124 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.migrator;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
+import org.apache.james.mailbox.cassandra.mail.CassandraMessageContentDAO;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.schemabuilder.SchemaBuilder;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.io.ByteStreams;
+
+public class CassandraMessageContentMigratorTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+    private static final String HEADER_CONTENT = "headerContent";
+    private static final String BODY_CONTENT = "bodyContent";
+    private static final String HEADER = "Subject: test\r\n\r\n";
+    private static final String BODY = "body";
+
+    private CassandraPreparedStatementCache preparedStatements;
+    private CassandraMessageContentMigrator testee;
+    private UUID mailboxId;
+
+    @Before
+    public void setUp() {
+        CASSANDRA.ensureAllTables();
+        addLegacyColumnIfMissing(HEADER_CONTENT);
+        addLegacyColumnIfMissing(BODY_CONTENT);
+        preparedStatements = new CassandraPreparedStatementCache(CASSANDRA.getConf());
+        testee = new CassandraMessageContentMigrator(CASSANDRA.getConf(), preparedStatements);
+        mailboxId = UUIDs.timeBased();
+    }
+
+    private void addLegacyColumnIfMissing(String column) {
+        TableMetadata table = CASSANDRA.getConf().getCluster().getMetadata()
+            .getKeyspace(CASSANDRA.getConf().getLoggedKeyspace())
+            .getTable(CassandraMessageTable.TABLE_NAME);
+        if (table.getColumn(column) == null) {
+            CASSANDRA.getConf().execute(SchemaBuilder.alterTable(CassandraMessageTable.TABLE_NAME)
+                .addColumn(column)
+                .type(DataType.blob()));
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void migrateShouldMoveInlineContentToContentTable() throws Exception {
+        insertLegacyMessage(1L);
+
+        assertThat(testee.migrate()).isEqualTo(1);
+
+        Row row = readMessage(1L);
+        assertThat(row.getBytes(HEADER_CONTENT)).isNull();
+        assertThat(row.getBytes(BODY_CONTENT)).isNull();
+        assertThat(new String(ByteStreams.toByteArray(
+                new CassandraMessageContentDAO(CASSANDRA.getConf(), preparedStatements)
+                    .read(row.getUUID(CassandraMessageTable.CONTENT_ID))),
+            StandardCharsets.UTF_8))
+            .isEqualTo(HEADER + BODY);
+    }
+
+    @Test
+    public void migrateShouldSkipAlreadyMigratedMessages() {
+        insertLegacyMessage(1L);
+        testee.migrate();
+
+        assertThat(testee.migrate()).isEqualTo(0);
+    }
+
+    private void insertLegacyMessage(long uid) {
+        CASSANDRA.getConf().execute(insertInto(CassandraMessageTable.TABLE_NAME)
+            .value(CassandraMessageTable.MAILBOX_ID, mailboxId)
+            .value(CassandraMessageTable.IMAP_UID, uid)
+            .value(HEADER_CONTENT, ByteBuffer.wrap(HEADER.getBytes(StandardCharsets.UTF_8)))
+            .value(BODY_CONTENT, ByteBuffer.wrap(BODY.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private Row readMessage(long uid) {
+        return CASSANDRA.getConf().execute(select(CassandraMessageTable.CONTENT_ID, HEADER_CONTENT, BODY_CONTENT)
+                .from(CassandraMessageTable.TABLE_NAME)
+                .where(eq(CassandraMessageTable.MAILBOX_ID, mailboxId))
+                .and(eq(CassandraMessageTable.IMAP_UID, uid)))
+            .one();
+    }
+}
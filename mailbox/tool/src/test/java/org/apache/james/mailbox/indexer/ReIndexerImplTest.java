@@ -19,9 +19,11 @@
 
 package org.apache.james.mailbox.indexer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -31,6 +33,8 @@ import java.util.Iterator;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.indexer.checkpoint.ReIndexingCheckpoint;
 import org.apache.james.mailbox.mock.MockMailboxSession;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
@@ -51,11 +55,12 @@ import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class ReIndexerImplTest {
 
     public static final MailboxPath INBOX = new MailboxPath("#private", "benwa@apache.org", "INBOX");
-    public static final int LIMIT = 0;
+    public static final int LIMIT = ReIndexerImpl.DEFAULT_BATCH_SIZE;
     private MailboxManager mailboxManager;
     private MailboxSessionMapperFactory mailboxSessionMapperFactory;
     private ListeningMessageSearchIndex messageSearchIndex;
@@ -102,7 +107,7 @@ public class ReIndexerImplTest {
                 return mailbox;
             }
         });
-        when(messageMapper.findInMailbox(mailbox, MessageRange.all(), MessageMapper.FetchType.Full, LIMIT)).thenAnswer(new Answer<Iterator<MailboxMessage>>() {
+        when(messageMapper.findInMailbox(mailbox, MessageRange.from(1), MessageMapper.FetchType.Full, LIMIT)).thenAnswer(new Answer<Iterator<MailboxMessage>>() {
             @Override
             public Iterator<MailboxMessage> answer(InvocationOnMock invocationOnMock) throws Throwable {
                 return Lists.newArrayList(message).iterator();
@@ -113,7 +118,7 @@ public class ReIndexerImplTest {
         verify(mailboxSessionMapperFactory).getMailboxMapper(mockMailboxSession);
         verify(mailboxSessionMapperFactory).getMessageMapper(mockMailboxSession);
         verify(mailboxMapper).findMailboxByPath(INBOX);
-        verify(messageMapper).findInMailbox(mailbox, MessageRange.all(), MessageMapper.FetchType.Full, LIMIT);
+        verify(messageMapper).findInMailbox(mailbox, MessageRange.from(1), MessageMapper.FetchType.Full, LIMIT);
         verify(mailboxManager).addListener(eq(INBOX), any(MailboxListener.class), any(MailboxSession.class));
         verify(mailboxManager).removeListener(eq(INBOX), any(MailboxListener.class), any(MailboxSession.class));
         verify(messageSearchIndex).add(any(MailboxSession.class), eq(mailbox), eq(message));
@@ -145,7 +150,7 @@ public class ReIndexerImplTest {
         when(mailboxSessionMapperFactory.getMessageMapper(user1MailboxSession))
             .thenReturn(user1MessageMapper);
         MailboxMessage user1MailboxMessage = mock(MailboxMessage.class);
-        when(user1MessageMapper.findInMailbox(user1Mailbox, MessageRange.all(), MessageMapper.FetchType.Full, ReIndexerImpl.NO_LIMIT))
+        when(user1MessageMapper.findInMailbox(user1Mailbox, MessageRange.from(1), MessageMapper.FetchType.Full, LIMIT))
             .thenReturn(ImmutableList.of(user1MailboxMessage).iterator());
         when(user1MailboxMessage.getUid())
             .thenReturn(1l);
@@ -158,4 +163,101 @@ public class ReIndexerImplTest {
         verify(messageSearchIndex).deleteAll(user1MailboxSession, user1Mailbox);
         verify(messageSearchIndex).add(user1MailboxSession, user1Mailbox, user1MailboxMessage);
     }
+
+    @Test
+    public void fullReIndexingShouldSkipMailboxesCompletedByAPreviousRun() throws Exception {
+        MockMailboxSession systemMailboxSession = new MockMailboxSession("re-indexing");
+        when(mailboxManager.createSystemSession(eq("re-indexing"), any(Logger.class)))
+            .thenReturn(systemMailboxSession);
+        MailboxPath completedPath = new MailboxPath(MailboxConstants.USER_NAMESPACE, "user1@james.org", "Inbox");
+        MailboxPath remainingPath = new MailboxPath(MailboxConstants.USER_NAMESPACE, "user2@james.org", "Inbox");
+        Mailbox remainingMailbox = mockUserMailbox(remainingPath);
+        when(mailboxManager.list(systemMailboxSession))
+            .thenReturn(ImmutableList.of(completedPath, remainingPath));
+        ReIndexingCheckpoint checkpoint = mock(ReIndexingCheckpoint.class);
+        when(checkpoint.getCompletedMailboxes())
+            .thenReturn(ImmutableSet.of(completedPath));
+        ReIndexerImpl testee = new ReIndexerImpl(mailboxManager, messageSearchIndex, mailboxSessionMapperFactory);
+        testee.setCheckpoint(checkpoint);
+
+        testee.reIndex();
+
+        verify(mailboxManager, never()).createSystemSession(eq("user1@james.org"), any(Logger.class));
+        verify(messageSearchIndex).deleteAll(any(MailboxSession.class), eq(remainingMailbox));
+        verify(checkpoint).markCompleted(remainingPath);
+        verify(checkpoint).clear();
+    }
+
+    @Test
+    public void fullReIndexingShouldReportProgress() throws Exception {
+        MockMailboxSession systemMailboxSession = new MockMailboxSession("re-indexing");
+        when(mailboxManager.createSystemSession(eq("re-indexing"), any(Logger.class)))
+            .thenReturn(systemMailboxSession);
+        MailboxPath user1Path = new MailboxPath(MailboxConstants.USER_NAMESPACE, "user1@james.org", "Inbox");
+        MailboxPath user2Path = new MailboxPath(MailboxConstants.USER_NAMESPACE, "user2@james.org", "Inbox");
+        mockUserMailbox(user1Path);
+        mockUserMailbox(user2Path);
+        when(mailboxManager.list(systemMailboxSession))
+            .thenReturn(ImmutableList.of(user1Path, user2Path));
+
+        reIndexer.reIndex();
+
+        ReIndexingProgress progress = reIndexer.getProgress();
+        assertThat(progress.isRunning()).isFalse();
+        assertThat(progress.getTotalMailboxes()).isEqualTo(2);
+        assertThat(progress.getProcessedMailboxes()).isEqualTo(2);
+        assertThat(progress.getFailedMailboxes()).isEqualTo(0);
+        assertThat(progress.getIndexedMessages()).isEqualTo(2);
+        assertThat(progress.getEstimatedRemainingTimeInMs()).isEqualTo(0);
+    }
+
+    @Test
+    public void fullReIndexingShouldKeepCheckpointWhenAMailboxFails() throws Exception {
+        MockMailboxSession systemMailboxSession = new MockMailboxSession("re-indexing");
+        when(mailboxManager.createSystemSession(eq("re-indexing"), any(Logger.class)))
+            .thenReturn(systemMailboxSession);
+        MailboxPath user1Path = new MailboxPath(MailboxConstants.USER_NAMESPACE, "user1@james.org", "Inbox");
+        MockMailboxSession user1MailboxSession = new MockMailboxSession("user1@james.org");
+        when(mailboxManager.createSystemSession(eq("user1@james.org"), any(Logger.class)))
+            .thenReturn(user1MailboxSession);
+        MailboxMapper user1MailboxMapper = mock(MailboxMapper.class);
+        when(mailboxSessionMapperFactory.getMailboxMapper(user1MailboxSession))
+            .thenReturn(user1MailboxMapper);
+        when(user1MailboxMapper.findMailboxByPath(user1Path))
+            .thenThrow(new MailboxException());
+        when(mailboxManager.list(systemMailboxSession))
+            .thenReturn(ImmutableList.of(user1Path));
+        ReIndexingCheckpoint checkpoint = mock(ReIndexingCheckpoint.class);
+        when(checkpoint.getCompletedMailboxes())
+            .thenReturn(ImmutableSet.<MailboxPath>of());
+        ReIndexerImpl testee = new ReIndexerImpl(mailboxManager, messageSearchIndex, mailboxSessionMapperFactory);
+        testee.setCheckpoint(checkpoint);
+
+        testee.reIndex();
+
+        assertThat(testee.getProgress().getFailedMailboxes()).isEqualTo(1);
+        verify(checkpoint, never()).markCompleted(user1Path);
+        verify(checkpoint, never()).clear();
+    }
+
+    private Mailbox mockUserMailbox(MailboxPath path) throws Exception {
+        MockMailboxSession userMailboxSession = new MockMailboxSession(path.getUser());
+        when(mailboxManager.createSystemSession(eq(path.getUser()), any(Logger.class)))
+            .thenReturn(userMailboxSession);
+        MailboxMapper userMailboxMapper = mock(MailboxMapper.class);
+        when(mailboxSessionMapperFactory.getMailboxMapper(userMailboxSession))
+            .thenReturn(userMailboxMapper);
+        Mailbox userMailbox = mock(Mailbox.class);
+        when(userMailboxMapper.findMailboxByPath(path))
+            .thenReturn(userMailbox);
+        MessageMapper userMessageMapper = mock(MessageMapper.class);
+        when(mailboxSessionMapperFactory.getMessageMapper(userMailboxSession))
+            .thenReturn(userMessageMapper);
+        MailboxMessage userMailboxMessage = mock(MailboxMessage.class);
+        when(userMessageMapper.findInMailbox(userMailbox, MessageRange.from(1), MessageMapper.FetchType.Full, LIMIT))
+            .thenReturn(ImmutableList.of(userMailboxMessage).iterator());
+        when(userMailboxMessage.getUid())
+            .thenReturn(1l);
+        return userMailbox;
+    }
 }
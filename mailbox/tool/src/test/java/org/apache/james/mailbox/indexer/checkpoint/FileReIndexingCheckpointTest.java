@@ -0,0 +1,79 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.indexer.checkpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileReIndexingCheckpointTest {
+
+    private static final MailboxPath USER_INBOX = new MailboxPath(MailboxConstants.USER_NAMESPACE, "user@james.org", "INBOX");
+    private static final MailboxPath PUBLIC_MAILBOX = new MailboxPath("#public", null, "shared");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private FileReIndexingCheckpoint testee;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(temporaryFolder.getRoot(), "reindexing.checkpoint");
+        testee = new FileReIndexingCheckpoint(file);
+    }
+
+    @Test
+    public void getCompletedMailboxesShouldBeEmptyWithoutFile() throws Exception {
+        assertThat(testee.getCompletedMailboxes()).isEmpty();
+    }
+
+    @Test
+    public void getCompletedMailboxesShouldReturnMarkedMailboxes() throws Exception {
+        testee.markCompleted(USER_INBOX);
+        testee.markCompleted(PUBLIC_MAILBOX);
+
+        assertThat(testee.getCompletedMailboxes()).containsOnly(USER_INBOX, PUBLIC_MAILBOX);
+    }
+
+    @Test
+    public void completedMailboxesShouldSurviveANewInstance() throws Exception {
+        testee.markCompleted(USER_INBOX);
+
+        assertThat(new FileReIndexingCheckpoint(file).getCompletedMailboxes()).containsOnly(USER_INBOX);
+    }
+
+    @Test
+    public void clearShouldForgetCompletedMailboxes() throws Exception {
+        testee.markCompleted(USER_INBOX);
+
+        testee.clear();
+
+        assertThat(testee.getCompletedMailboxes()).isEmpty();
+        assertThat(file).doesNotExist();
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.components.CassandraModule;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.imap.encode.main.DefaultImapEncoderFactory;
 import org.apache.james.imap.main.DefaultImapDecoderFactory;
 import org.apache.james.imap.processor.main.DefaultImapProcessorFactory;
@@ -83,10 +84,11 @@ public class CassandraHostSystem extends JamesImapHostSystem {
         cassandraClusterSingleton = CassandraCluster.create(mailboxModule);
         userManager = new FakeAuthenticator();
         com.datastax.driver.core.Session session = cassandraClusterSingleton.getConf();
-        CassandraModSeqProvider modSeqProvider = new CassandraModSeqProvider(session);
-        CassandraUidProvider uidProvider = new CassandraUidProvider(session);
+        CassandraPreparedStatementCache preparedStatements = new CassandraPreparedStatementCache(session);
+        CassandraModSeqProvider modSeqProvider = new CassandraModSeqProvider(session, preparedStatements);
+        CassandraUidProvider uidProvider = new CassandraUidProvider(session, preparedStatements);
 
-        CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(uidProvider, modSeqProvider, session, new CassandraTypesProvider(mailboxModule, session));
+        CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(uidProvider, modSeqProvider, session, new CassandraTypesProvider(mailboxModule, session), preparedStatements);
         
         mailboxManager = new CassandraMailboxManager(mapperFactory, userManager, new JVMMailboxPathLocker(), new MessageParser());
         QuotaRootResolver quotaRootResolver = new DefaultQuotaRootResolver(mapperFactory);
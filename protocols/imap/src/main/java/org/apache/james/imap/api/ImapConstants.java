@@ -108,6 +108,14 @@ public interface ImapConstants {
     String SUPPORTS_QUOTA = "QUOTA";
 
     String SUPPORTS_ANNOTATION = "ANNOTATION";
+
+    String SUPPORTS_SORT = "SORT";
+
+    String SUPPORTS_SORT_DISPLAY = "SORT=DISPLAY";
+
+    String SUPPORTS_THREAD_ORDEREDSUBJECT = "THREAD=ORDEREDSUBJECT";
+
+    String SUPPORTS_THREAD_REFERENCES = "THREAD=REFERENCES";
     
     String INBOX_NAME = "INBOX";
 
@@ -179,6 +187,10 @@ public interface ImapConstants {
 
     String SEARCH_COMMAND_NAME = "SEARCH";
 
+    String SORT_COMMAND_NAME = "SORT";
+
+    String THREAD_COMMAND_NAME = "THREAD";
+
     String RENAME_COMMAND_NAME = "RENAME";
 
     String NOOP_COMMAND_NAME = "NOOP";
@@ -249,6 +261,10 @@ public interface ImapConstants {
 
     String SEARCH_RESPONSE_NAME = "SEARCH";
 
+    String SORT_RESPONSE_NAME = "SORT";
+
+    String THREAD_RESPONSE_NAME = "THREAD";
+
     String ACL_RESPONSE_NAME = "ACL";
 
     String QUOTA_RESPONSE_NAME = "QUOTA";
@@ -161,6 +161,17 @@ public interface SelectedMailbox {
      */
     int remove(Long uid);
 
+    /**
+     * Removes the given UIDs, as if {@link #remove(Long)} was called for each
+     * of them in iteration order.
+     * 
+     * @param uids
+     *            not null
+     * @return for each UID in iteration order, the message sequence number it
+     *         held at the time of its removal or {@link #NO_SUCH_MESSAGE}
+     */
+    int[] removeAll(Collection<Long> uids);
+
     /**
      * Return a Collection which holds all uids reflecting the Messages which
      * flags were updated
@@ -111,6 +111,11 @@ public class ImapParserFactory implements ImapCommandParserFactory {
         //SETMETADATA, GETMETADATA
         _imapCommands.put(ImapConstants.SETANNOTATION_COMMAND_NAME, SetAnnotationCommandParser.class);
         _imapCommands.put(ImapConstants.GETANNOTATION_COMMAND_NAME, GetAnnotationCommandParser.class);
+
+        // RFC5256
+        // SORT, THREAD
+        _imapCommands.put(ImapConstants.SORT_COMMAND_NAME, SortCommandParser.class);
+        _imapCommands.put(ImapConstants.THREAD_COMMAND_NAME, ThreadCommandParser.class);
     }
 
     /**
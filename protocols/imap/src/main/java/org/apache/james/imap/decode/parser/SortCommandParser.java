@@ -0,0 +1,120 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.decode.parser;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.apache.james.imap.message.request.SortRequest;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.protocols.imap.DecodingException;
+
+/**
+ * Parse SORT commands. See RFC5256 and RFC5957
+ * 
+ * <pre>
+ * sort            = ["UID" SP] "SORT" SP sort-criteria SP search-criteria
+ * sort-criteria   = "(" sort-criterion *(SP sort-criterion) ")"
+ * sort-criterion  = ["REVERSE" SP] sort-key
+ * sort-key        = "ARRIVAL" / "CC" / "DATE" / "FROM" / "SIZE" / "SUBJECT" / "TO" / "DISPLAYFROM" / "DISPLAYTO"
+ * search-criteria = charset 1*(SP search-key)
+ * </pre>
+ */
+public class SortCommandParser extends SearchCommandParser {
+
+    private static final String REVERSE = "REVERSE";
+
+    public SortCommandParser() {
+        super(ImapCommand.selectedStateCommand(ImapConstants.SORT_COMMAND_NAME));
+    }
+
+    @Override
+    protected ImapMessage decode(ImapCommand command, ImapRequestLineReader request, String tag, boolean useUids, ImapSession session) throws DecodingException {
+        try {
+            final List<SearchQuery.Sort> sorts = sortCriteria(request);
+            request.nextWordChar();
+            final Charset charset = Charset.forName(request.astring());
+            final SearchKey searchKey = decode(session, request, charset);
+            return new SortRequest(command, sorts, searchKey, useUids, tag);
+        } catch (IllegalCharsetNameException e) {
+            session.getLog().debug("Unable to decode request", e);
+            return unsupportedCharset(tag, command);
+        } catch (UnsupportedCharsetException e) {
+            session.getLog().debug("Unable to decode request", e);
+            return unsupportedCharset(tag, command);
+        }
+    }
+
+    private List<SearchQuery.Sort> sortCriteria(ImapRequestLineReader request) throws DecodingException {
+        final List<SearchQuery.Sort> sorts = new ArrayList<SearchQuery.Sort>();
+        request.nextWordChar();
+        request.consumeChar('(');
+        while (true) {
+            request.nextWordChar();
+            String key = request.atom().toUpperCase(Locale.US);
+            boolean reverse = false;
+            if (REVERSE.equals(key)) {
+                reverse = true;
+                request.nextWordChar();
+                key = request.atom().toUpperCase(Locale.US);
+            }
+            sorts.add(new SearchQuery.Sort(sortClause(key), reverse));
+            if (request.nextWordChar() == ')') {
+                request.consume();
+                return sorts;
+            }
+        }
+    }
+
+    private SortClause sortClause(String key) throws DecodingException {
+        if ("ARRIVAL".equals(key)) {
+            return SortClause.Arrival;
+        } else if ("CC".equals(key)) {
+            return SortClause.MailboxCc;
+        } else if ("DATE".equals(key)) {
+            return SortClause.SentDate;
+        } else if ("FROM".equals(key)) {
+            return SortClause.MailboxFrom;
+        } else if ("SIZE".equals(key)) {
+            return SortClause.Size;
+        } else if ("SUBJECT".equals(key)) {
+            return SortClause.BaseSubject;
+        } else if ("TO".equals(key)) {
+            return SortClause.MailboxTo;
+        } else if ("DISPLAYFROM".equals(key)) {
+            return SortClause.DisplayFrom;
+        } else if ("DISPLAYTO".equals(key)) {
+            return SortClause.DisplayTo;
+        }
+        throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unknown sort key " + key);
+    }
+}
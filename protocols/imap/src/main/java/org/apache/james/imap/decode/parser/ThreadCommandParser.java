@@ -0,0 +1,78 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.decode.parser;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.api.message.request.ThreadAlgorithm;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.apache.james.imap.message.request.ThreadRequest;
+import org.apache.james.protocols.imap.DecodingException;
+
+/**
+ * Parse THREAD commands. See RFC5256
+ * 
+ * <pre>
+ * thread          = ["UID" SP] "THREAD" SP thread-alg SP search-criteria
+ * thread-alg      = "ORDEREDSUBJECT" / "REFERENCES" / thread-alg-ext
+ * search-criteria = charset 1*(SP search-key)
+ * </pre>
+ */
+public class ThreadCommandParser extends SearchCommandParser {
+
+    public ThreadCommandParser() {
+        super(ImapCommand.selectedStateCommand(ImapConstants.THREAD_COMMAND_NAME));
+    }
+
+    @Override
+    protected ImapMessage decode(ImapCommand command, ImapRequestLineReader request, String tag, boolean useUids, ImapSession session) throws DecodingException {
+        try {
+            request.nextWordChar();
+            final ThreadAlgorithm algorithm = algorithm(request.atom());
+            request.nextWordChar();
+            final Charset charset = Charset.forName(request.astring());
+            final SearchKey searchKey = decode(session, request, charset);
+            return new ThreadRequest(command, algorithm, searchKey, useUids, tag);
+        } catch (IllegalCharsetNameException e) {
+            session.getLog().debug("Unable to decode request", e);
+            return unsupportedCharset(tag, command);
+        } catch (UnsupportedCharsetException e) {
+            session.getLog().debug("Unable to decode request", e);
+            return unsupportedCharset(tag, command);
+        }
+    }
+
+    private ThreadAlgorithm algorithm(String name) throws DecodingException {
+        try {
+            return ThreadAlgorithm.valueOf(name.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unknown threading algorithm " + name);
+        }
+    }
+}
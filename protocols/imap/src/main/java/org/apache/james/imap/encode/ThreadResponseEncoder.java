@@ -0,0 +1,89 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.encode;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.encode.base.AbstractChainedImapEncoder;
+import org.apache.james.imap.message.response.MessageThread;
+import org.apache.james.imap.message.response.ThreadResponse;
+
+/**
+ * Encoders <code>THREAD</code> responses. See RFC5256
+ * 
+ * <pre>
+ * thread-data     = "THREAD" [SP 1*thread-list]
+ * thread-list     = "(" (thread-members / thread-nested) ")"
+ * thread-members  = nz-number *(SP nz-number) [SP thread-nested]
+ * thread-nested   = 2*thread-list
+ * </pre>
+ */
+public class ThreadResponseEncoder extends AbstractChainedImapEncoder {
+
+    public ThreadResponseEncoder(ImapEncoder next) {
+        super(next);
+    }
+
+    protected void doEncode(ImapMessage acceptableMessage, ImapResponseComposer composer, ImapSession session) throws IOException {
+        ThreadResponse response = (ThreadResponse) acceptableMessage;
+        composer.untagged();
+        composer.message(ImapConstants.THREAD_RESPONSE_NAME);
+        threadLists(response.getThreads(), composer);
+        composer.end();
+    }
+
+    private void threadLists(List<MessageThread> threads, ImapResponseComposer composer) throws IOException {
+        boolean first = true;
+        for (MessageThread thread : threads) {
+            if (!first) {
+                // thread-lists are not separated by spaces
+                composer.skipNextSpace();
+            }
+            first = false;
+            composer.openParen();
+            threadMembers(thread, composer);
+            composer.closeParen();
+        }
+    }
+
+    private void threadMembers(MessageThread thread, ImapResponseComposer composer) throws IOException {
+        MessageThread current = thread;
+        if (current.isPlaceholder()) {
+            threadLists(current.getChildren(), composer);
+            return;
+        }
+        composer.message(current.getId());
+        while (current.getChildren().size() == 1) {
+            current = current.getChildren().get(0);
+            composer.message(current.getId());
+        }
+        if (!current.getChildren().isEmpty()) {
+            threadLists(current.getChildren(), composer);
+        }
+    }
+
+    protected boolean isAcceptable(ImapMessage message) {
+        return (message instanceof ThreadResponse);
+    }
+}
@@ -41,7 +41,9 @@ import org.apache.james.imap.encode.NamespaceResponseEncoder;
 import org.apache.james.imap.encode.RecentResponseEncoder;
 import org.apache.james.imap.encode.MailboxStatusResponseEncoder;
 import org.apache.james.imap.encode.SearchResponseEncoder;
+import org.apache.james.imap.encode.SortResponseEncoder;
 import org.apache.james.imap.encode.StatusResponseEncoder;
+import org.apache.james.imap.encode.ThreadResponseEncoder;
 import org.apache.james.imap.encode.VanishedResponseEncoder;
 import org.apache.james.imap.encode.XListResponseEncoder;
 import org.apache.james.imap.encode.QuotaResponseEncoder;
@@ -90,7 +92,9 @@ public class DefaultImapEncoderFactory implements ImapEncoderFactory {
         final VanishedResponseEncoder vanishedResponseEncoder = new VanishedResponseEncoder(esearchResponseEncoder);
         final QuotaResponseEncoder quotaResponseEncoder = new QuotaResponseEncoder(vanishedResponseEncoder);
         final QuotaRootResponseEncoder quotaRootResponseEncoder = new QuotaRootResponseEncoder(quotaResponseEncoder);
-        return quotaRootResponseEncoder;
+        final SortResponseEncoder sortResponseEncoder = new SortResponseEncoder(quotaRootResponseEncoder);
+        final ThreadResponseEncoder threadResponseEncoder = new ThreadResponseEncoder(sortResponseEncoder);
+        return threadResponseEncoder;
     }
 
     private final Localizer localizer;
@@ -0,0 +1,55 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.message.request;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.api.message.request.ThreadAlgorithm;
+
+/**
+ * THREAD request. See RFC5256
+ */
+public class ThreadRequest extends AbstractImapRequest {
+
+    private final ThreadAlgorithm algorithm;
+
+    private final SearchKey searchKey;
+
+    private final boolean useUids;
+
+    public ThreadRequest(ImapCommand command, ThreadAlgorithm algorithm, SearchKey searchKey, boolean useUids, String tag) {
+        super(tag, command);
+        this.algorithm = algorithm;
+        this.searchKey = searchKey;
+        this.useUids = useUids;
+    }
+
+    public final ThreadAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public final SearchKey getSearchKey() {
+        return searchKey;
+    }
+
+    public final boolean isUseUids() {
+        return useUids;
+    }
+}
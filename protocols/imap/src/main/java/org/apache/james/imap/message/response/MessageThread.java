@@ -0,0 +1,90 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.message.response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node of a thread returned by the THREAD command. A node either references a message, or is a placeholder grouping
+ * messages whose common parent is not part of the results.
+ */
+public class MessageThread {
+
+    /**
+     * Id of placeholder nodes
+     */
+    public static final long NO_MESSAGE = -1;
+
+    public static MessageThread placeholder() {
+        return new MessageThread(NO_MESSAGE);
+    }
+
+    private final long id;
+    private final List<MessageThread> children;
+
+    public MessageThread(long id) {
+        this.id = id;
+        this.children = new ArrayList<MessageThread>();
+    }
+
+    /**
+     * Return the uid or the message sequence number of this message, or {@link #NO_MESSAGE} for placeholders
+     */
+    public long getId() {
+        return id;
+    }
+
+    public boolean isPlaceholder() {
+        return id == NO_MESSAGE;
+    }
+
+    public List<MessageThread> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public MessageThread addChild(MessageThread child) {
+        children.add(child);
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) id * 31 + children.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof MessageThread) {
+            MessageThread other = (MessageThread) obj;
+            return id == other.id && children.equals(other.children);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (children.isEmpty()) {
+            return String.valueOf(id);
+        }
+        return id + " " + children;
+    }
+}
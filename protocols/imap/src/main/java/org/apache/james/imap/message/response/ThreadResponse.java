@@ -0,0 +1,62 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.message.response;
+
+import java.util.List;
+
+import org.apache.james.imap.api.message.response.ImapResponseMessage;
+
+/**
+ * A <code>THREAD</code> response. See RFC5256
+ */
+public class ThreadResponse implements ImapResponseMessage {
+    private final List<MessageThread> threads;
+
+    /**
+     * Constructs a <code>THREAD</code> response.
+     * 
+     * @param threads root of each thread, in the order they should be returned, not null
+     */
+    public ThreadResponse(List<MessageThread> threads) {
+        this.threads = threads;
+    }
+
+    public final List<MessageThread> getThreads() {
+        return threads;
+    }
+
+    @Override
+    public int hashCode() {
+        return threads.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof ThreadResponse) {
+            return threads.equals(((ThreadResponse) obj).threads);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadResponse ( threads = " + threads + " )";
+    }
+}
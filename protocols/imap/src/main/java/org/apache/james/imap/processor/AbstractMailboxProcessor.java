@@ -165,23 +165,17 @@ abstract public class AbstractMailboxProcessor<M extends ImapRequest> extends Ab
     }
 
     private void addExpungedResponses(SelectedMailbox selected, Collection<Long> expungedUids, ImapProcessor.Responder responder) {
-        for (Long uid : expungedUids) {
-            final long uidValue = uid.longValue();
-
-            // we need to remove the message in the loop to the sequence numbers
-            // are updated correctly.
-            // See 7.4.1. EXPUNGE Response
-            final int msn = selected.remove(uidValue);
+        // Each message sequence number takes into account the removal of the
+        // previous messages.
+        // See 7.4.1. EXPUNGE Response
+        for (int msn : selected.removeAll(expungedUids)) {
             ExpungeResponse response = new ExpungeResponse(msn);
             responder.respond(response);
         }
     }
     
     private void addVanishedResponse(SelectedMailbox selected, Collection<Long> expungedUids, ImapProcessor.Responder responder) {
-        for (Long uid : expungedUids) {
-            final long uidValue = uid.longValue();
-            selected.remove(uidValue);
-        }
+        selected.removeAll(expungedUids);
         IdRange[] uidRange = idRanges(MessageRange.toRanges(expungedUids));
         responder.respond(new VanishedResponse(uidRange, false));
     }
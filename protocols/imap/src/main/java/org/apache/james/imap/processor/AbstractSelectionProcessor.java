@@ -41,6 +41,7 @@ import org.apache.james.imap.message.request.AbstractMailboxSelectionRequest;
 import org.apache.james.imap.message.response.ExistsResponse;
 import org.apache.james.imap.message.response.RecentResponse;
 import org.apache.james.imap.processor.base.SelectedMailboxImpl;
+import org.apache.james.imap.processor.base.SelectedMailboxSnapshots;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
@@ -58,13 +59,20 @@ abstract class AbstractSelectionProcessor<M extends AbstractMailboxSelectionRequ
     final StatusResponseFactory statusResponseFactory;
 
     private final boolean openReadOnly;
+    private final SelectedMailboxSnapshots selectedMailboxSnapshots;
     private final static List<String> CAPS = Collections.unmodifiableList(Arrays.asList(ImapConstants.SUPPORTS_QRESYNC, ImapConstants.SUPPORTS_CONDSTORE));
 
     
     public AbstractSelectionProcessor(Class<M> acceptableClass, ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory statusResponseFactory, boolean openReadOnly) {
+        this(acceptableClass, next, mailboxManager, statusResponseFactory, openReadOnly, new SelectedMailboxSnapshots(mailboxManager));
+    }
+
+    public AbstractSelectionProcessor(Class<M> acceptableClass, ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory statusResponseFactory, boolean openReadOnly,
+            SelectedMailboxSnapshots selectedMailboxSnapshots) {
         super(acceptableClass, next, mailboxManager, statusResponseFactory);
         this.statusResponseFactory = statusResponseFactory;
         this.openReadOnly = openReadOnly;
+        this.selectedMailboxSnapshots = selectedMailboxSnapshots;
 
     }
 
@@ -408,7 +416,7 @@ abstract class AbstractSelectionProcessor<M extends AbstractMailboxSelectionRequ
             if (currentMailbox != null) {
                 getStatusResponseFactory().untaggedOk(HumanReadableText.QRESYNC_CLOSED, ResponseCode.closed());
             }
-            session.selected(new SelectedMailboxImpl(getMailboxManager(),  session, mailboxPath));
+            session.selected(new SelectedMailboxImpl(getMailboxManager(),  session, mailboxPath, selectedMailboxSnapshots));
 
             sessionMailbox = session.getSelected();
             
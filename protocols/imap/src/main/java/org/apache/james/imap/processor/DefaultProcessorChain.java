@@ -26,6 +26,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.james.imap.api.message.response.StatusResponseFactory;
 import org.apache.james.imap.api.process.ImapProcessor;
 import org.apache.james.imap.api.process.MailboxTyper;
+import org.apache.james.imap.processor.base.SelectedMailboxSnapshots;
 import org.apache.james.imap.processor.fetch.FetchProcessor;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.SubscriptionManager;
@@ -41,6 +42,8 @@ public class DefaultProcessorChain {
                   final MailboxManager mailboxManager, SubscriptionManager subscriptionManager,
                   final StatusResponseFactory statusResponseFactory, MailboxTyper mailboxTyper, QuotaManager quotaManager,
                   final QuotaRootResolver quotaRootResolver, long idleKeepAlive, TimeUnit milliseconds, Set<String> disabledCaps) {
+        // Shared by SELECT and EXAMINE so that sessions of this node share the content of the selected mailboxes
+        final SelectedMailboxSnapshots selectedMailboxSnapshots = new SelectedMailboxSnapshots(mailboxManager);
         final SystemMessageProcessor systemProcessor = new SystemMessageProcessor(chainEndProcessor, mailboxManager);
         final LogoutProcessor logoutProcessor = new LogoutProcessor(systemProcessor, mailboxManager, statusResponseFactory);
 
@@ -75,7 +78,7 @@ public class DefaultProcessorChain {
             authenticateProcessor = new AuthenticateProcessor(copyProcessor, mailboxManager, statusResponseFactory);
         }
         final ExpungeProcessor expungeProcessor = new ExpungeProcessor(authenticateProcessor, mailboxManager, statusResponseFactory);
-        final ExamineProcessor examineProcessor = new ExamineProcessor(expungeProcessor, mailboxManager, statusResponseFactory);
+        final ExamineProcessor examineProcessor = new ExamineProcessor(expungeProcessor, mailboxManager, statusResponseFactory, selectedMailboxSnapshots);
         final AppendProcessor appendProcessor = new AppendProcessor(examineProcessor, mailboxManager, statusResponseFactory);
         final StoreProcessor storeProcessor = new StoreProcessor(appendProcessor, mailboxManager, statusResponseFactory);
         final NoopProcessor noopProcessor = new NoopProcessor(storeProcessor, mailboxManager, statusResponseFactory);
@@ -94,7 +97,13 @@ public class DefaultProcessorChain {
         // WITHIN extension
         capabilityProcessor.addProcessor(searchProcessor);
 
-        final SelectProcessor selectProcessor = new SelectProcessor(searchProcessor, mailboxManager, statusResponseFactory);
+        // SORT and THREAD extensions. See RFC5256
+        final SortProcessor sortProcessor = new SortProcessor(searchProcessor, mailboxManager, statusResponseFactory);
+        capabilityProcessor.addProcessor(sortProcessor);
+        final ThreadProcessor threadProcessor = new ThreadProcessor(sortProcessor, mailboxManager, statusResponseFactory);
+        capabilityProcessor.addProcessor(threadProcessor);
+
+        final SelectProcessor selectProcessor = new SelectProcessor(threadProcessor, mailboxManager, statusResponseFactory, selectedMailboxSnapshots);
         final NamespaceProcessor namespaceProcessor = new NamespaceProcessor(selectProcessor, mailboxManager, statusResponseFactory);
 
         capabilityProcessor.addProcessor(xlistProcessor);
@@ -22,6 +22,7 @@ package org.apache.james.imap.processor;
 import org.apache.james.imap.api.message.response.StatusResponseFactory;
 import org.apache.james.imap.api.process.ImapProcessor;
 import org.apache.james.imap.message.request.ExamineRequest;
+import org.apache.james.imap.processor.base.SelectedMailboxSnapshots;
 import org.apache.james.mailbox.MailboxManager;
 
 public class ExamineProcessor extends AbstractSelectionProcessor<ExamineRequest> {
@@ -30,4 +31,8 @@ public class ExamineProcessor extends AbstractSelectionProcessor<ExamineRequest>
         super(ExamineRequest.class, next, mailboxManager, statusResponseFactory, true);
     }
 
+    public ExamineProcessor(ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory statusResponseFactory, SelectedMailboxSnapshots selectedMailboxSnapshots) {
+        super(ExamineRequest.class, next, mailboxManager, statusResponseFactory, true, selectedMailboxSnapshots);
+    }
+
 }
@@ -258,7 +258,11 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
     }
 
 
-    private SearchQuery toQuery(SearchKey key, ImapSession session) throws MessageRangeException {
+    /**
+     * Convert the given {@link SearchKey} to a {@link SearchQuery}. Also used by SORT and THREAD, whose search criteria
+     * are the ones of SEARCH.
+     */
+    static SearchQuery toQuery(SearchKey key, ImapSession session) throws MessageRangeException {
         final SearchQuery result = new SearchQuery();
         final SelectedMailbox selected = session.getSelected();
         if (selected != null) {
@@ -269,7 +273,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         return result;
     }
 
-    private SearchQuery.Criterion toCriterion(SearchKey key, ImapSession session) throws MessageRangeException {
+    private static SearchQuery.Criterion toCriterion(SearchKey key, ImapSession session) throws MessageRangeException {
         final int type = key.getType();
         final DayMonthYear date = key.getDate();
         switch (type) {
@@ -372,7 +376,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
             return SearchQuery.all();
         }
     }
-    private Date createWithinDate(SearchKey key) {
+    private static Date createWithinDate(SearchKey key) {
         long seconds = key.getSeconds();
         long res = System.currentTimeMillis() - seconds * 1000;
         return new Date(res);
@@ -389,7 +393,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
      * @return crit
      * @throws MessageRangeException
      */
-    private Criterion sequence(IdRange[] sequenceNumbers, ImapSession session, boolean msn) throws MessageRangeException {
+    private static Criterion sequence(IdRange[] sequenceNumbers, ImapSession session, boolean msn) throws MessageRangeException {
         final List<SearchQuery.NumericRange> ranges = new ArrayList<SearchQuery.NumericRange>();
         final SelectedMailbox selected = session.getSelected();
         boolean useUids = !msn;
@@ -456,7 +460,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         return SearchQuery.uid(ranges.toArray(new SearchQuery.NumericRange[0]));
     }
 
-    private Criterion or(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
+    private static Criterion or(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
         final SearchKey keyOne = keys.get(0);
         final SearchKey keyTwo = keys.get(1);
         final Criterion criterionOne = toCriterion(keyOne, session);
@@ -464,13 +468,13 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         return SearchQuery.or(criterionOne, criterionTwo);
     }
 
-    private Criterion not(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
+    private static Criterion not(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
         final SearchKey key = keys.get(0);
         final Criterion criterion = toCriterion(key, session);
         return SearchQuery.not(criterion);
     }
 
-    private Criterion and(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
+    private static Criterion and(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
         final int size = keys.size();
         final List<Criterion> criteria = new ArrayList<Criterion>(size);
         for (SearchKey key : keys) {
@@ -0,0 +1,126 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapSessionUtils;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.response.StatusResponseFactory;
+import org.apache.james.imap.api.process.ImapProcessor;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.apache.james.imap.message.request.SortRequest;
+import org.apache.james.imap.message.response.SortResponse;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.exception.MessageRangeException;
+import org.apache.james.mailbox.model.SearchQuery;
+
+/**
+ * Processes SORT commands. See RFC5256 and RFC5957
+ * 
+ * Sorting is performed by the mailbox search index, so that clients do not have to fetch the envelope of every
+ * message to sort them locally.
+ */
+public class SortProcessor extends AbstractMailboxProcessor<SortRequest> implements CapabilityImplementingProcessor {
+
+    private final static List<String> CAPS = Collections.unmodifiableList(Arrays.asList(ImapConstants.SUPPORTS_SORT, ImapConstants.SUPPORTS_SORT_DISPLAY));
+
+    public SortProcessor(ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory factory) {
+        super(SortRequest.class, next, mailboxManager, factory);
+    }
+
+    protected void doProcess(SortRequest request, ImapSession session, String tag, ImapCommand command, Responder responder) {
+        final boolean useUids = request.isUseUids();
+        try {
+            final MessageManager mailbox = getSelectedMailbox(session);
+            final SearchQuery query = SearchProcessor.toQuery(request.getSearchKey(), session);
+            query.setSorts(withSequenceOrderAsTieBreaker(request.getSorts()));
+
+            final Iterator<Long> uids = mailbox.search(query, ImapSessionUtils.getMailboxSession(session));
+            final SelectedMailbox selected = session.getSelected();
+            final List<Long> ids = new ArrayList<Long>();
+            while (uids.hasNext()) {
+                final long uid = uids.next();
+                if (useUids) {
+                    ids.add(uid);
+                } else {
+                    final int msn = selected.msn(uid);
+                    if (msn != SelectedMailbox.NO_SUCH_MESSAGE) {
+                        ids.add((long) msn);
+                    }
+                }
+            }
+
+            responder.respond(new SortResponse(toArray(ids)));
+
+            boolean omitExpunged = (!useUids);
+            unsolicitedResponses(session, responder, omitExpunged, useUids);
+            okComplete(command, tag, responder);
+        } catch (MessageRangeException e) {
+            if (session.getLog().isDebugEnabled()) {
+                session.getLog().debug("Sort failed in mailbox " + session.getSelected().getPath() + " because of an invalid sequence-set ", e);
+            }
+            taggedBad(command, tag, responder, HumanReadableText.INVALID_MESSAGESET);
+        } catch (MailboxException e) {
+            if (session.getLog().isInfoEnabled()) {
+                session.getLog().info("Sort failed in mailbox " + session.getSelected().getPath(), e);
+            }
+            no(command, tag, responder, HumanReadableText.SEARCH_FAILED);
+        } finally {
+            // MODSEQ is only reported by SEARCH
+            session.setAttribute(SearchProcessor.SEARCH_MODSEQ, null);
+        }
+    }
+
+    /**
+     * Messages that are equal according to all the sort criteria are ordered by sequence number, which is also the
+     * uid order
+     */
+    private List<SearchQuery.Sort> withSequenceOrderAsTieBreaker(List<SearchQuery.Sort> sorts) {
+        final List<SearchQuery.Sort> result = new ArrayList<SearchQuery.Sort>(sorts);
+        result.add(new SearchQuery.Sort(SearchQuery.Sort.SortClause.Uid, false));
+        return result;
+    }
+
+    private long[] toArray(List<Long> ids) {
+        final long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @see org.apache.james.imap.processor.CapabilityImplementingProcessor
+     * #getImplementedCapabilities(org.apache.james.imap.api.process.ImapSession)
+     */
+    public List<String> getImplementedCapabilities(ImapSession session) {
+        return CAPS;
+    }
+}
@@ -0,0 +1,228 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapSessionUtils;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.request.ThreadAlgorithm;
+import org.apache.james.imap.api.message.response.StatusResponseFactory;
+import org.apache.james.imap.api.process.ImapProcessor;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.apache.james.imap.message.request.ThreadRequest;
+import org.apache.james.imap.message.response.ThreadResponse;
+import org.apache.james.imap.processor.thread.BaseSubject;
+import org.apache.james.imap.processor.thread.OrderedSubjectThreader;
+import org.apache.james.imap.processor.thread.ReferencesThreader;
+import org.apache.james.imap.processor.thread.ThreadableMessage;
+import org.apache.james.imap.processor.thread.Threader;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.exception.MessageRangeException;
+import org.apache.james.mailbox.model.FetchGroupImpl;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResult.Header;
+import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mime4j.field.datetime.parser.DateTimeParser;
+import org.apache.james.mime4j.field.datetime.parser.ParseException;
+import org.apache.james.mime4j.field.datetime.parser.TokenMgrError;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * Processes THREAD commands. See RFC5256
+ * 
+ * Matching messages are searched by the mailbox search index, ordered by sent date. Only their headers are then read
+ * to thread them.
+ */
+public class ThreadProcessor extends AbstractMailboxProcessor<ThreadRequest> implements CapabilityImplementingProcessor {
+
+    private final static List<String> CAPS = Collections.unmodifiableList(Arrays.asList(ImapConstants.SUPPORTS_THREAD_ORDEREDSUBJECT, ImapConstants.SUPPORTS_THREAD_REFERENCES));
+    private final static Pattern MESSAGE_ID = Pattern.compile("<[^<>]+>");
+
+    private final Map<ThreadAlgorithm, Threader> threaders;
+
+    public ThreadProcessor(ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory factory) {
+        super(ThreadRequest.class, next, mailboxManager, factory);
+        this.threaders = new HashMap<ThreadAlgorithm, Threader>();
+        this.threaders.put(ThreadAlgorithm.ORDEREDSUBJECT, new OrderedSubjectThreader());
+        this.threaders.put(ThreadAlgorithm.REFERENCES, new ReferencesThreader());
+    }
+
+    protected void doProcess(ThreadRequest request, ImapSession session, String tag, ImapCommand command, Responder responder) {
+        final boolean useUids = request.isUseUids();
+        try {
+            final MessageManager mailbox = getSelectedMailbox(session);
+            final MailboxSession mailboxSession = ImapSessionUtils.getMailboxSession(session);
+            final SearchQuery query = SearchProcessor.toQuery(request.getSearchKey(), session);
+            query.setSorts(Arrays.asList(
+                new SearchQuery.Sort(SearchQuery.Sort.SortClause.SentDate, false),
+                new SearchQuery.Sort(SearchQuery.Sort.SortClause.Uid, false)));
+
+            final List<Long> uids = new ArrayList<Long>();
+            for (Iterator<Long> it = mailbox.search(query, mailboxSession); it.hasNext();) {
+                uids.add(it.next());
+            }
+            final List<ThreadableMessage> messages = readThreadableMessages(mailbox, mailboxSession, session.getSelected(), uids, useUids);
+
+            responder.respond(new ThreadResponse(threaders.get(request.getAlgorithm()).thread(messages)));
+
+            boolean omitExpunged = (!useUids);
+            unsolicitedResponses(session, responder, omitExpunged, useUids);
+            okComplete(command, tag, responder);
+        } catch (MessageRangeException e) {
+            if (session.getLog().isDebugEnabled()) {
+                session.getLog().debug("Thread failed in mailbox " + session.getSelected().getPath() + " because of an invalid sequence-set ", e);
+            }
+            taggedBad(command, tag, responder, HumanReadableText.INVALID_MESSAGESET);
+        } catch (MailboxException e) {
+            if (session.getLog().isInfoEnabled()) {
+                session.getLog().info("Thread failed in mailbox " + session.getSelected().getPath(), e);
+            }
+            no(command, tag, responder, HumanReadableText.SEARCH_FAILED);
+        } finally {
+            // MODSEQ is only reported by SEARCH
+            session.setAttribute(SearchProcessor.SEARCH_MODSEQ, null);
+        }
+    }
+
+    /**
+     * Read the headers of the given messages, and return them in the order of the given uids
+     */
+    private List<ThreadableMessage> readThreadableMessages(MessageManager mailbox, MailboxSession mailboxSession, SelectedMailbox selected, List<Long> uids, boolean useUids) throws MailboxException {
+        final Map<Long, ThreadableMessage> messagesByUid = new HashMap<Long, ThreadableMessage>();
+        for (MessageRange range : MessageRange.toRanges(uids)) {
+            final MessageResultIterator results = mailbox.getMessages(range, FetchGroupImpl.HEADERS, mailboxSession);
+            while (results.hasNext()) {
+                final MessageResult result = results.next();
+                final long id;
+                if (useUids) {
+                    id = result.getUid();
+                } else {
+                    id = selected.msn(result.getUid());
+                    if (id == SelectedMailbox.NO_SUCH_MESSAGE) {
+                        continue;
+                    }
+                }
+                messagesByUid.put(result.getUid(), toThreadableMessage(id, result));
+            }
+        }
+
+        final List<ThreadableMessage> messages = new ArrayList<ThreadableMessage>(messagesByUid.size());
+        for (Long uid : uids) {
+            final ThreadableMessage message = messagesByUid.get(uid);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    private ThreadableMessage toThreadableMessage(long id, MessageResult result) throws MailboxException {
+        String subject = null;
+        String date = null;
+        String messageId = null;
+        String references = null;
+        String inReplyTo = null;
+        for (Iterator<Header> headers = result.getHeaders().headers(); headers.hasNext();) {
+            final Header header = headers.next();
+            final String name = header.getName().toLowerCase(Locale.US);
+            if (subject == null && name.equals("subject")) {
+                subject = header.getValue();
+            } else if (date == null && name.equals("date")) {
+                date = header.getValue();
+            } else if (messageId == null && name.equals("message-id")) {
+                messageId = header.getValue();
+            } else if (references == null && name.equals("references")) {
+                references = header.getValue();
+            } else if (inReplyTo == null && name.equals("in-reply-to")) {
+                inReplyTo = header.getValue();
+            }
+        }
+
+        List<String> referencedIds = messageIds(references);
+        if (referencedIds.isEmpty()) {
+            // Only the first id of In-Reply-To is considered. See RFC5256 3.
+            List<String> inReplyToIds = messageIds(inReplyTo);
+            if (!inReplyToIds.isEmpty()) {
+                referencedIds = inReplyToIds.subList(0, 1);
+            }
+        }
+        final List<String> ownIds = messageIds(messageId);
+        return new ThreadableMessage(id,
+            sentDate(date, result.getInternalDate()),
+            BaseSubject.of(subject),
+            ownIds.isEmpty() ? null : ownIds.get(0),
+            referencedIds);
+    }
+
+    private List<String> messageIds(String headerValue) {
+        final List<String> ids = new ArrayList<String>();
+        if (headerValue != null) {
+            final Matcher matcher = MESSAGE_ID.matcher(MimeUtil.unfold(headerValue));
+            while (matcher.find()) {
+                ids.add(matcher.group());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Return the date of the Date header, or the internal date if it can not be parsed. See RFC5256 2.2
+     */
+    private Date sentDate(String headerValue, Date internalDate) {
+        if (headerValue == null) {
+            return internalDate;
+        }
+        try {
+            return new DateTimeParser(new StringReader(MimeUtil.unfold(headerValue))).parseAll().getDate();
+        } catch (ParseException e) {
+            return internalDate;
+        } catch (TokenMgrError e) {
+            return internalDate;
+        }
+    }
+
+    /**
+     * @see org.apache.james.imap.processor.CapabilityImplementingProcessor
+     * #getImplementedCapabilities(org.apache.james.imap.api.process.ImapSession)
+     */
+    public List<String> getImplementedCapabilities(ImapSession session) {
+        return CAPS;
+    }
+}
@@ -25,8 +25,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 import javax.mail.Flags;
@@ -39,11 +37,7 @@ import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
-import org.apache.james.mailbox.model.FetchGroupImpl;
 import org.apache.james.mailbox.model.MailboxPath;
-import org.apache.james.mailbox.model.MessageRange;
-import org.apache.james.mailbox.model.MessageResult;
-import org.apache.james.mailbox.model.MessageResultIterator;
 import org.apache.james.mailbox.model.UpdatedFlags;
 
 /**
@@ -62,7 +56,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     private final ImapSession session;
     
 
-    private final static Flags FLAGS = new Flags();
+    final static Flags FLAGS = new Flags();
     static {
         FLAGS.add(Flags.Flag.ANSWERED);
         FLAGS.add(Flags.Flag.DELETED);
@@ -83,16 +77,24 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
 
     private boolean applicableFlagsChanged;
     
-    private final SortedMap<Integer, Long> msnToUid =new TreeMap<Integer, Long>();
+    private final UidMsnIndex uidMsnIndex = new UidMsnIndex();
 
-    private final SortedMap<Long, Integer> uidToMsn = new TreeMap<Long, Integer>();
+    private final SelectedMailboxSnapshots snapshots;
 
-    private long highestUid = 0;
-
-    private int highestMsn = 0;
+    private SelectedMailboxSnapshots.Snapshot snapshot;
     
     public SelectedMailboxImpl(MailboxManager mailboxManager, ImapSession session, MailboxPath path) throws MailboxException {
+        this(mailboxManager, session, path, new SelectedMailboxSnapshots(mailboxManager));
+    }
+
+    /**
+     * @param snapshots
+     *            node wide registry allowing sessions selecting the same
+     *            mailbox to share its UIDs
+     */
+    public SelectedMailboxImpl(MailboxManager mailboxManager, ImapSession session, MailboxPath path, SelectedMailboxSnapshots snapshots) throws MailboxException {
         this.session = session;
+        this.snapshots = snapshots;
         this.sessionId = ImapSessionUtils.getMailboxSession(session).getSessionId();
         this.mailboxManager = mailboxManager;
         
@@ -115,52 +117,15 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     private void init() throws MailboxException {
         MailboxSession mailboxSession = ImapSessionUtils.getMailboxSession(session);
         
-        mailboxManager.addListener(path, this, mailboxSession);
-
-        MessageResultIterator messages = mailboxManager.getMailbox(path, mailboxSession).getMessages(MessageRange.all(), FetchGroupImpl.MINIMAL, mailboxSession);
+        // Events are only processed once the snapshot is copied, hence events
+        // already reflected by the snapshot might be received afterward.
         synchronized (this) {
-            while(messages.hasNext()) {
-                MessageResult mr = messages.next();
-                applicableFlags.add(mr.getFlags());
-                add(mr.getUid());
-            }
-            
-          
-            // \RECENT is not a applicable flag in imap so remove it from the list
-            applicableFlags.remove(Flags.Flag.RECENT);
-        }
-       
-    }
+            mailboxManager.addListener(path, this, mailboxSession);
 
-    private void add(int msn, long uid) {
-        if (uid > highestUid) {
-            highestUid = uid;
+            snapshot = snapshots.acquire(path, mailboxSession);
+            snapshot.copyTo(uidMsnIndex, applicableFlags);
         }
-        msnToUid.put(msn, uid);
-        uidToMsn.put(uid, msn);
-    }
-
-    /**
-     * Expunge the message with the given uid
-     * 
-     * @param uid
-     */
-    private void expunge(long uid) {
-        final int msn = msn(uid);
-        remove(msn, uid);
-        final List<Integer> renumberMsns = new ArrayList<Integer>(msnToUid.tailMap(msn + 1).keySet());
-        for (Integer msnInteger : renumberMsns) {
-            int aMsn = msnInteger.intValue();
-            long aUid = uid(aMsn);
-            remove(aMsn, aUid);
-            add(aMsn - 1, aUid);
-        }
-        highestMsn--;
-    }
-
-    private void remove(int msn, long uid) {
-        uidToMsn.remove(uid);
-        msnToUid.remove(msn);
+       
     }
 
     /**
@@ -169,10 +134,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      * @param uid
      */
     private void add(long uid) {
-        if (!uidToMsn.containsKey(uid)) {
-            highestMsn++;
-            add(highestMsn, uid);
-        }
+        uidMsnIndex.add(uid);
     }
 
     /**
@@ -184,22 +146,14 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      * @see SelectedMailbox#getFirstUid()
      */
     public synchronized long getFirstUid() {
-        if (uidToMsn.isEmpty()) {
-            return -1;
-        } else {
-            return uidToMsn.firstKey();
-        }
+        return uidMsnIndex.getFirstUid();
     }
 
     /**
      * @see SelectedMailbox#getLastUid()
      */
     public synchronized long getLastUid() {
-        if (uidToMsn.isEmpty()) {
-            return -1;
-        } else {
-            return uidToMsn.lastKey();
-        }
+        return uidMsnIndex.getLastUid();
     }
 
 
@@ -215,8 +169,17 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
             }
         }
         
-        uidToMsn.clear();
-        msnToUid.clear();
+        uidMsnIndex.clear();
+        if (snapshot != null) {
+            try {
+                snapshots.release(snapshot, mailboxSession);
+            } catch (MailboxException e) {
+                if (session.getLog().isInfoEnabled()) {
+                    session.getLog().info("Unable to release snapshot of mailbox " + path + " while closing it", e);
+                }
+            }
+            snapshot = null;
+        }
         flagUpdateUids.clear();
 
         expungedUids.clear();
@@ -318,9 +281,16 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      */
     
     public synchronized  int remove(Long uid) {
-        final int result = msn(uid);
-        expunge(uid);
-        return result;
+        return uidMsnIndex.remove(uid);
+    }
+
+    /**
+     * @see
+     * org.apache.james.imap.api.process.SelectedMailbox#removeAll(java.util.Collection)
+     */
+    
+    public synchronized int[] removeAll(Collection<Long> uids) {
+        return uidMsnIndex.removeAll(uids);
     }
 
 
@@ -509,7 +479,13 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
                     
                     
                 } else if (messageEvent instanceof Expunged) {
-                    expungedUids.addAll(messageEvent.getUids());
+                    // The snapshot this session was initialized from might
+                    // already be missing these uids
+                    for (Long uid : messageEvent.getUids()) {
+                        if (uidMsnIndex.msn(uid) != SelectedMailbox.NO_SUCH_MESSAGE) {
+                            expungedUids.add(uid);
+                        }
+                    }
                     
                 }
             } else if (event instanceof MailboxDeletion) {
@@ -525,30 +501,17 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
 
     
     public synchronized int msn(long uid) {
-        Integer msn = uidToMsn.get(uid);
-        if (msn != null) {
-            return msn.intValue();
-        } else {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
+        return uidMsnIndex.msn(uid);
     }
 
     
     public synchronized long uid(int msn) {
-        if (msn == -1) {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
-        Long uid = msnToUid.get(msn);
-        if (uid != null) {
-            return uid.longValue();
-        } else {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
+        return uidMsnIndex.uid(msn);
     }
 
     
     public synchronized long existsCount() {
-        return uidToMsn.size();
+        return uidMsnIndex.size();
     }
     
 
@@ -0,0 +1,192 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.base;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.FetchGroupImpl;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.UpdatedFlags;
+
+/**
+ * Node local registry of the UIDs and applicable flags of the selected mailboxes.
+ *
+ * The first session selecting a mailbox loads its content, further sessions selecting the same mailbox reuse it. A
+ * {@link Snapshot} is kept up to date thanks to mailbox events, and is dropped once the last session referencing it
+ * deselects the mailbox.
+ */
+public class SelectedMailboxSnapshots {
+
+    /**
+     * UIDs and applicable flags of a mailbox, shared by the sessions selecting it.
+     */
+    public class Snapshot implements MailboxListener {
+
+        private volatile MailboxPath path;
+        /**
+         * Path the listener was registered with, which stays the one to unregister after a rename
+         */
+        private volatile MailboxPath registrationPath;
+        private final UidMsnIndex uidMsnIndex = new UidMsnIndex();
+        private final Flags applicableFlags = new Flags(SelectedMailboxImpl.FLAGS);
+        private int references = 0;
+        private boolean loaded = false;
+
+        private Snapshot(MailboxPath path) {
+            this.path = path;
+        }
+
+        @Override
+        public ListenerType getType() {
+            return ListenerType.MAILBOX;
+        }
+
+        @Override
+        public ExecutionMode getExecutionMode() {
+            return ExecutionMode.SYNCHRONOUS;
+        }
+
+        /**
+         * Initialize the given session state with the content of this snapshot. The UIDs are shared copy on write.
+         */
+        public synchronized void copyTo(UidMsnIndex index, Flags flags) {
+            index.shareFrom(uidMsnIndex);
+            flags.add(applicableFlags);
+        }
+
+        @Override
+        public synchronized void event(Event event) {
+            if (!path.equals(event.getMailboxPath())) {
+                return;
+            }
+            if (event instanceof Added) {
+                Added added = (Added) event;
+                for (Long uid : added.getUids()) {
+                    uidMsnIndex.add(uid);
+                    addApplicableFlags(added.getMetaData(uid).getFlags());
+                }
+            } else if (event instanceof Expunged) {
+                uidMsnIndex.removeAll(((Expunged) event).getUids());
+            } else if (event instanceof FlagsUpdated) {
+                for (UpdatedFlags updatedFlags : ((FlagsUpdated) event).getUpdatedFlags()) {
+                    addApplicableFlags(updatedFlags.getNewFlags());
+                }
+            } else if (event instanceof MailboxDeletion) {
+                invalidate(this);
+            } else if (event instanceof MailboxRenamed) {
+                invalidate(this);
+                path = ((MailboxRenamed) event).getNewPath();
+            }
+        }
+
+        private synchronized void ensureLoaded(MailboxSession mailboxSession) throws MailboxException {
+            if (loaded) {
+                return;
+            }
+            if (registrationPath == null) {
+                mailboxManager.addListener(path, this, mailboxSession);
+                registrationPath = path;
+            }
+            MessageResultIterator messages = mailboxManager.getMailbox(path, mailboxSession)
+                .getMessages(MessageRange.all(), FetchGroupImpl.MINIMAL, mailboxSession);
+            while (messages.hasNext()) {
+                MessageResult messageResult = messages.next();
+                addApplicableFlags(messageResult.getFlags());
+                uidMsnIndex.add(messageResult.getUid());
+            }
+            loaded = true;
+        }
+
+        private void addApplicableFlags(Flags flags) {
+            applicableFlags.add(flags);
+            // \RECENT is not a applicable flag in imap so remove it from the list
+            applicableFlags.remove(Flags.Flag.RECENT);
+        }
+    }
+
+    private final MailboxManager mailboxManager;
+    private final Map<MailboxPath, Snapshot> snapshots = new HashMap<MailboxPath, Snapshot>();
+
+    public SelectedMailboxSnapshots(MailboxManager mailboxManager) {
+        this.mailboxManager = mailboxManager;
+    }
+
+    /**
+     * Return the snapshot of the given mailbox, loading it if no other session references it. Each call needs to be
+     * followed by a call to {@link #release(Snapshot, MailboxSession)}.
+     */
+    public Snapshot acquire(MailboxPath path, MailboxSession mailboxSession) throws MailboxException {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = snapshots.get(path);
+            if (snapshot == null) {
+                snapshot = new Snapshot(path);
+                snapshots.put(path, snapshot);
+            }
+            snapshot.references++;
+        }
+        try {
+            snapshot.ensureLoaded(mailboxSession);
+        } catch (MailboxException e) {
+            release(snapshot, mailboxSession);
+            throw e;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Release a snapshot obtained by {@link #acquire(MailboxPath, MailboxSession)}
+     */
+    public void release(Snapshot snapshot, MailboxSession mailboxSession) throws MailboxException {
+        synchronized (this) {
+            snapshot.references--;
+            if (snapshot.references > 0) {
+                return;
+            }
+            invalidate(snapshot);
+        }
+        if (snapshot.registrationPath != null) {
+            mailboxManager.removeListener(snapshot.registrationPath, snapshot, mailboxSession);
+        }
+    }
+
+    /**
+     * @return the number of mailboxes having a snapshot
+     */
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    private synchronized void invalidate(Snapshot snapshot) {
+        if (snapshots.get(snapshot.path) == snapshot) {
+            snapshots.remove(snapshot.path);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.base;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+
+/**
+ * Sorted sequence of the UIDs of a selected mailbox, backed by a primitive array.
+ *
+ * The message sequence number of a message is its position in the sequence, plus one. Lookups are done by binary
+ * search, and expunging a batch of messages is done in a single compaction pass, so no MSN renumbering is needed.
+ *
+ * An index can share its backing array with other indexes, see {@link #shareFrom(UidMsnIndex)}. The array is then
+ * copied by the first index modifying it.
+ *
+ * This class is not thread safe.
+ */
+public class UidMsnIndex {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long[] EMPTY = new long[0];
+
+    private long[] uids = EMPTY;
+    private int size = 0;
+    private boolean shared = false;
+
+    /**
+     * Replace the content of this index by the one of the given index. Both indexes share the backing array until one
+     * of them is modified.
+     */
+    public void shareFrom(UidMsnIndex other) {
+        other.shared = true;
+        uids = other.uids;
+        size = other.size;
+        shared = true;
+    }
+
+    /**
+     * Add the given uid, if it is not already known.
+     *
+     * @return true if the uid was added
+     */
+    public boolean add(long uid) {
+        if (size == 0 || uid > uids[size - 1]) {
+            ensureWritable(size + 1);
+            uids[size++] = uid;
+            return true;
+        }
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position >= 0) {
+            return false;
+        }
+        int insertionPoint = -(position + 1);
+        ensureWritable(size + 1);
+        System.arraycopy(uids, insertionPoint, uids, insertionPoint + 1, size - insertionPoint);
+        uids[insertionPoint] = uid;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the msn of the given uid, or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public int msn(long uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return position + 1;
+    }
+
+    /**
+     * @return the uid of the given msn, or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public long uid(int msn) {
+        if (msn < 1 || msn > size) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return uids[msn - 1];
+    }
+
+    /**
+     * Remove the given uid.
+     *
+     * @return the msn the uid held before its removal, or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public int remove(long uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        ensureWritable(size);
+        System.arraycopy(uids, position + 1, uids, position, size - position - 1);
+        size--;
+        return position + 1;
+    }
+
+    /**
+     * Remove the given uids, as if {@link #remove(long)} was called for each of them in iteration order.
+     *
+     * @return for each uid in iteration order, the msn it held at the time of its removal, or
+     *         {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public int[] removeAll(Collection<Long> uidsToRemove) {
+        int[] msns = new int[uidsToRemove.size()];
+        if (uidsToRemove.isEmpty()) {
+            return msns;
+        }
+        if (!isStrictlyAscending(uidsToRemove)) {
+            int i = 0;
+            for (Long uid : uidsToRemove) {
+                msns[i++] = remove(uid);
+            }
+            return msns;
+        }
+        ensureWritable(size);
+        int removedCount = 0;
+        int writePosition = 0;
+        int readPosition = 0;
+        int i = 0;
+        for (Long uid : uidsToRemove) {
+            long uidValue = uid;
+            while (readPosition < size && uids[readPosition] < uidValue) {
+                uids[writePosition++] = uids[readPosition++];
+            }
+            if (readPosition < size && uids[readPosition] == uidValue) {
+                msns[i] = readPosition + 1 - removedCount;
+                removedCount++;
+                readPosition++;
+            } else {
+                msns[i] = SelectedMailbox.NO_SUCH_MESSAGE;
+            }
+            i++;
+        }
+        System.arraycopy(uids, readPosition, uids, writePosition, size - readPosition);
+        size -= removedCount;
+        return msns;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the lowest uid, or {@link SelectedMailbox#NO_SUCH_MESSAGE} if empty
+     */
+    public long getFirstUid() {
+        if (size == 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return uids[0];
+    }
+
+    /**
+     * @return the highest uid, or {@link SelectedMailbox#NO_SUCH_MESSAGE} if empty
+     */
+    public long getLastUid() {
+        if (size == 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return uids[size - 1];
+    }
+
+    public void clear() {
+        uids = EMPTY;
+        size = 0;
+        shared = false;
+    }
+
+    private boolean isStrictlyAscending(Collection<Long> values) {
+        Iterator<Long> iterator = values.iterator();
+        if (!iterator.hasNext()) {
+            return true;
+        }
+        long previous = iterator.next();
+        while (iterator.hasNext()) {
+            long current = iterator.next();
+            if (current <= previous) {
+                return false;
+            }
+            previous = current;
+        }
+        return true;
+    }
+
+    private void ensureWritable(int minCapacity) {
+        if (minCapacity > uids.length) {
+            int newCapacity = Math.max(Math.max(DEFAULT_CAPACITY, uids.length + (uids.length >> 1)), minCapacity);
+            uids = Arrays.copyOf(uids, newCapacity);
+            shared = false;
+        } else if (shared) {
+            uids = Arrays.copyOf(uids, uids.length);
+            shared = false;
+        }
+    }
+}
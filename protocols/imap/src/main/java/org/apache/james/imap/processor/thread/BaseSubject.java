@@ -0,0 +1,127 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.thread;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.james.mime4j.codec.DecodeMonitor;
+import org.apache.james.mime4j.codec.DecoderUtil;
+import org.apache.james.mime4j.util.MimeUtil;
+
+/**
+ * Base subject of a message, as defined by RFC5256 2.1, along with whether the subject denotes a reply or a forward.
+ * 
+ * <pre>
+ * subj-trailer    = "(fwd)" / WSP
+ * subj-fwd-hdr    = "[fwd:"
+ * subj-fwd-trl    = "]"
+ * subj-blob       = "[" *BLOBCHAR "]" *WSP
+ * subj-refwd      = ("re" / ("fw" ["d"])) *WSP [subj-blob] ":"
+ * subj-leader     = (*subj-blob subj-refwd) / WSP
+ * </pre>
+ */
+public class BaseSubject {
+
+    private static final String SUBJ_FWD_TRAILER = "(fwd)";
+    private static final String SUBJ_FWD_HDR = "[fwd:";
+    private static final String SUBJ_FWD_TRL = "]";
+    private static final Pattern SUBJ_LEADER = Pattern.compile("^(\\[[^\\[\\]]*\\] *)*(re|fwd?) *(\\[[^\\[\\]]*\\] *)?:", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SUBJ_BLOB = Pattern.compile("^\\[[^\\[\\]]*\\] *");
+
+    public static BaseSubject of(String subject) {
+        if (subject == null) {
+            return new BaseSubject("", false);
+        }
+        // (1) Decode encoded words, convert tabs and continuations to space, and multiple spaces to a single one
+        String result = MimeUtil.unfold(DecoderUtil.decodeEncodedWords(subject, DecodeMonitor.SILENT))
+            .replace('\t', ' ')
+            .replaceAll(" {2,}", " ");
+        boolean reply = false;
+        while (true) {
+            // (2) Remove the subj-trailers
+            while (true) {
+                if (result.endsWith(" ")) {
+                    result = result.substring(0, result.length() - 1);
+                } else if (result.toLowerCase(Locale.US).endsWith(SUBJ_FWD_TRAILER)) {
+                    result = result.substring(0, result.length() - SUBJ_FWD_TRAILER.length());
+                    reply = true;
+                } else {
+                    break;
+                }
+            }
+            // (3), (4) and (5) Remove the subj-leaders and the subj-blobs leaving a non-empty subj-base
+            while (true) {
+                String stripped = result;
+                if (stripped.startsWith(" ")) {
+                    stripped = stripped.substring(1);
+                } else {
+                    Matcher leader = SUBJ_LEADER.matcher(stripped);
+                    if (leader.find()) {
+                        stripped = stripped.substring(leader.end());
+                        reply = true;
+                    }
+                }
+                Matcher blob = SUBJ_BLOB.matcher(stripped);
+                if (blob.find() && blob.end() < stripped.length()) {
+                    stripped = stripped.substring(blob.end());
+                }
+                if (stripped.equals(result)) {
+                    break;
+                }
+                result = stripped;
+            }
+            // (6) Remove the subj-fwd-hdr and subj-fwd-trl, and repeat from (2)
+            if (result.toLowerCase(Locale.US).startsWith(SUBJ_FWD_HDR) && result.endsWith(SUBJ_FWD_TRL)) {
+                result = result.substring(SUBJ_FWD_HDR.length(), result.length() - SUBJ_FWD_TRL.length());
+                reply = true;
+            } else {
+                return new BaseSubject(result, reply);
+            }
+        }
+    }
+
+    private final String value;
+    private final boolean reply;
+
+    private BaseSubject(String value, boolean reply) {
+        this.value = value;
+        this.reply = reply;
+    }
+
+    /**
+     * Return the base subject, converted to upper case so that it can be compared
+     */
+    public String getValue() {
+        return value.toUpperCase(Locale.US);
+    }
+
+    /**
+     * Return true when the subject was stripped of a reply or forward artifact
+     */
+    public boolean isReply() {
+        return reply;
+    }
+
+    public boolean isEmpty() {
+        return value.isEmpty();
+    }
+}
@@ -0,0 +1,50 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.thread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.imap.message.response.MessageThread;
+
+/**
+ * ORDEREDSUBJECT threading algorithm. See RFC5256 3.
+ * 
+ * Messages are grouped by base subject. The first message of each group, by sent date, is the parent of all the other
+ * messages of the group. Threads are ordered by the sent date of their first message.
+ */
+public class OrderedSubjectThreader implements Threader {
+
+    public List<MessageThread> thread(List<ThreadableMessage> messages) {
+        Map<String, MessageThread> threadsBySubject = new LinkedHashMap<String, MessageThread>();
+        for (ThreadableMessage message : messages) {
+            String baseSubject = message.getBaseSubject().getValue();
+            MessageThread thread = threadsBySubject.get(baseSubject);
+            if (thread == null) {
+                threadsBySubject.put(baseSubject, new MessageThread(message.getId()));
+            } else {
+                thread.addChild(new MessageThread(message.getId()));
+            }
+        }
+        return new ArrayList<MessageThread>(threadsBySubject.values());
+    }
+}
@@ -0,0 +1,258 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.thread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.imap.message.response.MessageThread;
+
+/**
+ * REFERENCES threading algorithm. See RFC5256 3.
+ * 
+ * Messages are linked to their parents using their Message-ID, In-Reply-To and References headers. Threads whose
+ * roots have the same base subject are then merged together.
+ */
+public class ReferencesThreader implements Threader {
+
+    private static class Container {
+        private ThreadableMessage message;
+        private Container parent;
+        private final List<Container> children = new ArrayList<Container>();
+
+        boolean isDummy() {
+            return message == null;
+        }
+
+        void addChild(Container child) {
+            child.parent = this;
+            children.add(child);
+        }
+
+        void removeChild(Container child) {
+            children.remove(child);
+            child.parent = null;
+        }
+
+        boolean isAncestorOf(Container container) {
+            for (Container current = container; current != null; current = current.parent) {
+                if (current == this) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Date getSentDate() {
+            if (message != null) {
+                return message.getSentDate();
+            }
+            return children.get(0).getSentDate();
+        }
+
+        BaseSubject getBaseSubject() {
+            if (message != null) {
+                return message.getBaseSubject();
+            }
+            return children.get(0).message.getBaseSubject();
+        }
+    }
+
+    private static final Comparator<Container> SENT_DATE = new Comparator<Container>() {
+        public int compare(Container container1, Container container2) {
+            return container1.getSentDate().compareTo(container2.getSentDate());
+        }
+    };
+
+    public List<MessageThread> thread(List<ThreadableMessage> messages) {
+        List<Container> roots = linkMessages(messages);
+        roots = pruneDummies(roots);
+        sortSiblings(roots);
+        roots = groupBySubject(roots);
+        sortSiblings(roots);
+
+        List<MessageThread> threads = new ArrayList<MessageThread>(roots.size());
+        for (Container root : roots) {
+            threads.add(toMessageThread(root));
+        }
+        return threads;
+    }
+
+    /**
+     * Steps (1) and (2): link messages to their parent and gather the root set
+     */
+    private List<Container> linkMessages(List<ThreadableMessage> messages) {
+        Map<String, Container> containersById = new LinkedHashMap<String, Container>();
+        List<Container> containers = new ArrayList<Container>();
+        for (ThreadableMessage message : messages) {
+            Container container = containersById.get(message.getMessageId());
+            if (container == null || !container.isDummy()) {
+                // Messages without id or with a duplicated id are threaded as if they had a unique id
+                container = new Container();
+                if (message.getMessageId() != null && !containersById.containsKey(message.getMessageId())) {
+                    containersById.put(message.getMessageId(), container);
+                }
+                containers.add(container);
+            }
+            container.message = message;
+
+            Container previous = null;
+            for (String reference : message.getReferences()) {
+                Container referenced = containersById.get(reference);
+                if (referenced == null) {
+                    referenced = new Container();
+                    containersById.put(reference, referenced);
+                    containers.add(referenced);
+                }
+                if (previous != null && referenced.parent == null && !referenced.isAncestorOf(previous)) {
+                    previous.addChild(referenced);
+                }
+                previous = referenced;
+            }
+
+            if (container.parent != null && container.parent != previous) {
+                container.parent.removeChild(container);
+            }
+            if (previous != null && container.parent == null && !container.isAncestorOf(previous)) {
+                previous.addChild(container);
+            }
+        }
+
+        List<Container> roots = new ArrayList<Container>();
+        for (Container container : containers) {
+            if (container.parent == null) {
+                roots.add(container);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Step (4): remove dummies without children, and promote the children of the other dummies, except at the root
+     * level where only the dummies with a single child are replaced by it
+     */
+    private List<Container> pruneDummies(List<Container> roots) {
+        List<Container> result = new ArrayList<Container>();
+        for (Container root : roots) {
+            pruneChildren(root);
+            if (!root.isDummy() || root.children.size() > 1) {
+                result.add(root);
+            } else if (root.children.size() == 1) {
+                Container child = root.children.get(0);
+                root.removeChild(child);
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    private void pruneChildren(Container container) {
+        List<Container> children = new ArrayList<Container>(container.children);
+        for (Container child : children) {
+            pruneChildren(child);
+            if (child.isDummy()) {
+                container.removeChild(child);
+                for (Container grandChild : new ArrayList<Container>(child.children)) {
+                    child.removeChild(grandChild);
+                    container.addChild(grandChild);
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps (5) and (7): sort siblings by sent date, deepest levels first, so that dummies can be sorted using their
+     * first child
+     */
+    private void sortSiblings(List<Container> siblings) {
+        for (Container sibling : siblings) {
+            sortSiblings(sibling.children);
+        }
+        Collections.sort(siblings, SENT_DATE);
+    }
+
+    /**
+     * Step (6): merge the threads whose roots have the same base subject
+     */
+    private List<Container> groupBySubject(List<Container> roots) {
+        Map<String, Container> subjectTable = new HashMap<String, Container>();
+        for (Container root : roots) {
+            BaseSubject subject = root.getBaseSubject();
+            if (subject.isEmpty()) {
+                continue;
+            }
+            Container current = subjectTable.get(subject.getValue());
+            if (current == null
+                || (root.isDummy() && !current.isDummy())
+                || (!current.isDummy() && current.message.getBaseSubject().isReply() && !root.isDummy() && !subject.isReply())) {
+                subjectTable.put(subject.getValue(), root);
+            }
+        }
+
+        List<Container> result = new ArrayList<Container>(roots);
+        for (Container root : roots) {
+            BaseSubject subject = root.getBaseSubject();
+            if (subject.isEmpty()) {
+                continue;
+            }
+            Container other = subjectTable.get(subject.getValue());
+            if (other == root) {
+                continue;
+            }
+            result.remove(root);
+            if (other.isDummy() && root.isDummy()) {
+                for (Container child : new ArrayList<Container>(root.children)) {
+                    root.removeChild(child);
+                    other.addChild(child);
+                }
+            } else if (other.isDummy()) {
+                other.addChild(root);
+            } else if (!other.message.getBaseSubject().isReply() && root.message.getBaseSubject().isReply()) {
+                other.addChild(root);
+            } else {
+                Container dummy = new Container();
+                result.set(result.indexOf(other), dummy);
+                dummy.addChild(other);
+                dummy.addChild(root);
+                subjectTable.put(subject.getValue(), dummy);
+            }
+        }
+        return result;
+    }
+
+    private MessageThread toMessageThread(Container container) {
+        MessageThread thread;
+        if (container.isDummy()) {
+            thread = MessageThread.placeholder();
+        } else {
+            thread = new MessageThread(container.message.getId());
+        }
+        for (Container child : container.children) {
+            thread.addChild(toMessageThread(child));
+        }
+        return thread;
+    }
+}
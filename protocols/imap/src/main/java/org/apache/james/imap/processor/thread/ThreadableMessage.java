@@ -0,0 +1,70 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.thread;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Data of a message needed to thread it.
+ */
+public class ThreadableMessage {
+
+    private final long id;
+    private final Date sentDate;
+    private final BaseSubject baseSubject;
+    private final String messageId;
+    private final List<String> references;
+
+    /**
+     * @param id uid or message sequence number reported for this message
+     * @param sentDate sent date, or internal date if it could not be determined
+     * @param baseSubject base subject
+     * @param messageId Message-ID, or null
+     * @param references ids of the References header, or else the first id of the In-Reply-To header, not null
+     */
+    public ThreadableMessage(long id, Date sentDate, BaseSubject baseSubject, String messageId, List<String> references) {
+        this.id = id;
+        this.sentDate = sentDate;
+        this.baseSubject = baseSubject;
+        this.messageId = messageId;
+        this.references = references;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Date getSentDate() {
+        return sentDate;
+    }
+
+    public BaseSubject getBaseSubject() {
+        return baseSubject;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public List<String> getReferences() {
+        return references;
+    }
+}
@@ -0,0 +1,93 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.decode.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.decode.ImapRequestStreamLineReader;
+import org.apache.james.imap.message.request.SortRequest;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.protocols.imap.DecodingException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SortCommandParserTest {
+
+    private static final ImapCommand COMMAND = ImapCommand.selectedStateCommand("SORT");
+
+    private SortCommandParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new SortCommandParser();
+    }
+
+    @Test
+    public void decodeShouldParseSortCriteria() throws Exception {
+        SortRequest request = decode("(REVERSE DATE subject) UTF-8 ALL\r\n");
+
+        List<SearchQuery.Sort> sorts = request.getSorts();
+        assertThat(sorts).hasSize(2);
+        assertThat(sorts.get(0).getSortClause()).isEqualTo(SortClause.SentDate);
+        assertThat(sorts.get(0).isReverse()).isTrue();
+        assertThat(sorts.get(1).getSortClause()).isEqualTo(SortClause.BaseSubject);
+        assertThat(sorts.get(1).isReverse()).isFalse();
+    }
+
+    @Test
+    public void decodeShouldParseDisplaySortCriteria() throws Exception {
+        SortRequest request = decode("(DISPLAYFROM REVERSE DISPLAYTO) US-ASCII ALL\r\n");
+
+        assertThat(request.getSorts().get(0).getSortClause()).isEqualTo(SortClause.DisplayFrom);
+        assertThat(request.getSorts().get(1).getSortClause()).isEqualTo(SortClause.DisplayTo);
+        assertThat(request.getSorts().get(1).isReverse()).isTrue();
+    }
+
+    @Test
+    public void decodeShouldParseSearchCriteria() throws Exception {
+        SortRequest request = decode("(ARRIVAL) UTF-8 SUBJECT foo UNSEEN\r\n");
+
+        assertThat(request.getSearchKey()).isEqualTo(SearchKey.buildAnd(Arrays.asList(
+            SearchKey.buildSubject("foo"),
+            SearchKey.buildUnseen())));
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldFailOnUnknownSortKey() throws Exception {
+        decode("(UNKNOWN) UTF-8 ALL\r\n");
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldFailOnEmptySortCriteria() throws Exception {
+        decode("() UTF-8 ALL\r\n");
+    }
+
+    private SortRequest decode(String command) throws DecodingException {
+        ImapRequestStreamLineReader reader = new ImapRequestStreamLineReader(new ByteArrayInputStream(command.getBytes()), null);
+        return (SortRequest) parser.decode(COMMAND, reader, "A1", false, null);
+    }
+}
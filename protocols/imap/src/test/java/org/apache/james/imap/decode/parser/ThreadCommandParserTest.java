@@ -0,0 +1,71 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.decode.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.api.message.request.ThreadAlgorithm;
+import org.apache.james.imap.decode.ImapRequestStreamLineReader;
+import org.apache.james.imap.message.request.ThreadRequest;
+import org.apache.james.protocols.imap.DecodingException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadCommandParserTest {
+
+    private static final ImapCommand COMMAND = ImapCommand.selectedStateCommand("THREAD");
+
+    private ThreadCommandParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new ThreadCommandParser();
+    }
+
+    @Test
+    public void decodeShouldParseReferencesAlgorithm() throws Exception {
+        ThreadRequest request = decode("REFERENCES UTF-8 ALL\r\n");
+
+        assertThat(request.getAlgorithm()).isEqualTo(ThreadAlgorithm.REFERENCES);
+        assertThat(request.getSearchKey()).isEqualTo(SearchKey.buildAll());
+    }
+
+    @Test
+    public void decodeShouldParseOrderedSubjectAlgorithm() throws Exception {
+        ThreadRequest request = decode("orderedsubject US-ASCII SEEN\r\n");
+
+        assertThat(request.getAlgorithm()).isEqualTo(ThreadAlgorithm.ORDEREDSUBJECT);
+        assertThat(request.getSearchKey()).isEqualTo(SearchKey.buildSeen());
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldFailOnUnknownAlgorithm() throws Exception {
+        decode("UNKNOWN UTF-8 ALL\r\n");
+    }
+
+    private ThreadRequest decode(String command) throws DecodingException {
+        ImapRequestStreamLineReader reader = new ImapRequestStreamLineReader(new ByteArrayInputStream(command.getBytes()), null);
+        return (ThreadRequest) parser.decode(COMMAND, reader, "A1", false, null);
+    }
+}
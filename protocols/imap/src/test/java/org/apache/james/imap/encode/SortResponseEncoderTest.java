@@ -0,0 +1,73 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.encode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.apache.james.imap.encode.base.ByteImapResponseWriter;
+import org.apache.james.imap.encode.base.ImapResponseComposerImpl;
+import org.apache.james.imap.message.response.MessageThread;
+import org.apache.james.imap.message.response.SortResponse;
+import org.apache.james.imap.message.response.ThreadResponse;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class SortResponseEncoderTest {
+
+    private SortResponseEncoder encoder;
+
+    private ByteImapResponseWriter writer = new ByteImapResponseWriter();
+    private ImapResponseComposer composer = new ImapResponseComposerImpl(writer);
+
+    private Mockery context = new JUnit4Mockery();
+
+    @Before
+    public void setUp() throws Exception {
+        encoder = new SortResponseEncoder(context.mock(ImapEncoder.class));
+    }
+
+    @Test
+    public void isAcceptableShouldOnlyAcceptSortResponses() {
+        assertThat(encoder.isAcceptable(new SortResponse(new long[] {}))).isTrue();
+        assertThat(encoder.isAcceptable(new ThreadResponse(Collections.<MessageThread>emptyList()))).isFalse();
+        assertThat(encoder.isAcceptable(null)).isFalse();
+    }
+
+    @Test
+    public void encodeShouldWriteIdsInTheirOrder() throws Exception {
+        encoder.encode(new SortResponse(new long[] {5, 3, 4}), composer, new FakeImapSession());
+
+        assertThat(writer.getString()).isEqualTo("* SORT 5 3 4\r\n");
+    }
+
+    @Test
+    public void encodeShouldWriteEmptyResponse() throws Exception {
+        encoder.encode(new SortResponse(new long[] {}), composer, new FakeImapSession());
+
+        assertThat(writer.getString()).isEqualTo("* SORT\r\n");
+    }
+}
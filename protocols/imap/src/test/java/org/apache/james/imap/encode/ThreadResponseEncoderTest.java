@@ -0,0 +1,95 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.encode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.james.imap.encode.base.ByteImapResponseWriter;
+import org.apache.james.imap.encode.base.ImapResponseComposerImpl;
+import org.apache.james.imap.message.response.MessageThread;
+import org.apache.james.imap.message.response.SortResponse;
+import org.apache.james.imap.message.response.ThreadResponse;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class ThreadResponseEncoderTest {
+
+    private ThreadResponseEncoder encoder;
+
+    private ByteImapResponseWriter writer = new ByteImapResponseWriter();
+    private ImapResponseComposer composer = new ImapResponseComposerImpl(writer);
+
+    private Mockery context = new JUnit4Mockery();
+
+    @Before
+    public void setUp() throws Exception {
+        encoder = new ThreadResponseEncoder(context.mock(ImapEncoder.class));
+    }
+
+    @Test
+    public void isAcceptableShouldOnlyAcceptThreadResponses() {
+        assertThat(encoder.isAcceptable(new ThreadResponse(Collections.<MessageThread>emptyList()))).isTrue();
+        assertThat(encoder.isAcceptable(new SortResponse(new long[] {}))).isFalse();
+        assertThat(encoder.isAcceptable(null)).isFalse();
+    }
+
+    @Test
+    public void encodeShouldWriteEmptyResponse() throws Exception {
+        encoder.encode(new ThreadResponse(Collections.<MessageThread>emptyList()), composer, new FakeImapSession());
+
+        assertThat(writer.getString()).isEqualTo("* THREAD\r\n");
+    }
+
+    @Test
+    public void encodeShouldWriteThreadsAsDefinedByRFC5256() throws Exception {
+        // (2)(3 6 (4 23)(44 7 96))
+        MessageThread thread = new MessageThread(3)
+            .addChild(new MessageThread(6)
+                .addChild(new MessageThread(4)
+                    .addChild(new MessageThread(23)))
+                .addChild(new MessageThread(44)
+                    .addChild(new MessageThread(7)
+                        .addChild(new MessageThread(96)))));
+
+        encoder.encode(new ThreadResponse(Arrays.asList(new MessageThread(2), thread)), composer, new FakeImapSession());
+
+        assertThat(writer.getString()).isEqualTo("* THREAD (2)(3 6 (4 23)(44 7 96))\r\n");
+    }
+
+    @Test
+    public void encodeShouldWritePlaceholdersAsNestedThreads() throws Exception {
+        // ((3)(5))
+        MessageThread thread = MessageThread.placeholder()
+            .addChild(new MessageThread(3))
+            .addChild(new MessageThread(5));
+
+        encoder.encode(new ThreadResponse(Arrays.asList(thread)), composer, new FakeImapSession());
+
+        assertThat(writer.getString()).isEqualTo("* THREAD ((3)(5))\r\n");
+    }
+}
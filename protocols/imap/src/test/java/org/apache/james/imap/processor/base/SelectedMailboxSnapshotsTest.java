@@ -0,0 +1,209 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResult.FetchGroup;
+import org.apache.james.mailbox.model.MessageResultIterator;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SelectedMailboxSnapshotsTest {
+
+    private static final MailboxPath PATH = new MailboxPath("#private", "user", "INBOX");
+
+    private MailboxManager mailboxManager;
+    private MessageManager messageManager;
+    private MailboxSession mailboxSession;
+    private SelectedMailboxSnapshots testee;
+
+    @Before
+    public void setUp() throws Exception {
+        mailboxManager = mock(MailboxManager.class);
+        messageManager = mock(MessageManager.class);
+        mailboxSession = new MockMailboxSession("user");
+        when(mailboxManager.getMailbox(PATH, mailboxSession)).thenReturn(messageManager);
+        when(messageManager.getMessages(any(MessageRange.class), any(FetchGroup.class), any(MailboxSession.class)))
+            .thenReturn(messages(1L, 2L, 3L), messages(1L, 2L, 3L));
+        testee = new SelectedMailboxSnapshots(mailboxManager);
+    }
+
+    @Test
+    public void acquireShouldLoadMailboxContent() throws Exception {
+        SelectedMailboxSnapshots.Snapshot snapshot = testee.acquire(PATH, mailboxSession);
+
+        UidMsnIndex index = new UidMsnIndex();
+        snapshot.copyTo(index, new Flags());
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getLastUid()).isEqualTo(3);
+    }
+
+    @Test
+    public void acquireShouldLoadMailboxContentOnlyOnceWhenShared() throws Exception {
+        testee.acquire(PATH, mailboxSession);
+        testee.acquire(PATH, mailboxSession);
+
+        verify(messageManager, times(1)).getMessages(any(MessageRange.class), any(FetchGroup.class), any(MailboxSession.class));
+        verify(mailboxManager, times(1)).addListener(any(MailboxPath.class), any(MailboxListener.class), any(MailboxSession.class));
+    }
+
+    @Test
+    public void releaseShouldDropSnapshotWhenNoLongerReferenced() throws Exception {
+        SelectedMailboxSnapshots.Snapshot snapshot1 = testee.acquire(PATH, mailboxSession);
+        SelectedMailboxSnapshots.Snapshot snapshot2 = testee.acquire(PATH, mailboxSession);
+
+        testee.release(snapshot1, mailboxSession);
+        assertThat(testee.size()).isEqualTo(1);
+
+        testee.release(snapshot2, mailboxSession);
+        assertThat(testee.size()).isEqualTo(0);
+        verify(mailboxManager).removeListener(PATH, snapshot2, mailboxSession);
+    }
+
+    @Test
+    public void eventsShouldUpdateSnapshot() throws Exception {
+        SelectedMailboxSnapshots.Snapshot snapshot = testee.acquire(PATH, mailboxSession);
+
+        snapshot.event(added(4L, new Flags("custom")));
+        snapshot.event(expunged(ImmutableList.of(1L)));
+
+        UidMsnIndex index = new UidMsnIndex();
+        snapshot.copyTo(index, new Flags());
+        Flags applicableFlags = new Flags();
+        snapshot.copyTo(new UidMsnIndex(), applicableFlags);
+        assertThat(index.getFirstUid()).isEqualTo(2);
+        assertThat(index.getLastUid()).isEqualTo(4);
+        assertThat(applicableFlags.contains("custom")).isTrue();
+    }
+
+    @Test
+    public void copiesShouldNotSeeLaterSnapshotUpdates() throws Exception {
+        SelectedMailboxSnapshots.Snapshot snapshot = testee.acquire(PATH, mailboxSession);
+        UidMsnIndex index = new UidMsnIndex();
+        snapshot.copyTo(index, new Flags());
+
+        snapshot.event(expunged(ImmutableList.of(1L)));
+        index.add(5L);
+
+        assertThat(index.msn(1L)).isEqualTo(1);
+        UidMsnIndex otherIndex = new UidMsnIndex();
+        snapshot.copyTo(otherIndex, new Flags());
+        assertThat(otherIndex.msn(1L)).isEqualTo(-1);
+        assertThat(otherIndex.msn(5L)).isEqualTo(-1);
+    }
+
+    @Test
+    public void renamedMailboxSnapshotShouldNotBeReusedAndUnregisterFromItsOriginalPath() throws Exception {
+        SelectedMailboxSnapshots.Snapshot snapshot = testee.acquire(PATH, mailboxSession);
+        final MailboxPath newPath = new MailboxPath("#private", "user", "other");
+
+        snapshot.event(new MailboxListener.MailboxRenamed(mailboxSession, PATH) {
+            @Override
+            public MailboxPath getNewPath() {
+                return newPath;
+            }
+        });
+
+        assertThat(testee.size()).isEqualTo(0);
+        testee.release(snapshot, mailboxSession);
+        verify(mailboxManager).removeListener(PATH, snapshot, mailboxSession);
+    }
+
+    private MailboxListener.Added added(final long uid, final Flags flags) {
+        return new MailboxListener.Added(mailboxSession, PATH) {
+            @Override
+            public List<Long> getUids() {
+                return ImmutableList.of(uid);
+            }
+
+            @Override
+            public MessageMetaData getMetaData(long uid) {
+                MessageMetaData metaData = mock(MessageMetaData.class);
+                when(metaData.getFlags()).thenReturn(flags);
+                return metaData;
+            }
+        };
+    }
+
+    private MailboxListener.Expunged expunged(final List<Long> uids) {
+        return new MailboxListener.Expunged(mailboxSession, PATH) {
+            @Override
+            public List<Long> getUids() {
+                return uids;
+            }
+
+            @Override
+            public MessageMetaData getMetaData(long uid) {
+                return null;
+            }
+        };
+    }
+
+    private MessageResultIterator messages(Long... uids) {
+        final Iterator<Long> iterator = ImmutableList.copyOf(uids).iterator();
+        return new MessageResultIterator() {
+            @Override
+            public MailboxException getException() {
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public MessageResult next() {
+                MessageResult messageResult = mock(MessageResult.class);
+                when(messageResult.getUid()).thenReturn(iterator.next());
+                when(messageResult.getFlags()).thenReturn(new Flags());
+                return messageResult;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
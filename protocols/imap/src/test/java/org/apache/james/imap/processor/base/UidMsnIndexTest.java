@@ -0,0 +1,173 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class UidMsnIndexTest {
+
+    private UidMsnIndex testee;
+
+    @Before
+    public void setUp() {
+        testee = new UidMsnIndex();
+    }
+
+    @Test
+    public void emptyIndexShouldHaveNoBoundaries() {
+        assertThat(testee.isEmpty()).isTrue();
+        assertThat(testee.getFirstUid()).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getLastUid()).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void msnShouldBeThePositionOfTheUid() {
+        testee.add(3);
+        testee.add(7);
+        testee.add(12);
+
+        assertThat(testee.msn(3)).isEqualTo(1);
+        assertThat(testee.msn(7)).isEqualTo(2);
+        assertThat(testee.msn(12)).isEqualTo(3);
+        assertThat(testee.uid(2)).isEqualTo(7);
+    }
+
+    @Test
+    public void lookupsShouldReturnNoSuchMessageWhenUnknown() {
+        testee.add(3);
+
+        assertThat(testee.msn(4)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.uid(0)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.uid(2)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.uid(-1)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void addShouldIgnoreKnownUids() {
+        assertThat(testee.add(3)).isTrue();
+        assertThat(testee.add(3)).isFalse();
+
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void addShouldKeepUidsSorted() {
+        testee.add(10);
+        testee.add(5);
+        testee.add(7);
+
+        assertThat(testee.uid(1)).isEqualTo(5);
+        assertThat(testee.uid(2)).isEqualTo(7);
+        assertThat(testee.uid(3)).isEqualTo(10);
+        assertThat(testee.getFirstUid()).isEqualTo(5);
+        assertThat(testee.getLastUid()).isEqualTo(10);
+    }
+
+    @Test
+    public void addShouldGrowBeyondInitialCapacity() {
+        for (long uid = 1; uid <= 1000; uid++) {
+            testee.add(uid);
+        }
+
+        assertThat(testee.size()).isEqualTo(1000);
+        assertThat(testee.msn(1000)).isEqualTo(1000);
+    }
+
+    @Test
+    public void removeShouldRenumberFollowingMessages() {
+        testee.add(1);
+        testee.add(2);
+        testee.add(3);
+
+        assertThat(testee.remove(2)).isEqualTo(2);
+
+        assertThat(testee.msn(3)).isEqualTo(2);
+        assertThat(testee.msn(2)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void removeShouldReturnNoSuchMessageWhenUnknown() {
+        testee.add(1);
+
+        assertThat(testee.remove(2)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void removeAllShouldReturnSequentialExpungeMsns() {
+        for (long uid = 1; uid <= 6; uid++) {
+            testee.add(uid);
+        }
+
+        int[] msns = testee.removeAll(ImmutableList.of(2L, 3L, 5L));
+
+        assertThat(msns).containsExactly(2, 2, 3);
+        assertThat(testee.size()).isEqualTo(3);
+        assertThat(testee.uid(1)).isEqualTo(1);
+        assertThat(testee.uid(2)).isEqualTo(4);
+        assertThat(testee.uid(3)).isEqualTo(6);
+    }
+
+    @Test
+    public void removeAllShouldReportUnknownUids() {
+        testee.add(1);
+        testee.add(3);
+
+        int[] msns = testee.removeAll(ImmutableList.of(2L, 3L));
+
+        assertThat(msns).containsExactly(SelectedMailbox.NO_SUCH_MESSAGE, 2);
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void removeAllShouldHandleUnorderedUids() {
+        for (long uid = 1; uid <= 4; uid++) {
+            testee.add(uid);
+        }
+
+        int[] msns = testee.removeAll(ImmutableList.of(3L, 1L));
+
+        assertThat(msns).containsExactly(3, 1);
+        assertThat(testee.uid(1)).isEqualTo(2);
+        assertThat(testee.uid(2)).isEqualTo(4);
+    }
+
+    @Test
+    public void sharedIndexesShouldBeModifiedIndependently() {
+        testee.add(1);
+        testee.add(2);
+        UidMsnIndex copy = new UidMsnIndex();
+        copy.shareFrom(testee);
+
+        copy.remove(1);
+        testee.add(3);
+
+        assertThat(testee.size()).isEqualTo(3);
+        assertThat(testee.uid(1)).isEqualTo(1);
+        assertThat(copy.size()).isEqualTo(1);
+        assertThat(copy.uid(1)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.thread;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class BaseSubjectTest {
+
+    @Test
+    public void ofShouldKeepSimpleSubject() {
+        BaseSubject baseSubject = BaseSubject.of("Hello world");
+
+        assertThat(baseSubject.getValue()).isEqualTo("HELLO WORLD");
+        assertThat(baseSubject.isReply()).isFalse();
+    }
+
+    @Test
+    public void ofShouldRemoveReplyAndForwardLeaders() {
+        BaseSubject baseSubject = BaseSubject.of("Re: FWD: re [list]: Hello");
+
+        assertThat(baseSubject.getValue()).isEqualTo("HELLO");
+        assertThat(baseSubject.isReply()).isTrue();
+    }
+
+    @Test
+    public void ofShouldRemoveBlobsAndTrailers() {
+        BaseSubject baseSubject = BaseSubject.of("[list] Hello   world (fwd)  ");
+
+        assertThat(baseSubject.getValue()).isEqualTo("HELLO WORLD");
+        assertThat(baseSubject.isReply()).isTrue();
+    }
+
+    @Test
+    public void ofShouldKeepBlobWhenItIsTheWholeSubject() {
+        assertThat(BaseSubject.of("[list]").getValue()).isEqualTo("[LIST]");
+    }
+
+    @Test
+    public void ofShouldRemoveForwardHeaderAndTrailer() {
+        BaseSubject baseSubject = BaseSubject.of("[Fwd: Re: Hello]");
+
+        assertThat(baseSubject.getValue()).isEqualTo("HELLO");
+        assertThat(baseSubject.isReply()).isTrue();
+    }
+
+    @Test
+    public void ofShouldDecodeEncodedWords() {
+        assertThat(BaseSubject.of("Re: =?UTF-8?Q?caf=C3=A9?=").getValue()).isEqualTo("CAFÉ");
+    }
+
+    @Test
+    public void ofShouldReturnEmptyBaseSubjectWhenNoSubject() {
+        assertThat(BaseSubject.of(null).isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,129 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.thread;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.james.imap.message.response.MessageThread;
+import org.junit.Test;
+
+public class ThreadersTest {
+
+    @Test
+    public void orderedSubjectShouldGroupMessagesByBaseSubject() {
+        List<MessageThread> threads = new OrderedSubjectThreader().thread(Arrays.asList(
+            message(1, "Hello", null),
+            message(2, "Other", null),
+            message(3, "Re: Hello", null),
+            message(4, "Fwd: hello", null)));
+
+        assertThat(threads).containsExactly(
+            new MessageThread(1).addChild(new MessageThread(3)).addChild(new MessageThread(4)),
+            new MessageThread(2));
+    }
+
+    @Test
+    public void referencesShouldLinkRepliesToTheirParents() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "Hello", "<1@james>"),
+            message(2, "Re: Hello", "<2@james>", "<1@james>"),
+            message(3, "Re: Hello", "<3@james>", "<1@james>"),
+            message(4, "Re: Hello", "<4@james>", "<1@james>", "<2@james>")));
+
+        assertThat(threads).containsExactly(
+            new MessageThread(1)
+                .addChild(new MessageThread(2).addChild(new MessageThread(4)))
+                .addChild(new MessageThread(3)));
+    }
+
+    @Test
+    public void referencesShouldKeepUnrelatedMessagesInDistinctThreads() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "Hello", "<1@james>"),
+            message(2, "Other", "<2@james>")));
+
+        assertThat(threads).containsExactly(new MessageThread(1), new MessageThread(2));
+    }
+
+    @Test
+    public void referencesShouldReplaceMissingParentByPlaceholderWhenSeveralChildren() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "Re: Hello", "<1@james>", "<missing@james>"),
+            message(2, "Re: Hello", "<2@james>", "<missing@james>")));
+
+        assertThat(threads).containsExactly(
+            MessageThread.placeholder().addChild(new MessageThread(1)).addChild(new MessageThread(2)));
+    }
+
+    @Test
+    public void referencesShouldPromoteSingleChildOfMissingParent() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "Re: Hello", "<1@james>", "<missing@james>")));
+
+        assertThat(threads).containsExactly(new MessageThread(1));
+    }
+
+    @Test
+    public void referencesShouldMakeRepliesWithoutReferencesChildrenOfTheOriginalSubject() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "Hello", "<1@james>"),
+            message(2, "Re: Hello", "<2@james>")));
+
+        assertThat(threads).containsExactly(new MessageThread(1).addChild(new MessageThread(2)));
+    }
+
+    @Test
+    public void referencesShouldGroupOriginalMessagesWithTheSameSubjectUnderPlaceholder() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "Hello", "<1@james>"),
+            message(2, "Hello", "<2@james>")));
+
+        assertThat(threads).containsExactly(
+            MessageThread.placeholder().addChild(new MessageThread(1)).addChild(new MessageThread(2)));
+    }
+
+    @Test
+    public void referencesShouldIgnoreReferenceLoops() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "A", "<1@james>", "<2@james>"),
+            message(2, "B", "<2@james>", "<1@james>")));
+
+        assertThat(threads).containsExactly(new MessageThread(2).addChild(new MessageThread(1)));
+    }
+
+    @Test
+    public void referencesShouldThreadMessagesWithDuplicatedIdsSeparately() {
+        List<MessageThread> threads = new ReferencesThreader().thread(Arrays.asList(
+            message(1, "A", "<1@james>"),
+            message(2, "B", "<1@james>")));
+
+        assertThat(threads).containsExactly(new MessageThread(1), new MessageThread(2));
+    }
+
+    private ThreadableMessage message(long id, String subject, String messageId, String... references) {
+        return new ThreadableMessage(id, new Date(id * 1000), BaseSubject.of(subject), messageId,
+            references.length == 0 ? Collections.<String>emptyList() : Arrays.asList(references));
+    }
+}
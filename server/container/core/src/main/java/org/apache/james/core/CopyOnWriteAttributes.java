@@ -0,0 +1,298 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.core;
+
+import org.apache.mailet.MailAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Attributes of a {@link MailImpl}, which can be copied in constant time.
+ * <p>
+ * Entries set since the last copy are kept in a private map. Copying freezes
+ * this map into a layer shared by both the original and the copy, which then
+ * only record their own changes. Frozen layers are never modified again, and
+ * are flattened once the chain becomes too deep.
+ * </p>
+ * <p>
+ * Attribute values are Serializable but may be mutable. In order to keep mails
+ * isolated from each other, a value read from a shared layer is cloned once
+ * for the reading mail, unless its type is known to be immutable.
+ * </p>
+ */
+final class CopyOnWriteAttributes {
+
+    /**
+     * Number of shared layers beyond which they get flattened into one
+     */
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * Marks an entry removed from a shared layer, and an absent entry on
+     * lookups
+     */
+    private static final Object ABSENT = new Object();
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+        Float.class, Double.class, BigInteger.class, BigDecimal.class, MailAddress.class));
+
+    private static final class Layer {
+        private final Layer parent;
+        private final Map<String, Object> entries;
+        private final int depth;
+
+        private Layer(Layer parent, Map<String, Object> entries) {
+            this.parent = parent;
+            this.entries = entries;
+            this.depth = parent == null ? 1 : parent.depth + 1;
+        }
+    }
+
+    private Layer shared;
+    private HashMap<String, Object> own;
+    private int size;
+
+    public CopyOnWriteAttributes() {
+        this(new HashMap<String, Object>());
+    }
+
+    /**
+     * @param attributes taken over by these attributes
+     */
+    public CopyOnWriteAttributes(HashMap<String, Object> attributes) {
+        this(null, attributes, attributes.size());
+    }
+
+    private CopyOnWriteAttributes(Layer shared, HashMap<String, Object> own, int size) {
+        this.shared = shared;
+        this.own = own;
+        this.size = size;
+    }
+
+    /**
+     * Return a copy of these attributes, sharing their entries
+     */
+    public CopyOnWriteAttributes copy() {
+        if (!own.isEmpty()) {
+            shared = new Layer(shared, own);
+            if (shared.depth > MAX_DEPTH) {
+                shared = new Layer(null, flatten());
+            }
+            own = new HashMap<String, Object>();
+        }
+        return new CopyOnWriteAttributes(shared, new HashMap<String, Object>(), size);
+    }
+
+    public Object get(String key) {
+        if (own.containsKey(key)) {
+            return present(own.get(key));
+        }
+        Object value = lookupShared(key);
+        if (value == ABSENT) {
+            return null;
+        }
+        Object copy = ownCopy(value);
+        if (copy != value) {
+            own.put(key, copy);
+        }
+        return copy;
+    }
+
+    public Object put(String key, Object value) {
+        Object previous = remember(key);
+        own.put(key, value);
+        if (previous == ABSENT) {
+            size++;
+        }
+        return present(previous);
+    }
+
+    public Object remove(String key) {
+        Object previous = remember(key);
+        if (shared == null) {
+            own.remove(key);
+        } else {
+            own.put(key, ABSENT);
+        }
+        if (previous != ABSENT) {
+            size--;
+        }
+        return present(previous);
+    }
+
+    public void clear() {
+        shared = null;
+        own = new HashMap<String, Object>();
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return an iterator over a snapshot of the attribute names. Removing
+     * through the iterator removes the attribute.
+     */
+    public Iterator<String> names() {
+        final Iterator<String> names = flatten().keySet().iterator();
+        return new Iterator<String>() {
+            private String current;
+
+            @Override
+            public boolean hasNext() {
+                return names.hasNext();
+            }
+
+            @Override
+            public String next() {
+                current = names.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                CopyOnWriteAttributes.this.remove(current);
+                current = null;
+            }
+        };
+    }
+
+    /**
+     * Return a snapshot of the attributes as a map, suited to serialization
+     */
+    public HashMap<String, Object> toHashMap() {
+        return flatten();
+    }
+
+    /**
+     * Return the current value of the key, read from a shared layer without
+     * copy, or ABSENT
+     */
+    private Object lookupShared(String key) {
+        for (Layer layer = shared; layer != null; layer = layer.parent) {
+            if (layer.entries.containsKey(key)) {
+                return layer.entries.get(key);
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Return the value about to be replaced, which the caller may then modify
+     */
+    private Object remember(String key) {
+        if (own.containsKey(key)) {
+            return own.get(key);
+        }
+        Object value = lookupShared(key);
+        if (value == ABSENT) {
+            return ABSENT;
+        }
+        return ownCopy(value);
+    }
+
+    private HashMap<String, Object> flatten() {
+        List<Layer> layers = new ArrayList<Layer>();
+        for (Layer layer = shared; layer != null; layer = layer.parent) {
+            layers.add(layer);
+        }
+        HashMap<String, Object> result = new HashMap<String, Object>();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            putAll(result, layers.get(i).entries);
+        }
+        putAll(result, own);
+        return result;
+    }
+
+    private static void putAll(HashMap<String, Object> result, Map<String, Object> entries) {
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            if (entry.getValue() == ABSENT) {
+                result.remove(entry.getKey());
+            } else {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static Object present(Object value) {
+        if (value == ABSENT) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Return a value which can be handed over to a mail without affecting
+     * the other mails sharing the given one
+     */
+    static Object ownCopy(Object value) {
+        if (value == null || IMMUTABLE_TYPES.contains(value.getClass()) || value instanceof Enum) {
+            return value;
+        }
+        try {
+            return cloneSerializableObject(value);
+        } catch (IOException e) {
+            // not serializable in depth: sharing is the best we can do
+            return value;
+        } catch (ClassNotFoundException e) {
+            // should never happen as we just serialized it
+            return value;
+        }
+    }
+
+    /**
+     * This methods provide cloning for serializable objects. Mail Attributes
+     * are Serializable but not Clonable so we need a deep copy
+     *
+     * @param o Object to be cloned
+     * @return the cloned Object
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static Object cloneSerializableObject(Object o) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(b);
+        out.writeObject(o);
+        out.flush();
+        out.close();
+        ByteArrayInputStream bi = new ByteArrayInputStream(b.toByteArray());
+        ObjectInputStream in = new ObjectInputStream(bi);
+        return in.readObject();
+    }
+}
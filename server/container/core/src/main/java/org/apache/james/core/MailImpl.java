@@ -28,12 +28,8 @@ import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.ParseException;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
 import java.io.OutputStream;
 import java.io.Serializable;
@@ -109,14 +105,14 @@ public class MailImpl implements Disposable, Mail {
     /**
      * Attributes added to this MailImpl instance
      */
-    private Map<String, Object> attributes;
+    private CopyOnWriteAttributes attributes;
 
     /**
      * A constructor that creates a new, uninitialized MailImpl
      */
     public MailImpl() {
         setState(Mail.DEFAULT);
-        attributes = new HashMap<String, Object>();
+        attributes = new CopyOnWriteAttributes();
     }
 
     /**
@@ -151,33 +147,26 @@ public class MailImpl implements Disposable, Mail {
     }
 
     /**
+     * Create a copy of the input mail and assign it a new name. The attributes
+     * of a {@link MailImpl} are shared with the copy until either of them
+     * modifies or reads them, so that copying does not depend on their size.
+     *
      * @param mail
      * @param newName
      * @throws MessagingException
      */
-    @SuppressWarnings("unchecked")
     public MailImpl(Mail mail, String newName) throws MessagingException {
         this(newName, mail.getSender(), mail.getRecipients(), mail.getMessage());
         setRemoteHost(mail.getRemoteHost());
         setRemoteAddr(mail.getRemoteAddr());
         setLastUpdated(mail.getLastUpdated());
-        try {
-            if (mail instanceof MailImpl) {
-                setAttributesRaw((HashMap<String, Object>) cloneSerializableObject(((MailImpl) mail).getAttributesRaw()));
-            } else {
-                HashMap<String, Object> attribs = new HashMap<String, Object>();
-                for (Iterator<String> i = mail.getAttributeNames(); i.hasNext(); ) {
-                    String hashKey = i.next();
-                    attribs.put(hashKey, cloneSerializableObject(mail.getAttribute(hashKey)));
-                }
-                setAttributesRaw(attribs);
+        if (mail instanceof MailImpl) {
+            attributes = ((MailImpl) mail).attributes.copy();
+        } else {
+            for (Iterator<String> i = mail.getAttributeNames(); i.hasNext(); ) {
+                String hashKey = i.next();
+                attributes.put(hashKey, CopyOnWriteAttributes.ownCopy(mail.getAttribute(hashKey)));
             }
-        } catch (IOException e) {
-            // should never happen for in memory streams
-            setAttributesRaw(new HashMap<String, Object>());
-        } catch (ClassNotFoundException e) {
-            // should never happen as we just serialized it
-            setAttributesRaw(new HashMap<String, Object>());
         }
     }
 
@@ -505,10 +494,10 @@ public class MailImpl implements Disposable, Mail {
         // the following is under try/catch to be backwards compatible
         // with messages created with James version <= 2.2.0a8
         try {
-            attributes = (HashMap<String, Object>) in.readObject();
+            attributes = new CopyOnWriteAttributes((HashMap<String, Object>) in.readObject());
         } catch (OptionalDataException ode) {
             if (ode.eof) {
-                attributes = new HashMap<String, Object>();
+                attributes = new CopyOnWriteAttributes();
             } else {
                 throw ode;
             }
@@ -530,7 +519,7 @@ public class MailImpl implements Disposable, Mail {
         out.writeObject(remoteHost);
         out.writeObject(remoteAddr);
         out.writeObject(lastUpdated);
-        out.writeObject(attributes);
+        out.writeObject(attributes.toHashMap());
     }
 
     @Override
@@ -549,11 +538,11 @@ public class MailImpl implements Disposable, Mail {
      * it is for internal use by James only.
      * </p>
      *
-     * @return Serializable of the entire attributes collection
+     * @return Serializable snapshot of the entire attributes collection
      * @since 2.2.0
      */
     public Map<String, Object> getAttributesRaw() {
-        return attributes;
+        return attributes.toHashMap();
     }
 
     /**
@@ -570,7 +559,7 @@ public class MailImpl implements Disposable, Mail {
      * @since 2.2.0
      */
     public void setAttributesRaw(HashMap<String, Object> attr) {
-        this.attributes = (attr == null) ? new HashMap<String, Object>() : attr;
+        this.attributes = (attr == null) ? new CopyOnWriteAttributes() : new CopyOnWriteAttributes(attr);
     }
 
     @Override
@@ -595,7 +584,7 @@ public class MailImpl implements Disposable, Mail {
 
     @Override
     public Iterator<String> getAttributeNames() {
-        return attributes.keySet().iterator();
+        return attributes.names();
     }
 
     @Override
@@ -603,26 +592,6 @@ public class MailImpl implements Disposable, Mail {
         return !attributes.isEmpty();
     }
 
-    /**
-     * This methods provide cloning for serializable objects. Mail Attributes
-     * are Serializable but not Clonable so we need a deep copy
-     *
-     * @param o Object to be cloned
-     * @return the cloned Object
-     * @throws IOException
-     * @throws ClassNotFoundException
-     */
-    private static Object cloneSerializableObject(Object o) throws IOException, ClassNotFoundException {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(b);
-        out.writeObject(o);
-        out.flush();
-        out.close();
-        ByteArrayInputStream bi = new ByteArrayInputStream(b.toByteArray());
-        ObjectInputStream in = new ObjectInputStream(bi);
-        return in.readObject();
-    }
-
     private static final java.util.Random random = new java.util.Random(); // Used
     // to
     // generate
@@ -0,0 +1,157 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CopyOnWriteAttributesTest {
+
+    private CopyOnWriteAttributes attributes;
+
+    @Before
+    public void setUp() {
+        attributes = new CopyOnWriteAttributes();
+    }
+
+    @Test
+    public void putShouldReturnPreviousValue() {
+        assertThat(attributes.put("key", "value")).isNull();
+        assertThat(attributes.put("key", "other")).isEqualTo("value");
+        assertThat(attributes.get("key")).isEqualTo("other");
+    }
+
+    @Test
+    public void copyShouldContainTheSameAttributes() {
+        attributes.put("key", "value");
+
+        CopyOnWriteAttributes copy = attributes.copy();
+
+        assertThat(copy.get("key")).isEqualTo("value");
+        assertThat(copy.isEmpty()).isFalse();
+        assertThat(copy.toHashMap()).containsOnlyKeys("key");
+    }
+
+    @Test
+    public void modificationsOfTheCopyShouldNotAffectTheOriginal() {
+        attributes.put("key", "value");
+        attributes.put("removed", "value");
+
+        CopyOnWriteAttributes copy = attributes.copy();
+        copy.put("key", "other");
+        copy.put("added", "value");
+        copy.remove("removed");
+
+        assertThat(attributes.toHashMap()).containsOnlyKeys("key", "removed");
+        assertThat(attributes.get("key")).isEqualTo("value");
+        assertThat(copy.toHashMap()).containsOnlyKeys("key", "added");
+        assertThat(copy.get("removed")).isNull();
+    }
+
+    @Test
+    public void modificationsOfTheOriginalShouldNotAffectTheCopy() {
+        attributes.put("key", "value");
+
+        CopyOnWriteAttributes copy = attributes.copy();
+        attributes.put("key", "other");
+        attributes.remove("key");
+
+        assertThat(copy.get("key")).isEqualTo("value");
+        assertThat(attributes.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void mutableValuesShouldBeIsolatedOnceRead() {
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("a");
+        attributes.put("list", list);
+
+        CopyOnWriteAttributes copy = attributes.copy();
+        @SuppressWarnings("unchecked")
+        List<String> copiedList = (List<String>) copy.get("list");
+        copiedList.add("b");
+
+        assertThat(attributes.get("list")).isEqualTo(list);
+        assertThat(list).containsOnly("a");
+        assertThat(copy.get("list")).isSameAs(copiedList);
+    }
+
+    @Test
+    public void immutableValuesShouldBeShared() {
+        String value = new String("value");
+        attributes.put("key", value);
+
+        assertThat(attributes.copy().get("key")).isSameAs(value);
+    }
+
+    @Test
+    public void clearShouldRemoveSharedAttributes() {
+        attributes.put("key", "value");
+        CopyOnWriteAttributes copy = attributes.copy();
+
+        copy.clear();
+
+        assertThat(copy.isEmpty()).isTrue();
+        assertThat(copy.get("key")).isNull();
+        assertThat(attributes.get("key")).isEqualTo("value");
+    }
+
+    @Test
+    public void removingThroughNamesShouldRemoveTheAttribute() {
+        attributes.put("key", "value");
+        CopyOnWriteAttributes copy = attributes.copy();
+
+        Iterator<String> names = copy.names();
+        names.next();
+        names.remove();
+
+        assertThat(copy.isEmpty()).isTrue();
+        assertThat(attributes.isEmpty()).isFalse();
+    }
+
+    @Test
+    public void copiesOfCopiesShouldKeepTheirOwnAttributes() {
+        CopyOnWriteAttributes current = attributes;
+        for (int i = 0; i < 50; i++) {
+            current.put("key" + i, i);
+            current = current.copy();
+        }
+        current.remove("key0");
+
+        assertThat(current.toHashMap()).hasSize(49);
+        assertThat(current.get("key49")).isEqualTo(49);
+        assertThat(attributes.toHashMap()).containsOnlyKeys("key0");
+    }
+
+    @Test
+    public void constructorShouldTakeOverTheGivenAttributes() {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("key", "value");
+
+        assertThat(new CopyOnWriteAttributes(map).get("key")).isEqualTo("value");
+    }
+}
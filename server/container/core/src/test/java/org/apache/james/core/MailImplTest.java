@@ -27,7 +27,11 @@ import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -107,4 +111,38 @@ public class MailImplTest extends MailTestAllImplementations {
         helperTestInitialState(duplicate);
         helperTestMessageSize(duplicate, 0);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDuplicateAttributesAreIsolated() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("a");
+        mail.setAttribute("list", list);
+        mail.setAttribute("name", "value");
+
+        MailImpl duplicate = (MailImpl) mail.duplicate();
+        ((ArrayList<String>) duplicate.getAttribute("list")).add("b");
+        duplicate.setAttribute("name", "other");
+
+        assertEquals("original list unchanged", 1, ((ArrayList<?>) mail.getAttribute("list")).size());
+        assertEquals("duplicate list changed", 2, ((ArrayList<?>) duplicate.getAttribute("list")).size());
+        assertEquals("original attribute unchanged", "value", mail.getAttribute("name"));
+        assertEquals("duplicate attribute changed", "other", duplicate.getAttribute("name"));
+    }
+
+    @Test
+    public void testSerializationKeepsAttributes() throws Exception {
+        MailImpl mail = new MailImpl();
+        mail.setAttribute("name", "value");
+        MailImpl duplicate = (MailImpl) mail.duplicate();
+        duplicate.setAttribute("other", "value");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ObjectOutputStream(out).writeObject(duplicate);
+        MailImpl deserialized = (MailImpl) new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+
+        assertEquals("attributes", duplicate.getAttributesRaw(), deserialized.getAttributesRaw());
+        assertTrue("raw attributes are a HashMap", duplicate.getAttributesRaw() instanceof HashMap);
+    }
 }
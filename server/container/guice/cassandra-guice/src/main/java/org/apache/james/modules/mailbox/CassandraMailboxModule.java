@@ -18,8 +18,12 @@
  ****************************************************************/
 package org.apache.james.modules.mailbox;
 
+import java.io.FileNotFoundException;
+
 import javax.inject.Singleton;
 
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.james.adapter.mailbox.store.UserRepositoryAuthenticator;
 import org.apache.james.backends.cassandra.components.CassandraModule;
 import org.apache.james.mailbox.MailboxManager;
@@ -36,6 +40,7 @@ import org.apache.james.mailbox.model.MailboxId;
 import org.apache.james.mailbox.store.Authenticator;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
 import org.apache.james.mailbox.store.NoMailboxPathLocker;
+import org.apache.james.mailbox.store.StoreMailboxManager;
 import org.apache.james.mailbox.store.mail.AttachmentMapperFactory;
 import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
 import org.apache.james.mailbox.store.mail.MessageMapperFactory;
@@ -43,6 +48,7 @@ import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.modules.Names;
 import org.apache.james.utils.MailboxManagerDefinition;
+import org.apache.james.utils.PropertiesProvider;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
@@ -53,6 +59,8 @@ import com.google.inject.name.Named;
 
 public class CassandraMailboxModule extends AbstractModule {
 
+    private static final String MAILBOX_CONFIGURATION = "mailbox";
+
     @Override
     protected void configure() {
         bind(CassandraMailboxSessionMapperFactory.class).in(Scopes.SINGLETON);
@@ -92,10 +100,21 @@ public class CassandraMailboxModule extends AbstractModule {
     }
 
     @Provides @Named(Names.MAILBOXMANAGER_NAME) @Singleton
-    public MailboxManager provideMailboxManager(CassandraMailboxManager cassandraMailboxManager) throws MailboxException {
+    public MailboxManager provideMailboxManager(CassandraMailboxManager cassandraMailboxManager, PropertiesProvider propertiesProvider) throws MailboxException, ConfigurationException {
+        configureMailboxManager(cassandraMailboxManager, propertiesProvider);
         cassandraMailboxManager.init();
         return cassandraMailboxManager;
     }
+
+    private void configureMailboxManager(StoreMailboxManager mailboxManager, PropertiesProvider propertiesProvider) throws ConfigurationException {
+        try {
+            PropertiesConfiguration configuration = propertiesProvider.getConfiguration(MAILBOX_CONFIGURATION);
+            mailboxManager.setInMemoryMessageThreshold(configuration.getInt("mailbox.inMemoryMessageThreshold",
+                StoreMailboxManager.DEFAULT_IN_MEMORY_MESSAGE_THRESHOLD));
+        } catch (FileNotFoundException e) {
+            // Optional file: keep the defaults
+        }
+    }
     
     @Singleton
     private static class CassandraMailboxManagerDefinition extends MailboxManagerDefinition {
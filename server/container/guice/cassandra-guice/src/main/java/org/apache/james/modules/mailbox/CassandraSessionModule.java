@@ -19,6 +19,7 @@
 package org.apache.james.modules.mailbox;
 
 import java.io.FileNotFoundException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -26,18 +27,23 @@ import java.util.concurrent.ScheduledExecutorService;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.james.backends.cassandra.components.CassandraModule;
+import org.apache.james.backends.cassandra.init.CassandraClusterOptions;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
 import org.apache.james.backends.cassandra.init.CassandraZonedDateTimeModule;
 import org.apache.james.backends.cassandra.init.ClusterFactory;
 import org.apache.james.backends.cassandra.init.ClusterWithKeyspaceCreatedFactory;
 import org.apache.james.backends.cassandra.init.SessionWithInitializedTablesFactory;
+import org.apache.james.backends.cassandra.utils.CassandraPreparedStatementCache;
 import org.apache.james.filesystem.api.FileSystem;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import com.nurkiewicz.asyncretry.AsyncRetryExecutor;
@@ -46,10 +52,12 @@ public class CassandraSessionModule extends AbstractModule {
 
     private static final int DEFAULT_CONNECTION_MAX_RETRIES = 10;
     private static final int DEFAULT_CONNECTION_MIN_DELAY = 5000;
+    private static final int DEFAULT_MAX_SPECULATIVE_EXECUTIONS = 1;
 
     @Override
     protected void configure() {
         bind(ScheduledExecutorService.class).toProvider(ScheduledExecutorServiceProvider.class);
+        bind(CassandraPreparedStatementCache.class).in(Scopes.SINGLETON);
 
         Multibinder<CassandraModule> cassandraDataDefinitions = Multibinder.newSetBinder(binder(), CassandraModule.class);
         cassandraDataDefinitions.addBinding().to(CassandraZonedDateTimeModule.class);
@@ -80,7 +88,8 @@ public class CassandraSessionModule extends AbstractModule {
                         .config(
                             ClusterFactory.createClusterForSingleServerWithoutPassWord(
                                     configuration.getString("cassandra.ip"),
-                                    configuration.getInt("cassandra.port")),
+                                    configuration.getInt("cassandra.port"),
+                                    clusterOptions(configuration)),
                             configuration.getString("cassandra.keyspace"))
                         .replicationFactor(configuration.getInt("cassandra.replication.factor"))
                         .clusterWithInitializedKeyspace())
@@ -94,6 +103,28 @@ public class CassandraSessionModule extends AbstractModule {
                 .withMinDelay(configuration.getInt("cassandra.retryConnection.minDelay", DEFAULT_CONNECTION_MIN_DELAY));
     }
 
+    private static CassandraClusterOptions clusterOptions(PropertiesConfiguration configuration) {
+        CassandraClusterOptions.Builder builder = CassandraClusterOptions.builder()
+            .tokenAware(configuration.getBoolean("cassandra.loadBalancing.tokenAware", true))
+            .latencyAware(configuration.getBoolean("cassandra.loadBalancing.latencyAware", false))
+            .compression(ProtocolOptions.Compression.valueOf(configuration.getString("cassandra.compression", "NONE").toUpperCase()))
+            .jmxReporting(configuration.getBoolean("cassandra.metrics.jmx", true));
+        Optional.ofNullable(configuration.getString("cassandra.loadBalancing.localDatacenter"))
+            .ifPresent(localDatacenter -> builder.localDatacenter(localDatacenter, configuration.getInt("cassandra.loadBalancing.usedHostsPerRemoteDc", 0)));
+        Optional.ofNullable(configuration.getInteger("cassandra.pooling.coreConnectionsPerHost", null))
+            .ifPresent(builder::coreConnectionsPerHost);
+        Optional.ofNullable(configuration.getInteger("cassandra.pooling.maxConnectionsPerHost", null))
+            .ifPresent(builder::maxConnectionsPerHost);
+        Optional.ofNullable(configuration.getInteger("cassandra.pooling.maxRequestsPerConnection", null))
+            .ifPresent(builder::maxRequestsPerConnection);
+        Optional.ofNullable(configuration.getLong("cassandra.speculativeExecution.delayMillis", null))
+            .ifPresent(delay -> builder.speculativeExecution(delay, configuration.getInt("cassandra.speculativeExecution.maxExecutions", DEFAULT_MAX_SPECULATIVE_EXECUTIONS)));
+        Optional.ofNullable(configuration.getString("cassandra.consistencyLevel.default"))
+            .map(ConsistencyLevel::valueOf)
+            .ifPresent(builder::consistencyLevel);
+        return builder.build();
+    }
+
     @Provides
     private AsyncRetryExecutor provideAsyncRetryExecutor(ScheduledExecutorService scheduler) {
         return new AsyncRetryExecutor(scheduler);
@@ -22,6 +22,7 @@ package org.apache.james.modules.mailbox;
 import java.io.FileNotFoundException;
 import java.util.concurrent.ExecutionException;
 
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.apache.commons.configuration.ConfigurationException;
@@ -29,10 +30,15 @@ import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.james.filesystem.api.FileSystem;
 import org.apache.james.mailbox.elasticsearch.ClientProvider;
 import org.apache.james.mailbox.elasticsearch.ClientProviderImpl;
+import org.apache.james.mailbox.elasticsearch.ElasticSearchBulkIndexer;
+import org.apache.james.mailbox.elasticsearch.ElasticSearchIndexer;
 import org.apache.james.mailbox.elasticsearch.IndexCreationFactory;
 import org.apache.james.mailbox.elasticsearch.NodeMappingFactory;
 import org.apache.james.mailbox.elasticsearch.events.ElasticSearchListeningMessageSearchIndex;
+import org.apache.james.mailbox.elasticsearch.json.MessageToElasticSearchJson;
+import org.apache.james.mailbox.elasticsearch.search.ElasticSearchSearcher;
 import org.apache.james.mailbox.extractor.TextExtractor;
+import org.apache.james.mailbox.store.mail.MessageMapperFactory;
 import org.apache.james.mailbox.store.search.ListeningMessageSearchIndex;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.tika.extractor.TikaTextExtractor;
@@ -51,7 +57,6 @@ public class ElasticSearchMailboxModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(ElasticSearchListeningMessageSearchIndex.class).in(Scopes.SINGLETON);
         bind(MessageSearchIndex.class).to(ElasticSearchListeningMessageSearchIndex.class);
         bind(ListeningMessageSearchIndex.class).to(ElasticSearchListeningMessageSearchIndex.class);
 
@@ -62,7 +67,7 @@ public class ElasticSearchMailboxModule extends AbstractModule {
     @Provides
     @Singleton
     protected Client provideClientProvider(FileSystem fileSystem, AsyncRetryExecutor executor) throws ConfigurationException, FileNotFoundException, ExecutionException, InterruptedException {
-        PropertiesConfiguration propertiesReader = new PropertiesConfiguration(fileSystem.getFile(FileSystem.FILE_PROTOCOL_AND_CONF + "elasticsearch.properties"));
+        PropertiesConfiguration propertiesReader = getConfiguration(fileSystem);
 
         ClientProvider clientProvider = new ClientProviderImpl(propertiesReader.getString("elasticsearch.masterHost"),
                 propertiesReader.getInt("elasticsearch.port"));
@@ -75,6 +80,34 @@ public class ElasticSearchMailboxModule extends AbstractModule {
         return client;
     }
 
+    @Provides
+    @Singleton
+    protected ElasticSearchListeningMessageSearchIndex provideSearchIndex(FileSystem fileSystem, MessageMapperFactory factory,
+            ElasticSearchIndexer indexer, Provider<ElasticSearchBulkIndexer> bulkIndexer, ElasticSearchSearcher searcher,
+            MessageToElasticSearchJson messageToElasticSearchJson) throws ConfigurationException, FileNotFoundException {
+        if (getConfiguration(fileSystem).getBoolean("elasticsearch.bulk.enabled", false)) {
+            return new ElasticSearchListeningMessageSearchIndex(factory, indexer, bulkIndexer.get(), searcher, messageToElasticSearchJson);
+        }
+        return new ElasticSearchListeningMessageSearchIndex(factory, indexer, searcher, messageToElasticSearchJson);
+    }
+
+    @Provides
+    @Singleton
+    protected ElasticSearchBulkIndexer provideBulkIndexer(Client client, FileSystem fileSystem) throws ConfigurationException, FileNotFoundException {
+        PropertiesConfiguration propertiesReader = getConfiguration(fileSystem);
+        return new ElasticSearchBulkIndexer(client,
+            propertiesReader.getInt("elasticsearch.bulk.maxActions", ElasticSearchBulkIndexer.DEFAULT_MAX_ACTIONS),
+            propertiesReader.getLong("elasticsearch.bulk.maxBytes", ElasticSearchBulkIndexer.DEFAULT_MAX_BYTES),
+            propertiesReader.getLong("elasticsearch.bulk.flushIntervalInMs", ElasticSearchBulkIndexer.DEFAULT_FLUSH_INTERVAL_IN_MS),
+            propertiesReader.getInt("elasticsearch.bulk.maxConcurrentRequests", ElasticSearchBulkIndexer.DEFAULT_MAX_CONCURRENT_REQUESTS),
+            propertiesReader.getInt("elasticsearch.bulk.maxRetries", ElasticSearchBulkIndexer.DEFAULT_MAX_RETRIES),
+            propertiesReader.getLong("elasticsearch.bulk.initialBackoffInMs", ElasticSearchBulkIndexer.DEFAULT_INITIAL_BACKOFF_IN_MS));
+    }
+
+    private static PropertiesConfiguration getConfiguration(FileSystem fileSystem) throws ConfigurationException, FileNotFoundException {
+        return new PropertiesConfiguration(fileSystem.getFile(FileSystem.FILE_PROTOCOL_AND_CONF + "elasticsearch.properties"));
+    }
+
     private static AsyncRetryExecutor getRetryer(AsyncRetryExecutor executor, PropertiesConfiguration configuration) {
         return executor
                 .withProportionalJitter()
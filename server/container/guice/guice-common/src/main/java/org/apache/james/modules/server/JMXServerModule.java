@@ -19,8 +19,11 @@
 
 package org.apache.james.modules.server;
 
+import java.io.FileNotFoundException;
 import java.util.List;
 
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.james.adapter.mailbox.MailboxCopierManagement;
 import org.apache.james.adapter.mailbox.MailboxCopierManagementMBean;
 import org.apache.james.adapter.mailbox.MailboxManagerManagement;
@@ -30,11 +33,13 @@ import org.apache.james.adapter.mailbox.ReIndexerManagement;
 import org.apache.james.adapter.mailbox.ReIndexerManagementMBean;
 import org.apache.james.domainlist.api.DomainListManagementMBean;
 import org.apache.james.domainlist.lib.DomainListManagement;
+import org.apache.james.filesystem.api.FileSystem;
 import org.apache.james.lifecycle.api.Configurable;
 import org.apache.james.mailbox.copier.MailboxCopier;
 import org.apache.james.mailbox.copier.MailboxCopierImpl;
 import org.apache.james.mailbox.indexer.ReIndexer;
 import org.apache.james.mailbox.indexer.ReIndexerImpl;
+import org.apache.james.mailbox.indexer.checkpoint.FileReIndexingCheckpoint;
 import org.apache.james.mailetcontainer.api.jmx.MailSpoolerMBean;
 import org.apache.james.mailetcontainer.impl.JamesMailSpooler;
 import org.apache.james.rrt.api.RecipientRewriteTableManagementMBean;
@@ -43,13 +48,16 @@ import org.apache.james.user.api.UsersRepositoryManagementMBean;
 import org.apache.james.user.lib.UsersRepositoryManagement;
 import org.apache.james.utils.ConfigurationPerformer;
 import org.apache.james.utils.GuiceMailboxManagerResolver;
+import org.apache.james.utils.PropertiesProvider;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
+import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
+import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 
 public class JMXServerModule extends AbstractModule {
@@ -60,6 +68,7 @@ public class JMXServerModule extends AbstractModule {
     private static final String JMX_COMPONENT_NAME_MAILBOXMANAGERBEAN = "org.apache.james:type=component,name=mailboxmanagerbean";
     private static final String JMX_COMPONENT_MAILBOXCOPIER = "org.apache.james:type=component,name=mailboxcopier";
     private static final String JMX_COMPONENT_REINDEXER = "org.apache.james:type=component,name=reindexerbean";
+    private static final String REINDEXER_CONFIGURATION = "reindexer";
 
     @Override
     protected void configure() {
@@ -71,11 +80,30 @@ public class JMXServerModule extends AbstractModule {
         bind(MailboxManagerManagementMBean.class).to(MailboxManagerManagement.class);
         bind(RecipientRewriteTableManagementMBean.class).to(RecipientRewriteTableManagement.class);
         bind(MailSpoolerMBean.class).to(JamesMailSpooler.class);
-        bind(ReIndexer.class).annotatedWith(Names.named("reindexer")).to(ReIndexerImpl.class);
         bind(ReIndexerManagementMBean.class).to(ReIndexerManagement.class);
         Multibinder.newSetBinder(binder(), ConfigurationPerformer.class).addBinding().to(JMXModuleConfigurationPerformer.class);
     }
 
+    @Provides
+    @Singleton
+    @Named("reindexer")
+    ReIndexer provideReIndexer(ReIndexerImpl reIndexer, PropertiesProvider propertiesProvider, FileSystem fileSystem) throws ConfigurationException, FileNotFoundException {
+        PropertiesConfiguration configuration;
+        try {
+            configuration = propertiesProvider.getConfiguration(REINDEXER_CONFIGURATION);
+        } catch (FileNotFoundException e) {
+            return reIndexer;
+        }
+        reIndexer.setParallelism(configuration.getInt("reindexer.parallelism", ReIndexerImpl.DEFAULT_PARALLELISM));
+        reIndexer.setBatchSize(configuration.getInt("reindexer.batchSize", ReIndexerImpl.DEFAULT_BATCH_SIZE));
+        reIndexer.setMessagesPerSecond(configuration.getDouble("reindexer.messagesPerSecond", ReIndexerImpl.NO_THROTTLING));
+        String checkpointFile = configuration.getString("reindexer.checkpoint.file");
+        if (checkpointFile != null) {
+            reIndexer.setCheckpoint(new FileReIndexingCheckpoint(fileSystem.getFile(checkpointFile)));
+        }
+        return reIndexer;
+    }
+
     @Singleton
     public static class JMXModuleConfigurationPerformer implements ConfigurationPerformer {
 
@@ -19,8 +19,12 @@
 
 package org.apache.james.modules.mailbox;
 
+import java.io.FileNotFoundException;
+
 import javax.inject.Singleton;
 
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.james.adapter.mailbox.store.UserRepositoryAuthenticator;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxPathLocker;
@@ -41,6 +45,7 @@ import org.apache.james.mailbox.model.MailboxId;
 import org.apache.james.mailbox.store.Authenticator;
 import org.apache.james.mailbox.store.JVMMailboxPathLocker;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
+import org.apache.james.mailbox.store.StoreMailboxManager;
 import org.apache.james.mailbox.store.StoreSubscriptionManager;
 import org.apache.james.mailbox.store.mail.AttachmentMapperFactory;
 import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
@@ -51,6 +56,7 @@ import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.store.search.SimpleMessageSearchIndex;
 import org.apache.james.mailbox.store.user.SubscriptionMapperFactory;
 import org.apache.james.modules.Names;
+import org.apache.james.utils.PropertiesProvider;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
@@ -59,6 +65,8 @@ import com.google.inject.name.Named;
 
 public class MemoryMailboxModule extends AbstractModule {
 
+    private static final String MAILBOX_CONFIGURATION = "mailbox";
+
     @Override
     protected void configure() {
 
@@ -80,6 +88,7 @@ public class MemoryMailboxModule extends AbstractModule {
         bind(GroupMembershipResolver.class).to(SimpleGroupMembershipResolver.class);
 
         bind(MessageSearchIndex.class).to(SimpleMessageSearchIndex.class);
+        bind(SimpleMessageSearchIndex.class).toProvider(SimpleMessageSearchIndexProvider.class).in(Scopes.SINGLETON);
         bind(TextExtractor.class).to(JsoupTextExtractor.class);
 
         bind(InMemoryMailboxSessionMapperFactory.class).in(Scopes.SINGLETON);
@@ -94,8 +103,21 @@ public class MemoryMailboxModule extends AbstractModule {
     }
 
     @Provides @Named(Names.MAILBOXMANAGER_NAME) @Singleton
-    public MailboxManager provideMailboxManager(InMemoryMailboxManager mailboxManager) throws MailboxException {
+    public MailboxManager provideMailboxManager(InMemoryMailboxManager mailboxManager, MessageSearchIndex messageSearchIndex,
+                                                PropertiesProvider propertiesProvider) throws MailboxException, ConfigurationException {
+        mailboxManager.setMessageSearchIndex(messageSearchIndex);
+        configureMailboxManager(mailboxManager, propertiesProvider);
         mailboxManager.init();
         return mailboxManager;
     }
+
+    private void configureMailboxManager(StoreMailboxManager mailboxManager, PropertiesProvider propertiesProvider) throws ConfigurationException {
+        try {
+            PropertiesConfiguration configuration = propertiesProvider.getConfiguration(MAILBOX_CONFIGURATION);
+            mailboxManager.setInMemoryMessageThreshold(configuration.getInt("mailbox.inMemoryMessageThreshold",
+                StoreMailboxManager.DEFAULT_IN_MEMORY_MESSAGE_THRESHOLD));
+        } catch (FileNotFoundException e) {
+            // Optional file: keep the defaults
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.james.modules.mailbox;
+
+import java.io.FileNotFoundException;
+import java.util.Optional;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
+import org.apache.james.mailbox.store.mail.MessageMapperFactory;
+import org.apache.james.mailbox.store.search.ParallelMessageSearchExecutor;
+import org.apache.james.mailbox.store.search.SimpleMessageSearchIndex;
+import org.apache.james.utils.PropertiesProvider;
+
+import com.google.inject.Provider;
+
+/**
+ * Builds the {@link SimpleMessageSearchIndex} according to the optional search.properties file. Messages are matched
+ * concurrently when search.parallel.threadCount is strictly positive, and on the calling thread otherwise.
+ */
+public class SimpleMessageSearchIndexProvider implements Provider<SimpleMessageSearchIndex> {
+
+    private final SimpleMessageSearchIndex index;
+    private final Optional<ParallelMessageSearchExecutor> parallelExecutor;
+
+    @Inject
+    public SimpleMessageSearchIndexProvider(MessageMapperFactory messageMapperFactory, MailboxMapperFactory mailboxMapperFactory,
+                                            PropertiesProvider propertiesProvider) throws ConfigurationException {
+        this.index = new SimpleMessageSearchIndex(messageMapperFactory, mailboxMapperFactory);
+        this.parallelExecutor = createParallelExecutor(propertiesProvider);
+        parallelExecutor.ifPresent(index::setParallelExecutor);
+    }
+
+    private Optional<ParallelMessageSearchExecutor> createParallelExecutor(PropertiesProvider propertiesProvider) throws ConfigurationException {
+        try {
+            PropertiesConfiguration configuration = propertiesProvider.getConfiguration("search");
+            int threadCount = configuration.getInt("search.parallel.threadCount", 0);
+            if (threadCount <= 0) {
+                return Optional.empty();
+            }
+            return Optional.of(new ParallelMessageSearchExecutor(threadCount,
+                configuration.getInt("search.parallel.maxParallelismPerQuery", threadCount),
+                configuration.getInt("search.parallel.chunkSize", ParallelMessageSearchExecutor.DEFAULT_CHUNK_SIZE)));
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public SimpleMessageSearchIndex get() {
+        return index;
+    }
+
+    @PreDestroy
+    public void stop() {
+        parallelExecutor.ifPresent(ParallelMessageSearchExecutor::stop);
+    }
+}
@@ -44,4 +44,39 @@ public class ReIndexerManagement implements ReIndexerManagementMBean {
     public void reIndex() throws MailboxException {
         reIndexer.reIndex();
     }
+
+    @Override
+    public boolean isReIndexing() {
+        return reIndexer.getProgress().isRunning();
+    }
+
+    @Override
+    public int getReIndexingTotalMailboxes() {
+        return reIndexer.getProgress().getTotalMailboxes();
+    }
+
+    @Override
+    public int getReIndexingProcessedMailboxes() {
+        return reIndexer.getProgress().getProcessedMailboxes();
+    }
+
+    @Override
+    public int getReIndexingFailedMailboxes() {
+        return reIndexer.getProgress().getFailedMailboxes();
+    }
+
+    @Override
+    public long getReIndexingIndexedMessages() {
+        return reIndexer.getProgress().getIndexedMessages();
+    }
+
+    @Override
+    public double getReIndexingMessagesPerSecond() {
+        return reIndexer.getProgress().getMessagesPerSecond();
+    }
+
+    @Override
+    public long getReIndexingEstimatedRemainingTimeInMs() {
+        return reIndexer.getProgress().getEstimatedRemainingTimeInMs();
+    }
 }
@@ -27,4 +27,21 @@ public interface ReIndexerManagementMBean  {
 
     void reIndex() throws MailboxException;
 
+    boolean isReIndexing();
+
+    int getReIndexingTotalMailboxes();
+
+    int getReIndexingProcessedMailboxes();
+
+    int getReIndexingFailedMailboxes();
+
+    long getReIndexingIndexedMessages();
+
+    double getReIndexingMessagesPerSecond();
+
+    /**
+     * @return the estimated remaining time of the current re-indexing, or -1 when unknown
+     */
+    long getReIndexingEstimatedRemainingTimeInMs();
+
 }
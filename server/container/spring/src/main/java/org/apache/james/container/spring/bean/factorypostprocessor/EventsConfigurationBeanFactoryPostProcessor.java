@@ -40,6 +40,7 @@ public class EventsConfigurationBeanFactoryPostProcessor implements BeanFactoryP
             String publisher = config.getString("publisher", "kafka");
             String registration = config.getString("registration", "cassandra");
             String delivery = config.getString("delivery", "synchronous");
+            boolean batchPublishing = config.getBoolean("batchPublishing", false);
             String delegatingListenerAlias = getDelegatingListenerAlias(type);
             String serializationAlias = getSerializationAlias(serialization);
             String registrationAlias = getRegistrationAlias(registration);
@@ -60,7 +61,12 @@ public class EventsConfigurationBeanFactoryPostProcessor implements BeanFactoryP
                 detectInvalidValue(serializationAlias, "Serialization system type " + serialization + " not supported!");
                 detectInvalidValue(publisherAlias, "Publisher system type " + publisher + " not supported!");
                 beanFactory.registerAlias(serializationAlias, "event-serializer");
-                beanFactory.registerAlias(publisherAlias, "publisher");
+                if (batchPublishing) {
+                    beanFactory.registerAlias(publisherAlias, "delegate-publisher");
+                    beanFactory.registerAlias("batching-publisher", "publisher");
+                } else {
+                    beanFactory.registerAlias(publisherAlias, "publisher");
+                }
                 beanFactory.registerAlias(consumerAlias, "consumer");
                 if (delegatingListenerAlias.equals("registered")) {
                     detectInvalidValue(registrationAlias, "Registration system type " + registration + " not supported!");
@@ -111,6 +117,8 @@ public class EventsConfigurationBeanFactoryPostProcessor implements BeanFactoryP
             return  "synchronous-event-delivery";
         } else if (delivery.equals("asynchronous")) {
             return  "asynchronous-event-delivery";
+        } else if (delivery.equals("ordered")) {
+            return  "ordered-asynchronous-event-delivery";
         } else if (delivery.equals("mixed")) {
             return  "mixed-event-delivery";
         }
@@ -33,7 +33,8 @@ import org.springframework.beans.factory.support.BeanDefinitionRegistry;
  * {@link BeanDefinitionRegistry} depending on the configured provider. As
  * default jpa is used!
  * 
- * It will register it with the alias mailboxmanager
+ * It will register it with the alias mailboxmanager, and pass it the optional
+ * inMemoryMessageThreshold of mailbox.xml
  */
 public class MailboxConfigurationBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
 
@@ -87,6 +88,10 @@ public class MailboxConfigurationBeanFactoryPostProcessor implements BeanFactory
             if (mailbox == null)
                 throw new ConfigurationException("Mailboxmanager provider " + provider + " not supported!");
             registry.registerAlias(mailbox, "mailboxmanager");
+            if (config.containsKey("inMemoryMessageThreshold")) {
+                registry.getBeanDefinition(mailbox).getPropertyValues()
+                    .addPropertyValue("inMemoryMessageThreshold", config.getInt("inMemoryMessageThreshold"));
+            }
             registry.registerAlias(subscription, "subscriptionManager");
             registry.registerAlias(messageMapperFactory, "messageMapperFactory");
             registry.registerAlias(mailboxIdDeserializer, "mailbox-id-deserializer");
@@ -36,4 +36,84 @@ public interface MailSpoolerMBean {
      */
     int getCurrentSpoolCount();
 
+    /**
+     * Return the maximum number of mails dequeued but not yet processed, or a
+     * negative value when the spooler dequeues without waiting for a free
+     * thread
+     * 
+     * @return maxInFlight
+     */
+    int getMaxInFlight();
+
+    /**
+     * Return the number of mails dequeued but not yet processed, including
+     * the ones waiting for a spool thread
+     * 
+     * @return inFlightCount
+     */
+    int getInFlightCount();
+
+    /**
+     * Return the number of mails dequeued since startup
+     * 
+     * @return dequeuedMailCount
+     */
+    long getDequeuedMailCount();
+
+    /**
+     * Return the average time spent waiting for the queue to hand a mail, in
+     * milliseconds. This includes the time the queue stays empty, so a high
+     * value denotes an idle spooler rather than a slow queue
+     * 
+     * @return averageDequeueWaitTime
+     */
+    double getAverageDequeueWaitTime();
+
+    /**
+     * Return the 99th percentile of the time spent waiting for the queue to
+     * hand a mail, in milliseconds
+     * 
+     * @return dequeueWaitTime99thPercentile
+     */
+    long getDequeueWaitTime99thPercentile();
+
+    /**
+     * Return the count of dequeue wait times falling in each bucket of
+     * {@link #getHistogramBucketUpperBounds()}
+     * 
+     * @return dequeueWaitTimeHistogram
+     */
+    long[] getDequeueWaitTimeHistogram();
+
+    /**
+     * Return the average processing time of a mail, in milliseconds
+     * 
+     * @return averageProcessingTime
+     */
+    double getAverageProcessingTime();
+
+    /**
+     * Return the 99th percentile of the processing time of a mail, in
+     * milliseconds
+     * 
+     * @return processingTime99thPercentile
+     */
+    long getProcessingTime99thPercentile();
+
+    /**
+     * Return the count of processing times falling in each bucket of
+     * {@link #getHistogramBucketUpperBounds()}
+     * 
+     * @return processingTimeHistogram
+     */
+    long[] getProcessingTimeHistogram();
+
+    /**
+     * Return the inclusive upper bounds, in milliseconds, of the histogram
+     * buckets
+     * 
+     * @return histogramBucketUpperBounds
+     */
+    long[] getHistogramBucketUpperBounds();
+
 }
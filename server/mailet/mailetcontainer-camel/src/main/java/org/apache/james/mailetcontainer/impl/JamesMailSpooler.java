@@ -20,6 +20,7 @@
 package org.apache.james.mailetcontainer.impl;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -35,6 +36,7 @@ import org.apache.james.lifecycle.api.LifecycleUtil;
 import org.apache.james.lifecycle.api.LogEnabled;
 import org.apache.james.mailetcontainer.api.MailProcessor;
 import org.apache.james.mailetcontainer.api.jmx.MailSpoolerMBean;
+import org.apache.james.mailetcontainer.impl.jmx.TimeHistogram;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueue.MailQueueException;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
@@ -47,6 +49,13 @@ import org.slf4j.Logger;
  * Manages the mail spool. This class is responsible for retrieving messages
  * from the spool, directing messages to the appropriate processor, and removing
  * them from the spool when processing is complete.
+ * <p/>
+ * By default a dequeue thread first reserves a free spot among the
+ * <code>maxInFlight</code> mails allowed to be processed at once, and only then
+ * dequeues. Mails are thus kept in the {@link MailQueue} rather than
+ * accumulating in memory when processing slows down. A negative
+ * <code>maxInFlight</code> restores dequeuing without waiting for the spool
+ * threads.
  */
 public class JamesMailSpooler implements Runnable, Disposable, Configurable, LogEnabled, MailSpoolerMBean {
 
@@ -87,6 +96,29 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
 
     private int numDequeueThreads;
 
+    /**
+     * The maximum number of mails dequeued but not yet processed. Negative
+     * when unbounded.
+     */
+    private int maxInFlight;
+
+    /**
+     * The number of mails a dequeue thread pulls in a row once it holds as
+     * many free spots
+     */
+    private int dequeueBatchSize;
+
+    /**
+     * Free spots for dequeued mails, null when unbounded
+     */
+    private Semaphore inFlightPermits;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    private final TimeHistogram dequeueWaitTimes = new TimeHistogram();
+
+    private final TimeHistogram processingTimes = new TimeHistogram();
+
     @Inject
     public void setMailQueueFactory(MailQueueFactory queueFactory) {
         this.queueFactory = queueFactory;
@@ -104,6 +136,16 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
         numDequeueThreads = config.getInt("dequeueThreads", 2);
 
         numThreads = config.getInt("threads", 100);
+
+        maxInFlight = config.getInt("maxInFlight", numThreads);
+        if (maxInFlight == 0) {
+            throw new ConfigurationException("maxInFlight should not be 0");
+        }
+
+        dequeueBatchSize = config.getInt("dequeueBatchSize", 1);
+        if (dequeueBatchSize < 1) {
+            throw new ConfigurationException("dequeueBatchSize should be strictly positive");
+        }
     }
 
     /**
@@ -120,6 +162,10 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
             logger.info(infoBuffer);
         }
 
+        if (maxInFlight > 0) {
+            inFlightPermits = new Semaphore(maxInFlight);
+        }
+
         active.set(true);
         workerService = JMXEnabledThreadPoolExecutor.newFixedThreadPool("org.apache.james:type=component,component=mailetcontainer,name=mailspooler,sub-type=threadpool", "spooler", numThreads);
         dequeueService = JMXEnabledThreadPoolExecutor.newFixedThreadPool("org.apache.james:type=component,component=mailetcontainer,name=mailspooler,sub-type=threadpool", "dequeuer", numDequeueThreads);
@@ -143,51 +189,21 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
         }
 
         while (active.get()) {
-
-            final MailQueueItem queueItem;
+            int reserved = 0;
             try {
-                queueItem = queue.deQueue();
-                workerService.execute(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        try {
-                            numActive.incrementAndGet();
-
-                            // increase count
-                            processingActive.incrementAndGet();
-
-                            Mail mail = queueItem.getMail();
-                            if (logger.isDebugEnabled()) {
-                                String debugBuffer = "==== Begin processing mail " + mail.getName() + "====";
-                                logger.debug(debugBuffer);
-                            }
-
-                            try {
-                                mailProcessor.service(mail);
-                                queueItem.done(true);
-                            } catch (Exception e) {
-                                if (active.get() && logger.isErrorEnabled()) {
-                                    logger.error("Exception processing mail while spooling " + e.getMessage(), e);
-                                }
-                                queueItem.done(false);
-
-                            } finally {
-                                LifecycleUtil.dispose(mail);
-                                mail = null;
-                            }
-                        } catch (Throwable e) {
-                            if (active.get() && logger.isErrorEnabled()) {
-                                logger.error("Exception processing mail while spooling " + e.getMessage(), e);
-
-                            }
-                        } finally {
-                            processingActive.decrementAndGet();
-                            numActive.decrementAndGet();
+                reserved = reserveInFlightPermits();
+                while (reserved > 0 && active.get()) {
+                    final MailQueueItem queueItem = dequeue();
+                    // the permit is now owned by the processing of this mail
+                    reserved--;
+                    workerService.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            process(queueItem);
                         }
-
-                    }
-                });
+                    });
+                }
             } catch (MailQueueException e1) {
                 if (active.get() && logger.isErrorEnabled()) {
                     logger.error("Exception dequeue mail", e1);
@@ -195,11 +211,86 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
                 }
             } catch (InterruptedException interrupted) {
                 //MailSpooler is stopping
+            } finally {
+                releaseInFlightPermits(reserved);
             }
         }
         logger.info("Stop {} : {}", getClass().getName(), Thread.currentThread().getName());
     }
 
+    /**
+     * Wait for at least one free spot for a dequeued mail, then grab the free
+     * spots available right away, up to the batch size.
+     * 
+     * @return the count of reserved spots
+     */
+    private int reserveInFlightPermits() throws InterruptedException {
+        if (inFlightPermits == null) {
+            return dequeueBatchSize;
+        }
+        inFlightPermits.acquire();
+        int reserved = 1;
+        while (reserved < dequeueBatchSize && inFlightPermits.tryAcquire()) {
+            reserved++;
+        }
+        return reserved;
+    }
+
+    private void releaseInFlightPermits(int count) {
+        if (inFlightPermits != null && count > 0) {
+            inFlightPermits.release(count);
+        }
+    }
+
+    private MailQueueItem dequeue() throws MailQueueException, InterruptedException {
+        long start = System.currentTimeMillis();
+        MailQueueItem queueItem = queue.deQueue();
+        dequeueWaitTimes.update(System.currentTimeMillis() - start);
+        inFlight.incrementAndGet();
+        return queueItem;
+    }
+
+    private void process(MailQueueItem queueItem) {
+        long start = System.currentTimeMillis();
+        try {
+            numActive.incrementAndGet();
+
+            // increase count
+            processingActive.incrementAndGet();
+
+            Mail mail = queueItem.getMail();
+            if (logger.isDebugEnabled()) {
+                String debugBuffer = "==== Begin processing mail " + mail.getName() + "====";
+                logger.debug(debugBuffer);
+            }
+
+            try {
+                mailProcessor.service(mail);
+                queueItem.done(true);
+            } catch (Exception e) {
+                if (active.get() && logger.isErrorEnabled()) {
+                    logger.error("Exception processing mail while spooling " + e.getMessage(), e);
+                }
+                queueItem.done(false);
+
+            } finally {
+                LifecycleUtil.dispose(mail);
+                mail = null;
+            }
+        } catch (Throwable e) {
+            if (active.get() && logger.isErrorEnabled()) {
+                logger.error("Exception processing mail while spooling " + e.getMessage(), e);
+
+            }
+        } finally {
+            processingTimes.update(System.currentTimeMillis() - start);
+            processingActive.decrementAndGet();
+            numActive.decrementAndGet();
+            inFlight.decrementAndGet();
+            releaseInFlightPermits(1);
+        }
+    }
+
     /**
      * The dispose operation is called at the end of a components lifecycle.
      * Instances of this class use this method to release and destroy any
@@ -243,4 +334,54 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
     public int getCurrentSpoolCount() {
         return processingActive.get();
     }
+
+    @Override
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getDequeuedMailCount() {
+        return dequeueWaitTimes.getCount();
+    }
+
+    @Override
+    public double getAverageDequeueWaitTime() {
+        return dequeueWaitTimes.getAverage();
+    }
+
+    @Override
+    public long getDequeueWaitTime99thPercentile() {
+        return dequeueWaitTimes.getPercentile(99);
+    }
+
+    @Override
+    public long[] getDequeueWaitTimeHistogram() {
+        return dequeueWaitTimes.getCounts();
+    }
+
+    @Override
+    public double getAverageProcessingTime() {
+        return processingTimes.getAverage();
+    }
+
+    @Override
+    public long getProcessingTime99thPercentile() {
+        return processingTimes.getPercentile(99);
+    }
+
+    @Override
+    public long[] getProcessingTimeHistogram() {
+        return processingTimes.getCounts();
+    }
+
+    @Override
+    public long[] getHistogramBucketUpperBounds() {
+        return TimeHistogram.BUCKET_UPPER_BOUNDS.clone();
+    }
 }
@@ -25,11 +25,14 @@ import javax.inject.Inject;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.CamelContextAware;
+import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.james.mailetcontainer.api.MailProcessor;
 import org.apache.james.mailetcontainer.api.MailetLoader;
 import org.apache.james.mailetcontainer.api.MatcherLoader;
+import org.apache.james.mailetcontainer.impl.pipeline.PipelineMailetProcessor;
 import org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessor;
+import org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailetContext;
 
@@ -39,13 +42,22 @@ import org.apache.mailet.MailetContext;
  * 
  * It also offer the {@link AbstractStateCompositeProcessor} implementation
  * which allow to inject {@link Mail} into the routes.
+ * 
+ * The <code>engine</code> attribute of the processors, or of a single
+ * processor, selects how matchers and mailets are run: <code>camel</code>
+ * routes (the default) or a <code>pipeline</code> loop, see
+ * {@link PipelineMailetProcessor}.
  */
 public class CamelCompositeProcessor extends AbstractStateCompositeProcessor implements CamelContextAware {
 
+    public static final String CAMEL_ENGINE = "camel";
+    public static final String PIPELINE_ENGINE = "pipeline";
+
     private CamelContext camelContext;
     private MailetContext mailetContext;
     private MatcherLoader matcherLoader;
     private MailetLoader mailetLoader;
+    private String engine;
 
     @Inject
     public void setMatcherLoader(MatcherLoader matcherLoader) {
@@ -62,6 +74,16 @@ public class CamelCompositeProcessor extends AbstractStateCompositeProcessor imp
         this.mailetContext = mailetContext;
     }
 
+    /**
+     * @see org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessor
+     * #configure(org.apache.commons.configuration.HierarchicalConfiguration)
+     */
+    public void configure(HierarchicalConfiguration config) throws ConfigurationException {
+        super.configure(config);
+        this.engine = config.getString("[@engine]", CAMEL_ENGINE);
+        checkEngine(engine);
+    }
+
     @PostConstruct
     public void init() throws Exception {
         super.init();
@@ -100,10 +122,18 @@ public class CamelCompositeProcessor extends AbstractStateCompositeProcessor imp
      * #createMailProcessor(java.lang.String, org.apache.commons.configuration.HierarchicalConfiguration)
      */
     protected MailProcessor createMailProcessor(String name, HierarchicalConfiguration config) throws Exception {
-        CamelMailetProcessor processor = new CamelMailetProcessor();
+        String processorEngine = config.getString("[@engine]", engine);
+        checkEngine(processorEngine);
+        AbstractStateMailetProcessor processor;
+        if (processorEngine.equals(PIPELINE_ENGINE)) {
+            processor = new PipelineMailetProcessor();
+        } else {
+            CamelMailetProcessor camelProcessor = new CamelMailetProcessor();
+            camelProcessor.setCamelContext(camelContext);
+            processor = camelProcessor;
+        }
         try {
             processor.setLog(logger);
-            processor.setCamelContext(camelContext);
             processor.setMailetContext(mailetContext);
             processor.setMailetLoader(mailetLoader);
             processor.setMatcherLoader(matcherLoader);
@@ -118,4 +148,10 @@ public class CamelCompositeProcessor extends AbstractStateCompositeProcessor imp
         }
     }
 
+    private void checkEngine(String engine) throws ConfigurationException {
+        if (!engine.equals(CAMEL_ENGINE) && !engine.equals(PIPELINE_ENGINE)) {
+            throw new ConfigurationException("Unknown mailet processor engine " + engine + ", use " + CAMEL_ENGINE + " or " + PIPELINE_ENGINE);
+        }
+    }
+
 }
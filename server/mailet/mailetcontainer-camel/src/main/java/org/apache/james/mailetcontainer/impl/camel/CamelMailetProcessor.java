@@ -42,8 +42,6 @@ import org.apache.mailet.MailetConfig;
 import org.apache.mailet.Matcher;
 import org.slf4j.Logger;
 
-import com.google.common.collect.ImmutableList;
-
 /**
  * {@link org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor} implementation which use Camel DSL for
  * the {@link Matcher} / {@link Mailet} routing
@@ -55,7 +53,6 @@ public class CamelMailetProcessor extends AbstractStateMailetProcessor implement
     private ProducerTemplate producerTemplate;
 
     private final UseLatestAggregationStrategy aggr = new UseLatestAggregationStrategy();
-    private List<MatcherMailetPair> pairs;
 
     /**
      * @see
@@ -84,10 +81,6 @@ public class CamelMailetProcessor extends AbstractStateMailetProcessor implement
         this.context = context;
     }
 
-    public List<MatcherMailetPair> getPairs() {
-        return ImmutableList.copyOf(pairs);
-    }
-
     /**
      * Return the endpoint for the processorname.
      * 
@@ -116,7 +109,6 @@ public class CamelMailetProcessor extends AbstractStateMailetProcessor implement
      */
     protected void setupRouting(List<MatcherMailetPair> pairs) throws MessagingException {
         try {
-            this.pairs = pairs;
             context.addRoutes(new MailetContainerRouteBuilder(pairs));
         } catch (Exception e) {
             throw new MessagingException("Unable to setup routing for MailetMatcherPairs", e);
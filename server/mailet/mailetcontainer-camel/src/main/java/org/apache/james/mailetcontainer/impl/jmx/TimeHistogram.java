@@ -0,0 +1,118 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations, in milliseconds, exposed through JMX.
+ * <p/>
+ * Durations are counted into fixed buckets, which makes recording cheap
+ * enough to be done for every spooled mail. Percentiles are approximated by
+ * the upper bound of the bucket they fall in.
+ */
+public class TimeHistogram {
+
+    /**
+     * Inclusive upper bounds of the buckets, in milliseconds. The last bucket
+     * counts every duration above the previous bound.
+     */
+    public static final long[] BUCKET_UPPER_BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS.length);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void update(long timeInMs) {
+        long time = Math.max(timeInMs, 0);
+        buckets.incrementAndGet(bucketOf(time));
+        count.incrementAndGet();
+        sum.addAndGet(time);
+        long currentMax = max.get();
+        while (time > currentMax && !max.compareAndSet(currentMax, time)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getAverage() {
+        long currentCount = count.get();
+        if (currentCount == 0) {
+            return 0;
+        }
+        return (double) sum.get() / currentCount;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Return the number of durations counted in each bucket, in the order of
+     * {@link #BUCKET_UPPER_BOUNDS}
+     */
+    public long[] getCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Return an upper bound of the given percentile, or 0 when nothing was
+     * recorded yet
+     * 
+     * @param percentile between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS[i], max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private int bucketOf(long time) {
+        int i = 0;
+        while (time > BUCKET_UPPER_BOUNDS[i]) {
+            i++;
+        }
+        return i;
+    }
+}
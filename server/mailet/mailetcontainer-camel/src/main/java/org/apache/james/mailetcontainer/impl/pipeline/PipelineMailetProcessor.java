@@ -0,0 +1,241 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.mail.MessagingException;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.mailetcontainer.impl.MailetConfigImpl;
+import org.apache.james.mailetcontainer.impl.MatcherMailetPair;
+import org.apache.james.mailetcontainer.impl.ProcessorUtil;
+import org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.apache.mailet.Mailet;
+import org.apache.mailet.MailetConfig;
+import org.apache.mailet.Matcher;
+
+/**
+ * {@link AbstractStateMailetProcessor} implementation which runs the
+ * {@link Matcher} / {@link Mailet} pairs in a plain loop, without routing
+ * engine.
+ * <p>
+ * It behaves like {@link org.apache.james.mailetcontainer.impl.camel.CamelMailetProcessor}:
+ * when a {@link Matcher} matches only some recipients, the matching ones are
+ * moved to a new {@link Mail} which goes through the {@link Mailet} and the
+ * rest of the pairs before the original {@link Mail} carries on. A
+ * {@link Mail} leaves the processor as soon as its state changes, and is
+ * disposed once in {@link Mail#GHOST} state.
+ * </p>
+ */
+public class PipelineMailetProcessor extends AbstractStateMailetProcessor {
+
+    /**
+     * A {@link MatcherMailetPair} along with its exception handling settings
+     */
+    private static final class Step {
+        private final Matcher matcher;
+        private final Mailet mailet;
+        private final String onMatchException;
+        private final String onMailetException;
+
+        private Step(Matcher matcher, Mailet mailet) {
+            this.matcher = matcher;
+            this.mailet = mailet;
+            this.onMatchException = getInitAttribute(mailet, "onMatchException");
+            this.onMailetException = getInitAttribute(mailet, "onMailetException");
+        }
+
+        private static String getInitAttribute(Mailet mailet, String name) {
+            MailetConfig mailetConfig = mailet.getMailetConfig();
+            String value = null;
+            if (mailetConfig instanceof MailetConfigImpl) {
+                value = ((MailetConfigImpl) mailetConfig).getInitAttribute(name);
+            }
+            if (value == null) {
+                return Mail.ERROR;
+            }
+            return value.trim().toLowerCase(Locale.US);
+        }
+    }
+
+    private Step[] steps;
+
+    private Step terminatingStep;
+
+    /**
+     * @see
+     * org.apache.james.mailetcontainer.api.MailProcessor#service(org.apache.mailet.Mail)
+     */
+    public void service(Mail mail) throws MessagingException {
+        service(mail, 0);
+    }
+
+    /**
+     * @see
+     * org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor#setupRouting
+     * (java.util.List)
+     */
+    protected void setupRouting(List<MatcherMailetPair> pairs) throws MessagingException {
+        Step[] steps = new Step[pairs.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = new Step(pairs.get(i).getMatcher(), pairs.get(i).getMailet());
+        }
+        this.steps = steps;
+        this.terminatingStep = new Step(null, new TerminatingMailet());
+    }
+
+    /**
+     * Run the given mail through the steps of this processor, starting at the
+     * given one
+     */
+    private void service(Mail mail, int firstStep) throws MessagingException {
+        for (int i = firstStep; i < steps.length; i++) {
+            Step step = steps[i];
+            Collection<MailAddress> matchedRcpts = match(step, mail);
+            boolean fullMatch = false;
+
+            if (!matchedRcpts.isEmpty()) {
+                List<MailAddress> rcpts = new ArrayList<MailAddress>(mail.getRecipients());
+                for (MailAddress matchedRcpt : matchedRcpts) {
+                    // remove the recipients that matched
+                    rcpts.remove(matchedRcpt);
+                }
+
+                if (rcpts.isEmpty()) {
+                    fullMatch = true;
+                } else {
+                    mail.setRecipients(rcpts);
+
+                    Mail newMail = new MailImpl(mail);
+                    newMail.setRecipients(matchedRcpts);
+
+                    serviceMailet(step, newMail);
+                    if (isStillInProcessor(newMail)) {
+                        service(newMail, i + 1);
+                    }
+                }
+            }
+
+            if (fullMatch) {
+                serviceMailet(step, mail);
+            }
+            if (!isStillInProcessor(mail)) {
+                return;
+            }
+        }
+
+        // the mail state did not change till the end of the processor, so call
+        // the TerminatingMailet to make sure we don't fall into an endless loop
+        serviceMailet(terminatingStep, mail);
+    }
+
+    /**
+     * Return the recipients matched by the matcher of the step, never null
+     */
+    private Collection<MailAddress> match(Step step, Mail mail) throws MessagingException {
+        List<MailetProcessorListener> listeners = getListeners();
+        Collection<MailAddress> origRcpts = listeners.isEmpty() ? null : new ArrayList<MailAddress>(mail.getRecipients());
+        Collection<MailAddress> matchedRcpts = null;
+        long start = System.currentTimeMillis();
+        MessagingException ex = null;
+
+        try {
+            matchedRcpts = step.matcher.match(mail);
+
+            if (matchedRcpts == null) {
+                matchedRcpts = new ArrayList<MailAddress>(0);
+            } else if (matchedRcpts != mail.getRecipients()) {
+                // Make sure all the objects are MailAddress objects
+                ProcessorUtil.verifyMailAddresses(matchedRcpts);
+            }
+        } catch (MessagingException me) {
+            ex = me;
+            if (step.onMatchException.equals("nomatch")) {
+                matchedRcpts = new ArrayList<MailAddress>(0);
+            } else if (step.onMatchException.equals("matchall")) {
+                matchedRcpts = mail.getRecipients();
+            } else {
+                ProcessorUtil.handleException(me, mail, step.matcher.getMatcherConfig().getMatcherName(), step.onMatchException, getLogger());
+            }
+        } finally {
+            if (!listeners.isEmpty()) {
+                long complete = System.currentTimeMillis() - start;
+                Collection<MailAddress> reportedRcpts = matchedRcpts == null || matchedRcpts.isEmpty() ? null : matchedRcpts;
+                for (MailetProcessorListener listener : listeners) {
+                    listener.afterMatcher(step.matcher, mail.getName(), origRcpts, reportedRcpts, complete, ex);
+                }
+            }
+        }
+        return matchedRcpts;
+    }
+
+    private void serviceMailet(Step step, Mail mail) throws MessagingException {
+        long start = System.currentTimeMillis();
+        MessagingException ex = null;
+        try {
+            step.mailet.service(mail);
+        } catch (MessagingException me) {
+            ex = me;
+            if (step.onMailetException.equals("ignore")) {
+                // ignore the exception and continue
+                // this option should not be used if the mail object can be
+                // changed by the mailet
+                ProcessorUtil.verifyMailAddresses(mail.getRecipients());
+            } else {
+                ProcessorUtil.handleException(me, mail, step.mailet.getMailetConfig().getMailetName(), step.onMailetException, getLogger());
+            }
+        } finally {
+            List<MailetProcessorListener> listeners = getListeners();
+            if (!listeners.isEmpty()) {
+                long complete = System.currentTimeMillis() - start;
+                for (MailetProcessorListener listener : listeners) {
+                    listener.afterMailet(step.mailet, mail.getName(), mail.getState(), complete, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispose the mail once in GHOST state, or hand it over to the processor
+     * of its new state.
+     * 
+     * @return true if the mail should carry on through this processor
+     */
+    private boolean isStillInProcessor(Mail mail) throws MessagingException {
+        if (Mail.GHOST.equals(mail.getState())) {
+            LifecycleUtil.dispose(mail.getMessage());
+            LifecycleUtil.dispose(mail);
+            return false;
+        }
+        if (!getState().equals(mail.getState())) {
+            toProcessor(mail);
+            getLogger().debug("End of mailetprocessor for state " + getState() + " reached");
+            return false;
+        }
+        return true;
+    }
+}
@@ -199,6 +199,16 @@ public abstract class AbstractStateMailetProcessor implements MailProcessor, Con
         return Collections.unmodifiableList(matchers);
     }
 
+    /**
+     * Return a unmodifiable {@link List} of the configured
+     * {@link MatcherMailetPair}'s
+     * 
+     * @return pairs
+     */
+    public List<MatcherMailetPair> getPairs() {
+        return Collections.unmodifiableList(new ArrayList<MatcherMailetPair>(pairs));
+    }
+
     public void addListener(MailetProcessorListener listener) {
         listeners.add(listener);
     }
@@ -0,0 +1,174 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.DefaultConfigurationBuilder;
+import org.apache.james.mailetcontainer.api.MailProcessor;
+import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueue.MailQueueException;
+import org.apache.james.queue.api.MailQueue.MailQueueItem;
+import org.apache.james.queue.api.MailQueueFactory;
+import org.apache.mailet.Mail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.LoggerFactory;
+
+public class JamesMailSpoolerTest {
+
+    private static final int THREADS = 2;
+
+    private BlockingQueue<MailQueueItem> items;
+    private CountDownLatch processingAllowed;
+    private CountDownLatch processingStarted;
+    private JamesMailSpooler spooler;
+
+    @Before
+    public void setUp() throws Exception {
+        items = new LinkedBlockingQueue<MailQueueItem>();
+        processingAllowed = new CountDownLatch(1);
+
+        MailQueue queue = mock(MailQueue.class);
+        when(queue.deQueue()).thenAnswer(new Answer<MailQueueItem>() {
+            @Override
+            public MailQueueItem answer(InvocationOnMock invocation) throws Throwable {
+                return items.take();
+            }
+        });
+        MailQueueFactory queueFactory = mock(MailQueueFactory.class);
+        when(queueFactory.getQueue(MailQueueFactory.SPOOL)).thenReturn(queue);
+
+        spooler = new JamesMailSpooler();
+        spooler.setLog(LoggerFactory.getLogger(JamesMailSpoolerTest.class));
+        spooler.setMailQueueFactory(queueFactory);
+        spooler.setMailProcessor(new MailProcessor() {
+            @Override
+            public void service(Mail mail) {
+                processingStarted.countDown();
+                try {
+                    processingAllowed.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        processingAllowed.countDown();
+        spooler.dispose();
+    }
+
+    @Test
+    public void spoolerShouldNotDequeueMoreThanMaxInFlightMails() throws Exception {
+        configure("<spooler><threads>" + THREADS + "</threads><dequeueThreads>2</dequeueThreads></spooler>");
+        processingStarted = new CountDownLatch(THREADS);
+        enqueue(10);
+
+        spooler.init();
+
+        assertThat(processingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+        assertThat(items).hasSize(10 - THREADS);
+        assertThat(spooler.getInFlightCount()).isEqualTo(THREADS);
+    }
+
+    @Test
+    public void spoolerShouldAllowMailsToWaitForThreadsUpToMaxInFlight() throws Exception {
+        configure("<spooler><threads>" + THREADS + "</threads><maxInFlight>5</maxInFlight><dequeueBatchSize>3</dequeueBatchSize></spooler>");
+        processingStarted = new CountDownLatch(THREADS);
+        enqueue(10);
+
+        spooler.init();
+
+        assertThat(processingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+        assertThat(items).hasSize(5);
+        assertThat(spooler.getInFlightCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void spoolerShouldDequeueEverythingWhenUnbounded() throws Exception {
+        configure("<spooler><threads>" + THREADS + "</threads><maxInFlight>-1</maxInFlight></spooler>");
+        processingStarted = new CountDownLatch(THREADS);
+        enqueue(10);
+
+        spooler.init();
+
+        assertThat(processingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+        assertThat(items).isEmpty();
+        assertThat(spooler.getInFlightCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void spoolerShouldRecordMetricsOnceMailsAreProcessed() throws Exception {
+        configure("<spooler><threads>" + THREADS + "</threads></spooler>");
+        processingStarted = new CountDownLatch(3);
+        processingAllowed.countDown();
+        enqueue(3);
+
+        spooler.init();
+
+        assertThat(processingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (spooler.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(spooler.getInFlightCount()).isEqualTo(0);
+        assertThat(spooler.getDequeuedMailCount()).isEqualTo(3);
+        assertThat(sum(spooler.getProcessingTimeHistogram())).isEqualTo(3);
+    }
+
+    private void configure(String xml) throws Exception {
+        DefaultConfigurationBuilder builder = new DefaultConfigurationBuilder();
+        builder.load(new ByteArrayInputStream(xml.getBytes()));
+        spooler.configure(builder);
+    }
+
+    private void enqueue(int count) throws MailQueueException {
+        for (int i = 0; i < count; i++) {
+            MailQueueItem item = mock(MailQueueItem.class);
+            when(item.getMail()).thenReturn(mock(Mail.class));
+            items.add(item);
+        }
+    }
+
+    private long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeHistogramTest {
+
+    private TimeHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new TimeHistogram();
+    }
+
+    @Test
+    public void histogramShouldBeEmptyByDefault() {
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getAverage()).isEqualTo(0);
+        assertThat(histogram.getPercentile(99)).isEqualTo(0);
+        assertThat(histogram.getCounts()).containsOnly(0);
+    }
+
+    @Test
+    public void updateShouldCountDurationsInTheirBucket() {
+        histogram.update(0);
+        histogram.update(1);
+        histogram.update(3);
+        histogram.update(120000);
+
+        long[] counts = histogram.getCounts();
+        assertThat(counts[0]).isEqualTo(2);
+        assertThat(counts[2]).isEqualTo(1);
+        assertThat(counts[counts.length - 1]).isEqualTo(1);
+        assertThat(histogram.getCount()).isEqualTo(4);
+        assertThat(histogram.getMax()).isEqualTo(120000);
+    }
+
+    @Test
+    public void getAverageShouldReturnTheMeanDuration() {
+        histogram.update(10);
+        histogram.update(30);
+
+        assertThat(histogram.getAverage()).isEqualTo(20);
+    }
+
+    @Test
+    public void getPercentileShouldReturnTheUpperBoundOfTheMatchingBucket() {
+        for (int i = 0; i < 99; i++) {
+            histogram.update(4);
+        }
+        histogram.update(700);
+
+        assertThat(histogram.getPercentile(50)).isEqualTo(5);
+        assertThat(histogram.getPercentile(99)).isEqualTo(5);
+        assertThat(histogram.getPercentile(100)).isEqualTo(700);
+    }
+
+    @Test
+    public void getPercentileShouldNotExceedTheMaximum() {
+        histogram.update(3);
+
+        assertThat(histogram.getPercentile(99)).isEqualTo(3);
+    }
+}
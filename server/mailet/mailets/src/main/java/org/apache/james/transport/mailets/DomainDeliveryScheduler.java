@@ -0,0 +1,339 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.james.lifecycle.api.Disposable;
+
+/**
+ * Decides, for each mail taken from the outgoing queue by a {@link RemoteDelivery} thread,
+ * whether it can be delivered now given the state of its destination domain.
+ * <p/>
+ * A domain may be attempted by at most <code>maxConcurrentDeliveriesPerDomain</code> threads at
+ * a time. After a temporary failure the domain backs off for <code>backoff</code> milliseconds,
+ * doubled for each further consecutive failure up to <code>maxBackoff</code>, then is probed by a
+ * single thread until a delivery succeeds. Mails which cannot be attempted are put back in the
+ * queue with a delay by the caller, so the threads keep serving the other domains instead of
+ * letting a slow destination hold every thread.
+ * <p/>
+ * The mails put back for a domain are given successive release times, spaced by the time a
+ * delivery slot of the domain is expected to free up: its average delivery time divided by the
+ * number of concurrent deliveries allowed. A deferred mail thus comes back about when it can be
+ * delivered instead of being requeued over and over, and the mails held back by a backoff come
+ * back one by one when it expires. Release times are bounded by <code>maxBackoff</code>: past it,
+ * mails are spread randomly over the second half of this bound.
+ */
+public class DomainDeliveryScheduler extends StandardMBean implements DomainDeliverySchedulerMBean, Disposable {
+
+    /**
+     * Minimum time in ms a delivery slot is expected to be held, used while the average delivery
+     * time of a domain is unknown or shorter
+     */
+    static final long MIN_DELIVERY_TIME = 1000;
+
+    /**
+     * Domains with no pending state are forgotten beyond this number of tracked domains
+     */
+    private static final int MAX_TRACKED_DOMAINS = 10000;
+
+    private static final class DomainState {
+        private long queueDepth;
+        private int inFlight;
+        private int consecutiveFailures;
+        private long backoffUntil;
+        private long nextRelease;
+        private long deliveredCount;
+        private long temporaryFailureCount;
+        private long deferredCount;
+        private long totalDeliveryTime;
+        private long maxDeliveryTime;
+
+        private boolean isIdle(long now) {
+            return queueDepth == 0 && inFlight == 0 && backoffUntil <= now;
+        }
+    }
+
+    private final Map<String, DomainState> domains = new HashMap<String, DomainState>();
+
+    private final int maxConcurrentDeliveriesPerDomain;
+
+    private final long backoff;
+
+    private final long maxBackoff;
+
+    private final Random random = new Random();
+
+    private MBeanServer mbeanServer;
+
+    private ObjectName objectName;
+
+    /**
+     * @param maxConcurrentDeliveriesPerDomain the number of threads which may deliver to one domain at the same time
+     * @param backoff the delay in ms a domain is left alone after a temporary failure, 0 to disable backing off
+     * @param maxBackoff the upper bound in ms of the backoff delay, which doubles with each consecutive failure,
+     *        and of the time a mail is deferred
+     */
+    public DomainDeliveryScheduler(int maxConcurrentDeliveriesPerDomain, long backoff, long maxBackoff) throws NotCompliantMBeanException {
+        super(DomainDeliverySchedulerMBean.class);
+        this.maxConcurrentDeliveriesPerDomain = maxConcurrentDeliveriesPerDomain;
+        this.backoff = backoff;
+        this.maxBackoff = Math.max(backoff, maxBackoff);
+    }
+
+    /**
+     * Registers this scheduler in the platform MBean server under the given name
+     */
+    public void registerMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName registeredName = new ObjectName(name);
+        server.registerMBean(this, registeredName);
+        mbeanServer = server;
+        objectName = registeredName;
+    }
+
+    /**
+     * @see org.apache.james.lifecycle.api.Disposable#dispose()
+     */
+    public void dispose() {
+        if (mbeanServer != null) {
+            try {
+                mbeanServer.unregisterMBean(objectName);
+            } catch (Exception e) {
+                // ignore here;
+            }
+            mbeanServer = null;
+        }
+    }
+
+    /**
+     * Records that a mail for the given domain was put in the outgoing queue
+     */
+    public synchronized void enqueued(String domain) {
+        getOrCreate(domain).queueDepth++;
+    }
+
+    /**
+     * Records that a mail for the given domain was taken from the outgoing queue
+     */
+    public synchronized void dequeued(String domain) {
+        DomainState state = getOrCreate(domain);
+        if (state.queueDepth > 0) {
+            state.queueDepth--;
+        }
+    }
+
+    /**
+     * Asks for the permission to deliver a mail to the given domain now. When granted, the
+     * caller must report the outcome with {@link #release(String, boolean, long)}.
+     *
+     * @return 0 if the delivery can start, otherwise the delay in ms after which the mail
+     *         should be attempted again
+     */
+    public synchronized long acquire(String domain) {
+        DomainState state = getOrCreate(domain);
+        long now = System.currentTimeMillis();
+        long turn = Math.max(MIN_DELIVERY_TIME, averageDeliveryTime(state)) / concurrencyLimit(state);
+        long earliest;
+        if (state.backoffUntil > now) {
+            earliest = state.backoffUntil;
+        } else if (state.inFlight >= concurrencyLimit(state)) {
+            earliest = now + turn;
+        } else {
+            state.inFlight++;
+            return 0;
+        }
+        state.deferredCount++;
+        long releaseAt = Math.max(earliest, state.nextRelease);
+        if (releaseAt - now > maxBackoff) {
+            // Too many mails wait for this domain to give each of them its own turn
+            return Math.max(1, maxBackoff / 2 + (long) (random.nextDouble() * (maxBackoff / 2)));
+        }
+        state.nextRelease = releaseAt + turn;
+        return Math.max(1, releaseAt - now);
+    }
+
+    /**
+     * Reports the end of a delivery attempt previously granted by {@link #acquire(String)}
+     *
+     * @param domain the destination domain
+     * @param temporaryFailure true if the domain could not take the mail and it has to be retried
+     *        later. Recipients rejected temporarily by a server of the domain, for instance
+     *        because their mailbox is full, do not make the domain back off.
+     * @param deliveryTime the duration of the attempt in ms
+     */
+    public synchronized void release(String domain, boolean temporaryFailure, long deliveryTime) {
+        DomainState state = getOrCreate(domain);
+        if (state.inFlight > 0) {
+            state.inFlight--;
+        }
+        state.totalDeliveryTime += deliveryTime;
+        state.maxDeliveryTime = Math.max(state.maxDeliveryTime, deliveryTime);
+        if (temporaryFailure) {
+            state.temporaryFailureCount++;
+            state.consecutiveFailures++;
+            if (backoff > 0) {
+                state.backoffUntil = System.currentTimeMillis() + backoffDelay(state.consecutiveFailures);
+            }
+        } else {
+            state.deliveredCount++;
+            state.consecutiveFailures = 0;
+            state.backoffUntil = 0;
+        }
+    }
+
+    /**
+     * While a domain is failing, only one thread probes it
+     */
+    private int concurrencyLimit(DomainState state) {
+        if (state.consecutiveFailures > 0 && backoff > 0) {
+            return 1;
+        }
+        return maxConcurrentDeliveriesPerDomain;
+    }
+
+    private long averageDeliveryTime(DomainState state) {
+        long attempts = state.deliveredCount + state.temporaryFailureCount;
+        if (attempts == 0) {
+            return 0;
+        }
+        return state.totalDeliveryTime / attempts;
+    }
+
+    private long backoffDelay(int consecutiveFailures) {
+        long delay = backoff;
+        for (int i = 1; i < consecutiveFailures && delay < maxBackoff; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxBackoff);
+    }
+
+    private DomainState getOrCreate(String domain) {
+        String key = domain.toLowerCase(Locale.US);
+        DomainState state = domains.get(key);
+        if (state == null) {
+            if (domains.size() >= MAX_TRACKED_DOMAINS) {
+                pruneIdleDomains();
+            }
+            state = new DomainState();
+            domains.put(key, state);
+        }
+        return state;
+    }
+
+    private void pruneIdleDomains() {
+        long now = System.currentTimeMillis();
+        Iterator<DomainState> states = domains.values().iterator();
+        while (states.hasNext()) {
+            if (states.next().isIdle(now)) {
+                states.remove();
+            }
+        }
+    }
+
+    private DomainState get(String domain) {
+        DomainState state = domains.get(domain.toLowerCase(Locale.US));
+        if (state == null) {
+            return new DomainState();
+        }
+        return state;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getMaxConcurrentDeliveriesPerDomain()
+     */
+    public int getMaxConcurrentDeliveriesPerDomain() {
+        return maxConcurrentDeliveriesPerDomain;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getDomains()
+     */
+    public synchronized String[] getDomains() {
+        return domains.keySet().toArray(new String[domains.size()]);
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getQueueDepth(java.lang.String)
+     */
+    public synchronized long getQueueDepth(String domain) {
+        return get(domain).queueDepth;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getInFlight(java.lang.String)
+     */
+    public synchronized int getInFlight(String domain) {
+        return get(domain).inFlight;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getDeliveredCount(java.lang.String)
+     */
+    public synchronized long getDeliveredCount(String domain) {
+        return get(domain).deliveredCount;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getTemporaryFailureCount(java.lang.String)
+     */
+    public synchronized long getTemporaryFailureCount(String domain) {
+        return get(domain).temporaryFailureCount;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getDeferredCount(java.lang.String)
+     */
+    public synchronized long getDeferredCount(String domain) {
+        return get(domain).deferredCount;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getAverageDeliveryTime(java.lang.String)
+     */
+    public synchronized long getAverageDeliveryTime(String domain) {
+        return averageDeliveryTime(get(domain));
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getMaxDeliveryTime(java.lang.String)
+     */
+    public synchronized long getMaxDeliveryTime(String domain) {
+        return get(domain).maxDeliveryTime;
+    }
+
+    /**
+     * @see org.apache.james.transport.mailets.DomainDeliverySchedulerMBean#getBackoffRemaining(java.lang.String)
+     */
+    public synchronized long getBackoffRemaining(String domain) {
+        return Math.max(0, get(domain).backoffUntil - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,109 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets;
+
+/**
+ * JMX MBean exposing the per destination domain state of a {@link RemoteDelivery} mailet
+ */
+public interface DomainDeliverySchedulerMBean {
+
+    /**
+     * Return the maximum number of concurrent deliveries to a single domain
+     *
+     * @return maxConcurrentDeliveriesPerDomain
+     */
+    int getMaxConcurrentDeliveriesPerDomain();
+
+    /**
+     * Return the domains for which delivery state is tracked
+     *
+     * @return domains
+     */
+    String[] getDomains();
+
+    /**
+     * Return the number of mails waiting in the outgoing queue for the given domain. Only mails
+     * queued since the mailet was started are accounted for.
+     *
+     * @param domain
+     * @return queueDepth
+     */
+    long getQueueDepth(String domain);
+
+    /**
+     * Return the number of deliveries to the given domain currently in progress
+     *
+     * @param domain
+     * @return inFlight
+     */
+    int getInFlight(String domain);
+
+    /**
+     * Return the number of delivery attempts to the given domain which did not end with a
+     * temporary failure
+     *
+     * @param domain
+     * @return deliveredCount
+     */
+    long getDeliveredCount(String domain);
+
+    /**
+     * Return the number of delivery attempts to the given domain which ended with a temporary
+     * failure
+     *
+     * @param domain
+     * @return temporaryFailureCount
+     */
+    long getTemporaryFailureCount(String domain);
+
+    /**
+     * Return how many times a mail for the given domain was put back in the queue because the
+     * domain was backing off or had reached its concurrency limit
+     *
+     * @param domain
+     * @return deferredCount
+     */
+    long getDeferredCount(String domain);
+
+    /**
+     * Return the average time in milliseconds of a delivery attempt to the given domain
+     *
+     * @param domain
+     * @return averageDeliveryTime
+     */
+    long getAverageDeliveryTime(String domain);
+
+    /**
+     * Return the longest time in milliseconds of a delivery attempt to the given domain
+     *
+     * @param domain
+     * @return maxDeliveryTime
+     */
+    long getMaxDeliveryTime(String domain);
+
+    /**
+     * Return the number of milliseconds before mails for the given domain are attempted again,
+     * or 0 if the domain is not backing off
+     *
+     * @param domain
+     * @return backoffRemaining
+     */
+    long getBackoffRemaining(String domain);
+}
@@ -43,6 +43,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.NotCompliantMBeanException;
 import javax.mail.Address;
 import javax.mail.MessagingException;
 import javax.mail.SendFailedException;
@@ -53,6 +55,8 @@ import javax.mail.internet.MimeMultipart;
 import javax.mail.internet.MimePart;
 import javax.mail.internet.ParseException;
 
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
 import com.sun.mail.smtp.SMTPTransport;
 import org.apache.james.dnsservice.api.DNSService;
 import org.apache.james.dnsservice.api.TemporaryResolutionException;
@@ -142,7 +146,25 @@ import org.apache.mailet.base.GenericMailet;
  * Note: This facility should be used with extreme care by expert users with a thorough knowledge of the relevant RFCs and
  * the ability to perform their own problem resolutions.</li>
  * <li><b>debug</b> (optional) - a Boolean (true/false) indicating whether debugging is on. Default is false.</li>
+ * <li><b>maxMessagesPerConnection</b> (optional) - an Integer for the number of mails sent over one SMTP connection before it
+ * is closed. When greater than 1, connections are kept open after a successful delivery and reused, after a <code>RSET</code>,
+ * by any delivery thread sending mail to the same server. Default is 1, which opens a new connection for every mail.</li>
+ * <li><b>connectionIdleTimeout</b> (optional) - a String for the time an unused pooled connection is kept open, such as
+ * <code>30 seconds</code>. Only used when <code>maxMessagesPerConnection</code> is greater than 1. Default is 30 seconds.</li>
+ * <li><b>maxConcurrentDeliveriesPerDomain</b> (optional) - an Integer for the number of delivery threads which may deliver mail to
+ * the same destination domain at the same time. Mails over this limit are put back in the queue until a delivery to the domain
+ * is expected to end, leaving the threads to other domains. Default is <code>deliveryThreads</code>, i.e. no limit. When a
+ * gateway is used, the limit applies to the gateway.</li>
+ * <li><b>domainBackoff</b> (optional) - a String for the time during which a domain is not attempted after a temporary delivery
+ * failure, such as <code>1 minute</code>. Mails for it are put back in the queue, without counting as a retry, and the delay
+ * doubles with each consecutive failure. Once it elapses a single thread attempts the domain until a delivery succeeds.
+ * Recipients temporarily rejected by a server of the domain, for instance because their mailbox is full, do not make it
+ * back off. Default is 0, which disables backing off.</li>
+ * <li><b>maxDomainBackoff</b> (optional) - a String for the upper bound of the domain backoff time, and of the time a mail is
+ * put back in the queue for its domain. Default is 1 hour.</li>
  * </ul>
+ * <p>The per domain queue depth, concurrency, backoff and delivery latency are exposed over JMX under
+ * <code>org.apache.james:type=component,component=mailetcontainer,name=remotedelivery,queue=&lt;outgoing&gt;</code>.
  */
 @SuppressWarnings("deprecation")
 public class RemoteDelivery extends GenericMailet implements Runnable {
@@ -260,6 +282,41 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
 
     private boolean isSSLEnable = false;
 
+    /**
+     * Number of mails sent over one SMTP connection (Defaults to 1, no reuse)
+     */
+    private int maxMessagesPerConnection = 1;
+
+    /**
+     * Time in ms an unused SMTP connection is kept open (Defaults to 30 seconds)
+     */
+    private long connectionIdleTimeout = 30000;
+
+    /**
+     * Connections shared by the delivery threads, null when connections are not reused
+     */
+    private SMTPConnectionPool connectionPool;
+
+    /**
+     * Number of threads delivering to one domain at the same time (Defaults to deliveryThreads)
+     */
+    private int maxConcurrentDeliveriesPerDomain;
+
+    /**
+     * Time in ms a domain is left alone after a temporary failure (Defaults to 0, disabled)
+     */
+    private long domainBackoff = 0;
+
+    /**
+     * Upper bound in ms of the domain backoff (Defaults to 1 hour)
+     */
+    private long maxDomainBackoff = 3600000;
+
+    /**
+     * Per destination domain concurrency, backoff and statistics
+     */
+    private DomainDeliveryScheduler domainScheduler;
+
     @Inject
     public void setDomainList(DomainList domainList) {
         this.domainList = domainList;
@@ -440,6 +497,68 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
 
         // Start Workers Threads.
         workersThreadCount = Integer.parseInt(getInitParameter("deliveryThreads"));
+
+        try {
+            if (getInitParameter("maxMessagesPerConnection") != null) {
+                maxMessagesPerConnection = Integer.parseInt(getInitParameter("maxMessagesPerConnection"));
+            }
+        } catch (Exception e) {
+            log("Invalid maxMessagesPerConnection setting: " + getInitParameter("maxMessagesPerConnection"));
+        }
+
+        try {
+            if (getInitParameter("connectionIdleTimeout") != null) {
+                connectionIdleTimeout = TimeConverter.getMilliSeconds(getInitParameter("connectionIdleTimeout"));
+            }
+        } catch (Exception e) {
+            log("Invalid connectionIdleTimeout setting: " + getInitParameter("connectionIdleTimeout"));
+        }
+
+        if (maxMessagesPerConnection > 1) {
+            // A delivery thread holds at most one connection at a time, so keeping more idle
+            // connections than threads would only keep sockets open for hosts not used lately
+            connectionPool = new SMTPConnectionPool(maxMessagesPerConnection, connectionIdleTimeout, workersThreadCount);
+        }
+
+        maxConcurrentDeliveriesPerDomain = workersThreadCount;
+        try {
+            if (getInitParameter("maxConcurrentDeliveriesPerDomain") != null) {
+                maxConcurrentDeliveriesPerDomain = Integer.parseInt(getInitParameter("maxConcurrentDeliveriesPerDomain"));
+            }
+        } catch (Exception e) {
+            log("Invalid maxConcurrentDeliveriesPerDomain setting: " + getInitParameter("maxConcurrentDeliveriesPerDomain"));
+        }
+        if (maxConcurrentDeliveriesPerDomain < 1) {
+            log("Invalid maxConcurrentDeliveriesPerDomain setting: " + maxConcurrentDeliveriesPerDomain + ", using " + workersThreadCount);
+            maxConcurrentDeliveriesPerDomain = workersThreadCount;
+        }
+
+        try {
+            if (getInitParameter("domainBackoff") != null) {
+                domainBackoff = TimeConverter.getMilliSeconds(getInitParameter("domainBackoff"));
+            }
+        } catch (Exception e) {
+            log("Invalid domainBackoff setting: " + getInitParameter("domainBackoff"));
+        }
+
+        try {
+            if (getInitParameter("maxDomainBackoff") != null) {
+                maxDomainBackoff = TimeConverter.getMilliSeconds(getInitParameter("maxDomainBackoff"));
+            }
+        } catch (Exception e) {
+            log("Invalid maxDomainBackoff setting: " + getInitParameter("maxDomainBackoff"));
+        }
+
+        try {
+            domainScheduler = new DomainDeliveryScheduler(maxConcurrentDeliveriesPerDomain, domainBackoff, maxDomainBackoff);
+        } catch (NotCompliantMBeanException e) {
+            throw new MessagingException("Unable to create the domain delivery scheduler", e);
+        }
+        try {
+            domainScheduler.registerMBean("org.apache.james:type=component,component=mailetcontainer,name=remotedelivery,queue=" + outgoing);
+        } catch (JMException e) {
+            log("Unable to register the domain delivery statistics of queue " + outgoing + " in JMX: " + e.getMessage());
+        }
         initDeliveryThreads();
     }
 
@@ -511,6 +630,19 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
         return delayTimes[retry_count - 1];
     }
 
+    /**
+     * This class is used to tell the domain scheduler why a delivery attempt
+     * failed.
+     */
+    private final static class DeliveryAttempt {
+        /**
+         * Set when a server of the destination answered but temporarily
+         * rejected some recipients, for instance because their mailbox is
+         * full. The destination itself is working.
+         */
+        private boolean recipientsRejected = false;
+    }
+
     /**
      * This class is used to hold a delay time and its corresponding number of
      * retries.
@@ -670,6 +802,7 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                 mail.setName(nameBuffer);
                 try {
                     queue.enQueue(mail);
+                    domainScheduler.enqueued(entry.getKey());
                 } catch (MailQueueException e) {
                     log("Unable to queue mail " + mail.getName() + " for recipients + " + mail.getRecipients().toString(), e);
                 }
@@ -685,6 +818,10 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
             // (triggered by storage)
             try {
                 queue.enQueue(mail);
+                String domain = getDestinationDomain(mail);
+                if (domain != null) {
+                    domainScheduler.enqueued(domain);
+                }
             } catch (MailQueueException e) {
                 log("Unable to queue mail " + mail.getName() + " for recipients + " + mail.getRecipients().toString(), e);
             }
@@ -707,6 +844,13 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
             t.interrupt();
         }
         notifyAll();
+
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+        if (domainScheduler != null) {
+            domainScheduler.dispose();
+        }
     }
 
     /**
@@ -777,15 +921,44 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                     Mail mail = queueItem.getMail();
 
                     String key = mail.getName();
+                    String domain = getDestinationDomain(mail);
 
                     try {
+                        if (domain != null) {
+                            domainScheduler.dequeued(domain);
+                            long wait = domainScheduler.acquire(domain);
+                            if (wait > 0) {
+                                // The domain is backing off or busy: put the mail back without
+                                // counting a retry and leave this thread to other domains
+                                if (isDebug) {
+                                    log("Deferring mail " + key + " to " + domain + " for " + wait + " ms");
+                                }
+                                queue.enQueue(mail, wait, TimeUnit.MILLISECONDS);
+                                domainScheduler.enqueued(domain);
+                                LifecycleUtil.dispose(mail);
+                                mail = null;
+                                queueItem.done(true);
+                                continue;
+                            }
+                        }
+
                         if (isDebug) {
                             String message = Thread.currentThread().getName() + " will process mail " + key;
                             log(message);
                         }
 
                         // Deliver message
-                        if (deliver(mail, session)) {
+                        boolean delivered = false;
+                        DeliveryAttempt attempt = new DeliveryAttempt();
+                        long start = System.currentTimeMillis();
+                        try {
+                            delivered = deliver(mail, session, attempt);
+                        } finally {
+                            if (domain != null) {
+                                domainScheduler.release(domain, !delivered && !attempt.recipientsRejected, System.currentTimeMillis() - start);
+                            }
+                        }
+                        if (delivered) {
                             // Message was successfully delivered/fully
                             // failed...
                             // delete it
@@ -810,6 +983,9 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                                 mail.setAttribute(MailPrioritySupport.MAIL_PRIORITY, MailPrioritySupport.LOW_PRIORITY);
                             }
                             queue.enQueue(mail, delay, TimeUnit.MILLISECONDS);
+                            if (domain != null) {
+                                domainScheduler.enqueued(domain);
+                            }
                             LifecycleUtil.dispose(mail);
 
                             // This is an update, so we have to unlock and
@@ -864,10 +1040,11 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
      *
      * @param mail    org.apache.james.core.MailImpl
      * @param session javax.mail.Session
+     * @param attempt records whether the failure only concerns some recipients
      * @return boolean Whether the delivery was successful and the message can
      *         be deleted
      */
-    private boolean deliver(Mail mail, Session session) {
+    private boolean deliver(Mail mail, Session session, DeliveryAttempt attempt) {
         try {
             if (isDebug) {
                 log("Attempting to deliver " + mail.getName());
@@ -928,11 +1105,34 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
             }
 
             MessagingException lastError = null;
-
-            while (targetServers.hasNext()) {
+            HostAddress staleConnectionServer = null;
+
+            while (staleConnectionServer != null || targetServers.hasNext()) {
+                // A server whose pooled connection turned out to be stale is retried once on a new connection
+                boolean retryingStaleConnection = staleConnectionServer != null;
+                HostAddress outgoingMailServer = retryingStaleConnection ? staleConnectionServer : targetServers.next();
+                staleConnectionServer = null;
+                boolean reusedConnection = false;
                 try {
 
-                    Properties props = session.getProperties();
+                    // When connections are reused each of them gets its own session, as the
+                    // envelope sender is read from the session properties at sending time
+                    Session transportSession = session;
+                    SMTPConnectionPool.PooledConnection pooledConnection = null;
+                    if (connectionPool != null) {
+                        if (!retryingStaleConnection) {
+                            pooledConnection = connectionPool.lease(SMTPConnectionPool.keyOf(outgoingMailServer));
+                        }
+                        if (pooledConnection != null) {
+                            transportSession = pooledConnection.getSession();
+                        } else {
+                            Properties connectionProps = new Properties();
+                            connectionProps.putAll(session.getProperties());
+                            transportSession = obtainSession(connectionProps);
+                        }
+                    }
+
+                    Properties props = transportSession.getProperties();
                     if (mail.getSender() == null) {
                         props.put("mail.smtp.from", "<>");
                     } else {
@@ -940,7 +1140,6 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                         props.put("mail.smtp.from", sender);
                     }
 
-                    HostAddress outgoingMailServer = targetServers.next();
                     StringBuilder logMessageBuffer = new StringBuilder(256).append("Attempting delivery of ").append(mail.getName()).append(" to host ").append(outgoingMailServer.getHostName()).append(" at ").append(outgoingMailServer.getHost()).append(" from ").append(props.get("mail.smtp.from"))
                             .append(" for addresses ").append(Arrays.asList(addr));
                     log(logMessageBuffer.toString());
@@ -955,31 +1154,43 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                     // NOTIFY= after RCPT TO line.
 
                     SMTPTransport transport = null;
+                    boolean sent = false;
                     try {
-                        transport =  (SMTPTransport) session.getTransport(outgoingMailServer);
-                        transport.setLocalHost( props.getProperty("mail.smtp.localhost", heloName) );
-                        try {
-                            if (authUser != null) {
-                                transport.connect(outgoingMailServer.getHostName(), authUser, authPass);
-                            } else {
-                                transport.connect();
-                            }
-                        } catch (MessagingException me) {
-                            // Any error on connect should cause the mailet to
-                            // attempt
-                            // to connect to the next SMTP server associated
-                            // with this
-                            // MX record. Just log the exception. We'll worry
-                            // about
-                            // failing the message at the end of the loop.
-
-                            // Also include the stacktrace if debug is enabled. See JAMES-1257
+                        if (pooledConnection != null) {
+                            transport = pooledConnection.getTransport();
+                            reusedConnection = true;
                             if (isDebug) {
-                                log(me.getMessage(), me.getCause());
-                            } else {
-                                log(me.getMessage());
+                                log("Reusing connection to " + outgoingMailServer.getHostName() + " at " + outgoingMailServer.getHost() + " after " + pooledConnection.getSentCount() + " mails");
+                            }
+                        } else {
+                            transport =  (SMTPTransport) transportSession.getTransport(outgoingMailServer);
+                            transport.setLocalHost( props.getProperty("mail.smtp.localhost", heloName) );
+                            try {
+                                if (authUser != null) {
+                                    transport.connect(outgoingMailServer.getHostName(), authUser, authPass);
+                                } else {
+                                    transport.connect();
+                                }
+                            } catch (MessagingException me) {
+                                // Any error on connect should cause the mailet to
+                                // attempt
+                                // to connect to the next SMTP server associated
+                                // with this
+                                // MX record. Just log the exception. We'll worry
+                                // about
+                                // failing the message at the end of the loop.
+
+                                // Also include the stacktrace if debug is enabled. See JAMES-1257
+                                if (isDebug) {
+                                    log(me.getMessage(), me.getCause());
+                                } else {
+                                    log(me.getMessage());
+                                }
+                                continue;
+                            }
+                            if (connectionPool != null) {
+                                pooledConnection = connectionPool.newConnection(SMTPConnectionPool.keyOf(outgoingMailServer), transportSession, transport);
                             }
-                            continue;
                         }
                         // if the transport is a SMTPTransport (from sun) some
                         // performance enhancement can be done.
@@ -1029,8 +1240,13 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                             }
                         }
                         transport.sendMessage(message, addr);
+                        sent = true;
                     } finally {
-                        if (transport != null) {
+                        if (sent && pooledConnection != null) {
+                            // Keep the connection open for the next mail to this server
+                            connectionPool.release(pooledConnection);
+                            transport = null;
+                        } else if (transport != null) {
                             try {
                                 // James-899: transport.close() sends QUIT to
                                 // the server; if that fails
@@ -1097,6 +1313,11 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                         // If it's an IO exception with no nested exception,
                         // it's probably
                         // some socket or weird I/O related problem.
+                        if (reusedConnection) {
+                            // The remote server most likely closed the pooled connection while it was idle
+                            log("Pooled connection to " + outgoingMailServer.getHostName() + " at " + outgoingMailServer.getHost() + " is stale, retrying on a new connection");
+                            staleConnectionServer = outgoingMailServer;
+                        }
                         lastError = me;
                         continue;
                     }
@@ -1121,6 +1342,7 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
             }
         } catch (SendFailedException sfe) {
             logSendFailedException(sfe);
+            attempt.recipientsRejected = isRecipientRejection(sfe);
 
             // Copy the recipients as direct modification may not be possible
             Collection<MailAddress> recipients = new ArrayList<MailAddress>(mail.getRecipients());
@@ -1347,6 +1569,35 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
         return new IllegalStateException("Exception invoking " + getter + " on a " + target.getClass() + " object");
     }
 
+    /**
+     * Tells whether a failed send was a rejection of some recipients by a
+     * working server rather than a failure of the destination: either some
+     * recipients were accepted, or a recipient was refused with a per-mailbox
+     * reply such as 452 / 4.2.2 (mailbox full). A temporary failure of every
+     * recipient, greylisting for instance, does not qualify.
+     */
+    static boolean isRecipientRejection(SendFailedException sfe) {
+        Address[] validSent = sfe.getValidSentAddresses();
+        if (validSent != null && validSent.length > 0) {
+            return true;
+        }
+        Exception e = sfe;
+        while (e instanceof MessagingException) {
+            if (e instanceof SMTPAddressFailedException && isMailboxReply(((SMTPAddressFailedException) e).getReturnCode(), e.getMessage())) {
+                return true;
+            }
+            if (e instanceof SMTPSendFailedException && isMailboxReply(((SMTPSendFailedException) e).getReturnCode(), e.getMessage())) {
+                return true;
+            }
+            e = ((MessagingException) e).getNextException();
+        }
+        return false;
+    }
+
+    private static boolean isMailboxReply(int returnCode, String response) {
+        return returnCode == 452 || (response != null && response.contains("4.2.2"));
+    }
+
     /*
      * private method to log the extended SendFailedException introduced in
      * JavaMail 1.3.2.
@@ -1598,6 +1849,32 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
         return Session.getInstance(props);
     }
 
+    /**
+     * Returns the destination the given mail is scheduled against. When a gateway is used, every
+     * mail goes through it, so this is the gateway servers list. Otherwise this is the domain of
+     * the first recipient, as mails are split per domain before being queued.
+     *
+     * @param mail the mail to deliver
+     * @return the lower cased destination, or null if the mail has no recipient
+     */
+    private String getDestinationDomain(Mail mail) {
+        if (gatewayServer != null) {
+            StringBuilder gateways = new StringBuilder();
+            for (String server : gatewayServer) {
+                if (gateways.length() > 0) {
+                    gateways.append(',');
+                }
+                gateways.append(server);
+            }
+            return gateways.toString().toLowerCase(Locale.US);
+        }
+        Collection<MailAddress> recipients = mail.getRecipients();
+        if (recipients == null || recipients.isEmpty()) {
+            return null;
+        }
+        return recipients.iterator().next().getDomain().toLowerCase(Locale.US);
+    }
+
     /**
      * Returns an Iterator over org.apache.mailet.HostAddress, a specialized
      * subclass of javax.mail.URLName, which provides location information for
@@ -0,0 +1,270 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.mail.smtp.SMTPTransport;
+import org.apache.mailet.HostAddress;
+
+/**
+ * Keeps SMTP connections opened by {@link RemoteDelivery} alive between deliveries, so that
+ * consecutive mails for the same remote host go over one session instead of paying for a new
+ * TCP (and TLS) handshake each time.
+ * <p/>
+ * The pool is shared by all delivery threads. Idle connections are kept in least recently used
+ * order; a connection is leased by one thread at a time, reset with <code>RSET</code> before it
+ * is handed out again, and closed once it has carried <code>maxMessagesPerConnection</code> mails,
+ * has been idle longer than <code>idleTimeout</code>, or when more than <code>maxIdle</code>
+ * connections are waiting.
+ * <p/>
+ * Expired connections are closed by a background reaper running every <code>idleTimeout</code>,
+ * so that sockets to hosts no longer delivered to do not stay open until the next lease.
+ */
+class SMTPConnectionPool {
+
+    private static final int RSET_OK = 250;
+
+    /**
+     * An established connection together with the JavaMail session it was created from. Each
+     * connection owns its session because the envelope sender is read from the session
+     * properties when a message is sent.
+     */
+    static final class PooledConnection {
+        private final String key;
+        private final Session session;
+        private final SMTPTransport transport;
+        private int sentCount;
+        private long lastUsed;
+
+        PooledConnection(String key, Session session, SMTPTransport transport) {
+            this.key = key;
+            this.session = session;
+            this.transport = transport;
+        }
+
+        Session getSession() {
+            return session;
+        }
+
+        SMTPTransport getTransport() {
+            return transport;
+        }
+
+        int getSentCount() {
+            return sentCount;
+        }
+    }
+
+    private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+
+    private final int maxMessagesPerConnection;
+
+    private final long idleTimeout;
+
+    private final int maxIdle;
+
+    private final ScheduledExecutorService reaper;
+
+    private boolean closed = false;
+
+    /**
+     * @param maxMessagesPerConnection the number of mails after which a connection is closed
+     * @param idleTimeout the number of milliseconds an unused connection is kept open
+     * @param maxIdle the maximum number of idle connections kept, all hosts included
+     */
+    SMTPConnectionPool(int maxMessagesPerConnection, long idleTimeout, int maxIdle) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.idleTimeout = idleTimeout;
+        this.maxIdle = maxIdle;
+        if (idleTimeout > 0 && maxIdle > 0) {
+            this.reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("Remote delivery connection reaper")
+                .setDaemon(true)
+                .build());
+            this.reaper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    closeExpired();
+                }
+            }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+        } else {
+            this.reaper = null;
+        }
+    }
+
+    /**
+     * Returns the pool key of the given server: connections are only reused for the same host
+     * name and address, as both take part in the SMTP dialog.
+     */
+    static String keyOf(HostAddress server) {
+        return server.getHostName() + "/" + server.toString();
+    }
+
+    /**
+     * Wraps a freshly connected transport so that it can be returned to this pool with
+     * {@link #release(PooledConnection)} once the mail has been sent.
+     */
+    PooledConnection newConnection(String key, Session session, SMTPTransport transport) {
+        return new PooledConnection(key, session, transport);
+    }
+
+    /**
+     * Takes an idle connection to the given host out of the pool, or returns null if none is
+     * available. The returned connection has been reset and is ready for a new mail transaction.
+     */
+    PooledConnection lease(String key) {
+        while (true) {
+            PooledConnection connection = poll(key);
+            if (connection == null) {
+                return null;
+            }
+            if (reset(connection)) {
+                return connection;
+            }
+            quit(connection);
+        }
+    }
+
+    /**
+     * Gives back a connection which has successfully sent a mail. It is closed instead of being
+     * pooled if it reached the configured number of mails or the pool is shutting down.
+     */
+    void release(PooledConnection connection) {
+        connection.sentCount++;
+        connection.lastUsed = System.currentTimeMillis();
+        PooledConnection evicted = null;
+        synchronized (this) {
+            if (!closed && connection.sentCount < maxMessagesPerConnection && maxIdle > 0) {
+                idle.addLast(connection);
+                if (idle.size() > maxIdle) {
+                    evicted = idle.removeFirst();
+                }
+                connection = null;
+            }
+        }
+        if (connection != null) {
+            quit(connection);
+        }
+        if (evicted != null) {
+            quit(evicted);
+        }
+    }
+
+    /**
+     * Returns the number of connections currently waiting in this pool.
+     */
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes the connections which have been idle longer than <code>idleTimeout</code>.
+     */
+    void closeExpired() {
+        LinkedList<PooledConnection> expired;
+        synchronized (this) {
+            expired = removeExpired();
+        }
+        for (PooledConnection connection : expired) {
+            quit(connection);
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the reaper. Connections released afterwards are
+     * closed right away.
+     */
+    void close() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        LinkedList<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new LinkedList<PooledConnection>(idle);
+            idle.clear();
+        }
+        for (PooledConnection connection : toClose) {
+            quit(connection);
+        }
+    }
+
+    private PooledConnection poll(String key) {
+        LinkedList<PooledConnection> expired;
+        PooledConnection found = null;
+        synchronized (this) {
+            expired = removeExpired();
+            // Prefer the most recently used connection: it is the least likely to have been
+            // dropped by the remote server
+            Iterator<PooledConnection> connections = idle.descendingIterator();
+            while (connections.hasNext()) {
+                PooledConnection connection = connections.next();
+                if (connection.key.equals(key)) {
+                    connections.remove();
+                    found = connection;
+                    break;
+                }
+            }
+        }
+        for (PooledConnection connection : expired) {
+            quit(connection);
+        }
+        return found;
+    }
+
+    /**
+     * Idle connections are in least recently used order, so the expired ones are at the head.
+     * Must be called while holding the lock of this pool.
+     */
+    private LinkedList<PooledConnection> removeExpired() {
+        LinkedList<PooledConnection> expired = new LinkedList<PooledConnection>();
+        long expiry = System.currentTimeMillis() - idleTimeout;
+        while (!idle.isEmpty() && idle.getFirst().lastUsed < expiry) {
+            expired.add(idle.removeFirst());
+        }
+        return expired;
+    }
+
+    private boolean reset(PooledConnection connection) {
+        try {
+            return connection.transport.simpleCommand("RSET") == RSET_OK;
+        } catch (MessagingException e) {
+            // The server closed the connection while it was idle
+            return false;
+        }
+    }
+
+    private void quit(PooledConnection connection) {
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            // The mails sent over this connection are already delivered, see JAMES-899
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DomainDeliverySchedulerTest {
+    private static final String DOMAIN = "example.com";
+    private static final String OTHER_DOMAIN = "other.com";
+    private static final long ONE_HOUR = 3600000;
+
+    private DomainDeliveryScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new DomainDeliveryScheduler(2, ONE_HOUR, 4 * ONE_HOUR);
+    }
+
+    @Test
+    public void acquireShouldBeGrantedUpToTheConcurrencyLimit() {
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+
+        assertThat(scheduler.acquire(DOMAIN)).isGreaterThan(0);
+        assertThat(scheduler.getInFlight(DOMAIN)).isEqualTo(2);
+        assertThat(scheduler.getDeferredCount(DOMAIN)).isEqualTo(1);
+    }
+
+    @Test
+    public void deferredMailsShouldBeGivenSuccessiveTurns() {
+        scheduler.acquire(DOMAIN);
+        scheduler.acquire(DOMAIN);
+
+        long first = scheduler.acquire(DOMAIN);
+        long second = scheduler.acquire(DOMAIN);
+        long third = scheduler.acquire(DOMAIN);
+
+        assertThat(first).isGreaterThan(0);
+        assertThat(second).isGreaterThan(first);
+        assertThat(third).isGreaterThan(second);
+    }
+
+    @Test
+    public void turnsShouldScaleWithTheDeliveryTime() {
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, false, 20000);
+        scheduler.acquire(DOMAIN);
+        scheduler.acquire(DOMAIN);
+
+        long first = scheduler.acquire(DOMAIN);
+        long second = scheduler.acquire(DOMAIN);
+
+        assertThat(first).isGreaterThan(DomainDeliveryScheduler.MIN_DELIVERY_TIME);
+        assertThat(second - first).isGreaterThan(DomainDeliveryScheduler.MIN_DELIVERY_TIME);
+    }
+
+    @Test
+    public void mailsHeldByABackoffShouldNotAllComeBackWhenItExpires() {
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, true, 10);
+
+        long first = scheduler.acquire(DOMAIN);
+        long second = scheduler.acquire(DOMAIN);
+
+        assertThat(first).isLessThanOrEqualTo(ONE_HOUR);
+        assertThat(second - first).isGreaterThanOrEqualTo(DomainDeliveryScheduler.MIN_DELIVERY_TIME - 10);
+    }
+
+    @Test
+    public void deferralShouldBeBoundedByTheMaximumBackoff() throws Exception {
+        scheduler = new DomainDeliveryScheduler(1, 0, 10000);
+        scheduler.acquire(DOMAIN);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(scheduler.acquire(DOMAIN)).isGreaterThan(0).isLessThanOrEqualTo(10000);
+        }
+    }
+
+    @Test
+    public void busyDomainShouldNotDelayOtherDomains() {
+        scheduler.acquire(DOMAIN);
+        scheduler.acquire(DOMAIN);
+
+        assertThat(scheduler.acquire(OTHER_DOMAIN)).isEqualTo(0);
+    }
+
+    @Test
+    public void releaseShouldFreeASlot() {
+        scheduler.acquire(DOMAIN);
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, false, 10);
+
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+    }
+
+    @Test
+    public void temporaryFailureShouldMakeTheDomainBackOff() {
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, true, 10);
+
+        long wait = scheduler.acquire(DOMAIN);
+        assertThat(wait).isGreaterThan(ONE_HOUR - 1000).isLessThanOrEqualTo(ONE_HOUR);
+        assertThat(scheduler.getBackoffRemaining(DOMAIN)).isGreaterThan(0);
+        assertThat(scheduler.acquire(OTHER_DOMAIN)).isEqualTo(0);
+    }
+
+    @Test
+    public void backoffShouldDoubleUpToTheMaximum() {
+        for (int i = 0; i < 4; i++) {
+            scheduler.release(DOMAIN, true, 10);
+        }
+
+        assertThat(scheduler.getBackoffRemaining(DOMAIN)).isGreaterThan(3 * ONE_HOUR).isLessThanOrEqualTo(4 * ONE_HOUR);
+    }
+
+    @Test
+    public void failingDomainShouldBeProbedByASingleThreadOnceBackoffElapsed() throws Exception {
+        scheduler = new DomainDeliveryScheduler(2, 1, 1);
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, true, 10);
+        Thread.sleep(10);
+
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+        assertThat(scheduler.acquire(DOMAIN)).isGreaterThan(0);
+    }
+
+    @Test
+    public void successShouldResetTheBackoff() {
+        scheduler.release(DOMAIN, true, 10);
+        scheduler.release(DOMAIN, false, 10);
+
+        assertThat(scheduler.getBackoffRemaining(DOMAIN)).isEqualTo(0);
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+    }
+
+    @Test
+    public void temporaryFailureShouldNotBackOffWhenDisabled() throws Exception {
+        scheduler = new DomainDeliveryScheduler(2, 0, ONE_HOUR);
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, true, 10);
+
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+        assertThat(scheduler.acquire(DOMAIN)).isEqualTo(0);
+    }
+
+    @Test
+    public void queueDepthShouldTrackQueuedMails() {
+        scheduler.enqueued(DOMAIN);
+        scheduler.enqueued(DOMAIN);
+        scheduler.dequeued(DOMAIN);
+
+        assertThat(scheduler.getQueueDepth(DOMAIN)).isEqualTo(1);
+    }
+
+    @Test
+    public void queueDepthShouldNotBeNegativeForMailsQueuedBeforeStart() {
+        scheduler.dequeued(DOMAIN);
+
+        assertThat(scheduler.getQueueDepth(DOMAIN)).isEqualTo(0);
+    }
+
+    @Test
+    public void deliveryTimesShouldBeRecorded() {
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, false, 100);
+        scheduler.acquire(DOMAIN);
+        scheduler.release(DOMAIN, true, 300);
+
+        assertThat(scheduler.getAverageDeliveryTime(DOMAIN)).isEqualTo(200);
+        assertThat(scheduler.getMaxDeliveryTime(DOMAIN)).isEqualTo(300);
+        assertThat(scheduler.getDeliveredCount(DOMAIN)).isEqualTo(1);
+        assertThat(scheduler.getTemporaryFailureCount(DOMAIN)).isEqualTo(1);
+    }
+
+    @Test
+    public void domainsShouldBeCaseInsensitive() {
+        scheduler.enqueued("EXAMPLE.com");
+
+        assertThat(scheduler.getDomains()).containsOnly(DOMAIN);
+        assertThat(scheduler.getQueueDepth("Example.Com")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,66 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.mail.Address;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+
+public class RemoteDeliveryTest {
+    private static final Address[] NONE = new Address[0];
+
+    @Test
+    public void temporaryFailureOfEveryRecipientShouldNotBeARecipientRejection() throws Exception {
+        InternetAddress first = new InternetAddress("first@example.com");
+        InternetAddress second = new InternetAddress("second@example.com");
+        SendFailedException sfe = new SendFailedException("Invalid Addresses",
+            new SMTPAddressFailedException(first, "RCPT TO:<first@example.com>", 450, "450 4.7.1 Greylisted, try again later"),
+            NONE, new Address[] {first, second}, NONE);
+        sfe.setNextException(new SMTPAddressFailedException(second, "RCPT TO:<second@example.com>", 450, "450 4.7.1 Greylisted, try again later"));
+
+        assertThat(RemoteDelivery.isRecipientRejection(sfe)).isFalse();
+    }
+
+    @Test
+    public void partialSendShouldBeARecipientRejection() throws Exception {
+        InternetAddress first = new InternetAddress("first@example.com");
+        InternetAddress second = new InternetAddress("second@example.com");
+        SendFailedException sfe = new SendFailedException("Invalid Addresses",
+            new SMTPAddressFailedException(second, "RCPT TO:<second@example.com>", 450, "450 4.7.1 Greylisted, try again later"),
+            new Address[] {first}, new Address[] {second}, NONE);
+
+        assertThat(RemoteDelivery.isRecipientRejection(sfe)).isTrue();
+    }
+
+    @Test
+    public void fullMailboxShouldBeARecipientRejection() throws Exception {
+        InternetAddress first = new InternetAddress("first@example.com");
+        SendFailedException sfe = new SendFailedException("Invalid Addresses",
+            new SMTPAddressFailedException(first, "RCPT TO:<first@example.com>", 452, "452 4.2.2 Mailbox full"),
+            NONE, new Address[] {first}, NONE);
+
+        assertThat(RemoteDelivery.isRecipientRejection(sfe)).isTrue();
+    }
+}
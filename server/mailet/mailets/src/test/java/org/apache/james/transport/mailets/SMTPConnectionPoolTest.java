@@ -0,0 +1,167 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+import com.sun.mail.smtp.SMTPTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SMTPConnectionPoolTest {
+    private static final String KEY = "mx.example.com/smtp://1.2.3.4";
+    private static final String OTHER_KEY = "mx.other.com/smtp://5.6.7.8";
+
+    private Session session;
+    private SMTPConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        session = Session.getInstance(new Properties());
+        pool = new SMTPConnectionPool(3, 60000, 2);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    private SMTPTransport healthyTransport() throws MessagingException {
+        SMTPTransport transport = mock(SMTPTransport.class);
+        when(transport.simpleCommand("RSET")).thenReturn(250);
+        return transport;
+    }
+
+    @Test
+    public void leaseShouldReturnNullWhenNoConnectionIsIdle() {
+        assertThat(pool.lease(KEY)).isNull();
+    }
+
+    @Test
+    public void releasedConnectionShouldBeResetAndReused() throws Exception {
+        SMTPTransport transport = healthyTransport();
+        SMTPConnectionPool.PooledConnection connection = pool.newConnection(KEY, session, transport);
+        pool.release(connection);
+
+        assertThat(pool.lease(KEY)).isSameAs(connection);
+        verify(transport).simpleCommand("RSET");
+        verify(transport, never()).close();
+    }
+
+    @Test
+    public void connectionShouldNotBeReusedForAnotherHost() throws Exception {
+        pool.release(pool.newConnection(KEY, session, healthyTransport()));
+
+        assertThat(pool.lease(OTHER_KEY)).isNull();
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void connectionShouldBeClosedWhenItReachedMaxMessages() throws Exception {
+        SMTPTransport transport = healthyTransport();
+        SMTPConnectionPool.PooledConnection connection = pool.newConnection(KEY, session, transport);
+        pool.release(connection);
+        pool.release(pool.lease(KEY));
+        pool.release(pool.lease(KEY));
+
+        assertThat(pool.getIdleCount()).isEqualTo(0);
+        verify(transport).close();
+    }
+
+    @Test
+    public void connectionFailingResetShouldBeClosedAndSkipped() throws Exception {
+        SMTPTransport broken = mock(SMTPTransport.class);
+        when(broken.simpleCommand("RSET")).thenThrow(new MessagingException("connection reset"));
+        SMTPTransport healthy = healthyTransport();
+        SMTPConnectionPool.PooledConnection healthyConnection = pool.newConnection(KEY, session, healthy);
+        pool.release(healthyConnection);
+        pool.release(pool.newConnection(KEY, session, broken));
+
+        assertThat(pool.lease(KEY)).isSameAs(healthyConnection);
+        verify(broken).close();
+    }
+
+    @Test
+    public void expiredConnectionShouldBeClosed() throws Exception {
+        pool = new SMTPConnectionPool(3, -1, 2);
+        SMTPTransport transport = healthyTransport();
+        pool.release(pool.newConnection(KEY, session, transport));
+
+        assertThat(pool.lease(KEY)).isNull();
+        verify(transport).close();
+    }
+
+    @Test
+    public void closeExpiredShouldKeepRecentlyUsedConnections() throws Exception {
+        SMTPTransport transport = healthyTransport();
+        pool.release(pool.newConnection(KEY, session, transport));
+
+        pool.closeExpired();
+
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        verify(transport, never()).close();
+    }
+
+    @Test
+    public void reaperShouldCloseExpiredConnectionsWithoutLease() throws Exception {
+        pool.close();
+        pool = new SMTPConnectionPool(3, 50, 2);
+        SMTPTransport transport = healthyTransport();
+        pool.release(pool.newConnection(KEY, session, transport));
+
+        verify(transport, timeout(5000)).close();
+        assertThat(pool.getIdleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void leastRecentlyUsedConnectionShouldBeClosedWhenTooManyAreIdle() throws Exception {
+        SMTPTransport first = healthyTransport();
+        pool.release(pool.newConnection(KEY, session, first));
+        pool.release(pool.newConnection(OTHER_KEY, session, healthyTransport()));
+        pool.release(pool.newConnection(OTHER_KEY, session, healthyTransport()));
+
+        assertThat(pool.getIdleCount()).isEqualTo(2);
+        verify(first).close();
+    }
+
+    @Test
+    public void closeShouldCloseIdleAndLaterReleasedConnections() throws Exception {
+        SMTPTransport idle = healthyTransport();
+        SMTPTransport leased = healthyTransport();
+        pool.release(pool.newConnection(KEY, session, idle));
+
+        pool.close();
+        pool.release(pool.newConnection(KEY, session, leased));
+
+        assertThat(pool.getIdleCount()).isEqualTo(0);
+        verify(idle).close();
+        verify(leased).close();
+    }
+}
@@ -0,0 +1,339 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imapserver.netty;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+
+/**
+ * Incrementally assembles an IMAP command out of the chunks received on a {@link Channel}.
+ * 
+ * Each received byte is scanned exactly once: lines are scanned for their terminating LF, and for a literal
+ * declaration (<code>{size}</code> or <code>{size+}</code>) right before it. Literal content is copied to its
+ * destination without being scanned. The destination is an in memory {@link ChannelBuffer}, growing as bytes arrive,
+ * or a temporary file once the command exceeds the in memory size limit.
+ * 
+ * Literals larger than the literal size limit are rejected as soon as they are declared. The content of a rejected
+ * non synchronizing literal, which the client sends anyway, is skipped along with the rest of its command.
+ * 
+ * Once the command is complete, it is handed over to the {@link ImapRequestLineReader} returned by
+ * {@link #createReader(Channel, int)}, so that the command is decoded once, from start to end, without having to be
+ * retried when more data arrives.
+ */
+public class ImapRequestAccumulator {
+
+    public enum Progress {
+        /**
+         * The received data was consumed, but the command is not complete yet
+         */
+        NEED_MORE_DATA,
+        /**
+         * A line declaring a literal was consumed. See {@link ImapRequestAccumulator#getLiteralSize()} and
+         * {@link ImapRequestAccumulator#isSynchronizingLiteral()}
+         */
+        LITERAL_DECLARED,
+        /**
+         * A line declaring a literal larger than the literal size limit was consumed. The command should be read with
+         * {@link ImapRequestAccumulator#createReader(Channel, int)} to be rejected, without sending a continuation
+         * request. See {@link ImapRequestAccumulator#isDiscarding()}
+         */
+        LITERAL_TOO_LARGE,
+        /**
+         * The command is complete and can be read with {@link ImapRequestAccumulator#createReader(Channel, int)}
+         */
+        COMMAND_COMPLETE
+    }
+
+    private enum LiteralDeclarationState {
+        NONE, OPENED, SIZE, NON_SYNCHRONIZING, CLOSED, CLOSED_CR
+    }
+
+    private static final int MAX_LITERAL_SIZE_DIGITS = 9;
+
+    private final int inMemorySizeLimit;
+    private final int literalSizeLimit;
+
+    private LiteralDeclarationState declarationState = LiteralDeclarationState.NONE;
+    private int declaredSizeDigits;
+    private int declaredSize;
+    private int literalSize;
+    private boolean synchronizingLiteral;
+    private int remainingLiteralBytes;
+    private boolean discarding;
+
+    private ChannelBuffer directCommand;
+    private ChannelBuffer memory;
+    private File file;
+    private OutputStream fileOutputStream;
+    private long accumulatedBytes;
+
+    /**
+     * @param inMemorySizeLimit size above which the command is written to a temporary file, 0 to keep it in memory
+     * @param literalSizeLimit size above which literals are rejected, 0 for no limit
+     */
+    public ImapRequestAccumulator(int inMemorySizeLimit, int literalSizeLimit) {
+        this.inMemorySizeLimit = inMemorySizeLimit;
+        this.literalSizeLimit = literalSizeLimit;
+    }
+
+    /**
+     * Consumes data from the given buffer, up to the end of the command, or up to the end of a line declaring a
+     * literal.
+     */
+    public Progress feed(ChannelBuffer buffer) throws IOException {
+        if (remainingLiteralBytes > 0) {
+            int amount = Math.min(remainingLiteralBytes, buffer.readableBytes());
+            consume(buffer, amount);
+            remainingLiteralBytes -= amount;
+            if (remainingLiteralBytes > 0) {
+                return Progress.NEED_MORE_DATA;
+            }
+        }
+
+        int start = buffer.readerIndex();
+        int end = buffer.writerIndex();
+        for (int index = start; index < end; index++) {
+            byte next = buffer.getByte(index);
+            if (next == '\n') {
+                int lineLength = index + 1 - start;
+                if (isLiteralDeclared()) {
+                    return declareLiteral(buffer, lineLength);
+                }
+                declarationState = LiteralDeclarationState.NONE;
+                if (discarding) {
+                    // End of the rejected command
+                    buffer.skipBytes(lineLength);
+                    discarding = false;
+                    return Progress.NEED_MORE_DATA;
+                }
+                if (accumulatedBytes == 0) {
+                    directCommand = buffer.readSlice(lineLength);
+                } else {
+                    store(buffer, lineLength);
+                }
+                return Progress.COMMAND_COMPLETE;
+            }
+            scanLiteralDeclaration(next);
+        }
+        consume(buffer, end - start);
+        return Progress.NEED_MORE_DATA;
+    }
+
+    /**
+     * Size of the literal declared by the last line consumed
+     */
+    public int getLiteralSize() {
+        return literalSize;
+    }
+
+    /**
+     * Whether the client awaits a command continuation request before sending the last declared literal
+     */
+    public boolean isSynchronizingLiteral() {
+        return synchronizingLiteral;
+    }
+
+    /**
+     * Whether the content of a rejected non synchronizing literal, and the rest of its command, are being skipped
+     */
+    public boolean isDiscarding() {
+        return discarding;
+    }
+
+    /**
+     * Returns a reader over the complete command, and resets this accumulator for the next command. The continuation
+     * requests are expected to have been sent by the caller when literals got declared.
+     */
+    public ImapRequestLineReader createReader(Channel channel, int maxLiteralSize) throws IOException {
+        try {
+            if (directCommand != null) {
+                return new NettyImapRequestLineReader(channel, directCommand, true, maxLiteralSize);
+            }
+            if (file != null) {
+                fileOutputStream.close();
+                final File commandFile = file;
+                return new NettyStreamImapRequestLineReader(channel, new FileInputStream(commandFile) {
+                    /**
+                     * Delete the File on close too
+                     */
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        FileUtils.forceDelete(commandFile);
+                    }
+                }, true, maxLiteralSize);
+            }
+            return new NettyImapRequestLineReader(channel, memory, true, maxLiteralSize);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Discards the command being accumulated, if any
+     */
+    public void dispose() {
+        if (file != null) {
+            IOUtils.closeQuietly(fileOutputStream);
+            FileUtils.deleteQuietly(file);
+        }
+        reset();
+        remainingLiteralBytes = 0;
+        discarding = false;
+    }
+
+    /**
+     * Forgets the accumulated command. The content of a rejected literal still has to be skipped afterwards.
+     */
+    private void reset() {
+        declarationState = LiteralDeclarationState.NONE;
+        directCommand = null;
+        memory = null;
+        file = null;
+        fileOutputStream = null;
+        accumulatedBytes = 0;
+    }
+
+    private boolean isLiteralDeclared() {
+        return declarationState == LiteralDeclarationState.CLOSED || declarationState == LiteralDeclarationState.CLOSED_CR;
+    }
+
+    private void scanLiteralDeclaration(byte next) {
+        if (next == '{') {
+            declarationState = LiteralDeclarationState.OPENED;
+            declaredSize = 0;
+            declaredSizeDigits = 0;
+            return;
+        }
+        switch (declarationState) {
+        case OPENED:
+        case SIZE:
+            if (next >= '0' && next <= '9' && declaredSizeDigits < MAX_LITERAL_SIZE_DIGITS) {
+                declaredSize = declaredSize * 10 + (next - '0');
+                declaredSizeDigits++;
+                declarationState = LiteralDeclarationState.SIZE;
+            } else if (next == '+' && declarationState == LiteralDeclarationState.SIZE) {
+                declarationState = LiteralDeclarationState.NON_SYNCHRONIZING;
+            } else if (next == '}' && declarationState == LiteralDeclarationState.SIZE) {
+                synchronizingLiteral = true;
+                declarationState = LiteralDeclarationState.CLOSED;
+            } else {
+                declarationState = LiteralDeclarationState.NONE;
+            }
+            break;
+        case NON_SYNCHRONIZING:
+            if (next == '}') {
+                synchronizingLiteral = false;
+                declarationState = LiteralDeclarationState.CLOSED;
+            } else {
+                declarationState = LiteralDeclarationState.NONE;
+            }
+            break;
+        case CLOSED:
+            if (next == '\r') {
+                declarationState = LiteralDeclarationState.CLOSED_CR;
+            } else {
+                declarationState = LiteralDeclarationState.NONE;
+            }
+            break;
+        default:
+            declarationState = LiteralDeclarationState.NONE;
+        }
+    }
+
+    private Progress declareLiteral(ChannelBuffer buffer, int lineLength) throws IOException {
+        declarationState = LiteralDeclarationState.NONE;
+        literalSize = declaredSize;
+        if (discarding) {
+            buffer.skipBytes(lineLength);
+            if (synchronizingLiteral) {
+                // The client awaits a continuation request that will never come: the rejected command ends here
+                discarding = false;
+            } else {
+                remainingLiteralBytes = literalSize;
+            }
+            return Progress.NEED_MORE_DATA;
+        }
+        store(buffer, lineLength);
+        if (literalSizeLimit > 0 && literalSize > literalSizeLimit) {
+            if (!synchronizingLiteral) {
+                discarding = true;
+                remainingLiteralBytes = literalSize;
+            }
+            return Progress.LITERAL_TOO_LARGE;
+        }
+        remainingLiteralBytes = literalSize;
+        if (file == null && inMemorySizeLimit > 0 && accumulatedBytes + literalSize > inMemorySizeLimit) {
+            switchToFile();
+        }
+        return Progress.LITERAL_DECLARED;
+    }
+
+    private void consume(ChannelBuffer buffer, int length) throws IOException {
+        if (discarding) {
+            buffer.skipBytes(length);
+        } else {
+            store(buffer, length);
+        }
+    }
+
+    private void store(ChannelBuffer buffer, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (file == null && inMemorySizeLimit > 0 && accumulatedBytes + length > inMemorySizeLimit) {
+            switchToFile();
+        }
+        if (file != null) {
+            buffer.readBytes(fileOutputStream, length);
+        } else {
+            if (memory == null) {
+                memory = ChannelBuffers.dynamicBuffer(length);
+            }
+            memory.writeBytes(buffer, length);
+        }
+        accumulatedBytes += length;
+    }
+
+    private void switchToFile() throws IOException {
+        file = File.createTempFile("imap-literal", ".tmp");
+        try {
+            fileOutputStream = new FileOutputStream(file);
+            if (memory != null) {
+                memory.readBytes(fileOutputStream, memory.readableBytes());
+                memory = null;
+            }
+        } catch (IOException e) {
+            dispose();
+            throw e;
+        }
+    }
+
+}
@@ -19,16 +19,6 @@
 
 package org.apache.james.imapserver.netty;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
-
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.james.imap.api.ImapMessage;
 import org.apache.james.imap.api.ImapSessionState;
 import org.apache.james.imap.api.process.ImapSession;
@@ -44,17 +34,19 @@ import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
 /**
- * {@link FrameDecoder} which will decode via and {@link ImapDecoder} instance
+ * {@link FrameDecoder} which will decode via and {@link ImapDecoder} instance.
+ * 
+ * Commands are assembled incrementally by an {@link ImapRequestAccumulator}: data received while a command is
+ * incomplete is consumed once, and literals are streamed to memory or to a temporary file as they arrive. The
+ * {@link ImapDecoder} is only called once the whole command was received.
  */
 public class ImapRequestFrameDecoder extends FrameDecoder implements NettyConstants {
 
+    private static final byte[] CONTINUATION_REQUEST = "+\r\n".getBytes();
+
     private final ImapDecoder decoder;
     private final int inMemorySizeLimit;
     private final int literalSizeLimit;
-    private final static String NEEDED_DATA = "NEEDED_DATA";
-    private final static String STORED_DATA = "STORED_DATA";
-    private final static String WRITTEN_DATA = "WRITTEN_DATA";
-    private final static String OUTPUT_STREAM = "OUTPUT_STREAM";
 
     public ImapRequestFrameDecoder(ImapDecoder decoder, int inMemorySizeLimit, int literalSizeLimit) {
         this.decoder = decoder;
@@ -64,148 +56,66 @@ public class ImapRequestFrameDecoder extends FrameDecoder implements NettyConsta
 
     @Override
     public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-        ctx.setAttachment(new HashMap<String, Object>());
+        ctx.setAttachment(new ImapRequestAccumulator(inMemorySizeLimit, literalSizeLimit));
         super.channelOpen(ctx, e);
     }
 
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        ((ImapRequestAccumulator) ctx.getAttachment()).dispose();
+        super.channelClosed(ctx, e);
+    }
+
     /**
      * @see
      * org.jboss.netty.handler.codec.frame.FrameDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext,
      * org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
      */
-    @SuppressWarnings("unchecked")
     protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-        buffer.markReaderIndex();
-        boolean retry = false;
-
-        ImapRequestLineReader reader;
-        // check if we failed before and if we already know how much data we
-        // need to sucess next run
-        Map<String, Object> attachment = (Map<String, Object>) ctx.getAttachment();
-        int size = -1;
-        if (attachment.containsKey(NEEDED_DATA)) {
-            retry = true;
-            size = (Integer) attachment.get(NEEDED_DATA);
-            // now see if the buffer hold enough data to process.
-            if (size != NettyImapRequestLineReader.NotEnoughDataException.UNKNOWN_SIZE && size > buffer.readableBytes()) {
-
-                // check if we have a inMemorySize limit and if so if the
-                // expected size will fit into it
-                if (inMemorySizeLimit > 0 && inMemorySizeLimit < size) {
-
-                    // ok seems like it will not fit in the memory limit so we
-                    // need to store it in a temporary file
-                    final File f;
-                    int written;
-
-                    OutputStream out;
-                    // check if we have created a temporary file already or if
-                    // we need to create a new one
-                    if (attachment.containsKey(STORED_DATA)) {
-                        f = (File) attachment.get(STORED_DATA);
-                        written = (Integer) attachment.get(WRITTEN_DATA);
-                        out = (OutputStream) attachment.get(OUTPUT_STREAM);
-                    } else {
-                        f = File.createTempFile("imap-literal", ".tmp");
-                        attachment.put(STORED_DATA, f);
-                        written = 0;
-                        attachment.put(WRITTEN_DATA, written);
-                        out = new FileOutputStream(f, true);
-                        attachment.put(OUTPUT_STREAM, out);
-
-                    }
-
-
-                    try {
-                        int amount = Math.min(buffer.readableBytes(), size - written);
-                        buffer.readBytes(out, amount);
-                        written += amount;
-                    } catch (Exception e) {
-                        IOUtils.closeQuietly(out);
-                        throw e;
-                    }
-                    // Check if all needed data was streamed to the file.
-                    if (written == size) {
-                        IOUtils.closeQuietly(out);
-
-                        reader = new NettyStreamImapRequestLineReader(channel, new FileInputStream(f) {
-                            /**
-                             * Delete the File on close too
-                             */
-                            @Override
-                            public void close() throws IOException {
-                                super.close();
-                                FileUtils.forceDelete(f);
-                            }
-
-                        }, retry);
-                    } else {
-                        attachment.put(WRITTEN_DATA, written);
-                        return null;
-                    }
-
-                } else {
-                    buffer.resetReaderIndex();
-                    return null;
-                }
-
-            } else {
-
-                reader = new NettyImapRequestLineReader(channel, buffer, retry, literalSizeLimit);
+        ImapRequestAccumulator accumulator = (ImapRequestAccumulator) ctx.getAttachment();
+
+        switch (accumulator.feed(buffer)) {
+        case LITERAL_DECLARED:
+            disableFraming(channel);
+            if (accumulator.isSynchronizingLiteral()) {
+                channel.write(ChannelBuffers.wrappedBuffer(CONTINUATION_REQUEST));
             }
-        } else {
-            reader = new NettyImapRequestLineReader(channel, buffer, retry, literalSizeLimit);
+            return null;
+        case LITERAL_TOO_LARGE:
+            // The decoder rejects the literal while reading the command up to it
+            Object rejected = decodeCommand(accumulator.createReader(channel, literalSizeLimit), channel);
+            if (accumulator.isDiscarding()) {
+                disableFraming(channel);
+            }
+            return rejected;
+        case NEED_MORE_DATA:
+            return null;
+        default:
+            return decodeCommand(accumulator.createReader(channel, literalSizeLimit), channel);
         }
+    }
+
+    /**
+     * The literal and the end of the command are not delimited by lines, so we need to receive them unframed. See
+     * JAMES-1436
+     */
+    private void disableFraming(Channel channel) {
+        final ChannelPipeline pipeline = channel.getPipeline();
+        final SwitchableDelimiterBasedFrameDecoder framer = (SwitchableDelimiterBasedFrameDecoder) pipeline.get(FRAMER);
+        framer.disableFraming(pipeline.getContext(FRAMER));
+    }
 
+    private Object decodeCommand(ImapRequestLineReader reader, Channel channel) {
         ImapSession session = (ImapSession) attributes.get(channel);
 
         // check if the session was removed before to prevent a harmless NPE. See JAMES-1312
         // Also check if the session was logged out if so there is not need to try to decode it. See JAMES-1341
         if (session != null && session.getState() != ImapSessionState.LOGOUT) {
-            try {
-
-                ImapMessage message = decoder.decode(reader, session);
-
-                // if size is != -1 the case was a literal. if thats the case we
-                // should not consume the line
-                // See JAMES-1199
-                if (size == -1) {
-                    reader.consumeLine();
-                }
-                
-                // Code portion commented further to JAMES-1436.
-                // TODO Remove if no negative feedback on JAMES-1436.
-//                ChannelHandler handler = (ChannelHandler) attachment.remove(FRAMER);
-//                if (handler != null) {
-//                    channel.getPipeline().addFirst(FRAMER, handler);
-//                }
-                
-                ((SwitchableDelimiterBasedFrameDecoder) channel.getPipeline().get(FRAMER)).enableFraming();
-                
-                attachment.clear();
-                return message;
-            } catch (NettyImapRequestLineReader.NotEnoughDataException e) {
-                // this exception was thrown because we don't have enough data
-                // yet
-                int neededData = e.getNeededSize();
-                // store the needed data size for later usage
-                attachment.put(NEEDED_DATA, neededData);
-                
-                final ChannelPipeline pipeline = channel.getPipeline();
-                final ChannelHandlerContext framerContext = pipeline.getContext(FRAMER);
-                
-                // Code portion commented further to JAMES-1436.
-                // TODO Remove if no negative feedback on JAMES-1436.
-//                ChannelHandler handler = channel.getPipeline().remove(FRAMER);
-//                attachment.put(FRAMER, handler);
-
-                // SwitchableDelimiterBasedFrameDecoder added further to JAMES-1436.
-                final SwitchableDelimiterBasedFrameDecoder framer = (SwitchableDelimiterBasedFrameDecoder) pipeline.get(FRAMER);
-                framer.disableFraming(framerContext);
-                
-                buffer.resetReaderIndex();
-                return null;
-            }
+            ImapMessage message = decoder.decode(reader, session);
+
+            ((SwitchableDelimiterBasedFrameDecoder) channel.getPipeline().get(FRAMER)).enableFraming();
+
+            return message;
         } else {
             // The session was null so may be the case because the channel was already closed but there were still bytes in the buffer.
             // We now try to disconnect the client if still connected
@@ -216,21 +126,4 @@ public class ImapRequestFrameDecoder extends FrameDecoder implements NettyConsta
         }
     }
 
-    @Override
-    protected synchronized ChannelBuffer newCumulationBuffer(ChannelHandlerContext ctx, int minimumCapacity) {
-        @SuppressWarnings("unchecked")
-        Map<String, Object> attachment = (Map<String, Object>) ctx.getAttachment();
-        int size = (Integer) attachment.get(NEEDED_DATA);
-        
-        if (inMemorySizeLimit > 0) {
-            return ChannelBuffers.dynamicBuffer(Math.min(size, inMemorySizeLimit), ctx.getChannel().getConfig().getBufferFactory());
-        } else {
-
-            if (size > 0) {
-                return ChannelBuffers.dynamicBuffer(size, ctx.getChannel().getConfig().getBufferFactory());
-            }
-            return super.newCumulationBuffer(ctx, minimumCapacity);
-        }
-    }
-
 }
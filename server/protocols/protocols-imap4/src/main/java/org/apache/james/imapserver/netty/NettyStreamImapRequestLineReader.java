@@ -30,10 +30,16 @@ import org.jboss.netty.channel.Channel;
 public class NettyStreamImapRequestLineReader extends AbstractNettyImapRequestLineReader {
 
     private final InputStream in;
+    private final int maxLiteralSize;
 
     public NettyStreamImapRequestLineReader(Channel channel, InputStream in, boolean retry) {
+        this(channel, in, retry, -1);
+    }
+
+    public NettyStreamImapRequestLineReader(Channel channel, InputStream in, boolean retry, int maxLiteralSize) {
         super(channel, retry);
         this.in = in;
+        this.maxLiteralSize = maxLiteralSize;
     }
 
     /**
@@ -81,6 +87,9 @@ public class NettyStreamImapRequestLineReader extends AbstractNettyImapRequestLi
      */
     public InputStream read(int size, boolean extraCRLF) throws DecodingException {
 
+        if (maxLiteralSize > 0 && size > maxLiteralSize) {
+            throw new DecodingException(HumanReadableText.FAILED, "Specified literal is greater then the allowed size");
+        }
         // Unset the next char.
         nextSeen = false;
         nextChar = 0;
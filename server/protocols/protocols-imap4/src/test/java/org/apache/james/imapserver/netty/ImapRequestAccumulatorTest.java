@@ -0,0 +1,256 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imapserver.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.apache.james.protocols.imap.DecodingException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Test;
+
+public class ImapRequestAccumulatorTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final int NO_LIMIT = 0;
+
+    private ImapRequestAccumulator accumulator;
+
+    @After
+    public void tearDown() {
+        if (accumulator != null) {
+            accumulator.dispose();
+        }
+    }
+
+    @Test
+    public void feedShouldCompleteASingleLineCommand() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("a1 NOOP\r\n")));
+
+        ImapRequestLineReader reader = accumulator.createReader(null, NO_LIMIT);
+        assertEquals("a1", reader.tag());
+        assertEquals("NOOP", reader.atom());
+    }
+
+    @Test
+    public void feedShouldAssembleALineSplitAcrossBuffers() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("a1 NO")));
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("OP\r\n")));
+
+        ImapRequestLineReader reader = accumulator.createReader(null, NO_LIMIT);
+        assertEquals("a1", reader.tag());
+        assertEquals("NOOP", reader.atom());
+    }
+
+    @Test
+    public void feedShouldDeclareASynchronizingLiteral() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 LOGIN {4}\r\n")));
+
+        assertEquals(4, accumulator.getLiteralSize());
+        assertTrue(accumulator.isSynchronizingLiteral());
+    }
+
+    @Test
+    public void feedShouldDeclareANonSynchronizingLiteral() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 LOGIN {4+}\r\n")));
+
+        assertEquals(4, accumulator.getLiteralSize());
+        assertFalse(accumulator.isSynchronizingLiteral());
+    }
+
+    @Test
+    public void feedShouldAssembleALiteralSplitAcrossBuffers() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 LOGIN {10}\r\n")));
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("user")));
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("@domain pass")));
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("word\r\n")));
+
+        ImapRequestLineReader reader = accumulator.createReader(null, NO_LIMIT);
+        assertEquals("a1", reader.tag());
+        assertEquals("LOGIN", reader.atom());
+        reader.nextWordChar();
+        assertEquals("user@domai", IOUtils.toString(reader.consumeLiteral(false), "US-ASCII"));
+        assertEquals("n", reader.atom());
+    }
+
+    @Test
+    public void feedShouldNotScanLiteralContentForDeclarations() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 APPEND box {7}\r\n")));
+
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("{3}\r\nab\r\n")));
+    }
+
+    @Test
+    public void feedShouldAssembleANonSynchronizingLiteralReceivedWithItsDeclaration() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, NO_LIMIT);
+        ChannelBuffer buffer = buffer("a1 LOGIN {4+}\r\nuser pass\r\n");
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer));
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer));
+
+        ImapRequestLineReader reader = accumulator.createReader(null, NO_LIMIT);
+        assertEquals("a1", reader.tag());
+        assertEquals("LOGIN", reader.atom());
+        reader.nextWordChar();
+        assertEquals("user", IOUtils.toString(reader.consumeLiteral(false), "US-ASCII"));
+        reader.nextWordChar();
+        assertEquals("pass", reader.atom());
+    }
+
+    @Test
+    public void createReaderShouldReadFromAFileWhenALiteralExceedsTheInMemorySizeLimit() throws Exception {
+        accumulator = new ImapRequestAccumulator(16, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 APPEND box {20}\r\n")));
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("0123456789")));
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("0123456789\r\n")));
+
+        ImapRequestLineReader reader = accumulator.createReader(null, NO_LIMIT);
+        assertTrue(reader instanceof NettyStreamImapRequestLineReader);
+        assertEquals("a1", reader.tag());
+        assertEquals("APPEND", reader.atom());
+        reader.nextWordChar();
+        assertEquals("box", reader.atom());
+        reader.nextWordChar();
+        assertEquals("01234567890123456789", IOUtils.toString(reader.consumeLiteral(false), "US-ASCII"));
+        ((NettyStreamImapRequestLineReader) reader).dispose();
+    }
+
+    @Test
+    public void createReaderShouldReadFromAFileWhenALineExceedsTheInMemorySizeLimit() throws Exception {
+        accumulator = new ImapRequestAccumulator(16, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("a1 SELECT ")));
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("0123456789")));
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("\r\n")));
+
+        ImapRequestLineReader reader = accumulator.createReader(null, NO_LIMIT);
+        assertTrue(reader instanceof NettyStreamImapRequestLineReader);
+        ((NettyStreamImapRequestLineReader) reader).dispose();
+    }
+
+    @Test
+    public void createReaderShouldReadFromMemoryWhenTheCommandFitsTheInMemorySizeLimit() throws Exception {
+        accumulator = new ImapRequestAccumulator(64, NO_LIMIT);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 APPEND box {20}\r\n")));
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("01234567890123456789\r\n")));
+
+        assertTrue(accumulator.createReader(null, NO_LIMIT) instanceof NettyImapRequestLineReader);
+    }
+
+    @Test
+    public void feedShouldRejectASynchronizingLiteralExceedingTheLiteralSizeLimit() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, 10);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_TOO_LARGE, accumulator.feed(buffer("a1 APPEND box {11}\r\n")));
+
+        assertFalse(accumulator.isDiscarding());
+        assertLiteralRejected(accumulator.createReader(null, 10));
+    }
+
+    @Test
+    public void feedShouldSkipANonSynchronizingLiteralExceedingTheLiteralSizeLimit() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, 10);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_TOO_LARGE, accumulator.feed(buffer("a1 APPEND box {11+}\r\n")));
+        assertTrue(accumulator.isDiscarding());
+        assertLiteralRejected(accumulator.createReader(null, 10));
+
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("012345")));
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("67890 {3+}\r\n")));
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("abc\r\n")));
+        assertFalse(accumulator.isDiscarding());
+
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("a2 NOOP\r\n")));
+        ImapRequestLineReader reader = accumulator.createReader(null, 10);
+        assertEquals("a2", reader.tag());
+        assertEquals("NOOP", reader.atom());
+    }
+
+    @Test
+    public void feedShouldStopSkippingOnASynchronizingLiteralDeclaration() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, 10);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_TOO_LARGE, accumulator.feed(buffer("a1 APPEND box {11+}\r\n")));
+        accumulator.createReader(null, 10);
+
+        assertEquals(ImapRequestAccumulator.Progress.NEED_MORE_DATA, accumulator.feed(buffer("01234567890 {3}\r\n")));
+        assertFalse(accumulator.isDiscarding());
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("a2 NOOP\r\n")));
+    }
+
+    @Test
+    public void feedShouldAcceptALiteralMatchingTheLiteralSizeLimit() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, 10);
+
+        assertEquals(ImapRequestAccumulator.Progress.LITERAL_DECLARED, accumulator.feed(buffer("a1 APPEND box {10}\r\n")));
+    }
+
+    @Test
+    public void disposeShouldStopSkipping() throws Exception {
+        accumulator = new ImapRequestAccumulator(NO_LIMIT, 10);
+        accumulator.feed(buffer("a1 APPEND box {11+}\r\n"));
+
+        accumulator.dispose();
+
+        assertFalse(accumulator.isDiscarding());
+        assertEquals(ImapRequestAccumulator.Progress.COMMAND_COMPLETE, accumulator.feed(buffer("a2 NOOP\r\n")));
+    }
+
+    private void assertLiteralRejected(ImapRequestLineReader reader) throws IOException {
+        try {
+            reader.tag();
+            reader.atom();
+            reader.nextWordChar();
+            reader.atom();
+            reader.nextWordChar();
+            reader.consumeLiteral(false);
+            fail("Expected the literal to be rejected");
+        } catch (DecodingException e) {
+            // expected
+        }
+    }
+
+    private ChannelBuffer buffer(String data) {
+        return ChannelBuffers.copiedBuffer(data, US_ASCII);
+    }
+
+}